@@ -3,8 +3,12 @@ package ui;
 import org.xml.sax.SAXException;
 import semulator.execution.ProgramExecutor;
 import semulator.execution.ProgramExecutorImpl;
+import semulator.program.DemandExpansion;
+import semulator.program.ExpansionCache;
 import semulator.program.ExpansionResult;
+import semulator.program.MappedExpansion;
 import semulator.program.SProgram;
+import semulator.program.SProgramImpl;
 import semulator.state.ExerciseState;
 import semulator.variable.Variable;
 
@@ -18,6 +22,10 @@ import java.nio.file.Path;
 import java.io.*;
 
 public class ConsoleUI {
+    // Expansions with more instructions are kept on disk and shown a page at a time
+    private static final long LARGE_EXPANSION_ROWS = 1_000_000;
+    private static final int PAGE_ROWS = 200;
+
     private final SProgram gw;
     private final Scanner sc = new Scanner(System.in);
     private Path loadedXml;
@@ -153,8 +161,13 @@ public class ConsoleUI {
             chosen = askIntInRange("Choose expansion degree [0.." + maxDegree + "]: ", 0, maxDegree);
         }
 
+        if (isLargeExpansion(chosen)) {
+            showMappedExpansion((SProgramImpl) gw, chosen);
+            return;
+        }
+
         // Engine: expand to the requested degree (and carry lineage)
-        ExpansionResult snapshot = gw.expandToDegree(chosen);
+        ExpansionResult snapshot = expand(null, chosen);
 
         // UI: print including creator chain with ">>>"
         System.out.println();
@@ -163,6 +176,40 @@ public class ConsoleUI {
         System.out.println(PrettyPrinter.showCreationChains(snapshot, gw));
     }
 
+    private boolean isLargeExpansion(int degree) {
+        return degree > 0 && gw instanceof SProgramImpl impl
+                && new DemandExpansion(impl, degree).size() > LARGE_EXPANSION_ROWS;
+    }
+
+    // Programs loaded from XML keep their expansions in the on-disk cache
+    private ExpansionResult expand(String function, int degree) {
+        if (gw instanceof SProgramImpl impl) {
+            return ExpansionCache.getDefault().expansionResult(impl, function, degree);
+        }
+        return function == null ? gw.expandToDegree(degree) : gw.expandFunctionToDegree(function, degree);
+    }
+
+    private void showMappedExpansion(SProgramImpl program, int degree) {
+        try (MappedExpansion expansion = program.getXmlDigest() != null
+                ? ExpansionCache.getDefault().open(program, null, degree)
+                : MappedExpansion.create(program, degree)) {
+            System.out.println();
+            System.out.println("Program after expanding to degree " + degree + " (" + expansion.size()
+                    + " instructions, kept on disk):");
+            for (long row = 1; row <= expansion.size(); row += PAGE_ROWS) {
+                System.out.print(PrettyPrinter.showCreationChains(expansion, row, PAGE_ROWS));
+                if (row + PAGE_ROWS <= expansion.size()) {
+                    System.out.println("Press Enter for the next " + PAGE_ROWS + " rows, or q to stop:");
+                    if (sc.nextLine().trim().equalsIgnoreCase("q")) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not write the expansion to disk: " + e.getMessage());
+        }
+    }
+
     private void expandIndividualFunction() {
         // Get available functions
         Map<String, String> functionUserStrings = gw.getFunctionUserStrings();
@@ -199,7 +246,7 @@ public class ConsoleUI {
         }
 
         // Engine: expand the function to the requested degree
-        ExpansionResult snapshot = gw.expandFunctionToDegree(selectedFunction, chosen);
+        ExpansionResult snapshot = expand(selectedFunction, chosen);
 
         // UI: print including creator chain with ">>>"
         System.out.println();
@@ -251,7 +298,7 @@ public class ConsoleUI {
 
         // Execute the program
         long result;
-        int cycles;
+        long cycles;
         Map<Variable, Long> variableState;
 
         if (chosen == 0) {
@@ -261,9 +308,22 @@ public class ConsoleUI {
             cycles = executor.getTotalCycles();
             variableState = executor.variableState();
             System.out.println(PrettyPrinter.show(gw));
+        } else if (isLargeExpansion(chosen)) {
+            // Run the expansion from disk instead of building it
+            ProgramExecutorImpl executor = new ProgramExecutorImpl(gw);
+            executor.setEmulatedDegree(chosen);
+            executor.setMappedExpansion(true);
+            try {
+                result = executor.run(inputs.toArray(new Long[0]));
+            } finally {
+                executor.setMappedExpansion(false);
+            }
+            cycles = executor.getTotalCycles();
+            variableState = executor.variableState();
+            System.out.println("(The expanded program is too large to print here; use Expand to page through it.)");
         } else {
             // Expand and run
-            ExpansionResult snapshot = gw.expandToDegree(chosen);
+            ExpansionResult snapshot = expand(null, chosen);
 
             SProgram expandedProgram = createProgramFromExpansion(snapshot);
             ProgramExecutor executor = new ProgramExecutorImpl(expandedProgram);
@@ -274,7 +334,7 @@ public class ConsoleUI {
         }
 
         // Record the run in history
-        runHistory.addRun(chosen, inputs, result, cycles);
+        runHistory.addRun(chosen, inputs, result, RunResult.recordedCycles(cycles));
 
         // Display results
         System.out.println("\n=== Program Execution Results ===");
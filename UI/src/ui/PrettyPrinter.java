@@ -4,6 +4,7 @@ import semulator.instructions.*;
 import semulator.label.FixedLabel;
 import semulator.label.Label;
 import semulator.program.ExpansionResult;
+import semulator.program.MappedExpansion;
 import semulator.program.SProgram;
 
 import java.util.*;
@@ -114,6 +115,7 @@ public final class PrettyPrinter {
 
     private static String kindLetter(SInstruction in) {
         if (in instanceof IncreaseInstruction
+                || in instanceof RepeatedIncreaseInstruction
                 || in instanceof DecreaseInstruction
                 || in instanceof NoOpInstruction
                 || in instanceof JumpNotZeroInstruction) {
@@ -129,6 +131,8 @@ public final class PrettyPrinter {
     private static String renderInstruction(SInstruction in, Map<String, String> functionUserStrings) {
         if (in instanceof IncreaseInstruction) {
             return in.getVariable() + " <- " + in.getVariable() + " + 1";
+        } else if (in instanceof RepeatedIncreaseInstruction run) {
+            return in.getVariable() + " <- " + in.getVariable() + " + 1 (x" + run.getCount() + ")";
         } else if (in instanceof DecreaseInstruction) {
             return in.getVariable() + " <- " + in.getVariable() + " - 1";
         } else if (in instanceof NoOpInstruction) {
@@ -441,6 +445,52 @@ public final class PrettyPrinter {
         return sb.toString();
     }
 
+    // Creation chains of a page of an expansion kept on disk: rows firstRow..
+    // (at most count of them), in the format of showCreationChains. Every
+    // instruction of a chain shows its row in the degree it was expanded at.
+    public static String showCreationChains(MappedExpansion e, long firstRow, int count) {
+        StringBuilder sb = new StringBuilder();
+        List<List<SInstruction>> chains = new ArrayList<>();
+        List<List<Long>> chainRows = new ArrayList<>();
+        Set<SInstruction> allToMeasure = Collections.newSetFromMap(new IdentityHashMap<>());
+        long lastRow = Math.min(e.size(), firstRow + count - 1);
+        for (long row = firstRow; row <= lastRow; row++) {
+            List<SInstruction> chain = new ArrayList<>();
+            List<Long> rows = new ArrayList<>();
+            chain.add(e.instruction(row));
+            rows.add(row);
+            long r = row;
+            for (int degree = e.degree(); degree > 0; degree--) {
+                boolean copied = e.isCopied(degree, r);
+                r = e.parentRow(degree, r);
+                if (!copied) {
+                    chain.add(e.instruction(degree - 1, r));
+                    rows.add(r);
+                }
+            }
+            allToMeasure.addAll(chain);
+            chains.add(chain);
+            chainRows.add(rows);
+        }
+
+        int numWidth = Math.max(1, String.valueOf(Math.max(1, e.size() + 32)).length());
+        int labelInnerW = Math.max(4, maxLabelInnerWidth(allToMeasure));
+        int textWidth = Math.max(16, maxTextWidth(allToMeasure));
+        int cyclesWidth = Math.max(1, maxCyclesWidth(allToMeasure));
+
+        for (int i = 0; i < chains.size(); i++) {
+            for (int j = 0; j < chains.get(i).size(); j++) {
+                if (j > 0) {
+                    sb.append(" >>> ");
+                }
+                sb.append(oneLineAligned(chainRows.get(i).get(j), chains.get(i).get(j), numWidth, labelInnerW,
+                        textWidth, cyclesWidth));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
     // === NEW: row-major pretty print for expanded snapshots ===
     // Prints one physical line per original row.
     // Within that line, prints the chain of descendants for that row from newest
@@ -576,7 +626,7 @@ public final class PrettyPrinter {
     }
 
     // Renders a single aligned line: "#NN (K) [ LABEL ] TEXT (cycles)"
-    private static String oneLineAligned(Integer num,
+    private static String oneLineAligned(Number num,
             SInstruction in,
             int numW, int lblInnerW, int textW, int cycW) {
         String n = (num == null ? "?".repeat(Math.max(1, numW)) : String.format("%" + numW + "d", num));
@@ -14,6 +14,14 @@ public record RunResult(
         int cycles) implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The cycles to record for a run: history keeps an int (the saved format),
+     * so a longer run is recorded as Integer.MAX_VALUE rather than wrapped.
+     */
+    public static int recordedCycles(long cycles) {
+        return (int) Math.min(cycles, Integer.MAX_VALUE);
+    }
+
     /**
      * Convert inputs to CSV format for display
      */
@@ -9,15 +9,18 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.application.Platform;
-import javafx.concurrent.Task;
-import javafx.concurrent.Service;
 import javafx.beans.property.SimpleStringProperty;
+import javafx.stage.FileChooser;
 
 import semulator.program.SProgram;
 import semulator.program.SProgramImpl;
 import semulator.execution.ProgramExecutor;
 import semulator.execution.ProgramExecutorImpl;
 import semulator.execution.ExecutionContext;
+import semulator.execution.ExecutionCheckpoint;
+import semulator.execution.ResumableExecution;
+import semulator.execution.RunLimits;
+import semulator.execution.WorkScheduler;
 import semulator.variable.Variable;
 import semulator.instructions.SInstruction;
 
@@ -51,6 +54,10 @@ public class DebuggerExecution {
     private Button stepOverButton;
     @FXML
     private Button stepBackwardButton;
+    @FXML
+    private Button saveCheckpointButton;
+    @FXML
+    private Button loadCheckpointButton;
 
     // FXML Components - Variables Panel
     @FXML
@@ -91,8 +98,10 @@ public class DebuggerExecution {
     private AtomicInteger currentCycles = new AtomicInteger(0);
     private AtomicInteger maxCycles = new AtomicInteger(1000); // Default max cycles
 
-    // Execution Service
-    private ExecutionService executionService;
+    // Background runs go through the shared scheduler under one key, so a new run
+    // (or Stop) cancels the one before
+    private static final String RUN_WORK = "run";
+    private WorkScheduler workScheduler;
 
     // Input Variables Map
     private Map<String, Integer> inputVariables = new HashMap<>();
@@ -207,9 +216,6 @@ public class DebuggerExecution {
         variableNameColumn.setSortable(false);
         variableValueColumn.setSortable(false);
 
-        // Initialize execution service
-        executionService = new ExecutionService();
-
         // Set initial button states
         updateButtonStates();
 
@@ -234,7 +240,7 @@ public class DebuggerExecution {
         updateExecutionStatus("Starting Regular Execution...");
 
         // Start execution in background
-        executionService.restart();
+        startBackgroundRun();
     }
 
     @FXML
@@ -286,9 +292,7 @@ public class DebuggerExecution {
         // Clean up any lingering animations
         ui.animations.DataFlowTraceAnimation.cleanupAllAnimations();
 
-        if (executionService != null && executionService.isRunning()) {
-            executionService.cancel();
-        }
+        workScheduler.cancel(RUN_WORK);
 
         updateButtonStates();
         updateExecutionStatus("Execution Stopped");
@@ -313,9 +317,7 @@ public class DebuggerExecution {
             }
 
             // Continue with normal execution
-            if (executionService != null && !executionService.isRunning()) {
-                executionService.restart();
-            }
+            startBackgroundRun();
         }
     }
 
@@ -369,6 +371,115 @@ public class DebuggerExecution {
         }
     }
 
+    /**
+     * Save the paused debug session (instruction index, variables, cycles) to a
+     * checkpoint file that can be resumed here or by a headless run.
+     */
+    @FXML
+    private void saveCheckpoint(ActionEvent event) {
+        if (!(isDebugMode.get() && isPaused.get() && isStepExecution)
+                || !(stepExecutionContext instanceof StepExecutionContext stepContext)) {
+            showAlert("Checkpoint Not Available", "Checkpoints can be saved only in debug mode when paused.");
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Checkpoint");
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("S-Emulator Checkpoints", "*.semc"));
+        java.io.File file = fileChooser.showSaveDialog(saveCheckpointButton.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        try {
+            ResumableExecution execution = ResumableExecution.atInstruction(currentProgram, RunLimits.NONE,
+                    currentInstructionIndex, stepContext.variableState(), currentCycles.get());
+            ExecutionCheckpoint.save(file.toPath(), execution);
+            updateExecutionStatus("Checkpoint saved: " + file.getName());
+        } catch (Exception e) {
+            showAlert("Checkpoint Error", "Failed to save checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load a checkpoint of the current program and continue it as a paused debug
+     * session. A checkpoint taken inside a function call (headless runs) first
+     * finishes that call, so the session starts on a main-program instruction.
+     */
+    @FXML
+    private void loadCheckpoint(ActionEvent event) {
+        if (currentProgram == null) {
+            showAlert("No Program", "Please load a program first.");
+            return;
+        }
+        if (isExecuting.get()) {
+            stopExecution(null);
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Load Checkpoint");
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("S-Emulator Checkpoints", "*.semc"));
+        java.io.File file = fileChooser.showOpenDialog(loadCheckpointButton.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        // Finishing a call in progress can run long: do it on a worker, under the run key
+        // so Stop (or a new run) cancels it
+        java.nio.file.Path path = file.toPath();
+        SProgram program = currentProgram;
+        updateExecutionStatus("Loading checkpoint: " + file.getName());
+        workScheduler.submit(RUN_WORK, WorkScheduler.INTERACTIVE, progress -> {
+            ResumableExecution execution = ExecutionCheckpoint.load(path, program, RunLimits.NONE);
+            execution.runToTopLevel();
+            return execution;
+        }, execution -> {
+            if (program == currentProgram) {
+                enterCheckpoint(execution);
+            }
+        }, e -> {
+            if (e instanceof IllegalArgumentException) {
+                showAlert("Checkpoint Error", "The checkpoint does not match the displayed program (or degree).");
+            } else {
+                showAlert("Checkpoint Error", "Failed to load checkpoint: " + e.getMessage());
+            }
+            updateExecutionStatus("Checkpoint not loaded");
+        });
+    }
+
+    /** Enter a paused debug session positioned at a loaded checkpoint. */
+    private void enterCheckpoint(ResumableExecution execution) {
+        // Enter a paused debug session positioned at the checkpoint
+        isDebugMode.set(true);
+        isPaused.set(true);
+        isExecuting.set(true);
+        isStepExecution = true;
+        dataFlowAnimationShown = false;
+        initializeDebuggerState();
+
+        StepExecutionContext restored = new StepExecutionContext(new Long[0]);
+        restored.variables.putAll(execution.variableState());
+        stepExecutionContext = restored;
+        currentInstructionIndex = execution.isFinished() ? currentInstructions.size()
+                : execution.getProgramCounter();
+        currentCycles.set(RunResult.recordedCycles(execution.getTotalCycles()));
+        updateVariableStatesFromContext();
+
+        updateButtonStates();
+        updateCyclesDisplay();
+        updateVariablesDisplay();
+        if (instructionTableCallback != null && currentInstructionIndex < currentInstructions.size()) {
+            instructionTableCallback.accept(currentInstructionIndex);
+        }
+        if (headerController != null) {
+            headerController.setExpansionControlsEnabled(false);
+        }
+        updateExecutionStatus("Checkpoint loaded - paused at instruction " + currentInstructionIndex + " of "
+                + currentInstructions.size());
+    }
+
     /**
      * Create an input field for a variable
      */
@@ -554,6 +665,8 @@ public class DebuggerExecution {
                         varName = decrease.getVariable().toString();
                     } else if (instruction instanceof semulator.instructions.IncreaseInstruction increase) {
                         varName = increase.getVariable().toString();
+                    } else if (instruction instanceof semulator.instructions.RepeatedIncreaseInstruction run) {
+                        varName = run.getVariable().toString();
                     } else if (instruction instanceof semulator.instructions.ZeroVariableInstruction zero) {
                         varName = zero.getVariable().toString();
                     } else if (instruction instanceof semulator.instructions.JumpEqualVariableInstruction jumpVar) {
@@ -866,13 +979,6 @@ public class DebuggerExecution {
             updateExecutionStatus(
                     "Executed instruction " + (currentInstructionIndex - 1) + " of " + currentInstructions.size());
 
-            // Add a small delay to ensure UI updates are visible
-            try {
-                Thread.sleep(100); // 100ms delay to make step execution visible
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-
         } catch (Exception e) {
 
             e.printStackTrace();
@@ -1123,6 +1229,10 @@ public class DebuggerExecution {
         this.headerController = headerController;
     }
 
+    public void setWorkScheduler(WorkScheduler workScheduler) {
+        this.workScheduler = workScheduler;
+    }
+
     private void setupVariableRowHighlighting() {
         variablesTableView.setRowFactory(tv -> {
             TableRow<VariableRow> row = new TableRow<VariableRow>() {
@@ -1159,6 +1269,7 @@ public class DebuggerExecution {
         resumeButton.setDisable(!executing || !paused);
         stepOverButton.setDisable(!executing || !paused || !debugMode);
         stepBackwardButton.setDisable(!executing || !paused || !debugMode);
+        saveCheckpointButton.setDisable(!executing || !paused || !debugMode);
     }
 
     private void updateExecutionStatus(String status) {
@@ -1393,65 +1504,35 @@ public class DebuggerExecution {
         });
     }
 
-    // Execution Service for Background Execution
-    private class ExecutionService extends Service<Void> {
-        @Override
-        protected Task<Void> createTask() {
-            return new Task<Void>() {
-                @Override
-                protected Void call() throws Exception {
-                    try {
-                        while (isExecuting.get() && !isCancelled()) {
-                            if (isPaused.get() && isDebugMode.get()) {
-                                // In debug mode and paused, wait for step command
-                                Thread.sleep(100);
-                                continue;
-                            }
-
-                            // Execute the program
-                            if (executor != null) {
-                                // Get ordered inputs
-                                List<Long> inputs = getOrderedInputs();
-
-                                // Run the program with inputs
-                                long result = executor.run(inputs.toArray(new Long[0]));
-
-                                // Calculate cycles by summing up all instruction cycles
-                                int totalCycles = 0;
-                                totalCycles = executor.getTotalCycles();
-                                currentCycles.set(totalCycles);
-                                updateCyclesDisplay();
-                                updateVariablesDisplay();
-
-                                // Mark execution as complete
-                                isExecuting.set(false);
-                                updateExecutionStatus("Execution Complete - Result: " + result);
-                                break;
-                            }
-                        }
-
-                        if (!isCancelled()) {
-                            isExecuting.set(false);
-                            isPaused.set(false);
-                            updateButtonStates();
-                            updateExecutionStatus("Execution Complete");
-
-                            // Record the run in history
-                            recordRunInHistory();
-                        }
+    // Run the whole program on a worker thread; the result comes back on the FX thread
+    private void startBackgroundRun() {
+        if (executor == null) {
+            isExecuting.set(false);
+            updateButtonStates();
+            updateExecutionStatus("No program to run");
+            return;
+        }
+        ProgramExecutor runner = executor;
+        Long[] inputs = getOrderedInputs().toArray(new Long[0]);
+        workScheduler.submit(RUN_WORK, WorkScheduler.INTERACTIVE, progress -> runner.run(inputs), result -> {
+            currentCycles.set(RunResult.recordedCycles(runner.getTotalCycles()));
+            updateCyclesDisplay();
+            updateVariablesDisplay();
 
-                    } catch (InterruptedException e) {
-                        // Execution was cancelled
-                        isExecuting.set(false);
-                        isPaused.set(false);
-                        updateButtonStates();
-                        updateExecutionStatus("Execution Cancelled");
-                    }
+            // Mark execution as complete
+            isExecuting.set(false);
+            isPaused.set(false);
+            updateButtonStates();
+            updateExecutionStatus("Execution Complete - Result: " + result);
 
-                    return null;
-                }
-            };
-        }
+            // Record the run in history
+            recordRunInHistory();
+        }, e -> {
+            isExecuting.set(false);
+            isPaused.set(false);
+            updateButtonStates();
+            updateExecutionStatus("Execution Failed: " + e.getMessage());
+        });
     }
 
     // Data Model Classes
@@ -14,8 +14,13 @@ import javafx.event.ActionEvent;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import semulator.execution.WorkScheduler;
+import semulator.program.ExpansionCache;
+import semulator.program.ExpansionDiff;
+import semulator.program.ExpansionPrefetcher;
 import semulator.program.SProgram;
 import semulator.program.SProgramImpl;
+import semulator.program.SymbolIndex;
 import ui.components.InstructionTable.InstructionTable;
 import ui.components.HistoryStats.HistoryStats;
 
@@ -78,6 +83,15 @@ public class Header {
 
   // Store expansion results for history chain tracking
   private semulator.program.ExpansionResult currentExpansionResult;
+  private SymbolIndex currentSymbolIndex; // of currentExpansionResult, when built with it
+
+  // Expands every degree of a loaded program in the background, into the cache expand() reads
+  private final ExpansionPrefetcher prefetcher = new ExpansionPrefetcher(ExpansionCache.getDefault());
+
+  // Background work shared by the UI components; expansions go under one key so
+  // a newer one cancels the older
+  private static final String EXPANSION_WORK = "expansion";
+  private WorkScheduler workScheduler;
   private java.util.Map<Integer, semulator.program.ExpansionResult> expansionResultsByDegree = new java.util.HashMap<>();
 
   public Header() {
@@ -155,6 +169,11 @@ public class Header {
             // Populate the label/variable combo box
             populateLabelVariableComboBox();
 
+            // Expand the other degrees and the functions before they are picked
+            if (sProgram instanceof SProgramImpl impl) {
+              prefetcher.start(impl);
+            }
+
             showSuccessAlert("File Loaded", "XML file loaded successfully!");
           } else {
             showErrorAlert("Load Failed", result.getErrorMessage());
@@ -218,6 +237,25 @@ public class Header {
   // Method to set the instruction table reference
   public void setInstructionTable(InstructionTable instructionTable) {
     this.instructionTable = instructionTable;
+    instructionTable.setUnfoldCallback(this::unfoldRun);
+  }
+
+  // Show a run of increases (V <- K expanded) as its single INCREASE rows
+  private void unfoldRun(semulator.instructions.RepeatedIncreaseInstruction run) {
+    if (currentExpansionResult == null || currentDegree == 0) {
+      return;
+    }
+    try {
+      currentExpansionResult = currentExpansionResult.unfold(run);
+      currentSymbolIndex = null;
+      expansionResultsByDegree.put(currentDegree, currentExpansionResult);
+      SProgram expandedProgram = displayExpandedProgram();
+      if (debuggerExecution != null && !isShowingFunction) {
+        debuggerExecution.setProgram(expandedProgram);
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println("Cannot unfold instruction: " + e.getMessage());
+    }
   }
 
   // Method to capture detailed XML validation errors
@@ -277,6 +315,10 @@ public class Header {
     @Override
     protected FileLoadResult call() throws Exception {
       try {
+        // The program is loaded again in place: stop expanding the previous one first
+        prefetcher.cancel();
+        workScheduler.cancelAndWait(EXPANSION_WORK);
+
         // Update progress: 10% - Starting validation
         updateProgress(0.1, 1.0);
         Thread.sleep(200); // Artificial delay
@@ -369,6 +411,7 @@ public class Header {
 
       // Store the base program (degree 0) expansion result
       currentExpansionResult = program.expandToDegree(0);
+      currentSymbolIndex = null;
       expansionResultsByDegree.put(0, currentExpansionResult);
 
       // Ensure the debugger execution component gets the current program
@@ -410,6 +453,10 @@ public class Header {
 
         if (selectedDegree != currentDegree) {
           expandToDegree(selectedDegree);
+        } else {
+          // Back to the degree on show: drop an expansion still on its way
+          workScheduler.cancel(EXPANSION_WORK);
+          showExpansionProgress(1.0, false);
         }
       } catch (NumberFormatException e) {
         showErrorAlert("Invalid Selection", "Invalid level selection: " + selectedLevel);
@@ -417,184 +464,216 @@ public class Header {
     }
   }
 
+  // Expansions of a program loaded from XML come from the on-disk cache, so a
+  // degree expanded once (in this session or an earlier one) is read back
+  private semulator.program.ExpansionResult expand(String function, int degree) {
+    if (sProgram instanceof SProgramImpl impl) {
+      return ExpansionCache.getDefault().expansionResult(impl, function, degree);
+    }
+    return function == null ? sProgram.expandToDegree(degree) : sProgram.expandFunctionToDegree(function, degree);
+  }
+
   private void expandToDegree(int degree) {
-    try {
-      // DEBUG: Run expansion directly instead of using Task
+    // Expand on a worker thread; picking another degree before this one is shown
+    // cancels it
+    String function = isShowingFunction && currentFunctionName != null
+        ? getInternalFunctionName(currentFunctionName)
+        : null;
+    // The expansion on show, which the table changes into this one row by row
+    semulator.program.ExpansionResult previous = currentExpansionResult;
+    int previousDegree = currentDegree;
+    showExpansionProgress(ProgressBar.INDETERMINATE_PROGRESS, true);
+    workScheduler.submit(EXPANSION_WORK, WorkScheduler.INTERACTIVE, progress -> {
+      semulator.program.ExpansionResult result = expand(function, degree);
+      // Superseded, or the program is being reloaded (which waits for this): stop here
+      if (progress.isCancelled()) {
+        return null;
+      }
+      progress.update(1, 2);
+      ExpansionDiff changes = previous == null ? null
+          : ExpansionDiff.between(previous, previousDegree, result, degree);
+      if (progress.isCancelled()) {
+        return null;
+      }
+      return new Expansion(result, expandedProgram(result), new SymbolIndex(result.instructions()), changes);
+    }, fraction -> showExpansionProgress(fraction, true), expansion -> {
+      showExpansionProgress(1.0, false);
+      showExpansion(degree, expansion);
+    }, e -> {
+      showExpansionProgress(1.0, false);
+      e.printStackTrace();
+      showErrorAlert("Expansion Error", "Failed to expand to degree " + degree + ": " + e.getMessage());
+      // Revert to previous degree
+      if (degree > currentDegree) {
+        currentDegree--;
+      } else if (degree < currentDegree) {
+        currentDegree++;
+      }
+      updateDegreeDisplay();
+      updateLevelSelectorState();
+    });
+  }
 
-      // Determine which program to expand based on current selection
-      SProgram programToExpand;
-      semulator.program.ExpansionResult result;
+  private void showExpansionProgress(double progress, boolean visible) {
+    // While a file loads the bar shows the loading
+    if (!progressBar.progressProperty().isBound()) {
+      progressBar.setProgress(progress);
+      progressBar.setVisible(visible);
+    }
+  }
 
-      if (isShowingFunction && currentFunctionName != null) {
-        // Expand the currently selected function using the function expansion method
-        String internalFunctionName = getInternalFunctionName(currentFunctionName);
-        result = sProgram.expandFunctionToDegree(internalFunctionName, degree);
-        programToExpand = sProgram; // Use main program for UI updates
-      } else {
-        // Expand the main program
-        programToExpand = sProgram;
-        result = programToExpand.expandToDegree(degree);
-      }
+  /**
+   * An expansion, the program that holds its instructions, where its labels
+   * and variables appear and how it differs from the expansion on show (null
+   * when it cannot be told), built off the FX thread.
+   */
+  private record Expansion(semulator.program.ExpansionResult result, SProgramImpl program, SymbolIndex symbols,
+      ExpansionDiff changes) {
+  }
 
-      // Store reference to the program being expanded for later use
-      SProgram activeProgram = programToExpand;
+  private SProgramImpl expandedProgram(semulator.program.ExpansionResult result) {
+    // Create a temporary SProgram to hold the expanded instructions
+    SProgramImpl expandedProgram = new SProgramImpl("Expanded");
+    for (semulator.instructions.SInstruction instruction : result.instructions()) {
+      expandedProgram.addInstruction(instruction);
+    }
 
-      // Update UI directly (no Platform.runLater needed)
-      try {
-        // Store the expansion result for history chain tracking
-        currentExpansionResult = result;
-        expansionResultsByDegree.put(degree, result);
-
-        // Create a temporary SProgram to hold the expanded instructions
-        SProgramImpl expandedProgram = new SProgramImpl("Expanded");
-        for (semulator.instructions.SInstruction instruction : result.instructions()) {
-          expandedProgram.addInstruction(instruction);
-        }
+    // Copy functions and user-strings from original program to expanded program
+    if (sProgram instanceof SProgramImpl) {
+      SProgramImpl originalProgram = (SProgramImpl) sProgram;
+      var originalFunctions = originalProgram.getFunctions();
+      for (Map.Entry<String, java.util.List<semulator.instructions.SInstruction>> entry : originalFunctions
+          .entrySet()) {
+        expandedProgram.getFunctions().put(entry.getKey(), entry.getValue());
+      }
 
-        // Copy functions and user-strings from original program to expanded program
-        if (sProgram instanceof SProgramImpl) {
-          SProgramImpl originalProgram = (SProgramImpl) sProgram;
-          var originalFunctions = originalProgram.getFunctions();
-          for (Map.Entry<String, java.util.List<semulator.instructions.SInstruction>> entry : originalFunctions
-              .entrySet()) {
-            expandedProgram.getFunctions().put(entry.getKey(), entry.getValue());
-          }
+      // Copy user-string mappings
+      var originalUserStrings = originalProgram.getFunctionUserStrings();
+      for (Map.Entry<String, String> entry : originalUserStrings.entrySet()) {
+        expandedProgram.getFunctionUserStrings().put(entry.getKey(), entry.getValue());
+      }
+    }
+    return expandedProgram;
+  }
 
-          // Copy user-string mappings
-          var originalUserStrings = originalProgram.getFunctionUserStrings();
-          for (Map.Entry<String, String> entry : originalUserStrings.entrySet()) {
-            expandedProgram.getFunctionUserStrings().put(entry.getKey(), entry.getValue());
-          }
-        }
+  // Runs on the FX thread, once per expansion
+  private void showExpansion(int degree, Expansion expansion) {
+    SProgram activeProgram = sProgram;
+    SProgramImpl expandedProgram = expansion.program();
+    // Still from the expansion on show (an unfold since would have changed it)
+    boolean incremental = expansion.changes() != null && expansion.changes().previous() == currentExpansionResult;
+    try {
+      // Store the expansion result for history chain tracking
+      currentExpansionResult = expansion.result();
+      currentSymbolIndex = expansion.symbols();
+      expansionResultsByDegree.put(degree, expansion.result());
+
+      // Display the expanded program with comprehensive error handling
+      if (instructionTable != null) {
+        try {
+          // Add comprehensive error handling and validation
+          List<semulator.instructions.SInstruction> instructions = expandedProgram.getInstructions();
+          if (instructions == null || instructions.isEmpty()) {
+            System.err.println("Error: Expanded program has no instructions, skipping UI update");
+          } else {
+            // Additional validation for large datasets
+            if (instructions.size() > 2000) {
+              System.err.println("Warning: Very large instruction set (" + instructions.size() +
+                  " instructions) may cause UI performance issues");
+            }
 
-        // Display the expanded program with comprehensive error handling
-        if (instructionTable != null) {
-          // Use Platform.runLater to ensure UI updates happen on the JavaFX thread
-          javafx.application.Platform.runLater(() -> {
+            // CRITICAL FIX: Completely disable the table before updating to prevent
+            // IndexOutOfBoundsException
             try {
-              // Add comprehensive error handling and validation
-              if (expandedProgram == null) {
-                System.err.println("Error: Expanded program is null, skipping UI update");
-                return;
-              }
-
-              List<semulator.instructions.SInstruction> instructions = expandedProgram.getInstructions();
-              if (instructions == null || instructions.isEmpty()) {
-                System.err.println("Error: Expanded program has no instructions, skipping UI update");
-                return;
-              }
-
-              // Additional validation for large datasets
-              if (instructions.size() > 2000) {
-                System.err.println("Warning: Very large instruction set (" + instructions.size() +
-                    " instructions) may cause UI performance issues");
-              }
-
-              // CRITICAL FIX: Completely disable the table before updating to prevent
-              // IndexOutOfBoundsException
-              try {
-                instructionTable.setTableEnabled(false);
-              } catch (Exception disableException) {
-                System.err.println("Error disabling table: " + disableException.getMessage());
-              }
-
-              // Update the instruction table with comprehensive error handling
-              instructionTable.displayProgram(expandedProgram);
-
-              // CRITICAL FIX: Re-enable the table after updating
-              try {
-                instructionTable.setTableEnabled(true);
-              } catch (Exception enableException) {
-                System.err.println("Error re-enabling table: " + enableException.getMessage());
-              }
-
-            } catch (Exception e) {
-              System.err.println("Critical error updating instruction table: " + e.getMessage());
-              e.printStackTrace();
-
-              // Try to recover by clearing the table
-              try {
-                instructionTable.clearTable();
-              } catch (Exception clearException) {
-                System.err.println("Error clearing table during recovery: " + clearException.getMessage());
-              }
+              instructionTable.setTableEnabled(false);
+            } catch (Exception disableException) {
+              System.err.println("Error disabling table: " + disableException.getMessage());
             }
-          });
-        } else {
-          System.err.println("Warning: Instruction table is null, cannot update UI");
-        }
 
-        // Handle program/function selector - preserve current selection during
-        // expansion
-        // Update the debugger execution component with the appropriate program
+            // Update the instruction table with comprehensive error handling: only
+            // the rows that changed when going from the degree on show, so the
+            // selection and scroll position stay
+            if (!incremental
+                || !instructionTable.updateProgram(expandedProgram, expansion.symbols(), expansion.changes())) {
+              instructionTable.displayProgram(expandedProgram, expansion.symbols());
+            }
 
-        if (debuggerExecution != null) {
-          if (degree == 0) {
-            // For degree 0, use the original active program
-            debuggerExecution.setProgram(activeProgram);
-          } else {
-            // For higher degrees, use the expanded program
-            debuggerExecution.setProgram(expandedProgram);
+            // CRITICAL FIX: Re-enable the table after updating
+            try {
+              instructionTable.setTableEnabled(true);
+            } catch (Exception enableException) {
+              System.err.println("Error re-enabling table: " + enableException.getMessage());
+            }
+          }
+
+        } catch (Exception e) {
+          System.err.println("Critical error updating instruction table: " + e.getMessage());
+          e.printStackTrace();
+
+          // Try to recover by clearing the table
+          try {
+            instructionTable.clearTable();
+          } catch (Exception clearException) {
+            System.err.println("Error clearing table during recovery: " + clearException.getMessage());
           }
         }
+      } else {
+        System.err.println("Warning: Instruction table is null, cannot update UI");
+      }
+
+      // Handle program/function selector - preserve current selection during
+      // expansion
+      // Update the debugger execution component with the appropriate program
 
-        // Update the label/variable combo box with the current program
-        // For degree 0, use original active program; for higher degrees, use expanded
-        // program
+      if (debuggerExecution != null) {
         if (degree == 0) {
-          populateLabelVariableComboBox(activeProgram);
+          // For degree 0, use the original active program
+          debuggerExecution.setProgram(activeProgram);
         } else {
-          populateLabelVariableComboBox(expandedProgram);
+          // For higher degrees, use the expanded program
+          debuggerExecution.setProgram(expandedProgram);
         }
+      }
 
-        // Update current degree and max degree for the active program
-        currentDegree = degree;
-        if (isShowingFunction && currentFunctionName != null) {
-          // For function expansions, calculate max degree for the specific function
-          String internalFunctionName = getInternalFunctionName(currentFunctionName);
-          maxDegree = sProgram.calculateFunctionTemplateDegree(internalFunctionName);
-        } else {
-          // For main program expansions, use the main program's max degree
-          // CRITICAL FIX: Ensure maxDegree is at least as high as the current degree
-          int calculatedMaxDegree = activeProgram.calculateMaxDegree();
-
-          // CRITICAL FIX: Always ensure maxDegree is at least as high as the degree we're
-          // expanding to
-          maxDegree = Math.max(calculatedMaxDegree, degree);
-
-          // Additional safety: if we're expanding to degree 4 or higher, maxDegree should
-          // be at least that
-          if (degree >= 4) {
-            maxDegree = Math.max(maxDegree, degree);
-          }
+      // Update the label/variable combo box with the labels and variables of the
+      // expansion (at degree 0, those of the active program)
+      populateLabelVariableComboBox(expansion.symbols());
 
-          // Final safety check: maxDegree should never be less than currentDegree
-          maxDegree = Math.max(maxDegree, currentDegree);
+      // Update current degree and max degree for the active program
+      currentDegree = degree;
+      if (isShowingFunction && currentFunctionName != null) {
+        // For function expansions, calculate max degree for the specific function
+        String internalFunctionName = getInternalFunctionName(currentFunctionName);
+        maxDegree = sProgram.calculateFunctionTemplateDegree(internalFunctionName);
+      } else {
+        // For main program expansions, use the main program's max degree
+        // CRITICAL FIX: Ensure maxDegree is at least as high as the current degree
+        int calculatedMaxDegree = activeProgram.calculateMaxDegree();
+
+        // CRITICAL FIX: Always ensure maxDegree is at least as high as the degree we're
+        // expanding to
+        maxDegree = Math.max(calculatedMaxDegree, degree);
+
+        // Additional safety: if we're expanding to degree 4 or higher, maxDegree should
+        // be at least that
+        if (degree >= 4) {
+          maxDegree = Math.max(maxDegree, degree);
         }
 
-        // Update level selector options with new max degree
-        populateLevelSelector();
-
-        // Update degree display and level selector state
-        updateDegreeDisplay();
-        updateLevelSelectorState();
-      } catch (Exception e) {
-
-        e.printStackTrace();
-        showErrorAlert("Expansion Error", "Failed to display expanded program: " + e.getMessage());
-        // Revert to previous degree
-        if (degree > currentDegree) {
-          currentDegree--;
-        } else if (degree < currentDegree) {
-          currentDegree++;
-        }
-        updateDegreeDisplay();
-        updateLevelSelectorState();
+        // Final safety check: maxDegree should never be less than currentDegree
+        maxDegree = Math.max(maxDegree, currentDegree);
       }
 
+      // Update level selector options with new max degree
+      populateLevelSelector();
+
+      // Update degree display and level selector state
+      updateDegreeDisplay();
+      updateLevelSelectorState();
     } catch (Exception e) {
+
       e.printStackTrace();
-      showErrorAlert("Expansion Error", "Failed to expand to degree " + degree + ": " + e.getMessage());
+      showErrorAlert("Expansion Error", "Failed to display expanded program: " + e.getMessage());
       // Revert to previous degree
       if (degree > currentDegree) {
         currentDegree--;
@@ -720,7 +799,7 @@ public class Header {
       if (prevDegreeResult == null) {
         // If we don't have the previous degree result, we need to get it
         try {
-          prevDegreeResult = sProgram.expandToDegree(currentDegreeForTracing);
+          prevDegreeResult = expand(null, currentDegreeForTracing);
           expansionResultsByDegree.put(currentDegreeForTracing, prevDegreeResult);
         } catch (Exception e) {
           // If we can't get the previous degree, stop tracing
@@ -736,6 +815,11 @@ public class Header {
     return chain;
   }
 
+  // Method to set the scheduler for background work
+  public void setWorkScheduler(WorkScheduler workScheduler) {
+    this.workScheduler = workScheduler;
+  }
+
   // Method to set the debugger execution component
   public void setDebuggerExecution(ui.components.DebuggerExecution.DebuggerExecution debuggerExecution) {
     this.debuggerExecution = debuggerExecution;
@@ -749,98 +833,26 @@ public class Header {
     }
   }
 
-  // Method to populate the label/variable combo box
+  // Method to populate the label/variable combo box with those of the rows on show
   private void populateLabelVariableComboBox() {
-    // Determine which program to use based on current degree
-    SProgram programToUse;
-    if (currentDegree == 0) {
-      programToUse = sProgram; // Use original program for degree 0
+    if (instructionTable != null) {
+      populateLabelVariableComboBox(instructionTable.getSymbolIndex());
     } else {
-      // For higher degrees, use the expanded program from current expansion result
-      if (currentExpansionResult != null) {
-        // Create a temporary program from the current expansion result
-        SProgramImpl expandedProgram = new SProgramImpl("Expanded");
-        for (semulator.instructions.SInstruction instruction : currentExpansionResult.instructions()) {
-          expandedProgram.addInstruction(instruction);
-        }
-
-        // Copy functions and user-strings from original program to expanded program
-        if (sProgram instanceof SProgramImpl) {
-          SProgramImpl originalProgram = (SProgramImpl) sProgram;
-          var originalFunctions = originalProgram.getFunctions();
-          for (Map.Entry<String, java.util.List<semulator.instructions.SInstruction>> entry : originalFunctions
-              .entrySet()) {
-            expandedProgram.getFunctions().put(entry.getKey(), entry.getValue());
-          }
-
-          // Copy user-string mappings
-          var originalUserStrings = originalProgram.getFunctionUserStrings();
-          for (Map.Entry<String, String> entry : originalUserStrings.entrySet()) {
-            expandedProgram.getFunctionUserStrings().put(entry.getKey(), entry.getValue());
-          }
-        }
-        programToUse = expandedProgram;
-      } else {
-        programToUse = sProgram; // Fallback to original program
-      }
+      populateLabelVariableComboBox(sProgram == null ? null : new SymbolIndex(sProgram.getInstructions()));
     }
-
-    populateLabelVariableComboBox(programToUse);
   }
 
-  // Overloaded method to populate the combo box with a specific program
-  private void populateLabelVariableComboBox(SProgram program) {
+  // Overloaded method to populate the combo box from an index of the rows: one
+  // entry per label and variable, however many rows mention it
+  private void populateLabelVariableComboBox(SymbolIndex index) {
     labelVariableList.clear();
 
-    if (program == null || program.getInstructions() == null) {
+    if (index == null) {
       labelVariableComboBox.setDisable(true);
       return;
     }
 
-    java.util.Set<String> uniqueItems = new java.util.TreeSet<>();
-
-    // Extract labels and variables from the specified program
-    for (semulator.instructions.SInstruction instruction : program.getInstructions()) {
-      // Add the main variable
-      if (instruction.getVariable() != null) {
-        uniqueItems.add(instruction.getVariable().toString());
-      }
-
-      // Add the label
-      if (instruction.getLabel() != null) {
-        if (instruction.getLabel().isExit()) {
-          uniqueItems.add("EXIT");
-        } else if (instruction.getLabel().getLabel() != null) {
-          uniqueItems.add(instruction.getLabel().getLabel());
-        }
-      }
-
-      // Add source variables for assignments
-      if (instruction instanceof semulator.instructions.AssignVariableInstruction assignVar) {
-        if (assignVar.getSource() != null) {
-          uniqueItems.add(assignVar.getSource().toString());
-        }
-      }
-
-      // Add other variables for comparisons
-      if (instruction instanceof semulator.instructions.JumpEqualVariableInstruction jumpVar) {
-        if (jumpVar.getOther() != null) {
-          uniqueItems.add(jumpVar.getOther().toString());
-        }
-      }
-
-      // Add function arguments for QUOTE and JUMP_EQUAL_FUNCTION
-      if (instruction instanceof semulator.instructions.QuoteInstruction quote) {
-        for (semulator.instructions.FunctionArgument arg : quote.getFunctionArguments()) {
-          uniqueItems.add(arg.toString());
-        }
-      }
-      if (instruction instanceof semulator.instructions.JumpEqualFunctionInstruction jumpEqualFunc) {
-        for (semulator.instructions.FunctionArgument arg : jumpEqualFunc.getFunctionArguments()) {
-          uniqueItems.add(arg.toString());
-        }
-      }
-    }
+    java.util.Set<String> uniqueItems = new java.util.TreeSet<>(index.names());
 
     // Sort items in the specified order: labels, y, x variables, z variables
     java.util.List<String> sortedItems = new java.util.ArrayList<>();
@@ -929,6 +941,10 @@ public class Header {
       return;
     }
 
+    // An expansion of the previous selection must not replace the new one
+    workScheduler.cancel(EXPANSION_WORK);
+    showExpansionProgress(1.0, false);
+
     String selectedItem = programFunctionSelector.getSelectionModel().getSelectedItem();
     if (instructionTable != null && sProgram != null) {
       if (selectedItem != null) {
@@ -951,6 +967,7 @@ public class Header {
             // Show expanded program for current degree
             displayExpandedProgram();
           }
+          populateLabelVariableComboBox();
         } else {
           // Show function instructions
           isShowingFunction = true;
@@ -965,7 +982,7 @@ public class Header {
   }
 
   // Method to display the expanded program for the current degree
-  private void displayExpandedProgram() {
+  private SProgram displayExpandedProgram() {
     if (currentExpansionResult != null) {
       // Create a temporary program from the current expansion result
       SProgramImpl expandedProgram = new SProgramImpl("Expanded");
@@ -990,10 +1007,12 @@ public class Header {
       }
 
       // Display the expanded program
-      instructionTable.displayProgram(expandedProgram);
+      instructionTable.displayProgram(expandedProgram, currentSymbolIndex);
+      return expandedProgram;
     } else {
       // Fallback to original program
       instructionTable.displayProgram(sProgram);
+      return sProgram;
     }
   }
 
@@ -1085,7 +1104,7 @@ public class Header {
         updateDegreeControlsForProgram(functionProgram);
 
         // Update the label/variable combo box for the function
-        populateLabelVariableComboBox(functionProgram);
+        populateLabelVariableComboBox();
 
       } else {
       }
@@ -102,6 +102,7 @@ public class HistoryChain {
 
     private String getCommandType(SInstruction instruction) {
         if (instruction instanceof IncreaseInstruction
+                || instruction instanceof RepeatedIncreaseInstruction
                 || instruction instanceof DecreaseInstruction
                 || instruction instanceof NoOpInstruction
                 || instruction instanceof JumpNotZeroInstruction) {
@@ -127,6 +128,8 @@ public class HistoryChain {
     private String getInstructionText(SInstruction instruction, Map<String, String> functionUserStrings) {
         if (instruction instanceof IncreaseInstruction) {
             return instruction.getVariable() + " <- " + instruction.getVariable() + " + 1";
+        } else if (instruction instanceof RepeatedIncreaseInstruction run) {
+            return instruction.getVariable() + " <- " + instruction.getVariable() + " + 1 (x" + run.getCount() + ")";
         } else if (instruction instanceof DecreaseInstruction) {
             return instruction.getVariable() + " <- " + instruction.getVariable() + " - 1";
         } else if (instruction instanceof NoOpInstruction) {
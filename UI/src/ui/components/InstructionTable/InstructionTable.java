@@ -4,13 +4,13 @@ import javafx.fxml.FXML;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableRow;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.scene.paint.Color;
 import semulator.instructions.*;
 import semulator.label.Label;
 import semulator.label.FixedLabel;
+import semulator.program.ExpansionDiff;
 import semulator.program.SProgram;
+import semulator.program.SymbolIndex;
 import semulator.variable.Variable;
 import ui.animations.Animations;
 import ui.animations.RowPulseAnimation;
@@ -38,13 +38,17 @@ public class InstructionTable {
     @FXML
     private TableColumn<InstructionRow, Integer> cyclesColumn;
 
-    private ObservableList<InstructionRow> instructionData = FXCollections.observableArrayList();
+    // Rows of the program on show, made only for the indices the table asks for
+    private InstructionRows instructionData = new InstructionRows(List.of(), null);
 
-    // For highlighting functionality
+    // For highlighting functionality: the rows that mention each label and
+    // variable, so a highlight looks rows up instead of matching their text
+    private SymbolIndex symbolIndex = new SymbolIndex(List.of());
     private String currentHighlightTerm = null;
     private int currentExecutingInstructionIndex = -1; // -1 means no instruction is executing
 
-    // Store references to table rows for animation
+    // Store references to table rows for animation (only the rows on screen: a
+    // row that moves to another index leaves its old one)
     private java.util.Map<Integer, TableRow<InstructionRow>> rowCache = new java.util.concurrent.ConcurrentHashMap<>();
 
     // Store current program to access functions
@@ -80,18 +84,33 @@ public class InstructionTable {
 
         // Set up row highlighting
         setupRowHighlighting();
+
+        // F3 and Shift+F3 step through the highlighted rows
+        instructionTableView.setOnKeyPressed(event -> {
+            if (event.getCode() == javafx.scene.input.KeyCode.F3) {
+                if (event.isShiftDown() ? selectPreviousMatch() : selectNextMatch()) {
+                    event.consume();
+                }
+            }
+        });
     }
 
     public void displayProgram(SProgram program) {
+        displayProgram(program, null);
+    }
+
+    /**
+     * Display the program with the index of its instructions, built off the FX
+     * thread for a large expansion; null builds it here.
+     */
+    public void displayProgram(SProgram program, SymbolIndex index) {
         // Add safety checks for large datasets
         if (program == null || program.getInstructions() == null) {
             // Completely disable the table and clear all data
             try {
                 instructionTableView.setDisable(true);
                 instructionTableView.getSelectionModel().clearSelection();
-                instructionData.clear();
-                rowCache.clear();
-                currentInstructions.clear();
+                showRows(List.of(), null, new SymbolIndex(List.of()));
                 currentHighlightTerm = null;
                 currentExecutingInstructionIndex = -1;
                 currentProgram = null;
@@ -121,10 +140,6 @@ public class InstructionTable {
                 System.err.println("Warning: Could not clear selection: " + selectionException.getMessage());
             }
 
-            // Clear data in a synchronized manner
-            instructionData.clear();
-            rowCache.clear(); // Clear the row cache when displaying a new program
-            currentInstructions.clear();
             currentHighlightTerm = null; // Clear any existing highlighting
             currentExecutingInstructionIndex = -1; // Clear current instruction highlighting
             currentProgram = program; // Store program reference
@@ -133,8 +148,6 @@ public class InstructionTable {
             return;
         }
 
-        currentInstructions.addAll(instructions); // Store for selection handling
-
         // Get user-strings if available
         Map<String, String> functionUserStrings = null;
         if (program instanceof semulator.program.SProgramImpl) {
@@ -147,35 +160,10 @@ public class InstructionTable {
             // Temporarily disable selection model to prevent race conditions
             instructionTableView.setDisable(true);
 
-            for (int i = 0; i < instructions.size(); i++) {
-                try {
-                    SInstruction instruction = instructions.get(i);
-                    if (instruction == null) {
-                        System.err.println("Warning: Null instruction at index " + i);
-                        continue;
-                    }
-
-                    String variable = "";
-                    try {
-                        variable = instruction.getVariable().toString();
-                    } catch (Exception e) {
-                        // Some instructions don't have getVariable() method
-                        variable = "";
-                    }
-
-                    InstructionRow row = new InstructionRow(
-                            i + 1, // Row number (1-based)
-                            getCommandType(instruction), // B or S
-                            getLabelText(instruction.getLabel()), // Label text
-                            getInstructionText(instruction, functionUserStrings), // Instruction description
-                            instruction.cycles(), // Cycles
-                            variable);
-                    instructionData.add(row);
-                } catch (Exception e) {
-                    System.err.println("Error processing instruction at index " + i + ": " + e.getMessage());
-                    // Continue processing other instructions
-                }
-            }
+            // The rows read the instructions in place; only those scrolled into view
+            // get their text
+            showRows(instructions, functionUserStrings,
+                    index != null && index.size() == instructions.size() ? index : new SymbolIndex(instructions));
 
             // Don't re-enable the table immediately - use a delayed approach
             // This prevents the IndexOutOfBoundsException by ensuring all data is stable
@@ -275,9 +263,145 @@ public class InstructionTable {
         }
     }
 
+    /**
+     * Show another degree of the expansion on show by changing only the rows
+     * that differ, so the kept rows keep their selection and the row at the top
+     * stays at the top. False, with nothing changed, when the diff is not from
+     * the rows on show; displayProgram then shows the program instead.
+     */
+    public boolean updateProgram(SProgram program, SymbolIndex index, ExpansionDiff diff) {
+        List<SInstruction> instructions = program == null ? null : program.getInstructions();
+        if (instructions == null || diff == null
+                || diff.previous().instructions().size() != instructionData.size()
+                || diff.next().instructions().size() != instructions.size()) {
+            return false;
+        }
+        int top = firstVisibleIndex();
+
+        currentExecutingInstructionIndex = -1; // Clear current instruction highlighting
+        currentProgram = program;
+        currentInstructions = instructions;
+        symbolIndex = index != null && index.size() == instructions.size() ? index : new SymbolIndex(instructions);
+        rowCache.clear();
+        instructionData.apply(instructions, diff);
+
+        // Kept rows are renumbered (and may show other made-up names): redraw
+        // those on screen
+        instructionTableView.refresh();
+        if (top >= 0) {
+            instructionTableView.scrollTo(diff.nextRowOf(top));
+        }
+        return true;
+    }
+
+    // Index of the first row on screen, or -1 before the table is laid out
+    private int firstVisibleIndex() {
+        if (instructionTableView.lookup(".virtual-flow") instanceof javafx.scene.control.skin.VirtualFlow<?> flow
+                && flow.getFirstVisibleCell() != null) {
+            int index = flow.getFirstVisibleCell().getIndex();
+            return index >= 0 && index < instructionData.size() ? index : -1;
+        }
+        return -1;
+    }
+
     public void clearTable() {
-        instructionData.clear();
-        rowCache.clear(); // Clear the row cache when clearing the table
+        showRows(List.of(), null, new SymbolIndex(List.of()));
+    }
+
+    /** Where each label and variable appears in the rows on show. */
+    public SymbolIndex getSymbolIndex() {
+        return symbolIndex;
+    }
+
+    // Replace the table's rows: a new lazy list, so nothing is removed row by row
+    private void showRows(List<SInstruction> instructions, Map<String, String> functionUserStrings,
+            SymbolIndex index) {
+        currentInstructions = instructions; // Store for selection handling
+        symbolIndex = index;
+        instructionData = new InstructionRows(instructions, functionUserStrings);
+        rowCache.clear(); // Clear the row cache when the rows change
+        instructionTableView.setItems(instructionData);
+    }
+
+    /**
+     * The rows of a list of instructions, made when the table first asks for an
+     * index and kept in a small LRU. The table only asks for the rows it lays
+     * out, so showing an expansion costs the same whatever its size.
+     */
+    private final class InstructionRows extends javafx.collections.ObservableListBase<InstructionRow> {
+        private static final int CACHED_ROWS = 512;
+
+        private List<SInstruction> instructions;
+        private final Map<String, String> functionUserStrings;
+        private final Map<Integer, InstructionRow> rows = new java.util.LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, InstructionRow> eldest) {
+                return size() > CACHED_ROWS;
+            }
+        };
+
+        InstructionRows(List<SInstruction> instructions, Map<String, String> functionUserStrings) {
+            this.instructions = instructions;
+            this.functionUserStrings = functionUserStrings;
+        }
+
+        @Override
+        public InstructionRow get(int index) {
+            InstructionRow row = rows.get(index);
+            if (row == null) {
+                row = toRow(index, instructions.get(index));
+                rows.put(index, row);
+            }
+            return row;
+        }
+
+        @Override
+        public int size() {
+            return instructions.size();
+        }
+
+        /**
+         * Show the instructions of another degree in place of these, with one
+         * replace per edit of the diff. The removed rows handed to listeners are
+         * those already made; the others, never laid out, are stand-ins, so a
+         * large collapse does not format every row it removes.
+         */
+        void apply(List<SInstruction> next, ExpansionDiff diff) {
+            Map<Integer, InstructionRow> made = new java.util.HashMap<>(rows);
+            instructions = next;
+            rows.clear(); // kept rows have new numbers
+            beginChange();
+            for (ExpansionDiff.Edit edit : diff.edits()) {
+                List<InstructionRow> removed = new java.util.ArrayList<>(edit.removed());
+                for (int i = edit.previousRow(); i < edit.previousRow() + edit.removed(); i++) {
+                    InstructionRow row = made.get(i);
+                    removed.add(row != null ? row : new InstructionRow(i + 1, "", "", "", 0, ""));
+                }
+                nextReplace(edit.nextRow(), edit.nextRow() + edit.added(), removed);
+            }
+            endChange();
+        }
+
+        private InstructionRow toRow(int index, SInstruction instruction) {
+            if (instruction == null) {
+                System.err.println("Warning: Null instruction at index " + index);
+                return new InstructionRow(index + 1, "", "", "", 0, "");
+            }
+            String variable = "";
+            try {
+                variable = instruction.getVariable().toString();
+            } catch (Exception e) {
+                // Some instructions don't have getVariable() method
+                variable = "";
+            }
+            return new InstructionRow(
+                    index + 1, // Row number (1-based)
+                    getCommandType(instruction), // B or S
+                    getLabelText(instruction.getLabel()), // Label text
+                    getInstructionText(instruction, functionUserStrings), // Instruction description
+                    instruction.cycles(), // Cycles
+                    variable);
+        }
     }
 
     public void setTableEnabled(boolean enabled) {
@@ -312,6 +436,11 @@ public class InstructionTable {
         }
     }
 
+    /** Called with the run of increases the user double-clicks, to show it unfolded. */
+    public void setUnfoldCallback(Consumer<RepeatedIncreaseInstruction> callback) {
+        this.unfoldCallback = callback;
+    }
+
     public void setHistoryChainCallback(Consumer<SInstruction> callback) {
         // Use a completely different approach - disable the built-in selection model
         // and implement our own selection mechanism to avoid IndexOutOfBoundsException
@@ -361,7 +490,8 @@ public class InstructionTable {
         }
     }
 
-    private List<SInstruction> currentInstructions = new java.util.ArrayList<>();
+    private List<SInstruction> currentInstructions = List.of();
+    private Consumer<RepeatedIncreaseInstruction> unfoldCallback;
 
     private List<SInstruction> getCreationChain(SInstruction instruction) {
         // This method will be called by the callback, but the actual chain
@@ -374,6 +504,7 @@ public class InstructionTable {
 
     private String getCommandType(SInstruction instruction) {
         if (instruction instanceof IncreaseInstruction
+                || instruction instanceof RepeatedIncreaseInstruction
                 || instruction instanceof DecreaseInstruction
                 || instruction instanceof NoOpInstruction
                 || instruction instanceof JumpNotZeroInstruction) {
@@ -399,6 +530,8 @@ public class InstructionTable {
     private String getInstructionText(SInstruction instruction, Map<String, String> functionUserStrings) {
         if (instruction instanceof IncreaseInstruction) {
             return instruction.getVariable() + " <- " + instruction.getVariable() + " + 1";
+        } else if (instruction instanceof RepeatedIncreaseInstruction run) {
+            return instruction.getVariable() + " <- " + instruction.getVariable() + " + 1 (x" + run.getCount() + ")";
         } else if (instruction instanceof DecreaseInstruction) {
             return instruction.getVariable() + " <- " + instruction.getVariable() + " - 1";
         } else if (instruction instanceof NoOpInstruction) {
@@ -584,20 +717,52 @@ public class InstructionTable {
     public void highlightRowsContaining(String term) {
         currentHighlightTerm = term;
 
-        // First, clear all previous highlights
-        for (InstructionRow row : instructionData) {
-            row.setHighlighted(false);
+        // The row factory highlights the rows on screen that contain the term;
+        // refresh the table once to apply it
+        instructionTableView.refresh();
+    }
+
+    /** Rows that contain the highlighted term. */
+    public int getHighlightMatchCount() {
+        return currentHighlightTerm == null ? 0 : symbolIndex.count(currentHighlightTerm);
+    }
+
+    // Select and scroll to the next row containing the highlighted term, from the
+    // top again after the last one
+    public boolean selectNextMatch() {
+        if (currentHighlightTerm == null || symbolIndex.count(currentHighlightTerm) == 0) {
+            return false;
+        }
+        int from = instructionTableView.getSelectionModel().getSelectedIndex();
+        int match = symbolIndex.next(currentHighlightTerm, from);
+        if (match < 0) {
+            match = symbolIndex.next(currentHighlightTerm, -1);
         }
+        showMatch(match);
+        return true;
+    }
 
-        // Then, find and highlight matching rows
-        for (InstructionRow row : instructionData) {
-            if (rowContainsTerm(row, term)) {
-                row.setHighlighted(true);
-            }
+    // Select and scroll to the previous row containing the highlighted term, from
+    // the bottom again before the first one
+    public boolean selectPreviousMatch() {
+        if (currentHighlightTerm == null || symbolIndex.count(currentHighlightTerm) == 0) {
+            return false;
+        }
+        int from = instructionTableView.getSelectionModel().getSelectedIndex();
+        if (from < 0) {
+            from = instructionData.size();
+        }
+        int match = symbolIndex.previous(currentHighlightTerm, from);
+        if (match < 0) {
+            match = symbolIndex.previous(currentHighlightTerm, instructionData.size());
         }
+        showMatch(match);
+        return true;
+    }
 
-        // Finally, refresh the table once to apply all changes
-        instructionTableView.refresh();
+    private void showMatch(int index) {
+        instructionTableView.getSelectionModel().clearAndSelect(index);
+        instructionTableView.scrollTo(Math.max(0, index - 3)); // a few rows of context above
     }
 
     // Method to clear highlighting
@@ -694,6 +859,7 @@ public class InstructionTable {
 
                         // Store this row in cache for animation access
                         // Convert from 1-based row index to 0-based instruction index
+                        rowCache.values().remove(this); // its previous index
                         if (rowIndex >= 1) {
                             int instructionIndex = rowIndex - 1;
                             rowCache.put(instructionIndex, this);
@@ -710,7 +876,7 @@ public class InstructionTable {
                             // instruction
                         }
                         // Check if this row should be highlighted for search
-                        else if (currentHighlightTerm != null && rowContainsTerm(item, currentHighlightTerm)) {
+                        else if (symbolIndex.mentions(currentHighlightTerm, rowIndex)) {
                             style = "-fx-background-color: #FFE135; -fx-font-weight: bold;"; // Yellow highlight for
                             // search
                         }
@@ -719,46 +885,15 @@ public class InstructionTable {
                     }
                 }
             };
+            row.setOnMouseClicked(event -> {
+                int index = row.getIndex();
+                if (event.getClickCount() == 2 && !row.isEmpty() && unfoldCallback != null
+                        && index >= 0 && index < currentInstructions.size()
+                        && currentInstructions.get(index) instanceof RepeatedIncreaseInstruction run) {
+                    unfoldCallback.accept(run);
+                }
+            });
             return row;
         });
     }
-
-    // Helper method to check if a row contains the search term
-    private boolean rowContainsTerm(InstructionRow row, String term) {
-        if (term == null || term.isEmpty()) {
-            return false;
-        }
-
-        // Check label field with exact matching (labels should match exactly)
-        if (row.getLabel() != null && row.getLabel().equals(term)) {
-            return true;
-        }
-
-        // Check variable field with exact matching (variables should match exactly)
-        if (row.getVariable() != null && row.getVariable().equals(term)) {
-            return true;
-        }
-
-        // Check instruction text field with word boundary matching
-        if (row.getInstructionType() != null) {
-            String instructionText = row.getInstructionType();
-            // Use word boundaries to match complete words/tokens, not substrings
-            // This prevents L1 from matching L10, L11, etc.
-            if (instructionText.contains(term)) {
-                // Additional check: ensure it's not a substring within a larger word
-                // Look for the term surrounded by word boundaries or at start/end
-                String pattern = "\\b" + java.util.regex.Pattern.quote(term) + "\\b";
-                if (java.util.regex.Pattern.compile(pattern).matcher(instructionText).find()) {
-                    return true;
-                }
-            }
-        }
-
-        // Check command type field with exact matching
-        if (row.getCommandType() != null && row.getCommandType().equals(term)) {
-            return true;
-        }
-
-        return false;
-    }
 }
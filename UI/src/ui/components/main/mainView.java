@@ -13,6 +13,7 @@ import ui.components.HistoryChain.HistoryChain;
 import ui.components.DebuggerExecution.DebuggerExecution;
 import ui.components.HistoryStats.HistoryStats;
 import ui.ThemeManager;
+import semulator.execution.WorkScheduler;
 
 public class mainView extends Application {
     @FXML
@@ -36,6 +37,7 @@ public class mainView extends Application {
     private DebuggerExecution debuggerExecutionController;
     private HistoryStats historyStatsController;
     private ThemeManager themeManager;
+    private WorkScheduler workScheduler;
 
     @Override
     public void start(Stage primaryStage) throws Exception {
@@ -106,6 +108,12 @@ public class mainView extends Application {
         // Wire up the components
         headerController.setInstructionTable(instructionTableController);
 
+        // One scheduler for the components' background work; results come back
+        // on the FX thread
+        workScheduler = new WorkScheduler(2, Platform::runLater);
+        headerController.setWorkScheduler(workScheduler);
+        debuggerExecutionController.setWorkScheduler(workScheduler);
+
         // Set up the history chain callback
         instructionTableController.setHistoryChainCallback(selectedInstruction -> {
             if (selectedInstruction != null) {
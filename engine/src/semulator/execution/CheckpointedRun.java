@@ -0,0 +1,92 @@
+package semulator.execution;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Drives a {@link ResumableExecution} on the calling thread and writes
+ * checkpoints to one file: periodically (every interval of wall-clock time) and
+ * on demand via {@link #requestCheckpoint()} from any thread.
+ *
+ * Typical headless use:
+ * new CheckpointedRun(ExecutionCheckpoint.load(file, program, limits), file, interval).run()
+ * continues a run that was interrupted by a JVM restart.
+ */
+public final class CheckpointedRun {
+
+    /** Steps between checks for a due or requested checkpoint. */
+    private static final int SLICE = 10_000;
+
+    private final ResumableExecution execution;
+    private final Path checkpointFile;
+    private final long intervalNanos;
+
+    private volatile boolean checkpointRequested = false;
+    private int checkpointsWritten = 0;
+
+    /**
+     * @param interval time between periodic checkpoints, or null for on-demand only
+     */
+    public CheckpointedRun(ResumableExecution execution, Path checkpointFile, Duration interval) {
+        if (execution == null || checkpointFile == null) {
+            throw new IllegalArgumentException("execution and checkpointFile are required");
+        }
+        if (interval != null && (interval.isNegative() || interval.isZero())) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.execution = execution;
+        this.checkpointFile = checkpointFile;
+        this.intervalNanos = interval == null ? 0 : interval.toNanos();
+    }
+
+    /**
+     * Run to completion. A final checkpoint is also written when the run is
+     * stopped (cancelled, timed out or over its cycle limit), so it can be
+     * resumed later with other limits. The timeout of the execution's limits
+     * counts from this call and is checked between slices.
+     *
+     * @return the program result (y)
+     */
+    public long run() throws IOException {
+        long lastCheckpoint = System.nanoTime();
+        RunLimits limits = execution.getLimits();
+        long deadline = limits.hasTimeout() ? lastCheckpoint + limits.timeout().toNanos() : 0;
+        try {
+            while (!execution.runSlice(SLICE)) {
+                if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                    throw new ExecutionStoppedException(RunOutcome.Status.TIMED_OUT,
+                            "Run exceeded timeout of " + limits.timeout());
+                }
+                boolean due = intervalNanos > 0 && System.nanoTime() - lastCheckpoint >= intervalNanos;
+                if (due || checkpointRequested) {
+                    checkpoint();
+                    lastCheckpoint = System.nanoTime();
+                }
+            }
+        } catch (ExecutionStoppedException e) {
+            checkpoint();
+            throw e;
+        }
+        return execution.getResult();
+    }
+
+    /** Ask for a checkpoint at the next slice boundary. */
+    public void requestCheckpoint() {
+        checkpointRequested = true;
+    }
+
+    public int getCheckpointsWritten() {
+        return checkpointsWritten;
+    }
+
+    public ResumableExecution getExecution() {
+        return execution;
+    }
+
+    private void checkpoint() throws IOException {
+        checkpointRequested = false;
+        ExecutionCheckpoint.save(checkpointFile, execution);
+        checkpointsWritten++;
+    }
+}
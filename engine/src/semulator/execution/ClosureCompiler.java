@@ -0,0 +1,576 @@
+package semulator.execution;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.DecreaseInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.FunctionCall;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.RepeatedIncreaseInstruction;
+import semulator.instructions.SInstruction;
+import semulator.instructions.ZeroVariableInstruction;
+import semulator.optimization.AffineLoop;
+import semulator.optimization.BasicBlocks;
+import semulator.optimization.OptimizedProgram;
+import semulator.optimization.PassManager;
+import semulator.variable.Variable;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableType;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles optimized programs to threaded code (the COMPILED tier).
+ *
+ * Variables get fixed slots in a long[] register file. Every instruction becomes
+ * a closure specialized for its type with its slots, constants and callee
+ * captured, and every basic block a closure that runs its instructions, charges
+ * its cycles and returns the index of the next block. Running a program is then
+ * a loop of block = blocks[block].run(frame), with no instanceof chain and no
+ * label lookup. A block heading a counted loop ({@link AffineLoop}) runs the
+ * whole loop in closed form.
+ *
+ * Calls follow the executor: a QUOTE of a missing function gives 0, a top-level
+ * argument whose call tree refers to a missing function is 0, and JEF passes 0
+ * for function-call arguments. Those cases are known when compiling, so they
+ * compile to constants, as do calls folded by partial evaluation. Function
+ * bodies are compiled on their first call.
+ *
+ * A function body block that ends the body with a call into y makes a tail
+ * call: it leaves the callee and its bound registers in the frame and exits,
+ * and {@link #execute} runs the callee in the same Java frame. Tail-recursive
+ * functions then run in constant stack.
+ */
+final class ClosureCompiler {
+
+    private static final PassManager LAYOUT = PassManager.layoutOnly();
+
+    interface Step {
+        void run(long[] registers);
+    }
+
+    interface Condition {
+        boolean test(long[] registers);
+    }
+
+    interface Expression {
+        long eval(long[] registers);
+    }
+
+    interface Block {
+        /** @return the next block, or BasicBlocks.EXIT */
+        int run(Frame frame);
+    }
+
+    static final class Frame {
+        final long[] registers;
+        long cycles;
+        CompiledCode tailCode; // set by a tail call: run it instead of returning
+        long[] tailRegisters;
+        boolean[] ran; // blocks that ran, recorded when not null
+
+        Frame(long[] registers) {
+            this.registers = registers;
+        }
+    }
+
+    /** One compiled main program or function body. */
+    static final class CompiledCode {
+        final Map<Variable, Integer> slots;
+        final BitSet written; // slots stored to by some instruction, registers of inlined bodies excepted
+        final BitSet[] stores; // the written slots each block stores to whenever it runs
+        final int[] inputSlots; // slot of x(i+1), or -1 when the code never mentions it
+        final int resultSlot;
+        final BasicBlocks layout;
+        final Block[] blocks;
+        final long[] blockCycles;
+        final int entry;
+        final long entryExtra;
+
+        CompiledCode(Map<Variable, Integer> slots, BitSet written, BitSet[] stores, BasicBlocks layout,
+                Block[] blocks, long[] blockCycles) {
+            this.slots = slots;
+            this.written = written;
+            this.stores = stores;
+            this.layout = layout;
+            this.blocks = blocks;
+            this.blockCycles = blockCycles;
+            this.entry = layout.entry();
+            this.entryExtra = layout.entryExtra();
+            int maxInput = 0;
+            for (Variable variable : slots.keySet()) {
+                if (variable.getType() == VariableType.INPUT) {
+                    maxInput = Math.max(maxInput, variable.getNumber());
+                }
+            }
+            this.inputSlots = new int[maxInput];
+            for (int i = 0; i < maxInput; i++) {
+                Integer slot = slots.get(new VariableImpl(VariableType.INPUT, i + 1));
+                inputSlots[i] = slot == null ? -1 : slot;
+            }
+            Integer result = slots.get(Variable.RESULT);
+            this.resultSlot = result == null ? -1 : result;
+        }
+
+        /**
+         * The slots stored to by the blocks that ran. Other stores of a loop
+         * happen only when it goes round, which its registers show: its counter
+         * drops to 0, its variables grow.
+         */
+        BitSet storedBy(boolean[] ran) {
+            BitSet stored = new BitSet();
+            for (int b = 0; b < ran.length; b++) {
+                if (ran[b]) {
+                    stored.or(stores[b]);
+                }
+            }
+            return stored;
+        }
+
+        long[] newRegisters() {
+            return new long[slots.size()];
+        }
+
+        void bindInput(long[] registers, int index, long value) {
+            if (index < inputSlots.length && inputSlots[index] >= 0) {
+                registers[inputSlots[index]] = value;
+            }
+        }
+
+        long result(long[] registers) {
+            return resultSlot < 0 ? 0L : registers[resultSlot];
+        }
+    }
+
+    private final ProgramExecutorImpl executor;
+    private final Map<String, List<SInstruction>> functions;
+    private final Map<String, CompiledCode> compiledFunctions = new ConcurrentHashMap<>();
+    private Boolean functionsOptimizable = null;
+    private List<SInstruction> mainCode = null;
+    private CompiledCode main = null;
+    private List<SInstruction> unoptimizedCode = null;
+    private CompiledCode unoptimized = null;
+
+    /**
+     * @param executor supplies the optimized code and the cancel/limit checks
+     */
+    ClosureCompiler(ProgramExecutorImpl executor, Map<String, List<SInstruction>> functions) {
+        this.executor = executor;
+        this.functions = functions;
+    }
+
+    /**
+     * @return the compiled main program (built once per instruction list), or null
+     *         when it or one of the functions cannot be optimized
+     */
+    synchronized CompiledCode compileMain(List<SInstruction> code) {
+        if (code != mainCode) {
+            mainCode = code;
+            OptimizedProgram program = functionsOptimizable() ? executor.optimizedCode(code, false) : null;
+            main = program == null ? null : compile(program, false);
+        }
+        return main;
+    }
+
+    /**
+     * The main program compiled without optimizations, so that a run can switch
+     * to it at any jump target (on-stack replacement of a hot loop). Null when it
+     * or one of the functions cannot be compiled.
+     */
+    synchronized CompiledCode compileUnoptimized(List<SInstruction> code) {
+        if (code != unoptimizedCode) {
+            unoptimizedCode = code;
+            OptimizedProgram program = functionsOptimizable() ? LAYOUT.optimize(code, false) : null;
+            unoptimized = program == null ? null : compile(program, false);
+        }
+        return unoptimized;
+    }
+
+    /** @return the compiled body of a function, or null when it cannot be compiled */
+    CompiledCode compileFunction(String name) {
+        return functions.containsKey(name) && functionsOptimizable() ? function(name) : null;
+    }
+
+    /** Call a compiled function body with the x values of the given context; returns y. */
+    long invoke(CompiledCode code, ExecutionContext context) {
+        long[] registers = code.newRegisters();
+        for (int i = 0; i < code.inputSlots.length; i++) {
+            if (code.inputSlots[i] >= 0) {
+                registers[code.inputSlots[i]] = context.getVariableValue(new VariableImpl(VariableType.INPUT, i + 1));
+            }
+        }
+        return execute(code, registers);
+    }
+
+    /** Run a function body and the tail calls it ends with; returns the last body's y. */
+    long execute(CompiledCode code, long[] registers) {
+        Frame frame = new Frame(registers);
+        run(code, frame);
+        while (frame.tailCode != null) {
+            code = frame.tailCode;
+            frame = new Frame(frame.tailRegisters);
+            run(code, frame);
+        }
+        return code.result(frame.registers);
+    }
+
+    /**
+     * Run compiled code to the end. The cycles the original instructions would
+     * have been charged on the same path are added to frame.cycles as blocks run.
+     */
+    void run(CompiledCode code, Frame frame) {
+        frame.cycles += code.entryExtra;
+        runFrom(code, code.entry, frame);
+    }
+
+    /** Run compiled code from the start of the given block to the end. */
+    void runFrom(CompiledCode code, int block, Frame frame) {
+        Block[] blocks = code.blocks;
+        while (block != BasicBlocks.EXIT) {
+            executor.checkStop(0);
+            if (frame.ran != null) {
+                frame.ran[block] = true;
+            }
+            block = blocks[block].run(frame);
+        }
+    }
+
+    // Compiled code calls into other function bodies, so all of them have to compile
+    private synchronized boolean functionsOptimizable() {
+        if (functionsOptimizable == null) {
+            boolean optimizable = true;
+            for (List<SInstruction> body : functions.values()) {
+                optimizable &= executor.optimizedCode(body, true) != null;
+            }
+            functionsOptimizable = optimizable;
+        }
+        return functionsOptimizable;
+    }
+
+    private CompiledCode function(String name) {
+        return compiledFunctions.computeIfAbsent(name,
+                n -> compile(executor.optimizedCode(functions.get(n), true), true));
+    }
+
+    private CompiledCode compile(OptimizedProgram program, boolean functionBody) {
+        BasicBlocks blocks = program.blocks();
+        Map<Variable, Integer> slots = new LinkedHashMap<>();
+        BitSet written = new BitSet();
+        BitSet[] stores = new BitSet[blocks.size()];
+        Block[] compiled = new Block[blocks.size()];
+        long[] cycles = new long[blocks.size()];
+        for (int b = 0; b < blocks.size(); b++) {
+            stores[b] = new BitSet();
+            compiled[b] = block(blocks, b, slots, stores[b], functionBody);
+            written.or(stores[b]);
+            AffineLoop loop = blocks.loopAt(b);
+            if (loop != null) {
+                stores[b].clear();
+                if (loop.decrements(0) > 0) {
+                    stores[b].set(slots.get(loop.counter())); // decremented before the first test
+                }
+            }
+            cycles[b] = blocks.cycles(b);
+        }
+        for (Variable variable : program.inlinedVariables()) {
+            Integer slot = slots.get(variable);
+            if (slot != null) {
+                written.clear(slot); // registers of inlined bodies are not copied back
+                for (BitSet blockStores : stores) {
+                    blockStores.clear(slot);
+                }
+            }
+        }
+        return new CompiledCode(slots, written, stores, blocks, compiled, cycles);
+    }
+
+    private Block block(BasicBlocks blocks, int b, Map<Variable, Integer> slots, BitSet written,
+            boolean functionBody) {
+        AffineLoop loop = blocks.loopAt(b);
+        if (loop != null) {
+            return loop(loop, slots, written);
+        }
+        SInstruction[] body = blocks.body(b);
+        SInstruction last = blocks.terminator(b);
+        SInstruction end = last != null ? last : body.length > 0 ? body[body.length - 1] : null;
+        CallSite tail = functionBody && blocks.fallTarget(b) == BasicBlocks.EXIT ? tailCall(end, slots, written)
+                : null;
+
+        List<Step> stepList = new ArrayList<>();
+        for (SInstruction instruction : body) {
+            if (tail != null && instruction == end) {
+                continue;
+            } else if (isConditional(instruction)) {
+                // Jumps to the next instruction: only the test itself (it may call a function) is left
+                Condition test = condition(instruction, slots);
+                stepList.add(r -> test.test(r));
+            } else {
+                stepList.add(step(instruction, slots, written));
+            }
+        }
+        Condition condition = null;
+        if (last != null && isConditional(last)) {
+            condition = condition(last, slots);
+        } else if (last != null && tail == null) {
+            stepList.add(step(last, slots, written));
+        }
+
+        Step[] steps = stepList.toArray(new Step[0]);
+        int fall = blocks.fallTarget(b);
+        int jump = blocks.jumpTarget(b);
+        long fallCycles = blocks.cycles(b) + blocks.fallExtra(b);
+        long jumpCycles = blocks.cycles(b) + blocks.jumpExtra(b);
+
+        if (tail != null) {
+            return frame -> {
+                long[] r = frame.registers;
+                for (Step step : steps) {
+                    step.run(r);
+                }
+                frame.cycles += fallCycles;
+                frame.tailCode = tail.callee();
+                frame.tailRegisters = tail.bind(r);
+                return BasicBlocks.EXIT;
+            };
+        }
+
+        if (condition != null) {
+            Condition test = condition;
+            return frame -> {
+                long[] r = frame.registers;
+                for (Step step : steps) {
+                    step.run(r);
+                }
+                if (test.test(r)) {
+                    frame.cycles += jumpCycles;
+                    return jump;
+                }
+                frame.cycles += fallCycles;
+                return fall;
+            };
+        }
+        if (steps.length == 1) {
+            Step only = steps[0];
+            return frame -> {
+                only.run(frame.registers);
+                frame.cycles += fallCycles;
+                return fall;
+            };
+        }
+        return frame -> {
+            long[] r = frame.registers;
+            for (Step step : steps) {
+                step.run(r);
+            }
+            frame.cycles += fallCycles;
+            return fall;
+        };
+    }
+
+    /** A counted loop in closed form: O(1) whatever the counter's value. */
+    private static Block loop(AffineLoop loop, Map<Variable, Integer> slots, BitSet written) {
+        int counter = slot(loop.counter(), slots);
+        written.set(counter);
+        Variable[] variables = loop.variables();
+        int[] targets = new int[variables.length];
+        for (int v = 0; v < variables.length; v++) {
+            targets[v] = slot(variables[v], slots);
+            written.set(targets[v]);
+        }
+        int exit = loop.exitTarget();
+        return frame -> {
+            long[] r = frame.registers;
+            long iterations = loop.iterations(r[counter]);
+            r[counter] = 0L;
+            for (int v = 0; v < targets.length; v++) {
+                r[targets[v]] += loop.increment(v, iterations);
+            }
+            frame.cycles += loop.cycles(iterations);
+            return exit;
+        };
+    }
+
+    /**
+     * @return the call of a QUOTE into y that ends a function body, or null if
+     *         the instruction is not one (or its value is known without a call)
+     */
+    private CallSite tailCall(SInstruction instruction, Map<Variable, Integer> slots, BitSet written) {
+        if (!(instruction instanceof QuoteInstruction q) || !q.getVariable().isResult()
+                || !functions.containsKey(q.getFunctionName()) || executor.foldedCall(q) != null) {
+            return null;
+        }
+        written.set(slot(q.getVariable(), slots));
+        return callSite(q.getFunctionName(), q.getFunctionArguments(), slots, false);
+    }
+
+    private static boolean isConditional(SInstruction instruction) {
+        return instruction instanceof JumpNotZeroInstruction
+                || instruction instanceof JumpZeroInstruction
+                || instruction instanceof JumpEqualConstantInstruction
+                || instruction instanceof JumpEqualVariableInstruction
+                || instruction instanceof JumpEqualFunctionInstruction;
+    }
+
+    private Step step(SInstruction instruction, Map<Variable, Integer> slots, BitSet written) {
+        int s = slot(instruction.getVariable(), slots);
+        written.set(s);
+        if (instruction instanceof IncreaseInstruction) {
+            return r -> r[s]++;
+        } else if (instruction instanceof RepeatedIncreaseInstruction run) {
+            long count = run.getCount();
+            return r -> r[s] += count;
+        } else if (instruction instanceof DecreaseInstruction) {
+            return r -> r[s] = r[s] > 0 ? r[s] - 1 : 0L;
+        } else if (instruction instanceof ZeroVariableInstruction) {
+            return r -> r[s] = 0L;
+        } else if (instruction instanceof AssignConstantInstruction c) {
+            long value = c.getConstant();
+            return r -> r[s] = value;
+        } else if (instruction instanceof AssignVariableInstruction a) {
+            int source = slot(a.getSource(), slots);
+            return r -> r[s] = r[source];
+        } else if (instruction instanceof QuoteInstruction q) {
+            Long folded = executor.foldedCall(q);
+            if (folded != null) {
+                long value = folded;
+                return r -> r[s] = value;
+            }
+            Expression call = call(q.getFunctionName(), q.getFunctionArguments(), slots, false);
+            return r -> r[s] = call.eval(r);
+        }
+        throw new IllegalStateException("Cannot compile instruction " + instruction.getName());
+    }
+
+    private Condition condition(SInstruction instruction, Map<Variable, Integer> slots) {
+        int s = slot(instruction.getVariable(), slots);
+        if (instruction instanceof JumpNotZeroInstruction) {
+            return r -> r[s] != 0;
+        } else if (instruction instanceof JumpZeroInstruction) {
+            return r -> r[s] == 0;
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            long value = j.getConstant();
+            return r -> r[s] == value;
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            int other = slot(j.getOther(), slots);
+            return r -> r[s] == r[other];
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            Long folded = executor.foldedCall(j);
+            if (folded != null) {
+                long value = folded;
+                return r -> r[s] == value;
+            }
+            Expression call = call(j.getFunctionName(), j.getFunctionArguments(), slots, true);
+            return r -> {
+                long value = call.eval(r);
+                return r[s] == value;
+            };
+        }
+        throw new IllegalStateException("Cannot compile condition " + instruction.getName());
+    }
+
+    /**
+     * @param jumpEqual JEF call: function-call arguments are passed as 0, like the
+     *                  interpreter's placeholder
+     */
+    private Expression call(String name, List<FunctionArgument> arguments, Map<Variable, Integer> slots,
+            boolean jumpEqual) {
+        if (!functions.containsKey(name)) {
+            return r -> 0L;
+        }
+        CallSite site = callSite(name, arguments, slots, jumpEqual);
+        return r -> execute(site.callee(), site.bind(r));
+    }
+
+    /** A call of an existing function: its argument expressions and callee. */
+    private final class CallSite {
+        private final String name;
+        private final Expression[] args;
+        private CompiledCode callee; // resolved on the first call (allows recursion)
+
+        CallSite(String name, Expression[] args) {
+            this.name = name;
+            this.args = args;
+        }
+
+        CompiledCode callee() {
+            CompiledCode code = callee;
+            if (code == null) {
+                code = function(name);
+                callee = code;
+            }
+            return code;
+        }
+
+        /** @return the callee's registers with the arguments, evaluated in the caller's registers */
+        long[] bind(long[] r) {
+            CompiledCode code = callee();
+            long[] registers = code.newRegisters();
+            for (int i = 0; i < args.length; i++) {
+                code.bindInput(registers, i, args[i].eval(r));
+            }
+            return registers;
+        }
+    }
+
+    private CallSite callSite(String name, List<FunctionArgument> arguments, Map<Variable, Integer> slots,
+            boolean jumpEqual) {
+        Expression[] args = new Expression[arguments.size()];
+        for (int i = 0; i < args.length; i++) {
+            FunctionArgument argument = arguments.get(i);
+            if (argument.isFunctionCall()) {
+                FunctionCall nested = argument.asFunctionCall();
+                Long folded = jumpEqual ? null : executor.foldedCall(nested);
+                if (folded != null) {
+                    long value = folded;
+                    args[i] = r -> value;
+                } else {
+                    args[i] = jumpEqual || !isResolvable(nested)
+                            ? r -> 0L
+                            : call(nested.getFunctionName(), nested.getArguments(), slots, false);
+                }
+            } else if (argument.asVariable().getType() == VariableType.Constant) {
+                long value = argument.asVariable().getNumber();
+                args[i] = r -> value;
+            } else {
+                int s = slot(argument.asVariable(), slots);
+                args[i] = r -> r[s];
+            }
+        }
+        return new CallSite(name, args);
+    }
+
+    private boolean isResolvable(FunctionCall call) {
+        if (!functions.containsKey(call.getFunctionName())) {
+            return false;
+        }
+        for (FunctionArgument argument : call.getArguments()) {
+            if (argument.isFunctionCall() && !isResolvable(argument.asFunctionCall())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int slot(Variable variable, Map<Variable, Integer> slots) {
+        if (variable == null) {
+            return -1;
+        }
+        Integer slot = slots.get(variable);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(variable, slot);
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,473 @@
+package semulator.execution;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.FunctionCall;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.InstructionData;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.SInstruction;
+import semulator.instructions.VariableArgument;
+import semulator.label.FixedLabel;
+import semulator.label.Label;
+import semulator.program.NameSession;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the degree-0 program as if it had been expanded to a degree (see
+ * {@link ProgramExecutorImpl#setEmulatedDegree(int)}), without building the
+ * expansion.
+ *
+ * The expansions of ZERO, GOTO, ASSIGN, ASSIGNC, IFZ, IFEQC and IFEQV only use
+ * fresh labels and variables, so what their degree-d code does is a function of
+ * the operand values: ZERO on v runs its DEC/JNZ loop max(v, 1) times, ASSIGN
+ * drains and restores its source, and so on. These instructions are run in one
+ * step and charged the cycles of that code, children expanded to degree d - 1
+ * included. The effects are those of the expanded code too: ASSIGN from a
+ * negative source leaves 1 in both variables, IFEQC and IFEQV compare copies
+ * made that way. The fresh z of an IFEQC or IFEQV keeps its value between
+ * executions, which the next copy into it pays for, so it is kept per instance.
+ *
+ * A QUOTE or JEF at degree d is expanded one step when it first runs (the body
+ * copy is cached per instance) and its children run at degree d - 1. Only the
+ * calls that run are expanded, and a loop around a call reuses its copy.
+ *
+ * Some expansions are not local: an IFEQC defines its target label again, the
+ * copy of a body keeps the targets of its JEFs and of jumps to labels it does
+ * not define, and a z that only appears in call arguments can be handed out as
+ * a fresh name. {@link #isExact()} is false when the program could meet one of
+ * those (or when expansion would fail), and the executor then runs the real
+ * expansion.
+ */
+final class DegreeEmulator {
+
+    private static final long INCREASE = InstructionData.INCREASE.getCycles();
+    private static final long DECREASE = InstructionData.DECREASE.getCycles();
+    private static final long JUMP_NOT_ZERO = InstructionData.JUMP_NOT_ZERO.getCycles();
+    private static final Set<String> BASIC = Set.of("NEUTRAL", "INCREASE", "DECREASE", "JUMP_NOT_ZERO");
+
+    private final ProgramExecutorImpl executor;
+    private final SProgramImpl program;
+    private final int degree;
+    private final boolean exact;
+    private final NameSession names;
+    private final Segment main;
+    private final Set<Variable> programVariables = new HashSet<>();
+    private final Map<SInstruction, Segment> segments = new IdentityHashMap<>();
+    private final Map<SInstruction, long[]> registers = new IdentityHashMap<>();
+    private final Map<String, Boolean> checkedBodies = new HashMap<>();
+    private long cycles;
+
+    /** One expanded code list and its labels (the last definition of a label wins). */
+    private record Segment(List<SInstruction> code, Map<String, Integer> labels) {
+        static Segment of(List<SInstruction> code) {
+            Map<String, Integer> labels = new HashMap<>();
+            for (int i = 0; i < code.size(); i++) {
+                Label label = code.get(i).getLabel();
+                if (label != null && label != FixedLabel.EMPTY && label != FixedLabel.EXIT) {
+                    labels.put(label.getLabel(), i);
+                }
+            }
+            return new Segment(code, labels);
+        }
+    }
+
+    DegreeEmulator(ProgramExecutorImpl executor, SProgramImpl program, int degree) {
+        this.executor = executor;
+        this.program = program;
+        this.degree = degree;
+        this.names = program.newNameSession();
+        this.main = Segment.of(program.getInstructions());
+        programVariables.add(Variable.RESULT);
+        for (SInstruction instruction : main.code()) {
+            collectVariables(instruction);
+        }
+        this.exact = checkCode(main, degree, true) && program.freshNamesAvoidArguments();
+    }
+
+    /** False when running the real expansion could give other results. */
+    boolean isExact() {
+        return exact;
+    }
+
+    int degree() {
+        return degree;
+    }
+
+    /** Variables of the degree-0 program (the others belong to body copies). */
+    boolean isProgramVariable(Variable variable) {
+        return variable.isInput() || programVariables.contains(variable);
+    }
+
+    /** Run the program in the context, counting cycles from 0. */
+    void run(ExecutionContext context) {
+        cycles = 0;
+        registers.clear();
+        run(main, degree, context, true);
+    }
+
+    /** Cycles of the expanded program so far in the last run. */
+    long cycles() {
+        return cycles;
+    }
+
+    /**
+     * @param top the main program: a label it does not define falls through
+     * @return EMPTY at the end of the code, EXIT, or a label for the enclosing code
+     */
+    private Label run(Segment segment, int degree, ExecutionContext context, boolean top) {
+        List<SInstruction> code = segment.code();
+        int index = 0;
+        while (index < code.size()) {
+            executor.checkStop(0);
+            Label next = execute(code.get(index), degree, context);
+            if (next == FixedLabel.EMPTY) {
+                index++;
+            } else if (next == FixedLabel.EXIT) {
+                return FixedLabel.EXIT;
+            } else {
+                Integer target = segment.labels().get(next.getLabel());
+                if (target != null) {
+                    index = target;
+                } else if (top) {
+                    index++;
+                } else {
+                    return next;
+                }
+            }
+        }
+        return FixedLabel.EMPTY;
+    }
+
+    private Label execute(SInstruction instruction, int degree, ExecutionContext context) {
+        if (degree == 0 || isBasic(instruction)) {
+            cycles += instruction.cycles();
+            return executor.dispatch(instruction, context);
+        }
+        Variable variable = instruction.getVariable();
+        switch (instruction.getName()) {
+            case "ZERO" -> {
+                zero(degree, variable, context);
+                return FixedLabel.EMPTY;
+            }
+            case "GOTO" -> {
+                cycles += gotoCycles(degree);
+                return ((GotoLabelInstruction) instruction).getTarget();
+            }
+            case "ASSIGN" -> {
+                Variable source = ((AssignVariableInstruction) instruction).getSource();
+                if (variable.equals(source)) {
+                    // Zeroing V empties the source too: the copy loop is skipped
+                    cycles += zeroCycles(degree - 1, context.getVariableValue(variable)) + JUMP_NOT_ZERO
+                            + gotoCycles(degree - 1);
+                    context.updateVariable(variable, 0L);
+                } else {
+                    long value = assign(degree, context.getVariableValue(variable), source, context);
+                    context.updateVariable(variable, value);
+                }
+                return FixedLabel.EMPTY;
+            }
+            case "ASSIGNC" -> {
+                long constant = ((AssignConstantInstruction) instruction).getConstant();
+                zero(degree - 1, variable, context);
+                if (constant > 0) {
+                    cycles += constant * INCREASE;
+                    context.updateVariable(variable, constant);
+                }
+                return FixedLabel.EMPTY;
+            }
+            case "IFZ" -> {
+                return jumpZero(degree, context.getVariableValue(variable),
+                        ((JumpZeroInstruction) instruction).getTarget());
+            }
+            case "IFEQC" -> {
+                return jumpEqualConstant(degree, (JumpEqualConstantInstruction) instruction, context);
+            }
+            case "IFEQV" -> {
+                return jumpEqualVariable(degree, (JumpEqualVariableInstruction) instruction, context);
+            }
+            default -> {
+                // QUOTE and JEF: run the children of one expansion step
+                return run(segment(instruction), degree - 1, context, false);
+            }
+        }
+    }
+
+    private static boolean isBasic(SInstruction instruction) {
+        return BASIC.contains(instruction.getName());
+    }
+
+    private Segment segment(SInstruction instruction) {
+        return segments.computeIfAbsent(instruction, i -> Segment.of(program.expandOnce(i, names)));
+    }
+
+    // --- closed forms; degree is the degree the instruction is expanded to ---
+
+    private void zero(int degree, Variable variable, ExecutionContext context) {
+        cycles += zeroCycles(degree, context.getVariableValue(variable));
+        context.updateVariable(variable, 0L);
+    }
+
+    /** NEUTRAL, then DEC/JNZ until 0: a value of 0 or below still takes one trip. */
+    private static long zeroCycles(int degree, long value) {
+        if (degree == 0) {
+            return InstructionData.ZERO_VARIABLE.getCycles();
+        }
+        return (DECREASE + JUMP_NOT_ZERO) * Math.max(value, 1L);
+    }
+
+    /** INC of a fresh z, then JNZ on it. */
+    private static long gotoCycles(int degree) {
+        return degree == 0 ? InstructionData.GOTO_LABEL.getCycles() : INCREASE + JUMP_NOT_ZERO;
+    }
+
+    private static long jumpZeroCycles(int degree, boolean zero) {
+        if (degree == 0) {
+            return InstructionData.JUMP_ZERO.getCycles();
+        }
+        return zero ? JUMP_NOT_ZERO + gotoCycles(degree - 1) : JUMP_NOT_ZERO;
+    }
+
+    private Label jumpZero(int degree, long value, Label target) {
+        cycles += jumpZeroCycles(degree, value == 0);
+        return value == 0 ? target : FixedLabel.EMPTY;
+    }
+
+    /**
+     * V <- V' for a target other than the source. The source is drained into a
+     * fresh z and restored into both, so a negative source gives 1 to both.
+     *
+     * @param target V's value before
+     * @return V's value after
+     */
+    private long assign(int degree, long target, Variable source, ExecutionContext context) {
+        if (degree == 0) {
+            cycles += InstructionData.ASSIGN_VARIABLE.getCycles();
+            return context.getVariableValue(source);
+        }
+        cycles += zeroCycles(degree - 1, target) + JUMP_NOT_ZERO;
+        long value = context.getVariableValue(source);
+        if (value == 0) {
+            cycles += gotoCycles(degree - 1);
+            return 0L;
+        }
+        long copied = value > 0 ? value : 1L;
+        cycles += copied * (DECREASE + INCREASE + JUMP_NOT_ZERO + DECREASE + 2 * INCREASE + JUMP_NOT_ZERO);
+        context.updateVariable(source, copied);
+        return copied;
+    }
+
+    /** z <- V, then K rounds of IFZ z / DEC z, then JNZ z and GOTO L. */
+    private Label jumpEqualConstant(int degree, JumpEqualConstantInstruction instruction, ExecutionContext context) {
+        long[] z = registers(instruction, 1);
+        int inner = degree - 1;
+        long value = assign(inner, z[0], instruction.getVariable(), context);
+        long nonZero = jumpZeroCycles(inner, false);
+        for (long rounds = instruction.getConstant(); rounds > 0;) {
+            if (value == 0) {
+                z[0] = 0L;
+                cycles += jumpZeroCycles(inner, true);
+                return FixedLabel.EMPTY;
+            }
+            long trips = value > 0 ? Math.min(value, rounds) : 1L;
+            cycles += trips * (nonZero + DECREASE);
+            value = value > 0 ? value - trips : 0L;
+            rounds -= trips;
+        }
+        z[0] = value;
+        cycles += JUMP_NOT_ZERO;
+        if (value != 0) {
+            return FixedLabel.EMPTY;
+        }
+        cycles += gotoCycles(inner);
+        return instruction.getTarget();
+    }
+
+    /** z1 <- V, z2 <- V', then count both down together and see which reaches 0 first. */
+    private Label jumpEqualVariable(int degree, JumpEqualVariableInstruction instruction, ExecutionContext context) {
+        long[] z = registers(instruction, 2);
+        int inner = degree - 1;
+        long a = assign(inner, z[0], instruction.getVariable(), context);
+        long b = assign(inner, z[1], instruction.getOther(), context);
+        long nonZero = jumpZeroCycles(inner, false);
+        long zero = jumpZeroCycles(inner, true);
+        Label next;
+        while (true) {
+            if (a == 0) {
+                cycles += zero + (b == 0 ? zero : nonZero);
+                next = b == 0 ? instruction.getTarget() : FixedLabel.EMPTY;
+                break;
+            }
+            if (b == 0) {
+                cycles += nonZero + zero;
+                next = FixedLabel.EMPTY;
+                break;
+            }
+            long trips = a > 0 && b > 0 ? Math.min(a, b) : 1L;
+            cycles += trips * (2 * nonZero + 2 * DECREASE + gotoCycles(inner));
+            a = a > 0 ? a - trips : 0L;
+            b = b > 0 ? b - trips : 0L;
+        }
+        z[0] = a;
+        z[1] = b;
+        return next;
+    }
+
+    /** Fresh z variables of one instruction instance; they start at 0 on every run. */
+    private long[] registers(SInstruction instruction, int count) {
+        return registers.computeIfAbsent(instruction, i -> new long[count]);
+    }
+
+    // --- which programs the closed forms and body copies describe exactly ---
+
+    /**
+     * @param degree the degree the code's instructions are expanded to
+     */
+    private boolean checkCode(Segment segment, int degree, boolean top) {
+        List<SInstruction> code = segment.code();
+        Set<String> defined = new HashSet<>();
+        for (SInstruction instruction : code) {
+            Label label = instruction.getLabel();
+            if (label != null && label != FixedLabel.EMPTY && label != FixedLabel.EXIT
+                    && !defined.add(label.getLabel())) {
+                return false; // which definition wins could change under expansion
+            }
+        }
+        for (int i = 0; i < code.size(); i++) {
+            SInstruction instruction = code.get(i);
+            Label target = target(instruction);
+            if (!top && target != null && !isDefined(segment, target)) {
+                return false; // a body copy would jump out of itself
+            }
+            if (degree == 0) {
+                continue;
+            }
+            if (instruction instanceof JumpEqualConstantInstruction j) {
+                // Its expansion ends with a NEUTRAL labeled with the target
+                Integer at = segment.labels().get(j.getTarget().getLabel());
+                if (j.getTarget() != FixedLabel.EXIT && (at == null || at <= i)) {
+                    return false;
+                }
+            } else if (instruction instanceof QuoteInstruction q) {
+                if (!checkCall(q.getFunctionName(), q.getFunctionArguments(), degree, false)) {
+                    return false;
+                }
+            } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+                if (!top || !isDefined(segment, j.getTarget()) || !checkCall(j.getFunctionName(),
+                        j.getFunctionArguments(), degree, true)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static Label target(SInstruction instruction) {
+        if (instruction instanceof JumpNotZeroInstruction j) {
+            return j.getTarget();
+        } else if (instruction instanceof JumpZeroInstruction j) {
+            return j.getTarget();
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            return j.getTarget();
+        } else if (instruction instanceof GotoLabelInstruction g) {
+            return g.getTarget();
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            return j.getTarget();
+        }
+        return null; // IFEQV is dropped from body copies
+    }
+
+    private static boolean isDefined(Segment segment, Label label) {
+        return label == FixedLabel.EXIT || segment.labels().containsKey(label.getLabel());
+    }
+
+    /**
+     * A QUOTE (or the QUOTE a JEF expands to) expanded to the given degree.
+     *
+     * @param jumpEqual a JEF: its QUOTE is one degree further down
+     */
+    private boolean checkCall(String name, List<FunctionArgument> arguments, int degree, boolean jumpEqual) {
+        if (!program.getFunctions().containsKey(name)) {
+            return false; // expansion throws
+        }
+        int quoteDegree = jumpEqual ? degree - 1 : degree;
+        if (quoteDegree == 0) {
+            return true;
+        }
+        for (FunctionArgument argument : arguments) {
+            if (argument.isFunctionCall()) {
+                FunctionCall call = argument.asFunctionCall();
+                // A nested call becomes a QUOTE child, or a NEUTRAL when the function is missing
+                if (program.getFunctions().containsKey(call.getFunctionName())
+                        && !checkCall(call.getFunctionName(), call.getArguments(), quoteDegree - 1, false)) {
+                    return false;
+                }
+            }
+        }
+        return checkBody(name, arguments.size(), quoteDegree);
+    }
+
+    /** The copy of a body made by a QUOTE expanded to the given degree, and what it expands to further down. */
+    private boolean checkBody(String name, int argumentCount, int degree) {
+        String key = name + "/" + argumentCount + "/" + degree;
+        Boolean known = checkedBodies.get(key);
+        if (known != null) {
+            return known;
+        }
+        checkedBodies.put(key, Boolean.TRUE); // a recursive call is at a lower degree
+        List<FunctionArgument> inputs = new ArrayList<>();
+        for (int i = 1; i <= argumentCount; i++) {
+            inputs.add(new VariableArgument(new VariableImpl(VariableType.INPUT, i)));
+        }
+        boolean ok;
+        try {
+            List<SInstruction> copy = program.expandOnce(new QuoteInstruction(Variable.RESULT, name, inputs,
+                    program.getFunctions().get(name), program.getFunctions()), program.newNameSession());
+            ok = checkCode(Segment.of(copy), degree - 1, false);
+        } catch (RuntimeException e) {
+            ok = false; // expansion fails, e.g. the body reads an input that is not passed
+        }
+        checkedBodies.put(key, ok);
+        return ok;
+    }
+
+    private void collectVariables(SInstruction instruction) {
+        programVariables.add(instruction.getVariable());
+        if (instruction instanceof AssignVariableInstruction a) {
+            programVariables.add(a.getSource());
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            programVariables.add(j.getOther());
+        } else if (instruction instanceof QuoteInstruction q) {
+            collectVariables(q.getFunctionArguments());
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            collectVariables(j.getFunctionArguments());
+        }
+    }
+
+    private void collectVariables(List<FunctionArgument> arguments) {
+        for (FunctionArgument argument : arguments) {
+            if (argument.isFunctionCall()) {
+                collectVariables(argument.asFunctionCall().getArguments());
+            } else {
+                programVariables.add(argument.asVariable());
+            }
+        }
+    }
+}
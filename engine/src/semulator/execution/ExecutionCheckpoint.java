@@ -0,0 +1,277 @@
+package semulator.execution;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.SInstruction;
+import semulator.program.SProgram;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact binary checkpoint of a {@link ResumableExecution}: program fingerprint,
+ * counters and the full frame stack (program counters, registers, partially
+ * evaluated call arguments). Resuming a checkpoint in another process gives the
+ * same final y and cycle count as an uninterrupted run.
+ *
+ * Layout (big endian, DataOutputStream):
+ * magic "SEMC", version, 32-byte SHA-256 fingerprint, cycles, steps,
+ * frame count, then frames from the main program up to the top of the stack.
+ */
+public final class ExecutionCheckpoint {
+
+    private static final int MAGIC = 0x53454D43; // "SEMC"
+    private static final short VERSION = 1;
+    private static final byte BODY_FRAME = 0;
+    private static final byte CALL_FRAME = 1;
+
+    private ExecutionCheckpoint() {
+    }
+
+    /**
+     * Write a checkpoint. The file is replaced atomically, so a crash while
+     * writing leaves the previous checkpoint intact. Must not be called while
+     * another thread is running a slice of the same execution.
+     */
+    public static void save(Path file, ResumableExecution execution) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            write(out, execution);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Rebuild an execution from a checkpoint.
+     *
+     * @throws IllegalArgumentException if the checkpoint was taken from a different program
+     */
+    public static ResumableExecution load(Path file, SProgram program, RunLimits limits) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return read(in, program, limits);
+        }
+    }
+
+    /** SHA-256 over the main program and all function bodies (sorted by name). */
+    public static byte[] fingerprint(SProgram program) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        update(digest, "main");
+        for (SInstruction instruction : program.getInstructions()) {
+            update(digest, describe(instruction));
+        }
+        Map<String, List<SInstruction>> functions = program instanceof SProgramImpl impl
+                ? impl.getFunctions()
+                : Map.of();
+        for (Map.Entry<String, List<SInstruction>> function : new TreeMap<>(functions).entrySet()) {
+            update(digest, "function " + function.getKey());
+            for (SInstruction instruction : function.getValue()) {
+                update(digest, describe(instruction));
+            }
+        }
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    private static String describe(SInstruction instruction) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(instruction.getName()).append('|')
+                .append(instruction.getLabel() == null ? "" : instruction.getLabel().getLabel()).append('|')
+                .append(instruction.getVariable() == null ? "" : instruction.getVariable().getRepresentation())
+                .append('|');
+        if (instruction instanceof AssignVariableInstruction a) {
+            sb.append(a.getSource().getRepresentation());
+        } else if (instruction instanceof AssignConstantInstruction c) {
+            sb.append(c.getConstant());
+        } else if (instruction instanceof GotoLabelInstruction g) {
+            sb.append(g.getTarget().getLabel());
+        } else if (instruction instanceof JumpNotZeroInstruction j) {
+            sb.append(j.getTarget().getLabel());
+        } else if (instruction instanceof JumpZeroInstruction j) {
+            sb.append(j.getTarget().getLabel());
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            sb.append(j.getConstant()).append('|').append(j.getTarget().getLabel());
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            sb.append(j.getOther().getRepresentation()).append('|').append(j.getTarget().getLabel());
+        } else if (instruction instanceof QuoteInstruction q) {
+            sb.append(q.getFunctionName()).append(argumentsText(q.getFunctionArguments()));
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            sb.append(j.getFunctionName()).append(argumentsText(j.getFunctionArguments()))
+                    .append('|').append(j.getTarget().getLabel());
+        }
+        return sb.toString();
+    }
+
+    private static String argumentsText(List<FunctionArgument> args) {
+        StringBuilder sb = new StringBuilder("(");
+        for (FunctionArgument arg : args) {
+            sb.append(arg).append(',');
+        }
+        return sb.append(')').toString();
+    }
+
+    private static void write(DataOutputStream out, ResumableExecution execution) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.write(fingerprint(execution.getProgram()));
+        out.writeLong(execution.getTotalCycles());
+        out.writeLong(execution.getSteps());
+
+        List<ResumableExecution.Frame> frames = new ArrayList<>();
+        Iterator<ResumableExecution.Frame> bottomUp = execution.frames().descendingIterator();
+        bottomUp.forEachRemaining(frames::add);
+        if (frames.isEmpty()) {
+            // Finished: keep the main frame (for y) positioned past its last instruction
+            ResumableExecution.BodyFrame main = execution.mainFrame();
+            main.pc = main.code.size();
+            frames.add(main);
+        }
+
+        out.writeInt(frames.size());
+        for (ResumableExecution.Frame frame : frames) {
+            if (frame instanceof ResumableExecution.BodyFrame body) {
+                out.writeByte(BODY_FRAME);
+                out.writeUTF(body.function == null ? "" : body.function);
+                out.writeInt(body.pc);
+                out.writeInt(body.registers.size());
+                for (Map.Entry<Variable, Long> register : body.registers.entrySet()) {
+                    out.writeByte(register.getKey().getType().ordinal());
+                    out.writeInt(register.getKey().getNumber());
+                    out.writeLong(register.getValue());
+                }
+            } else {
+                ResumableExecution.CallFrame call = (ResumableExecution.CallFrame) frame;
+                out.writeByte(CALL_FRAME);
+                out.writeBoolean(call.isTopLevel());
+                out.writeBoolean(call.bodyStarted);
+                out.writeInt(call.next);
+                for (int i = 0; i < call.next; i++) {
+                    out.writeLong(call.values[i]);
+                }
+            }
+        }
+    }
+
+    private static ResumableExecution read(DataInputStream in, SProgram program, RunLimits limits)
+            throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an S-emulator checkpoint");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version);
+        }
+        byte[] stored = in.readNBytes(32);
+        if (!Arrays.equals(stored, fingerprint(program))) {
+            throw new IllegalArgumentException("Checkpoint was taken from a different program");
+        }
+        long cycles = in.readLong();
+        long steps = in.readLong();
+
+        ResumableExecution execution = new ResumableExecution(program, limits);
+        execution.restoreCounters(cycles, steps);
+        var stack = execution.frames();
+
+        int frameCount = in.readInt();
+        if (frameCount < 1) {
+            throw new IOException("Corrupt checkpoint: no frames");
+        }
+        ResumableExecution.BodyFrame caller = null;
+        for (int f = 0; f < frameCount; f++) {
+            byte kind = in.readByte();
+            if (kind == BODY_FRAME) {
+                String function = in.readUTF();
+                ResumableExecution.BodyFrame body;
+                if (f == 0) {
+                    body = execution.mainFrame();
+                    body.registers.clear();
+                } else {
+                    List<SInstruction> code = execution.functions().get(function);
+                    if (code == null) {
+                        throw new IOException("Corrupt checkpoint: unknown function " + function);
+                    }
+                    body = execution.newBody(function, code);
+                    stack.push(body);
+                }
+                body.pc = in.readInt();
+                int registers = in.readInt();
+                for (int i = 0; i < registers; i++) {
+                    VariableType type = VariableType.values()[in.readByte()];
+                    int number = in.readInt();
+                    body.registers.put(new VariableImpl(type, number), in.readLong());
+                }
+                caller = body;
+            } else if (kind == CALL_FRAME) {
+                boolean topLevel = in.readBoolean();
+                ResumableExecution.CallFrame call;
+                if (topLevel) {
+                    SInstruction site = caller.code.get(caller.pc);
+                    if (site instanceof QuoteInstruction q) {
+                        call = new ResumableExecution.CallFrame(caller, site, q.getFunctionName(),
+                                q.getFunctionArguments());
+                    } else if (site instanceof JumpEqualFunctionInstruction j) {
+                        call = new ResumableExecution.CallFrame(caller, site, j.getFunctionName(),
+                                j.getFunctionArguments());
+                    } else {
+                        throw new IOException("Corrupt checkpoint: no call at pc " + caller.pc);
+                    }
+                } else {
+                    if (!(stack.peek() instanceof ResumableExecution.CallFrame parent)) {
+                        throw new IOException("Corrupt checkpoint: nested call without parent");
+                    }
+                    var nested = parent.args.get(parent.next).asFunctionCall();
+                    call = new ResumableExecution.CallFrame(caller, null, nested.getFunctionName(),
+                            nested.getArguments());
+                }
+                call.bodyStarted = in.readBoolean();
+                call.next = in.readInt();
+                for (int i = 0; i < call.next; i++) {
+                    call.values[i] = in.readLong();
+                }
+                stack.push(call);
+            } else {
+                throw new IOException("Corrupt checkpoint: frame kind " + kind);
+            }
+        }
+        return execution;
+    }
+}
@@ -0,0 +1,24 @@
+package semulator.execution;
+
+/**
+ * Thrown from inside the interpreter loop when a run is cancelled or hits one of
+ * its {@link RunLimits}. It is never swallowed by the QUOTE/JEF fallbacks.
+ */
+public class ExecutionStoppedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RunOutcome.Status reason;
+
+    public ExecutionStoppedException(RunOutcome.Status reason, String message) {
+        super(message);
+        if (reason == null || reason == RunOutcome.Status.COMPLETED || reason == RunOutcome.Status.FAILED) {
+            throw new IllegalArgumentException("invalid stop reason: " + reason);
+        }
+        this.reason = reason;
+    }
+
+    public RunOutcome.Status getReason() {
+        return reason;
+    }
+}
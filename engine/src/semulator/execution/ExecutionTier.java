@@ -0,0 +1,28 @@
+package semulator.execution;
+
+/**
+ * How {@link ProgramExecutorImpl} runs a program. Every tier gives the same y
+ * and cycle count.
+ */
+public enum ExecutionTier {
+
+    /** Instruction by instruction over the original list (labels looked up by name). */
+    INTERPRETER,
+
+    /** Optimized copy (see semulator.optimization.PassManager), one basic block at a time. */
+    OPTIMIZED,
+
+    /**
+     * Optimized copy compiled to threaded code: each instruction becomes a small
+     * closure over register slots, each basic block a closure returning the next
+     * block.
+     */
+    COMPILED,
+
+    /**
+     * Starts in the interpreter and promotes hot code to COMPILED: a function once
+     * its calls or backward jumps pass a threshold, and a running main-program
+     * loop once its backward jumps do (on-stack replacement).
+     */
+    ADAPTIVE
+}
@@ -0,0 +1,281 @@
+package semulator.execution;
+
+import semulator.program.SProgram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Time-sliced scheduler: N carrier threads share all submitted runs by executing
+ * each one for a fixed quantum of interpreter steps, then requeueing it with its
+ * frame stack intact (see {@link ResumableExecution}).
+ *
+ * Fairness between tenants is weighted: every tenant has a virtual time that
+ * advances by steps / weight whenever one of its runs used a quantum, and the
+ * tenant with the lowest virtual time goes next. Inside a tenant, runs with a
+ * higher priority go first; runs with the same priority take turns.
+ *
+ * The quantum is counted in steps rather than cycles because function bodies are
+ * charged statically at the QUOTE, so a long call would not consume cycles while
+ * it runs.
+ */
+public final class FairScheduler implements AutoCloseable {
+
+    public static final int DEFAULT_QUANTUM = 10_000;
+
+    private final int quantum;
+    private final List<Thread> carriers = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+
+    // Guarded by lock
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    private double virtualClock = 0;
+    private long sequence = 0;
+    private int ready = 0;
+    private boolean closed = false;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    public FairScheduler(int carrierThreads) {
+        this(carrierThreads, DEFAULT_QUANTUM);
+    }
+
+    public FairScheduler(int carrierThreads, int quantumSteps) {
+        if (carrierThreads <= 0) {
+            throw new IllegalArgumentException("carrierThreads must be positive");
+        }
+        if (quantumSteps <= 0) {
+            throw new IllegalArgumentException("quantumSteps must be positive");
+        }
+        this.quantum = quantumSteps;
+        for (int i = 0; i < carrierThreads; i++) {
+            Thread carrier = new Thread(this::carrierLoop, "semulator-carrier-" + i);
+            carrier.setDaemon(true);
+            carriers.add(carrier);
+            carrier.start();
+        }
+    }
+
+    /** Weight of a tenant's share of the carriers (default 1). */
+    public void setTenantWeight(String tenant, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        lock.lock();
+        try {
+            tenantOf(tenant).weight = weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CompletableFuture<RunOutcome> submit(String tenant, int priority, SProgram program, Long... input) {
+        return submit(tenant, priority, program, RunLimits.NONE, input);
+    }
+
+    public CompletableFuture<RunOutcome> submit(String tenant, int priority, SProgram program, RunLimits limits,
+            Long... input) {
+        if (program == null) {
+            throw new IllegalArgumentException("program is null");
+        }
+        Job job = new Job(new ResumableExecution(program, limits, input), limits == null ? RunLimits.NONE : limits,
+                priority);
+        job.outcome.whenComplete((r, error) -> {
+            if (error != null) {
+                job.execution.cancel();
+            }
+        });
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Scheduler is closed");
+            }
+            job.tenant = tenantOf(tenant);
+            enqueue(job);
+        } finally {
+            lock.unlock();
+        }
+        return job.outcome;
+    }
+
+    /** Runs waiting for their next quantum. */
+    public int readyCount() {
+        lock.lock();
+        try {
+            return ready;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Runs currently holding a carrier. */
+    public int runningCount() {
+        return running.get();
+    }
+
+    public int getQuantum() {
+        return quantum;
+    }
+
+    private void carrierLoop() {
+        while (true) {
+            Job job = take();
+            if (job == null) {
+                return;
+            }
+            long stepsBefore = job.execution.getSteps();
+            boolean finished = true;
+            try {
+                finished = runQuantum(job);
+            } finally {
+                long used = job.execution.getSteps() - stepsBefore;
+                running.decrementAndGet();
+                lock.lock();
+                try {
+                    job.tenant.virtualTime += (double) Math.max(used, 1) / job.tenant.weight;
+                    if (!finished && !closed) {
+                        enqueue(job);
+                    } else if (!finished) {
+                        job.outcome.complete(job.stopped(RunOutcome.Status.CANCELLED, "Scheduler closed"));
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /** @return true when the job is done (completed, stopped or failed) */
+    private boolean runQuantum(Job job) {
+        if (job.outcome.isDone()) {
+            return true; // cancelled while waiting
+        }
+        if (job.startNanos == 0) {
+            job.startNanos = System.nanoTime();
+        }
+        try {
+            if (job.limits.hasTimeout()
+                    && System.nanoTime() - job.startNanos > job.limits.timeout().toNanos()) {
+                throw new ExecutionStoppedException(RunOutcome.Status.TIMED_OUT,
+                        "Run exceeded timeout of " + job.limits.timeout());
+            }
+            if (!job.execution.runSlice(quantum)) {
+                return false;
+            }
+            job.outcome.complete(job.stopped(RunOutcome.Status.COMPLETED, null));
+        } catch (ExecutionStoppedException e) {
+            job.outcome.complete(job.stopped(e.getReason(), e.getMessage()));
+        } catch (RuntimeException | StackOverflowError | OutOfMemoryError e) {
+            job.outcome.complete(job.stopped(RunOutcome.Status.FAILED, e.toString()));
+        }
+        return true;
+    }
+
+    private Job take() {
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    return null;
+                }
+                Tenant next = null;
+                for (Tenant tenant : tenants.values()) {
+                    if (!tenant.queue.isEmpty() && (next == null || tenant.virtualTime < next.virtualTime)) {
+                        next = tenant;
+                    }
+                }
+                if (next != null) {
+                    virtualClock = Math.max(virtualClock, next.virtualTime);
+                    ready--;
+                    running.incrementAndGet();
+                    return next.queue.poll();
+                }
+                workAvailable.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds lock
+    private void enqueue(Job job) {
+        Tenant tenant = job.tenant;
+        if (tenant.queue.isEmpty()) {
+            // An idle tenant does not bank credit while it had nothing to run
+            tenant.virtualTime = Math.max(tenant.virtualTime, virtualClock);
+        }
+        job.sequence = sequence++;
+        tenant.queue.add(job);
+        ready++;
+        workAvailable.signal();
+    }
+
+    // Caller holds lock
+    private Tenant tenantOf(String name) {
+        return tenants.computeIfAbsent(name == null ? "" : name, n -> new Tenant());
+    }
+
+    /**
+     * Stops the carriers. Runs that have not finished complete with status
+     * CANCELLED.
+     */
+    @Override
+    public void close() {
+        List<Job> pending = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (Tenant tenant : tenants.values()) {
+                pending.addAll(tenant.queue);
+                tenant.queue.clear();
+            }
+            ready = 0;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Job job : pending) {
+            job.outcome.complete(job.stopped(RunOutcome.Status.CANCELLED, "Scheduler closed"));
+        }
+    }
+
+    private static final class Tenant {
+        int weight = 1;
+        double virtualTime = 0;
+        final PriorityQueue<Job> queue = new PriorityQueue<>(
+                Comparator.comparingInt((Job j) -> -j.priority).thenComparingLong(j -> j.sequence));
+    }
+
+    private static final class Job {
+        final ResumableExecution execution;
+        final RunLimits limits;
+        final int priority;
+        final CompletableFuture<RunOutcome> outcome = new CompletableFuture<>();
+        Tenant tenant;
+        long sequence;
+        long startNanos = 0;
+
+        Job(ResumableExecution execution, RunLimits limits, int priority) {
+            this.execution = execution;
+            this.limits = limits;
+            this.priority = priority;
+        }
+
+        RunOutcome stopped(RunOutcome.Status status, String message) {
+            Duration elapsed = startNanos == 0 ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - startNanos);
+            return new RunOutcome(status, execution.getResult(), execution.getTotalCycles(),
+                    execution.variableState(), elapsed, message);
+        }
+    }
+}
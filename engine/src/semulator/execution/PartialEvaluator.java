@@ -0,0 +1,192 @@
+package semulator.execution;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.FunctionCall;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.SInstruction;
+import semulator.variable.Variable;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load-time partial evaluation of calls (see
+ * {@link ProgramExecutorImpl#setPartialEvaluation(boolean)}).
+ *
+ * Function bodies only see their inputs, so a call whose arguments are all
+ * constant gives the same value on every run. Such call sites (QUOTE, JEF and
+ * the nested calls inside QUOTE arguments) are evaluated once, when the
+ * evaluator is built, and the executor then uses the value the way it would an
+ * ASSIGNC. The instruction is still charged its usual cycles. A call that does
+ * not finish within {@link #STEP_BUDGET} steps, or nests calls deeper than
+ * {@link #CALL_DEPTH_BUDGET} (a recursion without a tail call that does not
+ * end, say), is left as it is.
+ *
+ * A call site with only some constant arguments gets a variant of the callee
+ * whose body starts by assigning those constants to their inputs. Optimized
+ * code propagates them through the variant, so tests and loops on them fold
+ * away. Call sites with the same function and constants share one variant.
+ *
+ * Arguments follow the executor: a top-level QUOTE argument whose call tree
+ * refers to a missing function is 0, and JEF passes 0 for function-call
+ * arguments.
+ */
+final class PartialEvaluator {
+
+    /** Steps one constant call may take while it is being folded. */
+    static final long STEP_BUDGET = 1_000_000;
+
+    /** Calls one constant call may nest while it is being folded; each takes Java stack. */
+    static final int CALL_DEPTH_BUDGET = 200;
+
+    private final ProgramExecutorImpl evaluator;
+    private final Map<String, List<SInstruction>> functions;
+    private final Map<Object, Long> folded = new IdentityHashMap<>();
+    private final Map<Object, List<SInstruction>> variantAt = new IdentityHashMap<>();
+    private final Map<String, List<SInstruction>> variants = new HashMap<>();
+    private final Map<FunctionCall, Boolean> visited = new IdentityHashMap<>();
+
+    /**
+     * Fold and specialize every call site of the main program and the function
+     * bodies.
+     *
+     * @param evaluator runs the constant calls; its counters and caches are not
+     *                  those of the executor that uses the result
+     */
+    PartialEvaluator(ProgramExecutorImpl evaluator, List<SInstruction> main,
+            Map<String, List<SInstruction>> functions) {
+        this.evaluator = evaluator;
+        this.functions = functions;
+        scan(main);
+        for (List<SInstruction> body : functions.values()) {
+            scan(body);
+        }
+    }
+
+    /** @return the value of a call site (instruction or nested call), or null if it was not folded */
+    Long folded(Object site) {
+        return folded.get(site);
+    }
+
+    /** @return the callee body specialized for a call site, or null if there is none */
+    List<SInstruction> variant(Object site) {
+        return variantAt.get(site);
+    }
+
+    int foldedCount() {
+        return folded.size();
+    }
+
+    /** Variant bodies by function and constant arguments, e.g. ADD(_,5). */
+    Map<String, List<SInstruction>> variants() {
+        return Collections.unmodifiableMap(variants);
+    }
+
+    private void scan(List<SInstruction> code) {
+        for (SInstruction instruction : code) {
+            if (instruction instanceof QuoteInstruction q) {
+                site(q, q.getFunctionName(), q.getFunctionArguments(), false);
+            } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+                site(j, j.getFunctionName(), j.getFunctionArguments(), true);
+            }
+        }
+    }
+
+    /**
+     * @param site an instruction, or a nested call for QUOTE arguments
+     * @return the call's value if it could be folded
+     */
+    private Long site(Object site, String name, List<FunctionArgument> arguments, boolean jumpEqual) {
+        if (!functions.containsKey(name)) {
+            return null; // the executor gives 0 without calling anything
+        }
+        Long[] values = new Long[arguments.size()];
+        boolean allConstant = true;
+        boolean anyConstant = false;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = constant(arguments.get(i), jumpEqual, site instanceof SInstruction);
+            allConstant &= values[i] != null;
+            anyConstant |= values[i] != null;
+        }
+        if (allConstant) {
+            Long value = evaluate(name, values);
+            if (value != null) {
+                folded.put(site, value);
+                return value;
+            }
+        }
+        if (anyConstant) {
+            variantAt.put(site, variant(name, values));
+        }
+        return null;
+    }
+
+    /** @return the argument's value when it is the same on every call, else null */
+    private Long constant(FunctionArgument argument, boolean jumpEqual, boolean topLevel) {
+        if (!argument.isFunctionCall()) {
+            Variable variable = argument.asVariable();
+            return variable.getType() == VariableType.Constant ? (long) variable.getNumber() : null;
+        }
+        if (jumpEqual) {
+            return 0L;
+        }
+        FunctionCall call = argument.asFunctionCall();
+        if (topLevel && !isResolvable(call)) {
+            return 0L;
+        }
+        if (visited.put(call, Boolean.TRUE) == null) {
+            return site(call, call.getFunctionName(), call.getArguments(), false);
+        }
+        return folded.get(call); // interned: already folded (or not) at another site
+    }
+
+    private Long evaluate(String name, Long[] values) {
+        long[] arguments = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            arguments[i] = values[i];
+        }
+        try {
+            return evaluator.evaluateCall(name, arguments, STEP_BUDGET, CALL_DEPTH_BUDGET);
+        } catch (RuntimeException | StackOverflowError e) {
+            return null; // leave it to the run, which has its own fallbacks
+        }
+    }
+
+    private List<SInstruction> variant(String name, Long[] values) {
+        StringBuilder key = new StringBuilder(name).append('(');
+        for (int i = 0; i < values.length; i++) {
+            key.append(i == 0 ? "" : ",").append(values[i] == null ? "_" : values[i]);
+        }
+        key.append(')');
+        return variants.computeIfAbsent(key.toString(), k -> {
+            List<SInstruction> body = new ArrayList<>();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    body.add(new AssignConstantInstruction(new VariableImpl(VariableType.INPUT, i + 1), values[i]));
+                }
+            }
+            body.addAll(functions.get(name));
+            return Collections.unmodifiableList(body);
+        });
+    }
+
+    private boolean isResolvable(FunctionCall call) {
+        if (!functions.containsKey(call.getFunctionName())) {
+            return false;
+        }
+        for (FunctionArgument argument : call.getArguments()) {
+            if (argument.isFunctionCall() && !isResolvable(argument.asFunctionCall())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -10,5 +10,5 @@ public interface ProgramExecutor {
 
     Map<Variable, Long> variableState();
 
-    int getTotalCycles();
+    long getTotalCycles();
 }
\ No newline at end of file
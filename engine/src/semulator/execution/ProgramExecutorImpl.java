@@ -3,29 +3,346 @@ package semulator.execution;
 import semulator.instructions.SInstruction;
 import semulator.label.FixedLabel;
 import semulator.label.Label;
+import semulator.optimization.AffineLoop;
+import semulator.optimization.BasicBlocks;
+import semulator.optimization.FunctionSummary;
+import semulator.optimization.OptimizedProgram;
+import semulator.optimization.PassManager;
+import semulator.program.DemandExpansion;
+import semulator.program.MappedExpansion;
 import semulator.program.SProgram;
+import semulator.program.SProgramImpl;
 import semulator.variable.Variable;
 import semulator.variable.VariableImpl;
 import semulator.variable.VariableType;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
 public class ProgramExecutorImpl implements ProgramExecutor {
 
     private final SProgram program;
-    private int totalCycles = 0;
+    private long totalCycles = 0;
     private ExecutionContext lastContext = null;
 
+    // Cancellation and per-run limits, checked from inside the interpreter loops
+    private volatile boolean cancelRequested = false;
+    private RunLimits limits = RunLimits.NONE;
+    private long deadlineNanos = 0;
+    private final AtomicLong steps = new AtomicLong(); // folded in from threadSteps every 1024 steps
+
+    // Parallel evaluation of sibling function-call arguments (off by default)
+    private boolean parallelArguments = false;
+    private long parallelCostThreshold = DEFAULT_PARALLEL_COST_THRESHOLD;
+    private final Map<String, Long> staticCostCache = new ConcurrentHashMap<>();
+    private final Map<String, CallProfile> callProfiles = new ConcurrentHashMap<>();
+    // Per thread: [0] steps profiled for call costs, [1] steps not yet added to steps
+    private final ThreadLocal<long[]> threadSteps = ThreadLocal.withInitial(() -> new long[2]);
+
+    // Call-by-need evaluation of function-call arguments (off by default)
+    private boolean lazyArguments = false;
+
+    // How programs run: interpreted, optimized or compiled (interpreted by default)
+    private ExecutionTier tier = ExecutionTier.INTERPRETER;
+    private ClosureCompiler closureCompiler = null;
+    private final PassManager passManager;
+    private final Map<List<SInstruction>, OptimizedProgram> optimizedCode = java.util.Collections
+            .synchronizedMap(new java.util.IdentityHashMap<>());
+    private OptimizedProgram lastOptimized = null;
+    private long[] blockCounts = null;
+
+    // Tail-call positions of interpreted function bodies
+    private final Map<List<SInstruction>, java.util.BitSet> tailCallCache = new java.util.IdentityHashMap<>();
+
+    // Closed-form function summaries used at call sites (off by default)
+    private boolean functionSummaries = false;
+    private final Map<List<SInstruction>, FunctionSummary> summaries = java.util.Collections
+            .synchronizedMap(new java.util.IdentityHashMap<>());
+
+    // Load-time folding and specialization of calls with constant arguments
+    private boolean partialEvaluation = false;
+    private PartialEvaluator partialEvaluator = null;
+    private long stepBudget = 0; // steps allowed by evaluateCall, 0 outside it
+    private int callDepthBudget = 0; // nested calls allowed by evaluateCall, 0 outside it
+    private int callDepth = 0;
+
+    // Runs as if expanded to this degree (0: the program as it is)
+    private int emulatedDegree = 0;
+    private DegreeEmulator degreeEmulator = null;
+    private DemandExpansion demandExpansion = null; // run instead when the emulator is not exact
+    private List<SInstruction> expansion = null; // when fresh names could clash with passed variables
+    private boolean mapExpansion = false;
+    private MappedExpansion mappedExpansion = null;
+
+    // ADAPTIVE tier: hotness per function and the decisions taken so far
+    private long promotionInvocations = DEFAULT_PROMOTION_INVOCATIONS;
+    private long promotionBackEdges = DEFAULT_PROMOTION_BACK_EDGES;
+    private final Map<String, Hotness> hotness = new ConcurrentHashMap<>();
+    private final List<TierDecision> tierDecisions = java.util.Collections
+            .synchronizedList(new java.util.ArrayList<>());
+    private int runCount = 0;
+
+    public static final long DEFAULT_PARALLEL_COST_THRESHOLD = 1_000;
+    public static final long DEFAULT_PROMOTION_INVOCATIONS = 1_000;
+    public static final long DEFAULT_PROMOTION_BACK_EDGES = 10_000;
+    private static final int DECODED_ROWS = 1 << 12; // instructions runMapped keeps decoded
+
     public ProgramExecutorImpl(SProgram program) {
         this.program = program;
+        this.passManager = program instanceof SProgramImpl programImpl
+                ? PassManager.standard(programImpl.getFunctions())
+                : PassManager.standard();
+    }
+
+    /**
+     * Limits applied to the next call to run(). The timeout is measured from the
+     * moment run() starts.
+     */
+    public void setLimits(RunLimits limits) {
+        this.limits = limits == null ? RunLimits.NONE : limits;
+    }
+
+    /**
+     * Request the running (or next) run() to stop. Safe to call from any thread;
+     * run() then throws ExecutionStoppedException with reason CANCELLED.
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * Evaluate sibling function-call arguments of a QUOTE (or of a nested call)
+     * concurrently on the fork/join pool when at least two of them are estimated to
+     * cost more than the threshold. Arguments are still bound in order and function
+     * bodies are not charged, so results and cycle totals do not change.
+     */
+    public void setParallelArguments(boolean enabled) {
+        this.parallelArguments = enabled;
+    }
+
+    /**
+     * Call-by-need: a function-call argument is bound to the callee's x_i as a
+     * thunk that is evaluated (once) on the first read of x_i, so calls whose
+     * value is never read are skipped. Results and cycles are the same as eager
+     * evaluation for every program that terminates eagerly. Arguments whose call
+     * tree refers to a missing function stay eager, to keep the 0 fallback exact.
+     * Takes precedence over parallel argument evaluation.
+     */
+    public void setLazyArguments(boolean enabled) {
+        this.lazyArguments = enabled;
+    }
+
+    /**
+     * Execute an optimized copy of the program (inlining of small functions,
+     * constant propagation, jump threading, unreachable-code and dead-store
+     * elimination, see {@link PassManager}). y and getTotalCycles() are the same as for the
+     * original program; the cycles of removed instructions are charged on the
+     * edges that bypass them. Work variables whose stores were removed as dead
+     * are missing from (or stale in) variableState().
+     *
+     * The optimized code runs one basic block at a time (see {@link BasicBlocks}):
+     * cycles are added once per block and only the last instruction of a block
+     * decides where to go next. Counted loops (see {@link AffineLoop}) run in one
+     * step whatever the counter's value.
+     * With a cycle limit set the main program runs node by node instead, so the
+     * limit is still checked before every remaining instruction.
+     */
+    public void setOptimize(boolean enabled) {
+        this.tier = enabled ? ExecutionTier.OPTIMIZED : ExecutionTier.INTERPRETER;
+    }
+
+    /**
+     * Choose how the next runs execute. COMPILED runs the optimized code as
+     * threaded code (see {@link ClosureCompiler}): variables live in a register
+     * array and every basic block is a closure, so there is no per-instruction
+     * dispatch or label lookup. It gives the same y and cycles as the other tiers
+     * but ignores the lazy and parallel argument options. variableState() holds the
+     * variables the run stored to; like OPTIMIZED it can miss dead work variables.
+     * With a cycle limit, or when some code cannot be optimized, COMPILED runs as
+     * OPTIMIZED.
+     */
+    public void setExecutionTier(ExecutionTier tier) {
+        if (tier == null) {
+            throw new IllegalArgumentException("tier must not be null");
+        }
+        this.tier = tier;
+    }
+
+    public ExecutionTier getExecutionTier() {
+        return tier;
+    }
+
+    /**
+     * ADAPTIVE: a function is compiled once it has been called invocations times
+     * or has taken backEdges backward jumps (counted over all runs of this
+     * executor); a main-program loop is entered in compiled code once the current
+     * run has taken backEdges backward jumps. Main-program loops are not promoted
+     * under a cycle limit.
+     */
+    public void setPromotionThresholds(long invocations, long backEdges) {
+        if (invocations < 1 || backEdges < 1) {
+            throw new IllegalArgumentException("promotion thresholds must be positive");
+        }
+        this.promotionInvocations = invocations;
+        this.promotionBackEdges = backEdges;
+    }
+
+    /** Promotions (and refused promotions) of the ADAPTIVE tier, oldest first. */
+    public List<TierDecision> getTierDecisions() {
+        synchronized (tierDecisions) {
+            return List.copyOf(tierDecisions);
+        }
+    }
+
+    /** ADAPTIVE: calls of each function so far, including calls made while interpreted. */
+    public Map<String, Long> getInvocationCounts() {
+        Map<String, Long> counts = new java.util.TreeMap<>();
+        hotness.forEach((name, h) -> counts.put(name, h.invocations.sum()));
+        return counts;
+    }
+
+    /** ADAPTIVE: backward jumps taken in each function while it was interpreted. */
+    public Map<String, Long> getBackEdgeCounts() {
+        Map<String, Long> counts = new java.util.TreeMap<>();
+        hotness.forEach((name, h) -> counts.put(name, h.backEdges.sum()));
+        return counts;
+    }
+
+    /**
+     * Evaluate calls through a closed-form summary of the callee when one can be
+     * derived (see {@link FunctionSummary}): y as a formula over the inputs, with
+     * counted loops collapsed and branches as a decision tree. Functions that
+     * cannot be summarized run as before. Applies wherever a function body would
+     * be interpreted or run optimized; COMPILED code calls its compiled bodies.
+     * Inputs and calls the summary does not need on the path taken are never
+     * evaluated.
+     */
+    public void setFunctionSummaries(boolean enabled) {
+        this.functionSummaries = enabled;
+    }
+
+    /** Summaries derived so far, by function name (functions that could not be summarized are absent). */
+    public Map<String, FunctionSummary> getFunctionSummaries() {
+        Map<String, FunctionSummary> result = new java.util.TreeMap<>();
+        synchronized (summaries) {
+            for (FunctionSummary summary : summaries.values()) {
+                if (summary != null) {
+                    result.put(summary.getFunctionName(), summary);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Partially evaluate calls with constant arguments before the first run (see
+     * {@link PartialEvaluator}). A QUOTE or JEF whose arguments are all constants
+     * (or constant calls) is evaluated once and then behaves like an ASSIGNC of
+     * its value; it is charged the same cycles as before. A call with some
+     * constant arguments runs a variant of the callee specialized for them when
+     * function bodies are optimized (OPTIMIZED and COMPILED). Calls that do not
+     * finish within the evaluation budget run normally.
+     */
+    public void setPartialEvaluation(boolean enabled) {
+        this.partialEvaluation = enabled;
+    }
+
+    /** Call sites folded to a constant (0 until the first run with partial evaluation). */
+    public int getFoldedCallCount() {
+        PartialEvaluator evaluator = partialEvaluator;
+        return evaluator == null ? 0 : evaluator.foldedCount();
+    }
+
+    /** Specialized function variants, e.g. ADD(_,5), with their bodies. */
+    public Map<String, List<SInstruction>> getSpecializedVariants() {
+        PartialEvaluator evaluator = partialEvaluator;
+        return evaluator == null ? Map.of() : evaluator.variants();
+    }
+
+    /**
+     * Run the program as if it had been expanded to the given degree: y and
+     * getTotalCycles() are those of running the instructions of
+     * expandToDegree(degree) with the program's functions, but without building
+     * them. The degree-0 program runs and every synthetic instruction is charged
+     * the cycles its expansion would take from the current values (see
+     * {@link DegreeEmulator}), so a run costs about as much as at degree 0.
+     * variableState() leaves out the work variables the expansion adds. When the
+     * expansion of the program is not local enough to be emulated exactly, or
+     * with a cycle limit, the expanded instructions are run instead, each
+     * instruction of the program being expanded when the run first reaches it
+     * (see {@link DemandExpansion}), or from the expansion on disk with
+     * {@link #setMappedExpansion(boolean)}. Applies to SProgramImpl programs; 0
+     * turns it off.
+     */
+    public void setEmulatedDegree(int degree) {
+        if (degree < 0) {
+            throw new IllegalArgumentException("degree must be non-negative");
+        }
+        this.emulatedDegree = degree;
+    }
+
+    /**
+     * Keep the expansion that runs at the emulated degree need (when they are
+     * not emulated) in memory-mapped temporary files instead of on the heap,
+     * see {@link MappedExpansion}. It is the expansion of expandToDegree, names
+     * included, so it can be used for any program; it is written once per
+     * degree, and deleted when this is turned off or the degree changes.
+     */
+    public synchronized void setMappedExpansion(boolean enabled) {
+        this.mapExpansion = enabled;
+        if (!enabled && mappedExpansion != null) {
+            mappedExpansion.close();
+            mappedExpansion = null;
+        }
+    }
+
+    /** Whether runs at the emulated degree are emulated (false: the expansion is built and run). */
+    public boolean isDegreeEmulated() {
+        return emulatedDegree > 0 && program instanceof SProgramImpl programImpl
+                && degreeEmulator(programImpl).isExact();
+    }
+
+    /**
+     * Minimum estimated cost (interpreted instructions) of a call argument before it
+     * is worth a task. Estimates use the average observed cost of the function
+     * when it has been called before, otherwise its static cycles.
+     */
+    public void setParallelCostThreshold(long threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must be non-negative");
+        }
+        this.parallelCostThreshold = threshold;
     }
 
     @Override
     public long run(Long... input) {
         // Reset cycle counter
         totalCycles = 0;
+        runCount++;
+        lastOptimized = null;
+        blockCounts = null;
+        steps.set(0);
+        threadSteps.get()[1] = 0;
+        deadlineNanos = limits.hasTimeout() ? System.nanoTime() + limits.timeout().toNanos() : 0;
+        if (partialEvaluation) {
+            partialEvaluator();
+        }
 
         // Create execution context with proper input initialization
         ExecutionContext context = new LocalExecutionContext(input);
@@ -33,15 +350,74 @@ public class ProgramExecutorImpl implements ProgramExecutor {
 
         // Use the original program instructions (don't expand synthetic instructions)
         List<SInstruction> instructions = program.getInstructions();
+        if (emulatedDegree > 0 && program instanceof SProgramImpl programImpl) {
+            DegreeEmulator emulator = degreeEmulator(programImpl);
+            boolean emulate = emulator.isExact() && !limits.hasCycleLimit();
+            if (emulate || mapExpansion || programImpl.freshNamesAvoidArguments()) {
+                LocalExecutionContext local = (LocalExecutionContext) context;
+                try {
+                    if (emulate) {
+                        emulator.run(local);
+                    } else if (mapExpansion) {
+                        runMapped(mappedExpansion(programImpl), local);
+                    } else {
+                        runOnDemand(demandExpansion(programImpl), local);
+                    }
+                } finally {
+                    if (emulate) {
+                        totalCycles = emulator.cycles();
+                    }
+                    Set<Variable> introduced = new HashSet<>();
+                    for (Variable variable : local.getAllVariables().keySet()) {
+                        if (!emulator.isProgramVariable(variable)) {
+                            introduced.add(variable);
+                        }
+                    }
+                    local.forget(introduced);
+                }
+                return context.getVariableValue(Variable.RESULT);
+            }
+            instructions = expansion(programImpl);
+        }
+
+        if (tier == ExecutionTier.COMPILED && !limits.hasCycleLimit() && closureCompiler() != null) {
+            ClosureCompiler.CompiledCode compiled = closureCompiler.compileMain(instructions);
+            if (compiled != null) {
+                totalCycles = compiled.entryExtra;
+                runCompiled(compiled, compiled.entry, (LocalExecutionContext) context);
+                return context.getVariableValue(Variable.RESULT);
+            }
+        }
+
+        OptimizedProgram optimized = optimizes() ? optimizedCode(instructions, false) : null;
+        if (optimized != null) {
+            try {
+                if (limits.hasCycleLimit()) {
+                    runOptimized(optimized, context);
+                } else {
+                    lastOptimized = optimized;
+                    blockCounts = new long[optimized.blocks().size()];
+                    runBlocks(optimized.blocks(), context, blockCounts);
+                }
+            } finally {
+                ((LocalExecutionContext) context).forget(optimized.inlinedVariables());
+            }
+            return context.getVariableValue(Variable.RESULT);
+        }
 
         // Build label-to-instruction map for efficient jumping
         Map<String, Integer> labelToIndex = buildLabelMap(instructions);
 
+        // ADAPTIVE: backward jumps of this run, until the loop is moved to compiled code
+        long backEdges = 0;
+        boolean loopPromotion = tier == ExecutionTier.ADAPTIVE && !limits.hasCycleLimit();
+
         // Start with the first instruction
         int currentIndex = 0;
         int count = 0;
         while (currentIndex < instructions.size()) {
             SInstruction currentInstruction = instructions.get(currentIndex);
+            checkStop(currentInstruction.cycles());
             totalCycles += currentInstruction.cycles();
             count++;
             // Print instruction execution to console with readable format
@@ -70,6 +446,12 @@ public class ProgramExecutorImpl implements ProgramExecutor {
                 String labelName = nextLabel.getLabel();
                 Integer targetIndex = labelToIndex.get(labelName);
                 if (targetIndex != null) {
+                    if (loopPromotion && targetIndex <= currentIndex && ++backEdges >= promotionBackEdges) {
+                        loopPromotion = false;
+                        if (promoteLoop(instructions, targetIndex, backEdges, (LocalExecutionContext) context)) {
+                            break;
+                        }
+                    }
                     currentIndex = targetIndex;
                 } else {
                     // If label not found, continue to next instruction
@@ -86,6 +468,445 @@ public class ProgramExecutorImpl implements ProgramExecutor {
         return context.getVariableValue(Variable.RESULT);
     }
 
+    /**
+     * Main loop over an optimized program: node costs and edge extras add up to
+     * the cycles of the original instructions on the same path.
+     */
+    private void runOptimized(OptimizedProgram code, ExecutionContext context) {
+        totalCycles += code.entryExtra();
+        int index = code.entry();
+        while (index != OptimizedProgram.EXIT) {
+            checkStop(code.cost(index));
+            totalCycles += code.cost(index);
+            SInstruction instruction = code.instruction(index);
+            if (instruction == null || dispatch(instruction, context) == FixedLabel.EMPTY) {
+                totalCycles += code.fallExtra(index);
+                index = code.fallTarget(index);
+            } else {
+                totalCycles += code.jumpExtra(index);
+                index = code.jumpTarget(index);
+            }
+        }
+    }
+
+    /**
+     * Main loop over the expansion of the program, one segment (the expansion of
+     * one instruction) at a time, expanding each when it is first reached.
+     */
+    private void runOnDemand(DemandExpansion expansion, ExecutionContext context) {
+        int segment = 0;
+        int offset = 0;
+        List<SInstruction> code = expansion.segmentCount() == 0 ? List.of() : expansion.segment(0);
+        while (segment < expansion.segmentCount()) {
+            if (offset == code.size()) {
+                segment++;
+                offset = 0;
+                if (segment < expansion.segmentCount()) {
+                    code = expansion.segment(segment);
+                }
+                continue;
+            }
+            SInstruction instruction = code.get(offset);
+            checkStop(instruction.cycles());
+            totalCycles += instruction.cycles();
+            Label next = dispatch(instruction, context);
+            if (next == FixedLabel.EMPTY) {
+                offset++;
+            } else if (next == FixedLabel.EXIT) {
+                break;
+            } else {
+                DemandExpansion.Position target = expansion.target(segment, next);
+                if (target == null) {
+                    offset++; // like a label the program does not define
+                } else {
+                    if (target.segment() != segment) {
+                        segment = target.segment();
+                        code = expansion.segment(segment);
+                    }
+                    offset = target.offset();
+                }
+            }
+        }
+    }
+
+    /**
+     * Main loop over an expansion kept in mapped files. Instructions are decoded
+     * from their records; the last ones decoded stay by row (with where they
+     * jump to), so a loop does not decode its body on every pass.
+     */
+    private void runMapped(MappedExpansion expansion, ExecutionContext context) {
+        SInstruction[] decoded = new SInstruction[DECODED_ROWS];
+        long[] decodedRows = new long[DECODED_ROWS];
+        long[] jumpRows = new long[DECODED_ROWS]; // -1 until the instruction first jumps
+        long size = expansion.size();
+        long row = 1;
+        while (row <= size) {
+            int slot = (int) (row & (DECODED_ROWS - 1));
+            if (decodedRows[slot] != row) {
+                decoded[slot] = expansion.instruction(row);
+                decodedRows[slot] = row;
+                jumpRows[slot] = -1;
+            }
+            SInstruction instruction = decoded[slot];
+            checkStop(instruction.cycles());
+            totalCycles += instruction.cycles();
+            Label next = dispatch(instruction, context);
+            if (next == FixedLabel.EMPTY) {
+                row++;
+            } else if (next == FixedLabel.EXIT) {
+                break;
+            } else {
+                if (jumpRows[slot] < 0) {
+                    jumpRows[slot] = expansion.target(next);
+                }
+                // 0: a label the expansion does not define, go on with the next row
+                row = jumpRows[slot] == 0 ? row + 1 : jumpRows[slot];
+            }
+        }
+    }
+
+    /**
+     * Run compiled main-program code from the start of a block, with the variables
+     * and cycles the run has so far, then copy the registers back into the context
+     * so variableState() sees them (also when the run is stopped part way).
+     */
+    private void runCompiled(ClosureCompiler.CompiledCode code, int block, LocalExecutionContext context) {
+        long[] registers = code.newRegisters();
+        code.slots.forEach((variable, slot) -> registers[slot] = context.getVariableValue(variable));
+        long[] initial = registers.clone();
+        ClosureCompiler.Frame frame = new ClosureCompiler.Frame(registers);
+        frame.cycles = totalCycles;
+        frame.ran = new boolean[code.blocks.length];
+        try {
+            closureCompiler.runFrom(code, block, frame);
+        } finally {
+            totalCycles = frame.cycles;
+            // Only what the run stored, as the interpreter would: y of a run that
+            // never reaches a store to it stays out of variableState()
+            BitSet stored = code.storedBy(frame.ran);
+            code.slots.forEach((variable, slot) -> {
+                if (code.written.get(slot) && (stored.get(slot) || registers[slot] != initial[slot])) {
+                    context.updateVariable(variable, registers[slot]);
+                }
+            });
+        }
+    }
+
+    /**
+     * ADAPTIVE on-stack replacement: finish the run in the unoptimized compiled
+     * main program, entering it at the loop head the interpreter is about to jump
+     * to. Returns false (keep interpreting) when the program cannot be compiled.
+     */
+    private boolean promoteLoop(List<SInstruction> instructions, int loopHead, long backEdges,
+            LocalExecutionContext context) {
+        if (closureCompiler() == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        ClosureCompiler.CompiledCode compiled = closureCompiler.compileUnoptimized(instructions);
+        int block = compiled == null ? -1 : compiled.layout.blockStartingAt(loopHead);
+        tierDecisions.add(new TierDecision(program.getName(), loopHead,
+                block >= 0 ? ExecutionTier.COMPILED : ExecutionTier.INTERPRETER,
+                block >= 0 ? "hot loop" : "hot loop, not compilable", 0, backEdges, runCount,
+                java.time.Duration.ofNanos(System.nanoTime() - start)));
+        if (block < 0) {
+            return false;
+        }
+        runCompiled(compiled, block, context);
+        return true;
+    }
+
+    /**
+     * ADAPTIVE: the compiled body of a function once it is hot, null while it is
+     * still interpreted. Each function is compiled (or found not compilable) once.
+     */
+    private ClosureCompiler.CompiledCode promoted(String functionName, Hotness counters) {
+        if (counters.decided) {
+            return counters.compiled;
+        }
+        long invocations = counters.invocations.sum();
+        long backEdges = counters.backEdges.sum();
+        if (invocations < promotionInvocations && backEdges < promotionBackEdges) {
+            return null;
+        }
+        synchronized (counters) {
+            if (!counters.decided) {
+                long start = System.nanoTime();
+                ClosureCompiler.CompiledCode compiled = closureCompiler().compileFunction(functionName);
+                String reason = invocations >= promotionInvocations ? "invocations" : "back edges";
+                tierDecisions.add(new TierDecision(functionName, -1,
+                        compiled != null ? ExecutionTier.COMPILED : ExecutionTier.INTERPRETER,
+                        compiled != null ? reason : reason + ", not compilable", invocations, backEdges, runCount,
+                        java.time.Duration.ofNanos(System.nanoTime() - start)));
+                counters.compiled = compiled;
+                counters.decided = true;
+            }
+            return counters.compiled;
+        }
+    }
+
+    /** Compiler for this program's code, created on first use (null if functions are not available). */
+    private synchronized PartialEvaluator partialEvaluator() {
+        if (partialEvaluator == null && program instanceof SProgramImpl programImpl) {
+            ProgramExecutorImpl evaluator = new ProgramExecutorImpl(program);
+            evaluator.setExecutionTier(ExecutionTier.OPTIMIZED);
+            partialEvaluator = new PartialEvaluator(evaluator, program.getInstructions(), programImpl.getFunctions());
+        }
+        return partialEvaluator;
+    }
+
+    /** Folded value of a call site (QUOTE, JEF or nested call), or null. */
+    Long foldedCall(Object site) {
+        PartialEvaluator evaluator = partialEvaluation ? partialEvaluator : null;
+        return evaluator == null ? null : evaluator.folded(site);
+    }
+
+    /** Body to run for a call site: its specialized variant, if any, when bodies are optimized. */
+    private List<SInstruction> calleeBody(Object site, List<SInstruction> body) {
+        PartialEvaluator evaluator = partialEvaluation && optimizes() ? partialEvaluator : null;
+        List<SInstruction> variant = evaluator == null ? null : evaluator.variant(site);
+        return variant != null ? variant : body;
+    }
+
+    /**
+     * Evaluate a call outside any run, for partial evaluation.
+     *
+     * @return y, or null if the call takes more than maxSteps steps or nests
+     *         calls more than maxDepth deep
+     */
+    Long evaluateCall(String functionName, long[] arguments, long maxSteps, int maxDepth) {
+        stepBudget = maxSteps;
+        callDepthBudget = maxDepth;
+        callDepth = 0;
+        steps.set(0);
+        threadSteps.get()[1] = 0;
+        // The call depth is counted on one thread: no forked arguments
+        boolean parallel = parallelArguments;
+        parallelArguments = false;
+        try {
+            return callFunction(functionName, arguments);
+        } catch (ExecutionStoppedException e) {
+            return null;
+        } finally {
+            stepBudget = 0;
+            callDepthBudget = 0;
+            parallelArguments = parallel;
+        }
+    }
+
+    private synchronized ClosureCompiler closureCompiler() {
+        if (closureCompiler == null && program instanceof SProgramImpl programImpl) {
+            closureCompiler = new ClosureCompiler(this, programImpl.getFunctions());
+        }
+        return closureCompiler;
+    }
+
+    private boolean optimizes() {
+        return tier == ExecutionTier.OPTIMIZED || tier == ExecutionTier.COMPILED;
+    }
+
+    /**
+     * Block-at-a-time loop: one cycle addition and one branch decision per block.
+     * counts (may be null) receives the number of times each block ran.
+     */
+    private void runBlocks(BasicBlocks blocks, ExecutionContext context, long[] counts) {
+        totalCycles += blocks.entryExtra();
+        int block = blocks.entry();
+        while (block != BasicBlocks.EXIT) {
+            checkStop(blocks.cycles(block));
+            AffineLoop loop = blocks.loopAt(block);
+            if (loop != null) {
+                long iterations = runLoop(loop, context);
+                totalCycles += loop.cycles(iterations);
+                if (counts != null) {
+                    counts[block] += iterations + 1;
+                    for (int trip : loop.tripBlocks()) {
+                        counts[trip] += iterations;
+                    }
+                }
+                block = loop.exitTarget();
+                continue;
+            }
+            totalCycles += blocks.cycles(block);
+            if (counts != null) {
+                counts[block]++;
+            }
+            for (SInstruction instruction : blocks.body(block)) {
+                dispatch(instruction, context);
+            }
+            SInstruction last = blocks.terminator(block);
+            if (last == null || dispatch(last, context) == FixedLabel.EMPTY) {
+                totalCycles += blocks.fallExtra(block);
+                block = blocks.fallTarget(block);
+            } else {
+                totalCycles += blocks.jumpExtra(block);
+                block = blocks.jumpTarget(block);
+            }
+        }
+    }
+
+    /**
+     * Run a counted loop in closed form: the counter ends at 0 and every other
+     * variable of the loop grows by its per-trip increment times the trips.
+     * Variables are only written if the loop would have written them.
+     *
+     * @return the number of full trips around the loop
+     */
+    private static long runLoop(AffineLoop loop, ExecutionContext context) {
+        long iterations = loop.iterations(context.getVariableValue(loop.counter()));
+        if (loop.decrements(iterations) > 0) {
+            context.updateVariable(loop.counter(), 0L);
+        }
+        Variable[] variables = loop.variables();
+        for (int v = 0; v < variables.length; v++) {
+            long increment = loop.increment(v, iterations);
+            if (increment > 0) {
+                context.updateVariable(variables[v], context.getVariableValue(variables[v]) + increment);
+            }
+        }
+        return iterations;
+    }
+
+    /**
+     * Execution count of each basic block of the main program in the last run,
+     * keyed by the index of the block's first instruction in the program. Empty
+     * unless the last run was optimized and had no cycle limit. Blocks of inlined
+     * function bodies are left out.
+     */
+    public Map<Integer, Long> getBlockCounts() {
+        Map<Integer, Long> counts = new java.util.TreeMap<>();
+        if (blockCounts != null) {
+            BasicBlocks blocks = lastOptimized.blocks();
+            for (int b = 0; b < blockCounts.length; b++) {
+                if (blocks.firstInstruction(b) < lastOptimized.getOriginalSize()) {
+                    counts.put(blocks.firstInstruction(b), blockCounts[b]);
+                }
+            }
+        }
+        return counts;
+    }
+
+    Label dispatch(SInstruction instruction, ExecutionContext context) {
+        if (instruction instanceof semulator.instructions.QuoteInstruction quoteInstruction) {
+            return executeQuoteInstruction(quoteInstruction, context);
+        } else if (instruction instanceof semulator.instructions.JumpEqualFunctionInstruction jumpEqualFunctionInstruction) {
+            return executeJumpEqualFunctionInstruction(jumpEqualFunctionInstruction, context);
+        }
+        return instruction.execute(context);
+    }
+
+    private synchronized DegreeEmulator degreeEmulator(SProgramImpl programImpl) {
+        if (degreeEmulator == null || degreeEmulator.degree() != emulatedDegree) {
+            degreeEmulator = new DegreeEmulator(this, programImpl, emulatedDegree);
+            expansion = null;
+        }
+        return degreeEmulator;
+    }
+
+    /** The expansion at the emulated degree, expanded as the runs reach it. */
+    private synchronized DemandExpansion demandExpansion(SProgramImpl programImpl) {
+        if (demandExpansion == null || demandExpansion.degree() != emulatedDegree) {
+            demandExpansion = new DemandExpansion(programImpl, emulatedDegree);
+        }
+        return demandExpansion;
+    }
+
+    /** The expansion at the emulated degree in mapped files, written once. */
+    private synchronized MappedExpansion mappedExpansion(SProgramImpl programImpl) {
+        if (mappedExpansion == null || mappedExpansion.degree() != emulatedDegree) {
+            if (mappedExpansion != null) {
+                mappedExpansion.close();
+                mappedExpansion = null;
+            }
+            try {
+                mappedExpansion = MappedExpansion.create(programImpl, emulatedDegree);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write the expansion to disk", e);
+            }
+        }
+        return mappedExpansion;
+    }
+
+    /** The instructions of expandToDegree at the emulated degree, built once. */
+    private synchronized List<SInstruction> expansion(SProgramImpl programImpl) {
+        if (expansion == null) {
+            expansion = programImpl.expandToDegree(emulatedDegree).instructions();
+        }
+        return expansion;
+    }
+
+    /** Summary of a function body, derived once per body (null if it has none). */
+    private FunctionSummary summary(String functionName, List<SInstruction> body,
+            Map<String, List<SInstruction>> functions) {
+        synchronized (summaries) {
+            if (!summaries.containsKey(body)) {
+                OptimizedProgram optimized = optimizedCode(body, true);
+                summaries.put(body, optimized == null ? null
+                        : FunctionSummary.build(functionName, optimized, functions::containsKey));
+            }
+            return summaries.get(body);
+        }
+    }
+
+    /** Callee of a summary: a plain call with already evaluated arguments. */
+    private long callFunction(String functionName, long[] arguments) {
+        var functions = ((SProgramImpl) program).getFunctions();
+        return executeFunctionBody(functionName, functions.get(functionName),
+                new LocalExecutionContext(boxed(arguments)));
+    }
+
+    private static Long[] boxed(long[] values) {
+        Long[] boxed = new Long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boxed[i] = values[i];
+        }
+        return boxed;
+    }
+
+    /** Optimized copy of a code list, built once per list (null if it cannot be optimized). */
+    OptimizedProgram optimizedCode(List<SInstruction> code, boolean functionBody) {
+        synchronized (optimizedCode) {
+            if (!optimizedCode.containsKey(code)) {
+                optimizedCode.put(code, passManager.optimize(code, functionBody));
+            }
+            return optimizedCode.get(code);
+        }
+    }
+
+    /**
+     * Called once per interpreted instruction (main program and function bodies),
+     * or once per block in the optimized and compiled loops.
+     * The cancel flag is read every step; the interrupt flag and the deadline are
+     * polled every 1024 steps to keep the hot loop cheap.
+     */
+    void checkStop(long nextCycles) {
+        if (cancelRequested) {
+            throw new ExecutionStoppedException(RunOutcome.Status.CANCELLED, "Run cancelled");
+        }
+        if (limits.hasCycleLimit() && totalCycles + nextCycles > limits.maxCycles()) {
+            throw new ExecutionStoppedException(RunOutcome.Status.CYCLE_LIMIT,
+                    "Cycle limit of " + limits.maxCycles() + " reached");
+        }
+        // Counted per thread; the shared total (forked argument tasks included) only at each poll
+        long[] counts = threadSteps.get();
+        if (++counts[1] == 0x400) {
+            counts[1] = 0;
+            long step = steps.addAndGet(0x400);
+            if (Thread.currentThread().isInterrupted()) {
+                cancelRequested = true;
+                throw new ExecutionStoppedException(RunOutcome.Status.CANCELLED, "Run interrupted");
+            }
+            if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0) {
+                throw new ExecutionStoppedException(RunOutcome.Status.TIMED_OUT,
+                        "Run exceeded timeout of " + limits.timeout());
+            }
+            if (stepBudget != 0 && step > stepBudget) {
+                throw new ExecutionStoppedException(RunOutcome.Status.CANCELLED,
+                        "Evaluation exceeded " + stepBudget + " steps");
+            }
+        }
+    }
+
     private Map<String, Integer> buildLabelMap(List<SInstruction> instructions) {
         Map<String, Integer> labelMap = new HashMap<>();
 
@@ -137,13 +958,15 @@ public class ProgramExecutorImpl implements ProgramExecutor {
         return Map.of();
     }
 
-    public int getTotalCycles() {
+    public long getTotalCycles() {
         return totalCycles;
     }
 
     // Simple in-memory execution context that defaults variables to 0L.
     private static final class LocalExecutionContext implements ExecutionContext {
         private final Map<Variable, Long> state = new HashMap<>();
+        // Unevaluated (call-by-need) inputs, forced on first read
+        private Map<Variable, LongSupplier> pending = null;
 
         LocalExecutionContext(Long... input) {
             if (input != null) {
@@ -156,14 +979,40 @@ public class ProgramExecutorImpl implements ProgramExecutor {
 
         @Override
         public long getVariableValue(Variable v) {
+            if (pending != null) {
+                LongSupplier thunk = pending.remove(v);
+                if (thunk != null) {
+                    long value = thunk.getAsLong();
+                    state.put(v, value);
+                    return value;
+                }
+            }
             return state.getOrDefault(v, 0L);
         }
 
         @Override
         public void updateVariable(Variable v, long value) {
+            if (pending != null) {
+                pending.remove(v);
+            }
             state.put(v, value);
         }
 
+        void forget(java.util.Set<Variable> variables) {
+            if (!variables.isEmpty()) {
+                state.keySet().removeAll(variables);
+            }
+        }
+
+        void defer(int inputNumber, LongSupplier thunk) {
+            if (pending == null) {
+                pending = new HashMap<>();
+            }
+            Variable inputVar = new VariableImpl(VariableType.INPUT, inputNumber);
+            state.remove(inputVar);
+            pending.put(inputVar, thunk);
+        }
+
         public Map<Variable, Long> getAllVariables() {
             return new HashMap<>(state);
         }
@@ -173,13 +1022,13 @@ public class ProgramExecutorImpl implements ProgramExecutor {
             ExecutionContext context) {
         try {
             // Get the function definition from the program
-            if (!(program instanceof semulator.program.SProgramImpl)) {
+            if (!(program instanceof SProgramImpl)) {
                 // If we can't get the function, just assign 0 as fallback
                 context.updateVariable(quoteInstruction.getVariable(), 0L);
                 return FixedLabel.EMPTY;
             }
 
-            semulator.program.SProgramImpl programImpl = (semulator.program.SProgramImpl) program;
+            SProgramImpl programImpl = (SProgramImpl) program;
             var functions = programImpl.getFunctions();
             String functionName = quoteInstruction.getFunctionName();
 
@@ -189,48 +1038,28 @@ public class ProgramExecutorImpl implements ProgramExecutor {
                 return FixedLabel.EMPTY;
             }
 
+            Long folded = foldedCall(quoteInstruction);
+            if (folded != null) {
+                context.updateVariable(quoteInstruction.getVariable(), folded);
+                return FixedLabel.EMPTY;
+            }
+
             // Get the function body
-            var functionInstructions = functions.get(functionName);
+            var functionInstructions = calleeBody(quoteInstruction, functions.get(functionName));
 
             // Create a new execution context for the function
-            java.util.List<Long> functionInputs = new java.util.ArrayList<>();
-            try {
-                for (semulator.instructions.FunctionArgument arg : quoteInstruction.getFunctionArguments()) {
-                    if (arg.isFunctionCall()) {
-                        // For function calls, we need to execute them first
-                        semulator.instructions.FunctionCall call = arg.asFunctionCall();
-                        try {
-                            long nestedResult = executeNestedFunctionCall(call, context, functions);
-                            functionInputs.add(nestedResult);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            functionInputs.add(0L);
-                        }
-                    } else {
-                        semulator.variable.Variable var = arg.asVariable();
-                        if (var.getType() == semulator.variable.VariableType.Constant) {
-                            functionInputs.add((long) var.getNumber());
-                        } else {
-                            // Get the value from the current execution context
-                            functionInputs.add(context.getVariableValue(var));
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw e;
-            }
-
-            LocalExecutionContext functionContext = new LocalExecutionContext(functionInputs.toArray(new Long[0]));
+            LocalExecutionContext functionContext = quoteContext(quoteInstruction, context, functions);
 
             // Execute the function body
-            long functionResult = executeFunctionBody(functionInstructions, functionContext);
+            long functionResult = executeFunctionBody(functionName, functionInstructions, functionContext);
 
             // Assign the result to the target variable
             context.updateVariable(quoteInstruction.getVariable(), functionResult);
 
             return FixedLabel.EMPTY;
 
+        } catch (ExecutionStoppedException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
             // Fallback: assign 0 to the target variable
@@ -240,24 +1069,97 @@ public class ProgramExecutorImpl implements ProgramExecutor {
     }
 
     /**
-     * Execute a nested function call and return its result
+     * The new context of a QUOTE's call: its arguments evaluated in the caller's
+     * context (or deferred, with lazy arguments).
+     */
+    private LocalExecutionContext quoteContext(semulator.instructions.QuoteInstruction quoteInstruction,
+            ExecutionContext context, Map<String, List<SInstruction>> functions) {
+        java.util.List<Long> functionInputs = new java.util.ArrayList<>();
+        java.util.List<semulator.instructions.FunctionArgument> arguments = quoteInstruction.getFunctionArguments();
+        // Results of the distinct nested calls of this instruction execution
+        Map<semulator.instructions.FunctionCall, Long> memo = newCallMemo();
+        List<ForkJoinTask<Long>> forked = lazyArguments ? null
+                : forkExpensiveArguments(arguments, context, functions, false, memo);
+        LongSupplier[] deferred = new LongSupplier[arguments.size()];
+        for (int i = 0; i < arguments.size(); i++) {
+            semulator.instructions.FunctionArgument arg = arguments.get(i);
+            if (arg.isFunctionCall() && lazyArguments && isResolvable(arg.asFunctionCall(), functions)) {
+                deferred[i] = lazyArgument(arg.asFunctionCall(), context, functions, true, memo);
+                functionInputs.add(0L);
+            } else if (arg.isFunctionCall()) {
+                // For function calls, we need to execute them first
+                semulator.instructions.FunctionCall call = arg.asFunctionCall();
+                try {
+                    long nestedResult = forked != null && forked.get(i) != null
+                            ? forked.get(i).join()
+                            : executeNestedFunctionCall(call, context, functions, memo);
+                    functionInputs.add(nestedResult);
+                } catch (ExecutionStoppedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    functionInputs.add(0L);
+                }
+            } else {
+                semulator.variable.Variable var = arg.asVariable();
+                if (var.getType() == semulator.variable.VariableType.Constant) {
+                    functionInputs.add((long) var.getNumber());
+                } else {
+                    // Get the value from the current execution context
+                    functionInputs.add(context.getVariableValue(var));
+                }
+            }
+        }
+
+        LocalExecutionContext functionContext = new LocalExecutionContext(functionInputs.toArray(new Long[0]));
+        deferArguments(functionContext, deferred);
+        return functionContext;
+    }
+
+    /**
+     * Execute a nested function call and return its result. All nested calls of
+     * one instruction read the same parent context, so a call (interned at load
+     * time, compared by identity) has a single value per instruction execution and
+     * is computed at most once through memo.
      */
     private long executeNestedFunctionCall(semulator.instructions.FunctionCall call, ExecutionContext parentContext,
-            java.util.Map<String, java.util.List<semulator.instructions.SInstruction>> functions) {
+            java.util.Map<String, java.util.List<semulator.instructions.SInstruction>> functions,
+            Map<semulator.instructions.FunctionCall, Long> memo) {
+
+        Long memoized = memo.get(call);
+        if (memoized != null) {
+            return memoized;
+        }
+        Long folded = foldedCall(call);
+        if (folded != null) {
+            return folded;
+        }
 
         // Get the function body for the nested function
         java.util.List<semulator.instructions.SInstruction> nestedFunctionBody = functions.get(call.getFunctionName());
         if (nestedFunctionBody == null) {
             throw new IllegalArgumentException("Function '" + call.getFunctionName() + "' not found");
         }
+        nestedFunctionBody = calleeBody(call, nestedFunctionBody);
 
         // Create execution context for the nested function
         java.util.List<Long> nestedInputs = new java.util.ArrayList<>();
-        for (semulator.instructions.FunctionArgument arg : call.getArguments()) {
-            if (arg.isFunctionCall()) {
+        java.util.List<semulator.instructions.FunctionArgument> arguments = call.getArguments();
+        boolean lazy = lazyArguments && isResolvable(call, functions);
+        List<ForkJoinTask<Long>> forked = lazyArguments ? null
+                : forkExpensiveArguments(arguments, parentContext, functions, true, memo);
+        LongSupplier[] deferred = new LongSupplier[arguments.size()];
+        for (int i = 0; i < arguments.size(); i++) {
+            semulator.instructions.FunctionArgument arg = arguments.get(i);
+            if (arg.isFunctionCall() && lazy) {
+                deferred[i] = lazyArgument(arg.asFunctionCall(), parentContext, functions, false, memo);
+                nestedInputs.add(0L);
+            } else if (arg.isFunctionCall()) {
                 // Recursively execute nested function calls
                 semulator.instructions.FunctionCall nestedCall = arg.asFunctionCall();
-                long nestedResult = executeNestedFunctionCall(nestedCall, parentContext, functions);
+                long nestedResult = forked != null && forked.get(i) != null
+                        ? forked.get(i).join()
+                        : executeNestedFunctionCall(nestedCall, parentContext, functions, memo);
                 nestedInputs.add(nestedResult);
             } else {
                 semulator.variable.Variable var = arg.asVariable();
@@ -272,9 +1174,11 @@ public class ProgramExecutorImpl implements ProgramExecutor {
         }
 
         LocalExecutionContext nestedContext = new LocalExecutionContext(nestedInputs.toArray(new Long[0]));
+        deferArguments(nestedContext, deferred);
 
         // Execute the nested function body
-        long result = executeFunctionBody(nestedFunctionBody, nestedContext);
+        long result = executeFunctionBody(call.getFunctionName(), nestedFunctionBody, nestedContext);
+        memo.put(call, result);
         return result;
     }
 
@@ -292,6 +1196,8 @@ public class ProgramExecutorImpl implements ProgramExecutor {
                 return FixedLabel.EMPTY; // Continue if not equal
             }
 
+        } catch (ExecutionStoppedException e) {
+            throw e;
         } catch (Exception e) {
             System.err.println("Error executing jump equal function instruction: " + e.getMessage());
             // Fallback: don't jump
@@ -304,11 +1210,11 @@ public class ProgramExecutorImpl implements ProgramExecutor {
             ExecutionContext context) {
         try {
             // Get the function definition from the program
-            if (!(program instanceof semulator.program.SProgramImpl)) {
+            if (!(program instanceof SProgramImpl)) {
                 return 0L; // Fallback
             }
 
-            semulator.program.SProgramImpl programImpl = (semulator.program.SProgramImpl) program;
+            SProgramImpl programImpl = (SProgramImpl) program;
             var functions = programImpl.getFunctions();
             String functionName = jumpEqualFunctionInstruction.getFunctionName();
 
@@ -316,8 +1222,13 @@ public class ProgramExecutorImpl implements ProgramExecutor {
                 return 0L; // Fallback
             }
 
+            Long folded = foldedCall(jumpEqualFunctionInstruction);
+            if (folded != null) {
+                return folded;
+            }
+
             // Get the function body
-            var functionInstructions = functions.get(functionName);
+            var functionInstructions = calleeBody(jumpEqualFunctionInstruction, functions.get(functionName));
 
             // Create a new execution context for the function
             java.util.List<Long> functionInputs = new java.util.ArrayList<>();
@@ -339,26 +1250,256 @@ public class ProgramExecutorImpl implements ProgramExecutor {
             LocalExecutionContext functionContext = new LocalExecutionContext(functionInputs.toArray(new Long[0]));
 
             // Execute the function body and return the result
-            return executeFunctionBody(functionInstructions, functionContext);
+            return executeFunctionBody(functionName, functionInstructions, functionContext);
 
+        } catch (ExecutionStoppedException e) {
+            throw e;
         } catch (Exception e) {
             System.err.println("Error executing function for jump equal: " + e.getMessage());
             return 0L; // Fallback
         }
     }
 
-    private long executeFunctionBody(java.util.List<semulator.instructions.SInstruction> functionInstructions,
+    /**
+     * Run a function body and return its y. A call in tail position (a QUOTE into
+     * y after which the body ends, or a summary whose result is a call) does not
+     * nest: the callee replaces the current frame in this loop, so chains of
+     * tail calls, within one function or between several, run in constant
+     * stack and memory.
+     */
+    private long executeFunctionBody(String functionName,
+            java.util.List<semulator.instructions.SInstruction> functionInstructions,
             LocalExecutionContext functionContext) {
+        if (callDepthBudget != 0 && callDepth >= callDepthBudget) {
+            throw new ExecutionStoppedException(RunOutcome.Status.CANCELLED,
+                    "Evaluation nested calls more than " + callDepthBudget + " deep");
+        }
+        callDepth++;
+        try {
+            Frame frame = new Frame(functionName, functionInstructions, functionContext);
+            while (true) {
+                long result = runFrame(frame);
+                if (!frame.replaced) {
+                    return result;
+                }
+                frame.replaced = false;
+            }
+        } finally {
+            callDepth--;
+        }
+    }
+
+    /** The function a body loop is running; a tail call replaces its contents. */
+    private static final class Frame {
+        String functionName;
+        List<SInstruction> body;
+        LocalExecutionContext context;
+        boolean replaced;
+
+        Frame(String functionName, List<SInstruction> body, LocalExecutionContext context) {
+            this.functionName = functionName;
+            this.body = body;
+            this.context = context;
+        }
+
+        void replace(String functionName, List<SInstruction> body, LocalExecutionContext context) {
+            this.functionName = functionName;
+            this.body = body;
+            this.context = context;
+            this.replaced = true;
+        }
+    }
+
+    /**
+     * Make a QUOTE in tail position replace the frame instead of calling. False
+     * when the call has to go through executeQuoteInstruction (missing function,
+     * folded call), which then handles it as usual. Arguments that fail get the
+     * QUOTE fallback here, y = 0, which ends the body: they are not evaluated twice.
+     */
+    private boolean tailCall(semulator.instructions.QuoteInstruction quoteInstruction, ExecutionContext context,
+            Frame frame) {
+        if (!(program instanceof SProgramImpl programImpl)) {
+            return false;
+        }
+        var functions = programImpl.getFunctions();
+        String functionName = quoteInstruction.getFunctionName();
+        if (!functions.containsKey(functionName) || foldedCall(quoteInstruction) != null) {
+            return false;
+        }
+        LocalExecutionContext calleeContext;
+        try {
+            calleeContext = quoteContext(quoteInstruction, context, functions);
+        } catch (ExecutionStoppedException e) {
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+            context.updateVariable(quoteInstruction.getVariable(), 0L);
+            return true;
+        }
+        frame.replace(functionName, calleeBody(quoteInstruction, functions.get(functionName)), calleeContext);
+        return true;
+    }
+
+    private static boolean isTailCandidate(SInstruction instruction) {
+        return instruction instanceof semulator.instructions.QuoteInstruction
+                && instruction.getVariable() != null && instruction.getVariable().isResult();
+    }
+
+    /**
+     * Indices of the QUOTEs into y of a function body after which only GOTOs and
+     * NEUTRALs lead to the end of the body (computed once per body).
+     */
+    private java.util.BitSet tailCalls(List<SInstruction> body) {
+        synchronized (tailCallCache) {
+            java.util.BitSet cached = tailCallCache.get(body);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Map<String, Integer> labelToIndex = buildLabelMap(body);
+        java.util.BitSet tails = new java.util.BitSet();
+        for (int i = 0; i < body.size(); i++) {
+            if (!isTailCandidate(body.get(i))) {
+                continue;
+            }
+            java.util.BitSet seen = new java.util.BitSet();
+            int next = i + 1;
+            while (next < body.size() && !seen.get(next)) {
+                seen.set(next);
+                SInstruction instruction = body.get(next);
+                if (instruction instanceof semulator.instructions.NoOpInstruction) {
+                    next++;
+                } else if (instruction instanceof semulator.instructions.GotoLabelInstruction gotoLabel) {
+                    Label target = gotoLabel.getTarget();
+                    if (target == FixedLabel.EXIT || "EXIT".equals(target.getLabel())) {
+                        next = body.size();
+                    } else if (target == FixedLabel.EMPTY) {
+                        next++;
+                    } else {
+                        Integer targetIndex = labelToIndex.get(target.getLabel());
+                        next = targetIndex != null ? targetIndex : next + 1;
+                    }
+                } else {
+                    break;
+                }
+            }
+            if (next >= body.size()) {
+                tails.set(i);
+            }
+        }
+        synchronized (tailCallCache) {
+            tailCallCache.put(body, tails);
+        }
+        return tails;
+    }
+
+    private long runFrame(Frame frame) {
+        String functionName = frame.functionName;
+        List<SInstruction> functionInstructions = frame.body;
+        LocalExecutionContext functionContext = frame.context;
         // Execute the function body and return the result
         // The result is stored in the 'y' variable (Variable.RESULT)
 
+        // Profile (inclusive instruction count) used to decide what to parallelize
+        long[] profileSteps = parallelArguments ? threadSteps.get() : null;
+        long profileStart = profileSteps != null ? profileSteps[0] : 0;
+
+        if (functionSummaries && program instanceof SProgramImpl programImpl) {
+            FunctionSummary summary = summary(functionName, functionInstructions, programImpl.getFunctions());
+            if (summary != null) {
+                checkStop(0);
+                FunctionSummary.Outcome outcome = summary.evaluate(
+                        i -> functionContext.getVariableValue(new VariableImpl(VariableType.INPUT, i)),
+                        this::callFunction, true);
+                FunctionSummary.TailCall tail = outcome.tailCall();
+                if (tail != null) {
+                    frame.replace(tail.functionName(), programImpl.getFunctions().get(tail.functionName()),
+                            new LocalExecutionContext(boxed(tail.arguments())));
+                }
+                return outcome.result();
+            }
+        }
+
+        Hotness counters = null;
+        if (tier == ExecutionTier.ADAPTIVE) {
+            counters = hotness.computeIfAbsent(functionName, n -> new Hotness());
+            counters.invocations.increment();
+            ClosureCompiler.CompiledCode compiled = promoted(functionName, counters);
+            if (compiled != null) {
+                return closureCompiler.invoke(compiled, functionContext);
+            }
+        }
+
+        OptimizedProgram optimized = optimizes() ? optimizedCode(functionInstructions, true) : null;
+        if (optimized != null) {
+            // Bodies are not charged, so the block loop ignores the cycle corrections
+            BasicBlocks blocks = optimized.blocks();
+            int block = blocks.entry();
+            while (block != BasicBlocks.EXIT) {
+                checkStop(0);
+                AffineLoop loop = blocks.loopAt(block);
+                if (loop != null) {
+                    runLoop(loop, functionContext);
+                    block = loop.exitTarget();
+                    continue;
+                }
+                SInstruction[] body = blocks.body(block);
+                if (profileSteps != null) {
+                    profileSteps[0] += body.length + 1;
+                }
+                SInstruction last = blocks.terminator(block);
+                // A block that ends the body with a QUOTE into y ends it with a tail call
+                SInstruction tail = blocks.fallTarget(block) != BasicBlocks.EXIT ? null
+                        : last != null ? last
+                        : body.length > 0 ? body[body.length - 1] : null;
+                boolean tailInBody = last == null && isTailCandidate(tail);
+                for (int i = 0, n = tailInBody ? body.length - 1 : body.length; i < n; i++) {
+                    dispatch(body[i], functionContext);
+                }
+                if (isTailCandidate(tail)
+                        && tailCall((semulator.instructions.QuoteInstruction) tail, functionContext, frame)) {
+                    return 0;
+                }
+                if (tailInBody) {
+                    dispatch(tail, functionContext);
+                }
+                block = last == null || dispatch(last, functionContext) == FixedLabel.EMPTY
+                        ? blocks.fallTarget(block)
+                        : blocks.jumpTarget(block);
+            }
+            if (profileSteps != null) {
+                callProfiles.computeIfAbsent(functionName, n -> new CallProfile())
+                        .record(profileSteps[0] - profileStart);
+            }
+            return functionContext.getVariableValue(Variable.RESULT);
+        }
+
         // Build label-to-instruction map for efficient jumping within the function
         Map<String, Integer> labelToIndex = buildLabelMap(functionInstructions);
+        java.util.BitSet tails = tailCalls(functionInstructions);
 
         int instructionIndex = 0;
         while (instructionIndex < functionInstructions.size()) {
             semulator.instructions.SInstruction instruction = functionInstructions.get(instructionIndex);
-            semulator.label.Label nextLabel = instruction.execute(functionContext);
+            // Function bodies are not charged per instruction, but still honour cancel/timeout
+            checkStop(0);
+            if (profileSteps != null) {
+                profileSteps[0]++;
+            }
+
+            // Nested calls go through this executor (not QuoteInstruction.execute) so
+            // cancellation reaches every level of the call tree
+            semulator.label.Label nextLabel;
+            if (instruction instanceof semulator.instructions.QuoteInstruction quoteInstruction) {
+                if (tails.get(instructionIndex) && tailCall(quoteInstruction, functionContext, frame)) {
+                    return 0;
+                }
+                nextLabel = executeQuoteInstruction(quoteInstruction, functionContext);
+            } else if (instruction instanceof semulator.instructions.JumpEqualFunctionInstruction jumpEqualFunctionInstruction) {
+                nextLabel = executeJumpEqualFunctionInstruction(jumpEqualFunctionInstruction, functionContext);
+            } else {
+                nextLabel = instruction.execute(functionContext);
+            }
 
             // Handle jumps within the function
             if (nextLabel == semulator.label.FixedLabel.EXIT) {
@@ -371,6 +1512,9 @@ public class ProgramExecutorImpl implements ProgramExecutor {
                 }
                 Integer targetIndex = labelToIndex.get(labelName);
                 if (targetIndex != null) {
+                    if (counters != null && targetIndex <= instructionIndex) {
+                        counters.backEdges.increment();
+                    }
                     instructionIndex = targetIndex;
                 } else {
                     // Label not found, continue to next instruction
@@ -382,16 +1526,170 @@ public class ProgramExecutorImpl implements ProgramExecutor {
             }
         }
 
+        if (profileSteps != null) {
+            callProfiles.computeIfAbsent(functionName, n -> new CallProfile()).record(profileSteps[0] - profileStart);
+        }
+
         // Return the value of the 'y' variable (the function's output)
         return functionContext.getVariableValue(semulator.variable.Variable.RESULT);
     }
 
+    /**
+     * Fork the function-call arguments that are expensive enough to run in
+     * parallel. Returns null (evaluate everything in order) unless at least two
+     * arguments pass the threshold. Forked values are joined in argument order by
+     * the caller, so binding order is unchanged.
+     *
+     * For nested calls an exception in one argument aborts the remaining ones, so
+     * there we only fork when every call in the argument list can be resolved;
+     * otherwise a forked sibling could keep running after the sequential code
+     * would have stopped.
+     */
+    private List<ForkJoinTask<Long>> forkExpensiveArguments(java.util.List<semulator.instructions.FunctionArgument> arguments,
+            ExecutionContext context, Map<String, List<SInstruction>> functions, boolean nested,
+            Map<semulator.instructions.FunctionCall, Long> memo) {
+        if (!parallelArguments || arguments.size() < 2) {
+            return null;
+        }
+        int expensive = 0;
+        boolean[] fork = new boolean[arguments.size()];
+        for (int i = 0; i < arguments.size(); i++) {
+            semulator.instructions.FunctionArgument arg = arguments.get(i);
+            if (!arg.isFunctionCall()) {
+                continue;
+            }
+            semulator.instructions.FunctionCall call = arg.asFunctionCall();
+            if (!isResolvable(call, functions)) {
+                if (nested) {
+                    return null;
+                }
+                continue;
+            }
+            if (estimateCost(call, functions) >= parallelCostThreshold) {
+                fork[i] = true;
+                expensive++;
+            }
+        }
+        if (expensive < 2) {
+            return null;
+        }
+
+        // The caller's context is only read while its arguments are evaluated, so the
+        // tasks can share it
+        List<ForkJoinTask<Long>> forked = new java.util.ArrayList<>(
+                java.util.Collections.nCopies(arguments.size(), null));
+        Map<semulator.instructions.FunctionCall, ForkJoinTask<Long>> tasks = new java.util.IdentityHashMap<>();
+        for (int i = 0; i < arguments.size(); i++) {
+            if (fork[i]) {
+                semulator.instructions.FunctionCall call = arguments.get(i).asFunctionCall();
+                // Identical siblings share one task
+                forked.set(i, tasks.computeIfAbsent(call, c -> ForkJoinPool.commonPool()
+                        .submit(() -> executeNestedFunctionCall(c, context, functions, memo))));
+            }
+        }
+        return forked;
+    }
+
+    /**
+     * Thunk for a call argument. It runs while the caller is suspended inside the
+     * callee, so the caller's variables still hold their values from the moment
+     * of the call. Top-level QUOTE arguments keep the eager fallback of 0 on error.
+     */
+    private LongSupplier lazyArgument(semulator.instructions.FunctionCall call, ExecutionContext callerContext,
+            Map<String, List<SInstruction>> functions, boolean fallbackToZero,
+            Map<semulator.instructions.FunctionCall, Long> memo) {
+        return () -> {
+            if (!fallbackToZero) {
+                return executeNestedFunctionCall(call, callerContext, functions, memo);
+            }
+            try {
+                return executeNestedFunctionCall(call, callerContext, functions, memo);
+            } catch (ExecutionStoppedException e) {
+                throw e;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return 0L;
+            }
+        };
+    }
+
+    /**
+     * Per-instruction memo of nested call results, keyed by call identity. Shared
+     * with fork/join tasks when parallel arguments are enabled.
+     */
+    private Map<semulator.instructions.FunctionCall, Long> newCallMemo() {
+        Map<semulator.instructions.FunctionCall, Long> memo = new java.util.IdentityHashMap<>();
+        return parallelArguments ? java.util.Collections.synchronizedMap(memo) : memo;
+    }
+
+    private static void deferArguments(LocalExecutionContext context, LongSupplier[] deferred) {
+        for (int i = 0; i < deferred.length; i++) {
+            if (deferred[i] != null) {
+                context.defer(i + 1, deferred[i]);
+            }
+        }
+    }
+
+    private boolean isResolvable(semulator.instructions.FunctionCall call, Map<String, List<SInstruction>> functions) {
+        if (!functions.containsKey(call.getFunctionName())) {
+            return false;
+        }
+        for (semulator.instructions.FunctionArgument arg : call.getArguments()) {
+            if (arg.isFunctionCall() && !isResolvable(arg.asFunctionCall(), functions)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long estimateCost(semulator.instructions.FunctionCall call, Map<String, List<SInstruction>> functions) {
+        String name = call.getFunctionName();
+        CallProfile profile = callProfiles.get(name);
+        long cost;
+        if (profile != null && profile.calls.sum() > 0) {
+            cost = profile.steps.sum() / profile.calls.sum();
+        } else {
+            cost = staticCostCache.computeIfAbsent(name, n -> {
+                long cycles = 0;
+                for (SInstruction instruction : functions.get(n)) {
+                    cycles += instruction.cycles();
+                }
+                return cycles;
+            });
+        }
+        for (semulator.instructions.FunctionArgument arg : call.getArguments()) {
+            if (arg.isFunctionCall()) {
+                cost += estimateCost(arg.asFunctionCall(), functions);
+            }
+        }
+        return cost;
+    }
+
+    private static final class Hotness {
+        final LongAdder invocations = new LongAdder();
+        final LongAdder backEdges = new LongAdder();
+        volatile ClosureCompiler.CompiledCode compiled = null;
+        volatile boolean decided = false;
+    }
+
+    private static final class CallProfile {
+        final LongAdder calls = new LongAdder();
+        final LongAdder steps = new LongAdder();
+
+        void record(long instructionCount) {
+            calls.increment();
+            steps.add(instructionCount);
+        }
+    }
+
     /**
      * Format an instruction for readable console output
      */
     private String formatInstruction(SInstruction instruction) {
         if (instruction instanceof semulator.instructions.IncreaseInstruction) {
             return instruction.getVariable() + " <- " + instruction.getVariable() + " + 1";
+        } else if (instruction instanceof semulator.instructions.RepeatedIncreaseInstruction run) {
+            return instruction.getVariable() + " <- " + instruction.getVariable() + " + 1 (x" + run.getCount() + ")";
         } else if (instruction instanceof semulator.instructions.DecreaseInstruction) {
             return instruction.getVariable() + " <- " + instruction.getVariable() + " - 1";
         } else if (instruction instanceof semulator.instructions.NoOpInstruction) {
@@ -0,0 +1,361 @@
+package semulator.execution;
+
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.FunctionCall;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.SInstruction;
+import semulator.label.FixedLabel;
+import semulator.label.Label;
+import semulator.program.SProgram;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interpreter with an explicit frame stack instead of Java recursion, so a run can
+ * be stopped after any number of steps and continued later from exactly the same
+ * point (used by {@link FairScheduler}).
+ *
+ * Semantics (labels, QUOTE/JEF fallbacks, cycle charging) are the same as
+ * {@link ProgramExecutorImpl}: only main-program instructions are charged, with
+ * their static cycles(), at the moment they are dispatched.
+ */
+public final class ResumableExecution {
+
+    private final SProgram program;
+    private final Map<String, List<SInstruction>> functions;
+    private final RunLimits limits;
+    private final Map<List<SInstruction>, Map<String, Integer>> labelMaps = new IdentityHashMap<>();
+
+    // Top of the stack is the frame being executed
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private final BodyFrame main;
+
+    private long totalCycles = 0;
+    private long steps = 0;
+    private volatile boolean cancelRequested = false;
+
+    public ResumableExecution(SProgram program, RunLimits limits, Long... input) {
+        this.program = program;
+        this.functions = program instanceof SProgramImpl impl ? impl.getFunctions() : Map.of();
+        this.limits = limits == null ? RunLimits.NONE : limits;
+        this.main = newBody(null, program.getInstructions(), input);
+        stack.push(main);
+    }
+
+    /**
+     * Execution positioned before main-program instruction pc, with the given
+     * variables and cycles already spent (e.g. a paused debugger session).
+     */
+    public static ResumableExecution atInstruction(SProgram program, RunLimits limits, int pc,
+            Map<Variable, Long> variables, long cycles) {
+        if (pc < 0 || pc > program.getInstructions().size()) {
+            throw new IllegalArgumentException("pc out of range: " + pc);
+        }
+        ResumableExecution execution = new ResumableExecution(program, limits);
+        execution.main.registers.putAll(variables);
+        execution.main.pc = pc;
+        execution.totalCycles = cycles;
+        return execution;
+    }
+
+    /**
+     * Execute at most maxSteps interpreter steps (an instruction, or one argument
+     * of a QUOTE/JEF call being evaluated).
+     *
+     * @return true when the program has finished
+     */
+    public boolean runSlice(long maxSteps) {
+        long budget = maxSteps;
+        while (!stack.isEmpty() && budget-- > 0) {
+            if (cancelRequested) {
+                throw new ExecutionStoppedException(RunOutcome.Status.CANCELLED, "Run cancelled");
+            }
+            steps++;
+            Frame top = stack.peek();
+            if (top instanceof BodyFrame body) {
+                stepBody(body);
+            } else {
+                stepCall((CallFrame) top);
+            }
+        }
+        return stack.isEmpty();
+    }
+
+    /**
+     * Finish any function call in progress, so the execution is positioned between
+     * two main-program instructions.
+     *
+     * @return true when the program has finished
+     */
+    public boolean runToTopLevel() {
+        while (stack.size() > 1) {
+            runSlice(1);
+        }
+        return stack.isEmpty();
+    }
+
+    public boolean isFinished() {
+        return stack.isEmpty();
+    }
+
+    public long getResult() {
+        return main.getVariableValue(Variable.RESULT);
+    }
+
+    public long getTotalCycles() {
+        return totalCycles;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    /** Current call depth (1 while the main program is executing directly). */
+    public int getDepth() {
+        return stack.size();
+    }
+
+    public Map<Variable, Long> variableState() {
+        return new HashMap<>(main.registers);
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    public SProgram getProgram() {
+        return program;
+    }
+
+    /** Index of the next main-program instruction. */
+    public int getProgramCounter() {
+        return main.pc;
+    }
+
+    public RunLimits getLimits() {
+        return limits;
+    }
+
+    // Access for ExecutionCheckpoint
+
+    Deque<Frame> frames() {
+        return stack;
+    }
+
+    BodyFrame mainFrame() {
+        return main;
+    }
+
+    Map<String, List<SInstruction>> functions() {
+        return functions;
+    }
+
+    void restoreCounters(long cycles, long steps) {
+        this.totalCycles = cycles;
+        this.steps = steps;
+    }
+
+    private void stepBody(BodyFrame body) {
+        if (body.pc >= body.code.size()) {
+            stack.pop();
+            returnFromBody(body.getVariableValue(Variable.RESULT));
+            return;
+        }
+
+        SInstruction instruction = body.code.get(body.pc);
+        if (body == main) {
+            int cycles = instruction.cycles();
+            if (limits.hasCycleLimit() && totalCycles + cycles > limits.maxCycles()) {
+                throw new ExecutionStoppedException(RunOutcome.Status.CYCLE_LIMIT,
+                        "Cycle limit of " + limits.maxCycles() + " reached");
+            }
+            totalCycles += cycles;
+        }
+
+        if (instruction instanceof QuoteInstruction quote) {
+            if (!functions.containsKey(quote.getFunctionName())) {
+                // Function not found, assign 0 as fallback
+                body.updateVariable(quote.getVariable(), 0L);
+                body.pc++;
+                return;
+            }
+            stack.push(new CallFrame(body, instruction, quote.getFunctionName(), quote.getFunctionArguments()));
+        } else if (instruction instanceof JumpEqualFunctionInstruction jef) {
+            if (!functions.containsKey(jef.getFunctionName())) {
+                // Missing function evaluates to 0
+                completeJumpEqual(body, jef, 0L);
+                return;
+            }
+            stack.push(new CallFrame(body, instruction, jef.getFunctionName(), jef.getFunctionArguments()));
+        } else {
+            jump(body, instruction.execute(body));
+        }
+    }
+
+    private void stepCall(CallFrame call) {
+        if (call.next < call.args.size()) {
+            FunctionArgument arg = call.args.get(call.next);
+            if (!arg.isFunctionCall()) {
+                Variable var = arg.asVariable();
+                call.values[call.next++] = var.getType() == VariableType.Constant
+                        ? var.getNumber()
+                        : call.caller.getVariableValue(var);
+            } else if (call.site instanceof JumpEqualFunctionInstruction) {
+                // JEF does not evaluate nested calls (same placeholder as the executor)
+                call.values[call.next++] = 0L;
+            } else {
+                FunctionCall nested = arg.asFunctionCall();
+                if (!functions.containsKey(nested.getFunctionName())) {
+                    failArgument();
+                } else {
+                    stack.push(new CallFrame(call.caller, null, nested.getFunctionName(), nested.getArguments()));
+                }
+            }
+            return;
+        }
+
+        Long[] inputs = new Long[call.values.length];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = call.values[i];
+        }
+        call.bodyStarted = true;
+        stack.push(newBody(call.functionName, functions.get(call.functionName), inputs));
+    }
+
+    /**
+     * A nested call refers to a missing function: the whole top-level argument it
+     * belongs to evaluates to 0, like the exception fallback in the executor.
+     */
+    private void failArgument() {
+        CallFrame call = (CallFrame) stack.peek();
+        while (!call.isTopLevel()) {
+            stack.pop();
+            call = (CallFrame) stack.peek();
+        }
+        call.values[call.next++] = 0L;
+    }
+
+    private void returnFromBody(long value) {
+        if (stack.isEmpty()) {
+            return; // main program finished
+        }
+        CallFrame call = (CallFrame) stack.pop();
+        if (!call.isTopLevel()) {
+            CallFrame parent = (CallFrame) stack.peek();
+            parent.values[parent.next++] = value;
+        } else if (call.site instanceof JumpEqualFunctionInstruction jef) {
+            completeJumpEqual(call.caller, jef, value);
+        } else {
+            call.caller.updateVariable(call.site.getVariable(), value);
+            call.caller.pc++;
+        }
+    }
+
+    private void completeJumpEqual(BodyFrame body, JumpEqualFunctionInstruction jef, long functionResult) {
+        if (body.getVariableValue(jef.getVariable()) == functionResult) {
+            jump(body, jef.getTarget());
+        } else {
+            body.pc++;
+        }
+    }
+
+    private void jump(BodyFrame body, Label next) {
+        if (next == FixedLabel.EMPTY) {
+            body.pc++;
+        } else if (next == FixedLabel.EXIT || (body != main && "EXIT".equals(next.getLabel()))) {
+            body.pc = body.code.size();
+        } else {
+            Integer target = body.labels.get(next.getLabel());
+            body.pc = target != null ? target : body.pc + 1;
+        }
+    }
+
+    BodyFrame newBody(String function, List<SInstruction> code, Long... input) {
+        BodyFrame body = new BodyFrame(function, code, labelMapOf(code));
+        if (input != null) {
+            for (int i = 0; i < input.length; i++) {
+                body.registers.put(new VariableImpl(VariableType.INPUT, i + 1), input[i] == null ? 0L : input[i]);
+            }
+        }
+        return body;
+    }
+
+    private Map<String, Integer> labelMapOf(List<SInstruction> code) {
+        return labelMaps.computeIfAbsent(code, c -> {
+            Map<String, Integer> map = new HashMap<>();
+            for (int i = 0; i < c.size(); i++) {
+                Label label = c.get(i).getLabel();
+                if (label != null && label != FixedLabel.EMPTY && label != FixedLabel.EXIT
+                        && label.getLabel() != null && !label.getLabel().isEmpty()) {
+                    map.put(label.getLabel(), i); // last definition wins, as in the executor
+                }
+            }
+            return map;
+        });
+    }
+
+    abstract static sealed class Frame permits BodyFrame, CallFrame {
+    }
+
+    /** The main program or a function body being executed. */
+    static final class BodyFrame extends Frame implements ExecutionContext {
+        final String function; // null for the main program
+        final List<SInstruction> code;
+        final Map<String, Integer> labels;
+        final Map<Variable, Long> registers = new HashMap<>();
+        int pc = 0;
+
+        BodyFrame(String function, List<SInstruction> code, Map<String, Integer> labels) {
+            this.function = function;
+            this.code = code;
+            this.labels = labels;
+        }
+
+        @Override
+        public long getVariableValue(Variable v) {
+            return registers.getOrDefault(v, 0L);
+        }
+
+        @Override
+        public void updateVariable(Variable v, long value) {
+            registers.put(v, value);
+        }
+    }
+
+    /**
+     * Argument evaluation and call of a function. Top-level frames belong to a
+     * QUOTE/JEF instruction (site) of the caller body; nested ones to a
+     * (f, ...) argument. Variables in arguments are always read from caller.
+     */
+    static final class CallFrame extends Frame {
+        final BodyFrame caller;
+        final SInstruction site; // null for nested calls
+        final String functionName;
+        final List<FunctionArgument> args;
+        final long[] values;
+        int next = 0;
+        boolean bodyStarted = false;
+
+        CallFrame(BodyFrame caller, SInstruction site, String functionName, List<FunctionArgument> args) {
+            this.caller = caller;
+            this.site = site;
+            this.functionName = functionName;
+            this.args = args;
+            this.values = new long[args.size()];
+        }
+
+        boolean isTopLevel() {
+            return site != null;
+        }
+    }
+}
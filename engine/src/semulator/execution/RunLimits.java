@@ -0,0 +1,34 @@
+package semulator.execution;
+
+import java.time.Duration;
+
+/**
+ * Per-run limits enforced by the interpreter loop.
+ * maxCycles <= 0 means no cycle limit, a null timeout means no wall-clock limit.
+ */
+public record RunLimits(long maxCycles, Duration timeout) {
+
+    public static final RunLimits NONE = new RunLimits(0, null);
+
+    public RunLimits {
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+    }
+
+    public static RunLimits cycles(long maxCycles) {
+        return new RunLimits(maxCycles, null);
+    }
+
+    public static RunLimits timeout(Duration timeout) {
+        return new RunLimits(0, timeout);
+    }
+
+    public boolean hasCycleLimit() {
+        return maxCycles > 0;
+    }
+
+    public boolean hasTimeout() {
+        return timeout != null;
+    }
+}
@@ -0,0 +1,32 @@
+package semulator.execution;
+
+import semulator.variable.Variable;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Result of a single run submitted to {@link RunService}.
+ * For runs that did not complete, result/cycles/variables hold the state at the
+ * moment the interpreter stopped.
+ */
+public record RunOutcome(
+        Status status,
+        long result,
+        long cycles,
+        Map<Variable, Long> variables,
+        Duration elapsed,
+        String message) {
+
+    public enum Status {
+        COMPLETED,
+        CANCELLED,
+        CYCLE_LIMIT,
+        TIMED_OUT,
+        FAILED
+    }
+
+    public boolean isCompleted() {
+        return status == Status.COMPLETED;
+    }
+}
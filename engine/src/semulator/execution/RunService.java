@@ -0,0 +1,167 @@
+package semulator.execution;
+
+import semulator.program.SProgram;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs programs concurrently, one virtual thread per submitted run.
+ *
+ * At most maxConcurrentRuns runs execute at the same time; the rest wait (parked
+ * on their virtual thread) for a permit. Cancelling the returned future stops the
+ * interpreter loop of that run, whether it is still queued or already executing.
+ */
+public final class RunService implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final int maxConcurrentRuns;
+    private final RunLimits defaultLimits;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+
+    public RunService() {
+        this(Runtime.getRuntime().availableProcessors(), RunLimits.NONE);
+    }
+
+    public RunService(int maxConcurrentRuns, RunLimits defaultLimits) {
+        if (maxConcurrentRuns <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRuns must be positive");
+        }
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        this.permits = new Semaphore(maxConcurrentRuns, true);
+        this.defaultLimits = defaultLimits == null ? RunLimits.NONE : defaultLimits;
+    }
+
+    public CompletableFuture<RunOutcome> submit(SProgram program, Long... input) {
+        return submit(program, defaultLimits, input);
+    }
+
+    public CompletableFuture<RunOutcome> submit(SProgram program, RunLimits limits, Long... input) {
+        if (program == null) {
+            throw new IllegalArgumentException("program is null");
+        }
+        ProgramExecutorImpl runner = new ProgramExecutorImpl(program);
+        runner.setLimits(limits == null ? defaultLimits : limits);
+
+        CompletableFuture<RunOutcome> outcome = new CompletableFuture<>();
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        submitted.incrementAndGet();
+        queued.incrementAndGet();
+
+        try {
+            executor.execute(() -> execute(runner, outcome, thread, input));
+        } catch (RuntimeException e) {
+            queued.decrementAndGet();
+            finished.incrementAndGet();
+            throw e;
+        }
+
+        outcome.whenComplete((r, error) -> {
+            if (error instanceof CancellationException) {
+                runner.cancel();
+                // Not started yet: the task sees the future done when it does, and counts itself finished
+                Thread running = thread.get();
+                if (running != null) {
+                    running.interrupt();
+                }
+            }
+        });
+        return outcome;
+    }
+
+    private void execute(ProgramExecutorImpl runner, CompletableFuture<RunOutcome> outcome,
+            AtomicReference<Thread> thread, Long[] input) {
+        thread.set(Thread.currentThread());
+        boolean acquired = false;
+        try {
+            if (!outcome.isDone()) {
+                permits.acquire();
+                acquired = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queued.decrementAndGet();
+        }
+
+        if (!acquired || outcome.isDone()) {
+            // Cancelled (or service closed) while waiting for a permit
+            if (acquired) {
+                permits.release();
+            }
+            outcome.complete(stopped(runner, RunOutcome.Status.CANCELLED, Duration.ZERO, "Run cancelled"));
+            finished.incrementAndGet();
+            return;
+        }
+
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            long result = runner.run(input);
+            outcome.complete(new RunOutcome(RunOutcome.Status.COMPLETED, result, runner.getTotalCycles(),
+                    runner.variableState(), Duration.ofNanos(System.nanoTime() - start), null));
+        } catch (ExecutionStoppedException e) {
+            outcome.complete(stopped(runner, e.getReason(), Duration.ofNanos(System.nanoTime() - start),
+                    e.getMessage()));
+        } catch (Throwable e) {
+            // Any error, not only a stack overflow, fails this run and leaves the service running
+            outcome.complete(stopped(runner, RunOutcome.Status.FAILED, Duration.ofNanos(System.nanoTime() - start),
+                    e.toString()));
+        } finally {
+            inFlight.decrementAndGet();
+            finished.incrementAndGet();
+            permits.release();
+        }
+    }
+
+    private static RunOutcome stopped(ProgramExecutorImpl runner, RunOutcome.Status status, Duration elapsed,
+            String message) {
+        Map<semulator.variable.Variable, Long> vars = runner.variableState();
+        long y = vars.getOrDefault(semulator.variable.Variable.RESULT, 0L);
+        return new RunOutcome(status, y, runner.getTotalCycles(), vars, elapsed, message);
+    }
+
+    /** Runs submitted but still waiting for a concurrency permit. */
+    public int queueDepth() {
+        return queued.get();
+    }
+
+    /** Runs currently executing. */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long submittedCount() {
+        return submitted.get();
+    }
+
+    public long finishedCount() {
+        return finished.get();
+    }
+
+    public int maxConcurrentRuns() {
+        return maxConcurrentRuns;
+    }
+
+    /**
+     * Stops accepting runs and interrupts every queued or running one; their
+     * futures complete with status CANCELLED.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
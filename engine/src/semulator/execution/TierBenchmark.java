@@ -0,0 +1,64 @@
+package semulator.execution;
+
+import semulator.program.ExpansionResult;
+import semulator.program.SProgramImpl;
+
+import java.nio.file.Path;
+
+/**
+ * Compares the execution tiers on one program:
+ *
+ * java semulator.execution.TierBenchmark program.xml degree [input...]
+ *
+ * Every tier runs the expanded program a few times to warm up, then is timed
+ * over the same number of runs. y and cycles are printed next to the time so
+ * a tier that disagrees stands out.
+ */
+public final class TierBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 10;
+
+    private TierBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: TierBenchmark <program.xml> <degree> [input...]");
+            return;
+        }
+        SProgramImpl source = new SProgramImpl("benchmark");
+        String status = source.validate(Path.of(args[0]).toAbsolutePath());
+        if (!"Valid".equals(status)) {
+            System.out.println(status);
+            return;
+        }
+        source.load();
+
+        ExpansionResult expansion = source.expandToDegree(Integer.parseInt(args[1]));
+        SProgramImpl program = new SProgramImpl("expanded");
+        expansion.instructions().forEach(program::addInstruction);
+        program.getFunctions().putAll(source.getFunctions());
+
+        Long[] input = new Long[args.length - 2];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = Long.parseLong(args[i + 2]);
+        }
+
+        System.out.printf("%d instructions, degree %s%n", expansion.instructions().size(), args[1]);
+        for (ExecutionTier tier : ExecutionTier.values()) {
+            ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+            executor.setExecutionTier(tier);
+            long y = 0;
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                y = executor.run(input);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                y = executor.run(input);
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / TIMED_RUNS;
+            System.out.printf("%-12s y=%d cycles=%d %.2f ms/run%n", tier, y, executor.getTotalCycles(), millis);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package semulator.execution;
+
+import java.time.Duration;
+
+/**
+ * One tiering decision of an ADAPTIVE executor (see
+ * {@link ProgramExecutorImpl#getTierDecisions()}).
+ *
+ * @param code        function name, or the program name for a loop of the main program
+ * @param loopHead    index of the loop's first instruction for on-stack replacement
+ *                    of a main-program loop, -1 for a whole function
+ * @param tier        tier the code runs in from now on
+ * @param reason      what triggered the decision
+ * @param invocations calls of the function so far (0 for a main-program loop)
+ * @param backEdges   backward jumps counted so far
+ * @param run         number of the run (1 for the first run of the executor)
+ * @param compileTime time spent compiling
+ */
+public record TierDecision(
+        String code,
+        int loopHead,
+        ExecutionTier tier,
+        String reason,
+        long invocations,
+        long backEdges,
+        int run,
+        Duration compileTime) {
+}
@@ -0,0 +1,372 @@
+package semulator.execution;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Background work for a user interface: expansions, runs and the like, on a
+ * fixed number of worker threads, with results handed to the UI thread.
+ *
+ * Every piece of work has a key naming what it is for ("expansion", "run").
+ * Submitting work under a key cancels the work already submitted under it, so
+ * a result that is no longer wanted (degree 4 once degree 5 was picked) is
+ * neither waited for nor shown; work of one key also never runs twice at the
+ * same time. Queued work runs highest priority first, in submission order
+ * within a priority, and the queue is bounded.
+ *
+ * Results, failures and progress are delivered through the publisher given to
+ * the constructor (Platform::runLater, for JavaFX): a result or a failure in
+ * one call, and progress coalesced, so a burst of updates costs one call.
+ * Nothing is delivered for cancelled work, even if it finished first.
+ */
+public final class WorkScheduler implements AutoCloseable {
+
+    public static final int BACKGROUND = 0;
+    public static final int INTERACTIVE = 10;
+    public static final int DEFAULT_MAX_QUEUED = 64;
+
+    /** Work to run on a worker thread. */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(Progress progress) throws Exception;
+    }
+
+    /** What running work sees of its request. */
+    public interface Progress {
+        /** Report done out of total; delivered to the request's progress callback. */
+        void update(long done, long total);
+
+        /** Whether the work was cancelled (its thread is interrupted as well). */
+        boolean isCancelled();
+    }
+
+    /** A submitted request. */
+    public final class Ticket implements Progress {
+        private final String key;
+        private final int priority;
+        private final long sequence;
+        private final Work<?> work;
+        private final DoubleConsumer onProgress;
+        private final Consumer<Object> onResult;
+        private final Consumer<Exception> onFailure;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicReference<Double> pendingProgress = new AtomicReference<>();
+
+        // Guarded by lock
+        private Thread thread;
+        private boolean finished;
+
+        private Ticket(String key, int priority, long sequence, Work<?> work, DoubleConsumer onProgress,
+                Consumer<Object> onResult, Consumer<Exception> onFailure) {
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.work = work;
+            this.onProgress = onProgress;
+            this.onResult = onResult;
+            this.onFailure = onFailure;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        /**
+         * Cancel the request: drop it from the queue, interrupt its thread if it
+         * is running, or keep its result from being delivered if it is done.
+         */
+        public void cancel() {
+            lock.lock();
+            try {
+                if (!cancelled.compareAndSet(false, true) || finished) {
+                    return;
+                }
+                if (thread != null) {
+                    thread.interrupt();
+                } else if (queue.remove(this)) {
+                    finish(this);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        /** Whether the work is over: done, failed, or cancelled and off its thread. */
+        public boolean isFinished() {
+            lock.lock();
+            try {
+                return finished;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Wait until the work is over (cancelled work may still be stopping). */
+        public void await() throws InterruptedException {
+            lock.lock();
+            try {
+                while (!finished) {
+                    changed.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void update(long done, long total) {
+            if (onProgress == null || cancelled.get() || total <= 0) {
+                return;
+            }
+            // Only the latest value is delivered; a publish is queued only when none is pending
+            if (pendingProgress.getAndSet(Math.min(1.0, (double) done / total)) == null) {
+                publisher.execute(() -> {
+                    Double fraction = pendingProgress.getAndSet(null);
+                    if (fraction != null && !cancelled.get()) {
+                        onProgress.accept(fraction);
+                    }
+                });
+            }
+        }
+    }
+
+    private final Executor publisher;
+    private final int maxQueued;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // Guarded by lock
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>(
+            Comparator.comparingInt((Ticket t) -> -t.priority).thenComparingLong(t -> t.sequence));
+    private final Map<String, Ticket> latest = new HashMap<>();
+    private final Map<String, Ticket> running = new HashMap<>();
+    private long sequence = 0;
+    private boolean closed = false;
+
+    public WorkScheduler(int workerThreads, Executor publisher) {
+        this(workerThreads, DEFAULT_MAX_QUEUED, publisher);
+    }
+
+    public WorkScheduler(int workerThreads, int maxQueued, Executor publisher) {
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("workerThreads must be positive");
+        }
+        if (maxQueued <= 0) {
+            throw new IllegalArgumentException("maxQueued must be positive");
+        }
+        if (publisher == null) {
+            throw new IllegalArgumentException("publisher is null");
+        }
+        this.publisher = publisher;
+        this.maxQueued = maxQueued;
+        for (int i = 0; i < workerThreads; i++) {
+            Thread worker = new Thread(this::workerLoop, "semulator-work-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public <T> Ticket submit(String key, int priority, Work<T> work, Consumer<? super T> onResult,
+            Consumer<Exception> onFailure) {
+        return submit(key, priority, work, null, onResult, onFailure);
+    }
+
+    /**
+     * Queue the work, cancelling the work submitted under the same key. The
+     * callbacks (any may be null) run on the publisher.
+     *
+     * @throws IllegalStateException if the scheduler is closed or its queue is full
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Ticket submit(String key, int priority, Work<T> work, DoubleConsumer onProgress,
+            Consumer<? super T> onResult, Consumer<Exception> onFailure) {
+        if (key == null) {
+            throw new IllegalArgumentException("key is null");
+        }
+        if (work == null) {
+            throw new IllegalArgumentException("work is null");
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Scheduler is closed");
+            }
+            Ticket superseded = latest.get(key);
+            if (superseded != null) {
+                superseded.cancel();
+            }
+            if (queue.size() >= maxQueued) {
+                throw new IllegalStateException("Work queue is full");
+            }
+            Ticket ticket = new Ticket(key, priority, sequence++, work, onProgress,
+                    (Consumer<Object>) onResult, onFailure);
+            latest.put(key, ticket);
+            queue.add(ticket);
+            changed.signalAll();
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Cancel the work submitted under the key, if any. */
+    public void cancel(String key) {
+        Ticket ticket;
+        lock.lock();
+        try {
+            ticket = latest.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (ticket != null) {
+            ticket.cancel();
+        }
+    }
+
+    /** Cancel the work submitted under the key and wait until it is off its thread. */
+    public void cancelAndWait(String key) throws InterruptedException {
+        Ticket ticket;
+        lock.lock();
+        try {
+            ticket = latest.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (ticket != null) {
+            ticket.cancel();
+            ticket.await();
+        }
+    }
+
+    /** Requests waiting for a worker. */
+    public int queuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Cancel all work and stop the workers once they are free. */
+    @Override
+    public void close() {
+        List<Ticket> pending;
+        lock.lock();
+        try {
+            closed = true;
+            pending = new ArrayList<>(latest.values());
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Ticket ticket : pending) {
+            ticket.cancel();
+        }
+    }
+
+    private void workerLoop() {
+        while (true) {
+            Ticket ticket = next();
+            if (ticket == null) {
+                return;
+            }
+            Object result = null;
+            Exception failure = null;
+            try {
+                result = ticket.work.run(ticket);
+            } catch (Exception e) {
+                failure = e;
+            } catch (Error e) {
+                // a stack overflow in a deep expansion, say: the worker goes on
+                failure = new ExecutionException(e);
+            }
+            lock.lock();
+            try {
+                running.remove(ticket.key);
+                ticket.thread = null;
+                finish(ticket);
+            } finally {
+                lock.unlock();
+            }
+            // A cancel after the work returned may have left the flag set; it is not for the next work
+            Thread.interrupted();
+            publish(ticket, result, failure);
+        }
+    }
+
+    /** The next ticket to run: the first in the queue whose key is not running; null once closed. */
+    private Ticket next() {
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    return null;
+                }
+                Ticket ready = null;
+                for (Ticket ticket : queue) {
+                    if (!running.containsKey(ticket.key)
+                            && (ready == null || queue.comparator().compare(ticket, ready) < 0)) {
+                        ready = ticket;
+                    }
+                }
+                if (ready != null) {
+                    queue.remove(ready);
+                    running.put(ready.key, ready);
+                    ready.thread = Thread.currentThread();
+                    return ready;
+                }
+                changed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Mark the ticket over and wake waiters and workers; called with lock held.
+     * It stays the latest of its key, so superseding it still stops its result.
+     */
+    private void finish(Ticket ticket) {
+        ticket.finished = true;
+        changed.signalAll();
+    }
+
+    private void publish(Ticket ticket, Object result, Exception failure) {
+        if (ticket.isCancelled()) {
+            return;
+        }
+        publisher.execute(() -> {
+            // Checked again on the publisher: a later request may have superseded this one meanwhile
+            if (ticket.isCancelled()) {
+                return;
+            }
+            if (failure == null) {
+                if (ticket.onResult != null) {
+                    ticket.onResult.accept(result);
+                }
+            } else if (ticket.onFailure != null) {
+                ticket.onFailure.accept(failure);
+            }
+        });
+    }
+}
@@ -6,6 +6,7 @@ import semulator.variable.VariableType;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Parser for function arguments that can be either simple variables or nested
@@ -21,6 +22,19 @@ public class FunctionArgumentParser {
      * @return A FunctionArgument representing either a variable or function call
      */
     public static FunctionArgument parseFunctionArgument(String argString) {
+        return parseFunctionArgument(argString, null);
+    }
+
+    /**
+     * Parse a function argument, sharing structurally equal function calls through
+     * canonicalCalls. Calls parsed with the same table form a DAG: every distinct
+     * (function, arguments) appears once, so identity can be used as the key when
+     * evaluating.
+     *
+     * @param canonicalCalls intern table (may be null for no sharing)
+     */
+    public static FunctionArgument parseFunctionArgument(String argString,
+            Map<FunctionCall, FunctionCall> canonicalCalls) {
         if (argString == null || argString.trim().isEmpty()) {
             throw new IllegalArgumentException("Argument string cannot be null or empty");
         }
@@ -29,7 +43,7 @@ public class FunctionArgumentParser {
 
         if (trimmed.startsWith("(") && trimmed.endsWith(")")) {
             // Parse function call: (functionName,arg1,arg2,...)
-            return parseFunctionCall(trimmed);
+            return parseFunctionCall(trimmed, canonicalCalls);
         } else {
             // Parse simple variable or constant
             return new VariableArgument(parseVariableOrConstant(trimmed));
@@ -39,7 +53,8 @@ public class FunctionArgumentParser {
     /**
      * Parse a function call string like (AND,(NOT,(EQUAL,x1,x2)),(CONST0))
      */
-    private static FunctionCallArgument parseFunctionCall(String functionCallString) {
+    private static FunctionCallArgument parseFunctionCall(String functionCallString,
+            Map<FunctionCall, FunctionCall> canonicalCalls) {
         // Remove outer parentheses
         String inner = functionCallString.substring(1, functionCallString.length() - 1);
 
@@ -55,10 +70,14 @@ public class FunctionArgumentParser {
 
         // Parse each argument recursively
         for (int i = 1; i < parts.length; i++) {
-            arguments.add(parseFunctionArgument(parts[i]));
+            arguments.add(parseFunctionArgument(parts[i], canonicalCalls));
         }
 
-        return new FunctionCallArgument(functionName, arguments);
+        FunctionCall call = new FunctionCall(functionName, arguments);
+        if (canonicalCalls != null) {
+            call = canonicalCalls.computeIfAbsent(call, c -> c);
+        }
+        return new FunctionCallArgument(call);
     }
 
     /**
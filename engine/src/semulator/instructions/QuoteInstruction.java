@@ -62,8 +62,9 @@ public class QuoteInstruction extends AbstractInstruction {
         // (e.g., in debug mode or when running unexpanded programs)
 
         try {
-            // Create a new execution context for the function
-            ExecutionContext functionContext = createFunctionContext(context);
+            // Create a new execution context for the function; nested calls repeated
+            // inside the arguments are evaluated once
+            ExecutionContext functionContext = createFunctionContext(context, new java.util.IdentityHashMap<>());
 
             // Execute the function body
             long functionResult = executeFunctionBody(functionContext);
@@ -83,7 +84,7 @@ public class QuoteInstruction extends AbstractInstruction {
     /**
      * Create a new execution context for the function with proper argument setup
      */
-    private ExecutionContext createFunctionContext(ExecutionContext parentContext) {
+    private ExecutionContext createFunctionContext(ExecutionContext parentContext, Map<FunctionCall, Long> memo) {
         // Create a simple execution context that maps function arguments to input
         // variables
         return new ExecutionContext() {
@@ -98,7 +99,7 @@ public class QuoteInstruction extends AbstractInstruction {
                     if (arg.isFunctionCall()) {
                         // For function calls, we need to execute them first
                         FunctionCall call = arg.asFunctionCall();
-                        long nestedResult = executeNestedFunctionCall(call, parentContext);
+                        long nestedResult = executeNestedFunctionCall(call, parentContext, memo);
                         variables.put(inputVar, nestedResult);
                     } else {
                         Variable var = arg.asVariable();
@@ -161,9 +162,16 @@ public class QuoteInstruction extends AbstractInstruction {
     }
 
     /**
-     * Execute a nested function call and return its result
+     * Execute a nested function call and return its result (memoized per QUOTE
+     * execution, all nested calls read the same parent context)
      */
-    private long executeNestedFunctionCall(FunctionCall call, ExecutionContext parentContext) {
+    private long executeNestedFunctionCall(FunctionCall call, ExecutionContext parentContext,
+            Map<FunctionCall, Long> memo) {
+        Long memoized = memo.get(call);
+        if (memoized != null) {
+            return memoized;
+        }
+
         if (functions == null) {
             throw new IllegalStateException("Functions map not available for nested function execution");
         }
@@ -175,16 +183,19 @@ public class QuoteInstruction extends AbstractInstruction {
         }
 
         // Create execution context for the nested function
-        ExecutionContext nestedContext = createNestedFunctionContext(call, parentContext);
+        ExecutionContext nestedContext = createNestedFunctionContext(call, parentContext, memo);
 
         // Execute the nested function body
-        return executeFunctionBody(nestedContext, nestedFunctionBody);
+        long result = executeFunctionBody(nestedContext, nestedFunctionBody);
+        memo.put(call, result);
+        return result;
     }
 
     /**
      * Create execution context for a nested function call
      */
-    private ExecutionContext createNestedFunctionContext(FunctionCall call, ExecutionContext parentContext) {
+    private ExecutionContext createNestedFunctionContext(FunctionCall call, ExecutionContext parentContext,
+            Map<FunctionCall, Long> memo) {
         return new ExecutionContext() {
             private final java.util.Map<Variable, Long> variables = new java.util.HashMap<>();
 
@@ -197,7 +208,7 @@ public class QuoteInstruction extends AbstractInstruction {
                     if (arg.isFunctionCall()) {
                         // Recursively execute nested function calls
                         FunctionCall nestedCall = arg.asFunctionCall();
-                        long nestedResult = executeNestedFunctionCall(nestedCall, parentContext);
+                        long nestedResult = executeNestedFunctionCall(nestedCall, parentContext, memo);
                         variables.put(inputVar, nestedResult);
                     } else {
                         Variable var = arg.asVariable();
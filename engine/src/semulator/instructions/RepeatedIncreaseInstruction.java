@@ -0,0 +1,58 @@
+package semulator.instructions;
+
+import semulator.execution.ExecutionContext;
+import semulator.label.FixedLabel;
+import semulator.label.Label;
+import semulator.variable.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of count INCREASE instructions on the same variable, kept as one
+ * instruction so that expanding V <- K does not produce K rows. It is a basic
+ * INCREASE in every other respect: it runs in one step, adds count and costs
+ * count times the cycles of INCREASE. {@link #unfold()} gives the
+ * instructions it stands for.
+ */
+public class RepeatedIncreaseInstruction extends AbstractInstruction {
+
+    private final int count;
+
+    public RepeatedIncreaseInstruction(Variable variable, long count) {
+        this(variable, count, FixedLabel.EMPTY);
+    }
+
+    public RepeatedIncreaseInstruction(Variable variable, long count, Label label) {
+        super(InstructionData.INCREASE, variable, label);
+        if (count < 1 || count > Integer.MAX_VALUE / InstructionData.INCREASE.getCycles()) {
+            throw new IllegalArgumentException("count out of range: " + count);
+        }
+        this.count = (int) count;
+    }
+
+    @Override
+    public Label execute(ExecutionContext context) {
+        context.updateVariable(getVariable(), context.getVariableValue(getVariable()) + count);
+        return FixedLabel.EMPTY;
+    }
+
+    @Override
+    public int cycles() {
+        return count * InstructionData.INCREASE.getCycles();
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** The count INCREASE instructions of the run; the first one has its label. */
+    public List<SInstruction> unfold() {
+        List<SInstruction> instructions = new ArrayList<>(count);
+        instructions.add(new IncreaseInstruction(getVariable(), getLabel()));
+        for (int i = 1; i < count; i++) {
+            instructions.add(new IncreaseInstruction(getVariable()));
+        }
+        return instructions;
+    }
+}
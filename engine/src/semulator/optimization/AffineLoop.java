@@ -0,0 +1,195 @@
+package semulator.optimization;
+
+import semulator.instructions.DecreaseInstruction;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.RepeatedIncreaseInstruction;
+import semulator.instructions.SInstruction;
+import semulator.variable.Variable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A counted loop of basic blocks that can be run in closed form.
+ *
+ * The loop starts at a header block whose terminator leaves the loop when a
+ * counter is 0 (IF c = 0 GOTO out, IF c != 0 GOTO loop, IF c = 0 GOTO out with
+ * JUMP_EQUAL_CONSTANT). The other edge leads through blocks that only fall
+ * through back to the header. Every instruction on the way is a decrement of the
+ * counter or an increment of another variable, so the counter only goes down,
+ * one step at a time, and the other variables go up by constants.
+ *
+ * If the header's body decrements the counter a times before the test and one
+ * trip around the loop decrements it k times, the test sees max(0, c - a - i*k)
+ * on trip i (a negative counter becomes 0 at its first decrement) and the loop
+ * exits after {@link #iterations(long)} full trips, with the counter at 0. Increments and cycles are linear in the number of trips.
+ */
+public final class AffineLoop {
+
+    /** Longest chain of blocks between the header's test and the header. */
+    private static final int MAX_BLOCKS = 8;
+
+    private final Variable counter;
+    private final int decrementsBeforeTest;
+    private final int decrementsPerTrip;
+    private final Variable[] variables;
+    private final long[] headerIncrements;
+    private final long[] tripIncrements;
+    private final long headerCycles;
+    private final long tripCycles;
+    private final int exitTarget;
+    private final long exitExtra;
+    private final int[] tripBlocks;
+
+    private AffineLoop(Variable counter, int decrementsBeforeTest, int decrementsPerTrip, Variable[] variables,
+            long[] headerIncrements, long[] tripIncrements, long headerCycles, long tripCycles, int exitTarget,
+            long exitExtra, int[] tripBlocks) {
+        this.counter = counter;
+        this.decrementsBeforeTest = decrementsBeforeTest;
+        this.decrementsPerTrip = decrementsPerTrip;
+        this.variables = variables;
+        this.headerIncrements = headerIncrements;
+        this.tripIncrements = tripIncrements;
+        this.headerCycles = headerCycles;
+        this.tripCycles = tripCycles;
+        this.exitTarget = exitTarget;
+        this.exitExtra = exitExtra;
+        this.tripBlocks = tripBlocks;
+    }
+
+    /** @return the loop headed by the block, or null if it is not such a loop */
+    static AffineLoop find(BasicBlocks blocks, int header) {
+        SInstruction test = blocks.terminator(header);
+        if (test == null) {
+            return null;
+        }
+        boolean continueOnJump;
+        if (test instanceof JumpNotZeroInstruction) {
+            continueOnJump = true;
+        } else if (test instanceof JumpZeroInstruction
+                || (test instanceof JumpEqualConstantInstruction j && j.getConstant() == 0)) {
+            continueOnJump = false;
+        } else {
+            return null;
+        }
+        Variable counter = test.getVariable();
+        int next = continueOnJump ? blocks.jumpTarget(header) : blocks.fallTarget(header);
+        long tripCycles = continueOnJump ? blocks.jumpExtra(header) : blocks.fallExtra(header);
+
+        Map<Variable, long[]> increments = new LinkedHashMap<>();
+        int[] decrements = new int[2];
+        if (!collect(blocks.body(header), counter, 0, increments, decrements)) {
+            return null;
+        }
+        List<Integer> trip = new ArrayList<>();
+        while (next != header) {
+            if (next == BasicBlocks.EXIT || trip.size() == MAX_BLOCKS || trip.contains(next)) {
+                return null;
+            }
+            SInstruction last = blocks.terminator(next);
+            if (last != null && !collect(new SInstruction[] { last }, counter, 1, increments, decrements)) {
+                return null;
+            }
+            if (!collect(blocks.body(next), counter, 1, increments, decrements)) {
+                return null;
+            }
+            trip.add(next);
+            tripCycles += blocks.cycles(next) + blocks.fallExtra(next);
+            next = blocks.fallTarget(next);
+        }
+        int perTrip = decrements[0] + decrements[1];
+        if (perTrip == 0) {
+            return null;
+        }
+
+        Variable[] variables = increments.keySet().toArray(new Variable[0]);
+        long[] headerIncrements = new long[variables.length];
+        long[] tripIncrements = new long[variables.length];
+        for (int v = 0; v < variables.length; v++) {
+            long[] counts = increments.get(variables[v]);
+            headerIncrements[v] = counts[0];
+            tripIncrements[v] = counts[0] + counts[1];
+        }
+        return new AffineLoop(counter, decrements[0], perTrip, variables, headerIncrements, tripIncrements,
+                blocks.cycles(header), tripCycles + blocks.cycles(header),
+                continueOnJump ? blocks.fallTarget(header) : blocks.jumpTarget(header),
+                continueOnJump ? blocks.fallExtra(header) : blocks.jumpExtra(header),
+                trip.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Add the effect of straight-line instructions. part is 0 for the header's
+     * body (before the test) and 1 for the rest of the trip.
+     *
+     * @return false if an instruction is neither a decrement of the counter nor an
+     *         increment of another variable
+     */
+    private static boolean collect(SInstruction[] instructions, Variable counter, int part,
+            Map<Variable, long[]> increments, int[] decrements) {
+        for (SInstruction instruction : instructions) {
+            Variable variable = instruction.getVariable();
+            if (instruction instanceof DecreaseInstruction && variable.equals(counter)) {
+                decrements[part]++;
+            } else if (instruction instanceof IncreaseInstruction && !variable.equals(counter)) {
+                increments.computeIfAbsent(variable, v -> new long[2])[part]++;
+            } else if (instruction instanceof RepeatedIncreaseInstruction run && !variable.equals(counter)) {
+                increments.computeIfAbsent(variable, v -> new long[2])[part] += run.getCount();
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Variable counter() {
+        return counter;
+    }
+
+    /**
+     * Full trips around the loop (header test passed, back to the header) before
+     * it exits, for the given counter value on entry to the header.
+     */
+    public long iterations(long counterValue) {
+        if (counterValue < 0) {
+            // The first decrement takes a negative counter straight to 0
+            return decrementsBeforeTest == 0 ? 1 : 0;
+        }
+        long remaining = counterValue - decrementsBeforeTest;
+        return remaining <= 0 ? 0 : (remaining + decrementsPerTrip - 1) / decrementsPerTrip;
+    }
+
+    /** Decrements of the counter executed over the given number of full trips. */
+    public long decrements(long iterations) {
+        return decrementsBeforeTest + (long) decrementsPerTrip * iterations;
+    }
+
+    /** Variables the loop increments (never the counter). */
+    public Variable[] variables() {
+        return variables;
+    }
+
+    /** How much variables()[v] grows over the given number of full trips (plus the final header run). */
+    public long increment(int v, long iterations) {
+        return headerIncrements[v] + tripIncrements[v] * iterations;
+    }
+
+    /** Cycles from entering the header until leaving the loop, exit edge included. */
+    public long cycles(long iterations) {
+        return headerCycles + tripCycles * iterations + exitExtra;
+    }
+
+    /** Block the loop exits to, or BasicBlocks.EXIT. */
+    public int exitTarget() {
+        return exitTarget;
+    }
+
+    /** Blocks of one trip after the header, in order. Each runs once per full trip. */
+    public int[] tripBlocks() {
+        return tripBlocks;
+    }
+}
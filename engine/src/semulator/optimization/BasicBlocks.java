@@ -0,0 +1,192 @@
+package semulator.optimization;
+
+import semulator.instructions.SInstruction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An {@link OptimizedProgram} split into basic blocks: maximal straight-line runs
+ * of nodes that are only entered at the first node and only branch at the last.
+ *
+ * A block runs as one unit: charge cycles(b) (all node costs plus the extras of
+ * the edges inside the block), execute body(b) in order, then execute
+ * terminator(b) and continue at fallTarget(b) or jumpTarget(b) with the extra
+ * cycles of that edge, exactly as for the nodes of the program.
+ *
+ * A block that heads a counted loop ({@link #loopAt(int)}) may instead be run
+ * together with the rest of the loop in one step.
+ */
+public final class BasicBlocks {
+
+    public static final int EXIT = OptimizedProgram.EXIT;
+
+    private static final SInstruction[] NO_INSTRUCTIONS = new SInstruction[0];
+
+    private final int[] firstNodes;
+    private final int[] firstInstructions;
+    private final SInstruction[][] bodies;
+    private final SInstruction[] terminators;
+    private final long[] cycles;
+    private final int[] fallTargets;
+    private final long[] fallExtras;
+    private final int[] jumpTargets;
+    private final long[] jumpExtras;
+    private final int entry;
+    private final long entryExtra;
+    private final AffineLoop[] loops;
+
+    BasicBlocks(OptimizedProgram program) {
+        int n = program.size();
+        boolean[] leader = new boolean[n];
+        if (program.entry() != EXIT) {
+            leader[program.entry()] = true;
+        }
+        for (int i = 0; i < n; i++) {
+            if (continues(program, i)) {
+                continue;
+            }
+            if (i + 1 < n) {
+                leader[i + 1] = true;
+            }
+            markTarget(leader, program.fallTarget(i));
+            markTarget(leader, program.jumpTarget(i));
+        }
+
+        int[] blockOf = new int[n];
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (leader[i] || i == 0) {
+                starts.add(i);
+            }
+            blockOf[i] = starts.size() - 1;
+        }
+
+        int count = starts.size();
+        firstNodes = new int[count];
+        firstInstructions = new int[count];
+        bodies = new SInstruction[count][];
+        terminators = new SInstruction[count];
+        cycles = new long[count];
+        fallTargets = new int[count];
+        fallExtras = new long[count];
+        jumpTargets = new int[count];
+        jumpExtras = new long[count];
+        for (int b = 0; b < count; b++) {
+            int first = starts.get(b);
+            int last = b + 1 < count ? starts.get(b + 1) - 1 : n - 1;
+            List<SInstruction> body = new ArrayList<>();
+            long sum = 0;
+            for (int i = first; i < last; i++) {
+                sum += program.cost(i) + program.fallExtra(i);
+                if (program.instruction(i) != null) {
+                    body.add(program.instruction(i));
+                }
+            }
+            firstNodes[b] = first;
+            firstInstructions[b] = program.originalIndex(first);
+            bodies[b] = body.isEmpty() ? NO_INSTRUCTIONS : body.toArray(NO_INSTRUCTIONS);
+            terminators[b] = program.instruction(last);
+            cycles[b] = sum + program.cost(last);
+            fallTargets[b] = blockIndex(blockOf, program.fallTarget(last));
+            fallExtras[b] = program.fallExtra(last);
+            jumpTargets[b] = blockIndex(blockOf, program.jumpTarget(last));
+            jumpExtras[b] = program.jumpExtra(last);
+        }
+        entry = blockIndex(blockOf, program.entry());
+        entryExtra = program.entryExtra();
+
+        loops = new AffineLoop[count];
+        for (int b = 0; b < count; b++) {
+            loops[b] = AffineLoop.find(this, b);
+        }
+    }
+
+    /** Whether node i continues with node i + 1 (and the same extra cycles) whatever it returns. */
+    private static boolean continues(OptimizedProgram program, int i) {
+        return program.fallTarget(i) == i + 1
+                && program.jumpTarget(i) == i + 1
+                && program.jumpExtra(i) == program.fallExtra(i);
+    }
+
+    private static void markTarget(boolean[] leader, int target) {
+        if (target != EXIT) {
+            leader[target] = true;
+        }
+    }
+
+    private static int blockIndex(int[] blockOf, int node) {
+        return node == EXIT ? EXIT : blockOf[node];
+    }
+
+    public int size() {
+        return bodies.length;
+    }
+
+    public int entry() {
+        return entry;
+    }
+
+    public long entryExtra() {
+        return entryExtra;
+    }
+
+    /**
+     * Instructions of the block before its terminator. Each of them continues
+     * with the next one whatever it returns.
+     */
+    public SInstruction[] body(int block) {
+        return bodies[block];
+    }
+
+    /** Last instruction of the block, or null when the block ends in a pure node. */
+    public SInstruction terminator(int block) {
+        return terminators[block];
+    }
+
+    /** Cycles charged when the block is entered. */
+    public long cycles(int block) {
+        return cycles[block];
+    }
+
+    public int fallTarget(int block) {
+        return fallTargets[block];
+    }
+
+    public long fallExtra(int block) {
+        return fallExtras[block];
+    }
+
+    public int jumpTarget(int block) {
+        return jumpTargets[block];
+    }
+
+    public long jumpExtra(int block) {
+        return jumpExtras[block];
+    }
+
+    /** First node of the block in the optimized program. */
+    public int firstNode(int block) {
+        return firstNodes[block];
+    }
+
+    /** Index in the original instruction list of the block's first instruction. */
+    public int firstInstruction(int block) {
+        return firstInstructions[block];
+    }
+
+    /** The counted loop headed by the block, or null (see {@link AffineLoop}). */
+    public AffineLoop loopAt(int block) {
+        return loops[block];
+    }
+
+    /**
+     * The block whose first instruction is the given original instruction, or -1
+     * when that instruction is inside a block or was optimized away.
+     */
+    public int blockStartingAt(int instruction) {
+        int block = Arrays.binarySearch(firstInstructions, instruction);
+        return block >= 0 ? block : -1;
+    }
+}
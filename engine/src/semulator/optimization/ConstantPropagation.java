@@ -0,0 +1,182 @@
+package semulator.optimization;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.DecreaseInstruction;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.RepeatedIncreaseInstruction;
+import semulator.instructions.SInstruction;
+import semulator.instructions.ZeroVariableInstruction;
+import semulator.variable.Variable;
+import semulator.variable.VariableType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Forward constant propagation. A state maps the variables with a known value
+ * to that value; a variable missing from the map may hold anything. Inputs are
+ * unknown at the entry, every other variable starts at 0.
+ *
+ * Branches learn from the edge they take (after IF z != 0 falls through, z is 0)
+ * and conditional jumps whose outcome is known are folded into pure nodes that
+ * keep their cycles.
+ */
+final class ConstantPropagation implements Pass {
+
+    /** Marks a variable whose value is not known. */
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    @Override
+    public String name() {
+        return "constant-propagation";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        Map<Variable, Integer> index = new HashMap<>();
+        long[] initial = new long[program.variables.size()];
+        for (Variable variable : program.variables) {
+            int slot = index.size();
+            index.put(variable, slot);
+            initial[slot] = variable.getType() == VariableType.INPUT ? UNKNOWN : 0L;
+        }
+
+        int n = program.nodes.size();
+        long[][] in = new long[n][];
+        Deque<Integer> work = new ArrayDeque<>();
+        merge(in, program.entry, initial, work);
+        while (!work.isEmpty()) {
+            int i = work.poll();
+            IrNode node = program.node(i);
+            if (node.isPure()) {
+                merge(in, node.fall, in[i], work);
+                continue;
+            }
+            long[] out = in[i].clone();
+            transfer(node.instruction, out, index);
+            Boolean taken = evaluate(node.instruction, out, index);
+            if (taken != Boolean.TRUE) {
+                merge(in, node.fall, refine(node.instruction, out, index, false), work);
+            }
+            if (taken != Boolean.FALSE) {
+                merge(in, node.jump, refine(node.instruction, out, index, true), work);
+            }
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < n; i++) {
+            IrNode node = program.node(i);
+            if (node.removed || node.isPure() || in[i] == null) {
+                continue;
+            }
+            Boolean taken = evaluate(node.instruction, in[i], index);
+            if (taken != null) {
+                node.makePure(taken);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static void merge(long[][] in, int target, long[] state, Deque<Integer> work) {
+        if (target == IrProgram.EXIT) {
+            return;
+        }
+        long[] current = in[target];
+        if (current == null) {
+            in[target] = state.clone();
+            work.add(target);
+            return;
+        }
+        boolean changed = false;
+        for (int slot = 0; slot < current.length; slot++) {
+            if (current[slot] != UNKNOWN && current[slot] != state[slot]) {
+                current[slot] = UNKNOWN;
+                changed = true;
+            }
+        }
+        if (changed) {
+            work.add(target);
+        }
+    }
+
+    private static void transfer(SInstruction instruction, long[] state, Map<Variable, Integer> index) {
+        int v = index.get(instruction.getVariable());
+        if (instruction instanceof IncreaseInstruction) {
+            if (state[v] != UNKNOWN) {
+                state[v]++;
+            }
+        } else if (instruction instanceof RepeatedIncreaseInstruction run) {
+            if (state[v] != UNKNOWN) {
+                state[v] += run.getCount();
+            }
+        } else if (instruction instanceof DecreaseInstruction) {
+            if (state[v] != UNKNOWN) {
+                state[v] = Math.max(0, state[v] - 1);
+            }
+        } else if (instruction instanceof ZeroVariableInstruction) {
+            state[v] = 0L;
+        } else if (instruction instanceof AssignConstantInstruction c) {
+            state[v] = c.getConstant();
+        } else if (instruction instanceof AssignVariableInstruction a) {
+            state[v] = state[index.get(a.getSource())];
+        } else if (instruction instanceof QuoteInstruction) {
+            state[v] = UNKNOWN;
+        }
+    }
+
+    /** Outcome of a conditional jump in the state: true = jumps, null = unknown. */
+    private static Boolean evaluate(SInstruction instruction, long[] state, Map<Variable, Integer> index) {
+        if (instruction instanceof JumpNotZeroInstruction) {
+            long value = state[index.get(instruction.getVariable())];
+            return value == UNKNOWN ? null : value != 0;
+        } else if (instruction instanceof JumpZeroInstruction) {
+            long value = state[index.get(instruction.getVariable())];
+            return value == UNKNOWN ? null : value == 0;
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            long value = state[index.get(j.getVariable())];
+            return value == UNKNOWN ? null : value == j.getConstant();
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            if (j.getVariable().equals(j.getOther())) {
+                return true;
+            }
+            long a = state[index.get(j.getVariable())];
+            long b = state[index.get(j.getOther())];
+            return a == UNKNOWN || b == UNKNOWN ? null : a == b;
+        }
+        return null;
+    }
+
+    private static long[] refine(SInstruction instruction, long[] state, Map<Variable, Integer> index,
+            boolean jumped) {
+        if (instruction instanceof JumpNotZeroInstruction && !jumped
+                || instruction instanceof JumpZeroInstruction && jumped) {
+            return with(state, index.get(instruction.getVariable()), 0L);
+        } else if (instruction instanceof JumpEqualConstantInstruction j && jumped) {
+            return with(state, index.get(j.getVariable()), j.getConstant());
+        } else if (instruction instanceof JumpEqualVariableInstruction j && jumped) {
+            int a = index.get(j.getVariable());
+            int b = index.get(j.getOther());
+            if (state[a] != UNKNOWN && state[b] == UNKNOWN) {
+                return with(state, b, state[a]);
+            } else if (state[b] != UNKNOWN && state[a] == UNKNOWN) {
+                return with(state, a, state[b]);
+            }
+        }
+        return state;
+    }
+
+    private static long[] with(long[] state, int slot, long value) {
+        long[] refined = state.clone();
+        refined[slot] = value;
+        return refined;
+    }
+}
@@ -0,0 +1,72 @@
+package semulator.optimization;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Successor and predecessor lists of the nodes of an {@link IrProgram} that are
+ * not removed. Built on demand by the passes, since every pass may change edges.
+ */
+final class ControlFlowGraph {
+
+    private final IrProgram program;
+    private final List<List<Integer>> predecessors;
+
+    ControlFlowGraph(IrProgram program) {
+        this.program = program;
+        this.predecessors = new ArrayList<>(program.nodes.size());
+        for (int i = 0; i < program.nodes.size(); i++) {
+            predecessors.add(new ArrayList<>(2));
+        }
+        for (int i = 0; i < program.nodes.size(); i++) {
+            IrNode node = program.node(i);
+            if (node.removed) {
+                continue;
+            }
+            addEdge(i, node.fall);
+            if (!node.isPure() && node.jump != node.fall) {
+                addEdge(i, node.jump);
+            }
+        }
+    }
+
+    private void addEdge(int from, int to) {
+        if (to != IrProgram.EXIT) {
+            predecessors.get(to).add(from);
+        }
+    }
+
+    /** Successor indices of a node (EXIT included). */
+    int[] successors(int index) {
+        IrNode node = program.node(index);
+        if (node.isPure() || node.jump == node.fall) {
+            return new int[] { node.fall };
+        }
+        return new int[] { node.fall, node.jump };
+    }
+
+    List<Integer> predecessors(int index) {
+        return predecessors.get(index);
+    }
+
+    /** Nodes reachable from the entry, in no particular order. */
+    boolean[] reachable() {
+        boolean[] seen = new boolean[program.nodes.size()];
+        Deque<Integer> work = new ArrayDeque<>();
+        if (program.entry != IrProgram.EXIT) {
+            seen[program.entry] = true;
+            work.push(program.entry);
+        }
+        while (!work.isEmpty()) {
+            for (int next : successors(work.pop())) {
+                if (next != IrProgram.EXIT && !seen[next]) {
+                    seen[next] = true;
+                    work.push(next);
+                }
+            }
+        }
+        return seen;
+    }
+}
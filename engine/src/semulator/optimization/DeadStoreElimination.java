@@ -0,0 +1,32 @@
+package semulator.optimization;
+
+/**
+ * Turns stores to local variables that are never read afterwards into pure
+ * nodes (which keep their cycles and are then threaded away). In the main
+ * program this only touches work variables, so the final values of such z
+ * variables are not reported.
+ */
+final class DeadStoreElimination implements Pass {
+
+    @Override
+    public String name() {
+        return "dead-store";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        Liveness liveness = new Liveness(program, new ControlFlowGraph(program));
+        boolean changed = false;
+        for (int i = 0; i < program.nodes.size(); i++) {
+            IrNode node = program.node(i);
+            if (node.removed || node.isPure() || !InstructionEffects.isRemovableStore(node.instruction)) {
+                continue;
+            }
+            if (!liveness.isLiveAfter(i, node.instruction.getVariable())) {
+                node.makePure(false);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
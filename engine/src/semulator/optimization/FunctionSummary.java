@@ -0,0 +1,574 @@
+package semulator.optimization;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.DecreaseInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.FunctionCall;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.RepeatedIncreaseInstruction;
+import semulator.instructions.SInstruction;
+import semulator.instructions.ZeroVariableInstruction;
+import semulator.variable.Variable;
+import semulator.variable.VariableType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntToLongFunction;
+import java.util.function.Predicate;
+
+/**
+ * Closed form of a function body: its result y and its own cycle count as
+ * formulas over the inputs, derived by running the optimized body symbolically.
+ *
+ * Counted loops ({@link AffineLoop}) become one formula whatever the counter;
+ * branches the inputs decide become a decision tree; calls to other functions
+ * stay calls (the caller decides whether they run through a summary or the
+ * body). A body with any other loop, or too many paths, has no summary.
+ *
+ * Cycles are those of the body's own instructions on the path taken, as if the
+ * body were charged like the main program; callees are not included.
+ */
+public final class FunctionSummary {
+
+    /** Runs the functions a summary calls. */
+    public interface Callee {
+        long call(String functionName, long[] arguments);
+    }
+
+    /**
+     * y and the body's own cycles for one set of inputs. With a tail call, y is
+     * the value of that call, which is left to the caller to make.
+     */
+    public record Outcome(long result, long cycles, TailCall tailCall) {
+    }
+
+    /** A call whose value is the function's result. */
+    public record TailCall(String functionName, long[] arguments) {
+    }
+
+    // Budgets of the symbolic run; past them the function is left to the interpreter
+    private static final int MAX_BLOCKS = 512;
+    private static final int MAX_LEAVES = 64;
+
+    private final String functionName;
+    private final Node root;
+    private final int callCount;
+
+    private FunctionSummary(String functionName, Node root, int callCount) {
+        this.functionName = functionName;
+        this.root = root;
+        this.callCount = callCount;
+    }
+
+    /**
+     * @param body      the optimized function body
+     * @param isDefined whether a function of that name exists (calls to missing
+     *                  functions give 0, as in the executor)
+     * @return the summary, or null if the body cannot be summarized
+     */
+    public static FunctionSummary build(String functionName, OptimizedProgram body, Predicate<String> isDefined) {
+        Builder builder = new Builder(body.blocks(), isDefined);
+        Map<Variable, Term> state = new HashMap<>();
+        Node root = builder.walk(body.blocks().entry(), state, new Const(body.blocks().entryExtra()));
+        return root == null ? null : new FunctionSummary(functionName, root, builder.calls);
+    }
+
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    /**
+     * Evaluate the summary. Inputs are read on demand and calls are made at most
+     * once each, so an input or call the taken path does not need is never
+     * touched.
+     *
+     * @param inputs value of x_i for i = 1, 2, ... (0 for inputs not passed)
+     */
+    public Outcome evaluate(IntToLongFunction inputs, Callee callee) {
+        return evaluate(inputs, callee, false);
+    }
+
+    /**
+     * @param tailCalls when the path taken returns the value of a call not made
+     *                  yet, return that call as the outcome's tail call instead
+     *                  of making it, so the caller can run it without nesting
+     */
+    public Outcome evaluate(IntToLongFunction inputs, Callee callee, boolean tailCalls) {
+        Evaluation evaluation = new Evaluation(inputs, callee, callCount);
+        Node node = root;
+        while (node instanceof Branch branch) {
+            node = branch.left.eval(evaluation) == branch.right.eval(evaluation) ? branch.whenEqual : branch.otherwise;
+        }
+        Leaf leaf = (Leaf) node;
+        long cycles = leaf.cycles.eval(evaluation);
+        if (tailCalls && leaf.result instanceof Call call && !evaluation.called[call.index]) {
+            return new Outcome(0, cycles, new TailCall(call.name, call.arguments(evaluation)));
+        }
+        return new Outcome(leaf.result.eval(evaluation), cycles, null);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(functionName).append(":");
+        root.appendTo(text, 1);
+        return text.toString();
+    }
+
+    private static final class Evaluation {
+        final IntToLongFunction inputs;
+        final Callee callee;
+        final long[] callValues;
+        final boolean[] called;
+
+        Evaluation(IntToLongFunction inputs, Callee callee, int calls) {
+            this.inputs = inputs;
+            this.callee = callee;
+            this.callValues = new long[calls];
+            this.called = new boolean[calls];
+        }
+    }
+
+    /** Symbolic run over the basic blocks; every path ends in a leaf. */
+    private static final class Builder {
+        final BasicBlocks blocks;
+        final Predicate<String> isDefined;
+        int blocksWalked = 0;
+        int leaves = 0;
+        int calls = 0;
+
+        Builder(BasicBlocks blocks, Predicate<String> isDefined) {
+            this.blocks = blocks;
+            this.isDefined = isDefined;
+        }
+
+        /** @return null when a budget is exceeded */
+        Node walk(int block, Map<Variable, Term> state, Term cycles) {
+            while (block != BasicBlocks.EXIT) {
+                if (++blocksWalked > MAX_BLOCKS) {
+                    return null;
+                }
+                AffineLoop loop = blocks.loopAt(block);
+                if (loop != null) {
+                    Term iterations = new Iterations(loop, value(state, loop.counter()));
+                    state.put(loop.counter(), new Const(0));
+                    Variable[] variables = loop.variables();
+                    for (int v = 0; v < variables.length; v++) {
+                        long base = loop.increment(v, 0);
+                        Term grown = plus(value(state, variables[v]), base);
+                        state.put(variables[v], sum(grown, times(iterations, loop.increment(v, 1) - base)));
+                    }
+                    long base = loop.cycles(0);
+                    cycles = sum(plus(cycles, base), times(iterations, loop.cycles(1) - base));
+                    block = loop.exitTarget();
+                    continue;
+                }
+
+                cycles = plus(cycles, blocks.cycles(block));
+                for (SInstruction instruction : blocks.body(block)) {
+                    if (condition(instruction, state) != null) {
+                        continue; // a test that goes on to the next instruction either way
+                    }
+                    if (!apply(instruction, state)) {
+                        return null;
+                    }
+                }
+                SInstruction last = blocks.terminator(block);
+                Term[] test = last == null ? null : condition(last, state);
+                if (test == null) {
+                    if (last != null && !apply(last, state)) {
+                        return null;
+                    }
+                    cycles = plus(cycles, blocks.fallExtra(block));
+                    block = blocks.fallTarget(block);
+                    continue;
+                }
+
+                // JNZ jumps when the operands differ, every other test when they are equal
+                boolean jumpWhenEqual = !(last instanceof JumpNotZeroInstruction);
+                Boolean equal = decide(test[0], test[1]);
+                if (equal != null) {
+                    boolean jump = equal == jumpWhenEqual;
+                    cycles = plus(cycles, jump ? blocks.jumpExtra(block) : blocks.fallExtra(block));
+                    block = jump ? blocks.jumpTarget(block) : blocks.fallTarget(block);
+                    continue;
+                }
+                Node jump = walk(blocks.jumpTarget(block), new HashMap<>(state),
+                        plus(cycles, blocks.jumpExtra(block)));
+                Node fall = jump == null ? null
+                        : walk(blocks.fallTarget(block), state, plus(cycles, blocks.fallExtra(block)));
+                if (fall == null) {
+                    return null;
+                }
+                return jumpWhenEqual ? new Branch(test[0], test[1], jump, fall)
+                        : new Branch(test[0], test[1], fall, jump);
+            }
+            if (++leaves > MAX_LEAVES) {
+                return null;
+            }
+            return new Leaf(value(state, Variable.RESULT), cycles);
+        }
+
+        /** Symbolic effect of a non-branching instruction; false if it is not understood. */
+        boolean apply(SInstruction instruction, Map<Variable, Term> state) {
+            Variable variable = instruction.getVariable();
+            if (instruction instanceof IncreaseInstruction) {
+                state.put(variable, plus(value(state, variable), 1));
+            } else if (instruction instanceof RepeatedIncreaseInstruction run) {
+                state.put(variable, plus(value(state, variable), run.getCount()));
+            } else if (instruction instanceof DecreaseInstruction) {
+                state.put(variable, decrement(value(state, variable)));
+            } else if (instruction instanceof ZeroVariableInstruction) {
+                state.put(variable, new Const(0));
+            } else if (instruction instanceof AssignConstantInstruction c) {
+                state.put(variable, new Const(c.getConstant()));
+            } else if (instruction instanceof AssignVariableInstruction a) {
+                state.put(variable, value(state, a.getSource()));
+            } else if (instruction instanceof QuoteInstruction q) {
+                state.put(variable, call(q.getFunctionName(), q.getFunctionArguments(), state, false));
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        /** Operands compared by a conditional jump, or null for other instructions. */
+        Term[] condition(SInstruction instruction, Map<Variable, Term> state) {
+            Term value = value(state, instruction.getVariable());
+            if (instruction instanceof JumpNotZeroInstruction || instruction instanceof JumpZeroInstruction) {
+                return new Term[] { value, new Const(0) };
+            } else if (instruction instanceof JumpEqualConstantInstruction j) {
+                return new Term[] { value, new Const(j.getConstant()) };
+            } else if (instruction instanceof JumpEqualVariableInstruction j) {
+                return new Term[] { value, value(state, j.getOther()) };
+            } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+                return new Term[] { value, call(j.getFunctionName(), j.getFunctionArguments(), state, true) };
+            }
+            return null;
+        }
+
+        /**
+         * A call with the executor's argument rules: a missing function gives 0, a
+         * top-level argument whose call tree refers to a missing function is 0, and
+         * JUMP_EQUAL_FUNCTION passes 0 for every function-call argument.
+         */
+        Term call(String name, List<FunctionArgument> arguments, Map<Variable, Term> state, boolean jumpEqual) {
+            if (!isDefined.test(name)) {
+                return new Const(0);
+            }
+            Term[] args = new Term[arguments.size()];
+            for (int i = 0; i < args.length; i++) {
+                FunctionArgument argument = arguments.get(i);
+                if (argument.isFunctionCall()) {
+                    FunctionCall nested = argument.asFunctionCall();
+                    args[i] = jumpEqual || !isResolvable(nested)
+                            ? new Const(0)
+                            : call(nested.getFunctionName(), nested.getArguments(), state, false);
+                } else if (argument.asVariable().getType() == VariableType.Constant) {
+                    args[i] = new Const(argument.asVariable().getNumber());
+                } else {
+                    args[i] = value(state, argument.asVariable());
+                }
+            }
+            return new Call(calls++, name, args);
+        }
+
+        boolean isResolvable(FunctionCall call) {
+            if (!isDefined.test(call.getFunctionName())) {
+                return false;
+            }
+            for (FunctionArgument argument : call.getArguments()) {
+                if (argument.isFunctionCall() && !isResolvable(argument.asFunctionCall())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        static Term value(Map<Variable, Term> state, Variable variable) {
+            Term term = state.get(variable);
+            if (term == null) {
+                term = variable.getType() == VariableType.INPUT ? new Input(variable.getNumber()) : new Const(0);
+                state.put(variable, term);
+            }
+            return term;
+        }
+    }
+
+    /** Whether a == b is known without the inputs; null if it depends on them. */
+    private static Boolean decide(Term a, Term b) {
+        if (a instanceof Const x && b instanceof Const y) {
+            return x.value == y.value;
+        }
+        return null;
+    }
+
+    private static Term plus(Term term, long amount) {
+        if (amount == 0) {
+            return term;
+        } else if (term instanceof Const c) {
+            return new Const(c.value + amount);
+        } else if (term instanceof Plus p) {
+            return new Plus(p.term, p.amount + amount);
+        }
+        return new Plus(term, amount);
+    }
+
+    private static Term decrement(Term term) {
+        // Inputs may be negative, so only constants fold
+        if (term instanceof Const c) {
+            return new Const(Math.max(0, c.value - 1));
+        }
+        return new Decrement(term);
+    }
+
+    private static Term sum(Term a, Term b) {
+        if (b instanceof Const c) {
+            return plus(a, c.value);
+        } else if (a instanceof Const c) {
+            return plus(b, c.value);
+        }
+        return new Sum(a, b);
+    }
+
+    private static Term times(Term term, long factor) {
+        if (factor == 0) {
+            return new Const(0);
+        }
+        return factor == 1 ? term : new Times(term, factor);
+    }
+
+    private abstract static class Node {
+        abstract void appendTo(StringBuilder text, int depth);
+
+        static void indent(StringBuilder text, int depth) {
+            text.append('\n').append("  ".repeat(depth));
+        }
+    }
+
+    private static final class Leaf extends Node {
+        final Term result;
+        final Term cycles;
+
+        Leaf(Term result, Term cycles) {
+            this.result = result;
+            this.cycles = cycles;
+        }
+
+        @Override
+        void appendTo(StringBuilder text, int depth) {
+            indent(text, depth);
+            text.append("y = ").append(result).append(", cycles = ").append(cycles);
+        }
+    }
+
+    private static final class Branch extends Node {
+        final Term left;
+        final Term right;
+        final Node whenEqual;
+        final Node otherwise;
+
+        Branch(Term left, Term right, Node whenEqual, Node otherwise) {
+            this.left = left;
+            this.right = right;
+            this.whenEqual = whenEqual;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        void appendTo(StringBuilder text, int depth) {
+            indent(text, depth);
+            text.append("if ").append(left).append(" = ").append(right);
+            whenEqual.appendTo(text, depth + 1);
+            indent(text, depth);
+            text.append("else");
+            otherwise.appendTo(text, depth + 1);
+        }
+    }
+
+    private abstract static class Term {
+        abstract long eval(Evaluation evaluation);
+    }
+
+    private static final class Const extends Term {
+        final long value;
+
+        Const(long value) {
+            this.value = value;
+        }
+
+        @Override
+        long eval(Evaluation evaluation) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return Long.toString(value);
+        }
+    }
+
+    private static final class Input extends Term {
+        final int number;
+
+        Input(int number) {
+            this.number = number;
+        }
+
+        @Override
+        long eval(Evaluation evaluation) {
+            return evaluation.inputs.applyAsLong(number);
+        }
+
+        @Override
+        public String toString() {
+            return "x" + number;
+        }
+    }
+
+    private static final class Plus extends Term {
+        final Term term;
+        final long amount;
+
+        Plus(Term term, long amount) {
+            this.term = term;
+            this.amount = amount;
+        }
+
+        @Override
+        long eval(Evaluation evaluation) {
+            return term.eval(evaluation) + amount;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + term + " + " + amount + ")";
+        }
+    }
+
+    /** max(0, t - 1) */
+    private static final class Decrement extends Term {
+        final Term term;
+
+        Decrement(Term term) {
+            this.term = term;
+        }
+
+        @Override
+        long eval(Evaluation evaluation) {
+            return Math.max(0, term.eval(evaluation) - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "dec(" + term + ")";
+        }
+    }
+
+    private static final class Sum extends Term {
+        final Term left;
+        final Term right;
+
+        Sum(Term left, Term right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        long eval(Evaluation evaluation) {
+            return left.eval(evaluation) + right.eval(evaluation);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " + " + right + ")";
+        }
+    }
+
+    private static final class Times extends Term {
+        final Term term;
+        final long factor;
+
+        Times(Term term, long factor) {
+            this.term = term;
+            this.factor = factor;
+        }
+
+        @Override
+        long eval(Evaluation evaluation) {
+            return term.eval(evaluation) * factor;
+        }
+
+        @Override
+        public String toString() {
+            return factor + "*" + term;
+        }
+    }
+
+    /** Full trips of a counted loop for the counter's value on entry. */
+    private static final class Iterations extends Term {
+        final AffineLoop loop;
+        final Term counter;
+
+        Iterations(AffineLoop loop, Term counter) {
+            this.loop = loop;
+            this.counter = counter;
+        }
+
+        @Override
+        long eval(Evaluation evaluation) {
+            return loop.iterations(counter.eval(evaluation));
+        }
+
+        @Override
+        public String toString() {
+            return "trips(" + counter + ")";
+        }
+    }
+
+    private static final class Call extends Term {
+        final int index;
+        final String name;
+        final Term[] arguments;
+
+        Call(int index, String name, Term[] arguments) {
+            this.index = index;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        @Override
+        long eval(Evaluation evaluation) {
+            if (!evaluation.called[index]) {
+                evaluation.callValues[index] = evaluation.callee.call(name, arguments(evaluation));
+                evaluation.called[index] = true;
+            }
+            return evaluation.callValues[index];
+        }
+
+        long[] arguments(Evaluation evaluation) {
+            long[] values = new long[arguments.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments[i].eval(evaluation);
+            }
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            List<String> args = new ArrayList<>();
+            for (Term argument : arguments) {
+                args.add(argument.toString());
+            }
+            return name + "(" + String.join(", ", args) + ")";
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package semulator.optimization;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.DecreaseInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.SInstruction;
+import semulator.instructions.ZeroVariableInstruction;
+import semulator.variable.Variable;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableType;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces QUOTE and JUMP_EQUAL_FUNCTION nodes that call a small leaf function
+ * (at most {@link #MAX_INSTRUCTIONS} instructions, no calls of its own) by the
+ * function's body, the way expansion replaces a QUOTE, but in the IR only: the
+ * displayed program does not change.
+ *
+ * Every variable of the body gets a fresh work variable (see
+ * {@link IrProgram#inlined}), zeroed or bound to its argument when the call
+ * starts, like the new context of a call. The call node becomes a pure node
+ * with the call's cost; the inlined nodes cost nothing, as function bodies are
+ * not charged. They are appended after the original nodes, so original node
+ * indices do not move.
+ *
+ * Calls with function-call arguments are left alone for QUOTE (their fallbacks
+ * are the executor's business); JEF passes 0 for them anyway.
+ */
+final class Inlining implements Pass {
+
+    static final int MAX_INSTRUCTIONS = 8;
+
+    private final Map<String, List<SInstruction>> functions;
+    private final Map<String, IrProgram> leaves = new LinkedHashMap<>();
+
+    Inlining(Map<String, List<SInstruction>> functions) {
+        this.functions = functions;
+    }
+
+    @Override
+    public String name() {
+        return "inlining";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        boolean changed = false;
+        int size = program.nodes.size();
+        for (int i = 0; i < size; i++) {
+            IrNode node = program.node(i);
+            if (node.removed || node.isPure()) {
+                continue;
+            }
+            if (node.instruction instanceof QuoteInstruction q) {
+                changed |= inline(program, i, q.getFunctionName(), q.getFunctionArguments(), false);
+            } else if (node.instruction instanceof JumpEqualFunctionInstruction j) {
+                changed |= inline(program, i, j.getFunctionName(), j.getFunctionArguments(), true);
+            }
+        }
+        return changed;
+    }
+
+    private boolean inline(IrProgram program, int at, String name, List<FunctionArgument> arguments,
+            boolean jumpEqual) {
+        IrProgram callee = leaf(name);
+        if (callee == null) {
+            return false;
+        }
+        if (!jumpEqual) {
+            for (FunctionArgument argument : arguments) {
+                if (argument.isFunctionCall()) {
+                    return false;
+                }
+            }
+        }
+
+        Map<Variable, Variable> renamed = new LinkedHashMap<>();
+        int next = 1;
+        for (Variable variable : program.variables) {
+            if (variable.getType() == VariableType.WORK) {
+                next = Math.max(next, variable.getNumber() + 1);
+            }
+        }
+        renamed.put(Variable.RESULT, null);
+        for (Variable variable : callee.variables) {
+            renamed.put(variable, null);
+        }
+        for (Map.Entry<Variable, Variable> entry : renamed.entrySet()) {
+            Variable fresh = new VariableImpl(VariableType.WORK, next++);
+            entry.setValue(fresh);
+            program.variables.add(fresh);
+            program.inlined.add(fresh);
+        }
+
+        IrNode call = program.node(at);
+        List<IrNode> nodes = program.nodes;
+        int start = nodes.size();
+
+        // New context: bound inputs get their argument, everything else 0
+        for (Map.Entry<Variable, Variable> entry : renamed.entrySet()) {
+            Variable variable = entry.getKey();
+            SInstruction setup;
+            if (variable.getType() == VariableType.INPUT && variable.getNumber() <= arguments.size()) {
+                FunctionArgument argument = arguments.get(variable.getNumber() - 1);
+                if (argument.isFunctionCall()) {
+                    setup = new AssignConstantInstruction(entry.getValue(), 0);
+                } else if (argument.asVariable().getType() == VariableType.Constant) {
+                    setup = new AssignConstantInstruction(entry.getValue(), argument.asVariable().getNumber());
+                } else {
+                    setup = new AssignVariableInstruction(entry.getValue(), argument.asVariable());
+                }
+            } else {
+                setup = new ZeroVariableInstruction(entry.getValue());
+            }
+            nodes.add(new IrNode(setup, 0, nodes.size() + 1, nodes.size() + 1));
+        }
+
+        int body = nodes.size();
+        int end = body + callee.nodes.size();
+        for (IrNode node : callee.nodes) {
+            int fall = node.fall == IrProgram.EXIT ? end : body + node.fall;
+            int jump = node.jump == IrProgram.EXIT ? end : body + node.jump;
+            SInstruction instruction = node.isPure() ? null : rename(node.instruction, renamed);
+            nodes.add(new IrNode(instruction, 0, fall, jump));
+        }
+
+        // Back in the caller: store y, or compare it for JEF
+        Variable result = renamed.get(Variable.RESULT);
+        IrNode finish;
+        if (jumpEqual) {
+            JumpEqualFunctionInstruction jef = (JumpEqualFunctionInstruction) call.instruction;
+            finish = new IrNode(new JumpEqualVariableInstruction(jef.getVariable(), result, jef.getTarget()), 0,
+                    call.fall, call.jump);
+            finish.jumpExtra = call.jumpExtra;
+        } else {
+            finish = new IrNode(new AssignVariableInstruction(call.instruction.getVariable(), result), 0,
+                    call.fall, call.fall);
+            finish.jumpExtra = call.fallExtra;
+        }
+        finish.fallExtra = call.fallExtra;
+        nodes.add(finish);
+
+        call.instruction = null;
+        call.fall = start;
+        call.jump = start;
+        call.fallExtra = 0;
+        call.jumpExtra = 0;
+        return true;
+    }
+
+    /** The function's body as IR, or null if it is missing, too big or calls anything. */
+    private IrProgram leaf(String name) {
+        if (leaves.containsKey(name)) {
+            return leaves.get(name);
+        }
+        List<SInstruction> body = functions.get(name);
+        IrProgram leaf = null;
+        if (body != null && body.size() <= MAX_INSTRUCTIONS) {
+            leaf = IrProgram.build(body, true);
+            if (leaf != null) {
+                for (IrNode node : leaf.nodes) {
+                    if (node.instruction instanceof QuoteInstruction
+                            || node.instruction instanceof JumpEqualFunctionInstruction) {
+                        leaf = null;
+                        break;
+                    }
+                }
+            }
+        }
+        leaves.put(name, leaf);
+        return leaf;
+    }
+
+    private static SInstruction rename(SInstruction instruction, Map<Variable, Variable> renamed) {
+        Variable variable = renamed.get(instruction.getVariable());
+        if (instruction instanceof IncreaseInstruction) {
+            return new IncreaseInstruction(variable);
+        } else if (instruction instanceof DecreaseInstruction) {
+            return new DecreaseInstruction(variable);
+        } else if (instruction instanceof ZeroVariableInstruction) {
+            return new ZeroVariableInstruction(variable);
+        } else if (instruction instanceof AssignConstantInstruction c) {
+            return new AssignConstantInstruction(variable, c.getConstant());
+        } else if (instruction instanceof AssignVariableInstruction a) {
+            return new AssignVariableInstruction(variable, renamed.get(a.getSource()));
+        } else if (instruction instanceof JumpNotZeroInstruction j) {
+            return new JumpNotZeroInstruction(variable, j.getTarget());
+        } else if (instruction instanceof JumpZeroInstruction j) {
+            return new JumpZeroInstruction(variable, j.getTarget());
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            return new JumpEqualConstantInstruction(variable, j.getConstant(), j.getTarget());
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            return new JumpEqualVariableInstruction(variable, renamed.get(j.getOther()), j.getTarget());
+        }
+        throw new IllegalStateException("Cannot inline instruction " + instruction.getName());
+    }
+}
@@ -0,0 +1,143 @@
+package semulator.optimization;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.DecreaseInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.NoOpInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.RepeatedIncreaseInstruction;
+import semulator.instructions.SInstruction;
+import semulator.instructions.ZeroVariableInstruction;
+import semulator.label.Label;
+import semulator.variable.Variable;
+import semulator.variable.VariableType;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * What each instruction type reads, writes and where it may jump, as needed by
+ * the passes.
+ */
+final class InstructionEffects {
+
+    private InstructionEffects() {
+    }
+
+    static boolean isSupported(SInstruction instruction) {
+        return instruction instanceof IncreaseInstruction
+                || instruction instanceof RepeatedIncreaseInstruction
+                || instruction instanceof DecreaseInstruction
+                || instruction instanceof NoOpInstruction
+                || instruction instanceof ZeroVariableInstruction
+                || instruction instanceof AssignConstantInstruction
+                || instruction instanceof AssignVariableInstruction
+                || instruction instanceof GotoLabelInstruction
+                || instruction instanceof JumpNotZeroInstruction
+                || instruction instanceof JumpZeroInstruction
+                || instruction instanceof JumpEqualConstantInstruction
+                || instruction instanceof JumpEqualVariableInstruction
+                || instruction instanceof QuoteInstruction
+                || instruction instanceof JumpEqualFunctionInstruction;
+    }
+
+    /** Jump target of a conditional instruction, null for instructions that never jump. */
+    static Label conditionalTarget(SInstruction instruction) {
+        if (instruction instanceof JumpNotZeroInstruction j) {
+            return j.getTarget();
+        } else if (instruction instanceof JumpZeroInstruction j) {
+            return j.getTarget();
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            return j.getTarget();
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            return j.getTarget();
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            return j.getTarget();
+        }
+        return null;
+    }
+
+    /**
+     * Simple stores that can be dropped when their variable is dead. QUOTE is
+     * not one of them: removing it could turn a non-terminating run into a
+     * terminating one.
+     */
+    static boolean isRemovableStore(SInstruction instruction) {
+        return instruction instanceof IncreaseInstruction
+                || instruction instanceof RepeatedIncreaseInstruction
+                || instruction instanceof DecreaseInstruction
+                || instruction instanceof ZeroVariableInstruction
+                || instruction instanceof AssignConstantInstruction
+                || instruction instanceof AssignVariableInstruction;
+    }
+
+    /** Variable overwritten without being read first, or null. */
+    static Variable killed(SInstruction instruction) {
+        if (instruction instanceof ZeroVariableInstruction
+                || instruction instanceof AssignConstantInstruction
+                || instruction instanceof AssignVariableInstruction
+                || instruction instanceof QuoteInstruction) {
+            return instruction.getVariable();
+        }
+        return null;
+    }
+
+    /** Every variable the instruction reads (including variables in call arguments). */
+    static void forEachRead(SInstruction instruction, Consumer<Variable> action) {
+        if (instruction instanceof IncreaseInstruction
+                || instruction instanceof RepeatedIncreaseInstruction
+                || instruction instanceof DecreaseInstruction
+                || instruction instanceof JumpNotZeroInstruction
+                || instruction instanceof JumpZeroInstruction
+                || instruction instanceof JumpEqualConstantInstruction) {
+            accept(instruction.getVariable(), action);
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            accept(j.getVariable(), action);
+            accept(j.getOther(), action);
+        } else if (instruction instanceof AssignVariableInstruction a) {
+            accept(a.getSource(), action);
+        } else if (instruction instanceof QuoteInstruction q) {
+            forEachArgumentRead(q.getFunctionArguments(), action);
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            accept(j.getVariable(), action);
+            forEachArgumentRead(j.getFunctionArguments(), action);
+        }
+    }
+
+    /**
+     * Every variable mentioned by the instruction. As operands of ordinary
+     * instructions, constant-type variables are registers like any other (the
+     * executor reads them from the context, starting at 0).
+     */
+    static void forEachVariable(SInstruction instruction, Consumer<Variable> action) {
+        forEachRead(instruction, action);
+        if (!(instruction instanceof GotoLabelInstruction)) {
+            accept(instruction.getVariable(), action);
+        }
+    }
+
+    private static void forEachArgumentRead(List<FunctionArgument> arguments, Consumer<Variable> action) {
+        for (FunctionArgument argument : arguments) {
+            if (argument.isFunctionCall()) {
+                forEachArgumentRead(argument.asFunctionCall().getArguments(), action);
+            } else if (argument.asVariable().getType() != VariableType.Constant) {
+                // Constants are literals only as call arguments
+                accept(argument.asVariable(), action);
+            }
+        }
+    }
+
+    private static void accept(Variable variable, Consumer<Variable> action) {
+        if (variable != null) {
+            action.accept(variable);
+        }
+    }
+}
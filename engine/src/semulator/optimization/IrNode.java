@@ -0,0 +1,44 @@
+package semulator.optimization;
+
+import semulator.instructions.SInstruction;
+
+/**
+ * One node of the optimizer IR: an instruction with resolved successors.
+ *
+ * A pure node (instruction == null) has no effect on variables and always
+ * continues at fall; it only stands for cycles (a NEUTRAL, a GOTO, a folded
+ * branch or a dead store). Extra cycles on an edge are the cycles of pure nodes
+ * that were bypassed by threading that edge.
+ */
+final class IrNode {
+
+    SInstruction instruction;
+    int cost;
+    int fall;
+    long fallExtra;
+    int jump;
+    long jumpExtra;
+    boolean removed;
+
+    IrNode(SInstruction instruction, int cost, int fall, int jump) {
+        this.instruction = instruction;
+        this.cost = cost;
+        this.fall = fall;
+        this.jump = jump;
+    }
+
+    boolean isPure() {
+        return instruction == null;
+    }
+
+    /** Turn the node into a pure node that continues on the given edge. */
+    void makePure(boolean viaJump) {
+        if (viaJump) {
+            fall = jump;
+            fallExtra = jumpExtra;
+        }
+        instruction = null;
+        jump = fall;
+        jumpExtra = fallExtra;
+    }
+}
@@ -0,0 +1,146 @@
+package semulator.optimization;
+
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.NoOpInstruction;
+import semulator.instructions.SInstruction;
+import semulator.label.FixedLabel;
+import semulator.label.Label;
+import semulator.variable.Variable;
+import semulator.variable.VariableType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Instruction list turned into a graph the passes can rewrite: labels are
+ * resolved to node indices with the executor's rules (last definition wins, an
+ * unknown label falls through, EXIT and the end of the list both stop), and
+ * every node remembers the cycles it stands for.
+ *
+ * Node indices stay those of the original list while passes run; removed nodes
+ * are only dropped by {@link #compact()}. Nodes added by inlining come after
+ * them.
+ */
+final class IrProgram {
+
+    static final int EXIT = -1;
+
+    final List<IrNode> nodes;
+    final boolean functionBody;
+    final int originalSize;
+    final Set<Variable> variables = new LinkedHashSet<>();
+    /** Fresh variables introduced by {@link Inlining}; they are not the program's. */
+    final Set<Variable> inlined = new LinkedHashSet<>();
+    int entry;
+    long entryExtra;
+
+    private IrProgram(List<IrNode> nodes, boolean functionBody, int originalSize) {
+        this.nodes = nodes;
+        this.functionBody = functionBody;
+        this.originalSize = originalSize;
+    }
+
+    /**
+     * @param functionBody true for a function body, where a label named "EXIT"
+     *                     also stops and only y is observable at the end
+     * @return null if the code contains an instruction type the passes do not know
+     */
+    static IrProgram build(List<SInstruction> code, boolean functionBody) {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            Label label = code.get(i).getLabel();
+            if (label != null && label != FixedLabel.EMPTY && label != FixedLabel.EXIT
+                    && label.getLabel() != null && !label.getLabel().isEmpty()) {
+                labels.put(label.getLabel(), i);
+            }
+        }
+
+        List<IrNode> nodes = new ArrayList<>(code.size());
+        IrProgram program = new IrProgram(nodes, functionBody, code.size());
+        for (int i = 0; i < code.size(); i++) {
+            SInstruction instruction = code.get(i);
+            if (!InstructionEffects.isSupported(instruction)) {
+                return null;
+            }
+            int next = i + 1 < code.size() ? i + 1 : EXIT;
+            IrNode node;
+            if (instruction instanceof NoOpInstruction) {
+                node = new IrNode(null, instruction.cycles(), next, next);
+            } else if (instruction instanceof GotoLabelInstruction g) {
+                int target = resolve(g.getTarget(), next, labels, functionBody);
+                node = new IrNode(null, instruction.cycles(), target, target);
+            } else {
+                Label target = InstructionEffects.conditionalTarget(instruction);
+                int jump = target == null ? next : resolve(target, next, labels, functionBody);
+                node = new IrNode(instruction, instruction.cycles(), next, jump);
+            }
+            InstructionEffects.forEachVariable(instruction, program.variables::add);
+            nodes.add(node);
+        }
+        program.entry = code.isEmpty() ? EXIT : 0;
+        return program;
+    }
+
+    private static int resolve(Label target, int next, Map<String, Integer> labels, boolean functionBody) {
+        if (target == FixedLabel.EMPTY) {
+            return next;
+        }
+        if (target == FixedLabel.EXIT || (functionBody && "EXIT".equals(target.getLabel()))) {
+            return EXIT;
+        }
+        Integer index = labels.get(target.getLabel());
+        return index != null ? index : next;
+    }
+
+    IrNode node(int index) {
+        return nodes.get(index);
+    }
+
+    /**
+     * Whether a store to the variable is unobservable once the program ends. In
+     * the main program x and y are reported to the user, so only work variables
+     * qualify; a function body only returns y.
+     */
+    boolean isLocal(Variable variable) {
+        return functionBody
+                ? variable.getType() != VariableType.RESULT
+                : variable.getType() == VariableType.WORK;
+    }
+
+    /** Drop removed nodes and renumber the rest, keeping their original order. */
+    OptimizedProgram compact() {
+        int[] newIndex = new int[nodes.size()];
+        int size = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            newIndex[i] = nodes.get(i).removed ? EXIT : size++;
+        }
+
+        int[] originalIndices = new int[size];
+        SInstruction[] instructions = new SInstruction[size];
+        int[] costs = new int[size];
+        int[] fall = new int[size];
+        long[] fallExtra = new long[size];
+        int[] jump = new int[size];
+        long[] jumpExtra = new long[size];
+        for (int i = 0; i < nodes.size(); i++) {
+            IrNode node = nodes.get(i);
+            if (node.removed) {
+                continue;
+            }
+            int at = newIndex[i];
+            originalIndices[at] = i;
+            instructions[at] = node.instruction;
+            costs[at] = node.cost;
+            fall[at] = node.fall == EXIT ? EXIT : newIndex[node.fall];
+            fallExtra[at] = node.fallExtra;
+            jump[at] = node.jump == EXIT ? EXIT : newIndex[node.jump];
+            jumpExtra[at] = node.jumpExtra;
+        }
+        return new OptimizedProgram(originalSize, originalIndices, instructions, costs, fall, fallExtra, jump,
+                jumpExtra, entry == EXIT ? EXIT : newIndex[entry], entryExtra, Set.copyOf(inlined));
+    }
+}
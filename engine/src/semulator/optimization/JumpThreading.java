@@ -0,0 +1,73 @@
+package semulator.optimization;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Redirects every edge that leads to a pure node (NEUTRAL, GOTO, folded branch,
+ * dead store) to the first non-pure node after it, adding the bypassed cycles to
+ * the edge. Chains of GOTOs collapse into one edge. A chain that loops back on
+ * itself (GOTO L at L) is an infinite loop and is left alone.
+ */
+final class JumpThreading implements Pass {
+
+    @Override
+    public String name() {
+        return "jump-threading";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        boolean changed = false;
+        long[] edge = new long[2];
+
+        if (thread(program, program.entry, program.entryExtra, edge)) {
+            program.entry = (int) edge[0];
+            program.entryExtra = edge[1];
+            changed = true;
+        }
+        for (IrNode node : program.nodes) {
+            if (node.removed) {
+                continue;
+            }
+            if (thread(program, node.fall, node.fallExtra, edge)) {
+                node.fall = (int) edge[0];
+                node.fallExtra = edge[1];
+                changed = true;
+            }
+            if (node.isPure()) {
+                node.jump = node.fall;
+                node.jumpExtra = node.fallExtra;
+            } else if (thread(program, node.jump, node.jumpExtra, edge)) {
+                node.jump = (int) edge[0];
+                node.jumpExtra = edge[1];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Follow pure nodes from target. On success edge holds the new target and
+     * the extra cycles of the edge.
+     *
+     * @return false if there is nothing to thread (or the chain is a cycle)
+     */
+    private static boolean thread(IrProgram program, int target, long extra, long[] edge) {
+        if (target == IrProgram.EXIT || !program.node(target).isPure()) {
+            return false;
+        }
+        Set<Integer> visited = new HashSet<>();
+        while (target != IrProgram.EXIT && program.node(target).isPure()) {
+            if (!visited.add(target)) {
+                return false;
+            }
+            IrNode pure = program.node(target);
+            extra += pure.cost + pure.fallExtra;
+            target = pure.fall;
+        }
+        edge[0] = target;
+        edge[1] = extra;
+        return true;
+    }
+}
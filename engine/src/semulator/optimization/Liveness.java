@@ -0,0 +1,92 @@
+package semulator.optimization;
+
+import semulator.instructions.SInstruction;
+import semulator.variable.Variable;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Backward liveness of the program's local variables (see
+ * {@link IrProgram#isLocal}). Other variables are observable at the end and so
+ * always live; they are not tracked. Locals are dead at EXIT.
+ */
+final class Liveness {
+
+    private final Map<Variable, Integer> index = new HashMap<>();
+    private final BitSet[] liveIn;
+    private final BitSet[] liveOut;
+
+    Liveness(IrProgram program, ControlFlowGraph cfg) {
+        for (Variable variable : program.variables) {
+            if (program.isLocal(variable)) {
+                index.put(variable, index.size());
+            }
+        }
+        int n = program.nodes.size();
+        liveIn = new BitSet[n];
+        liveOut = new BitSet[n];
+        for (int i = 0; i < n; i++) {
+            liveIn[i] = new BitSet();
+            liveOut[i] = new BitSet();
+        }
+
+        Deque<Integer> work = new ArrayDeque<>();
+        boolean[] queued = new boolean[n];
+        for (int i = n - 1; i >= 0; i--) {
+            if (!program.node(i).removed) {
+                work.add(i);
+                queued[i] = true;
+            }
+        }
+        while (!work.isEmpty()) {
+            int i = work.poll();
+            queued[i] = false;
+            BitSet out = new BitSet();
+            for (int next : cfg.successors(i)) {
+                if (next != IrProgram.EXIT) {
+                    out.or(liveIn[next]);
+                }
+            }
+            liveOut[i] = out;
+            BitSet in = transfer(program.node(i), out);
+            if (!in.equals(liveIn[i])) {
+                liveIn[i] = in;
+                for (int previous : cfg.predecessors(i)) {
+                    if (!queued[previous]) {
+                        queued[previous] = true;
+                        work.add(previous);
+                    }
+                }
+            }
+        }
+    }
+
+    private BitSet transfer(IrNode node, BitSet out) {
+        BitSet in = (BitSet) out.clone();
+        SInstruction instruction = node.instruction;
+        if (instruction == null) {
+            return in;
+        }
+        Variable killed = InstructionEffects.killed(instruction);
+        if (killed != null && index.containsKey(killed)) {
+            in.clear(index.get(killed));
+        }
+        InstructionEffects.forEachRead(instruction, v -> {
+            Integer bit = index.get(v);
+            if (bit != null) {
+                in.set(bit);
+            }
+        });
+        return in;
+    }
+
+    /** Whether the variable may be read after node i executes. */
+    boolean isLiveAfter(int i, Variable variable) {
+        Integer bit = index.get(variable);
+        return bit == null || liveOut[i].get(bit);
+    }
+}
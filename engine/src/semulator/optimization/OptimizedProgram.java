@@ -0,0 +1,121 @@
+package semulator.optimization;
+
+import semulator.instructions.SInstruction;
+import semulator.variable.Variable;
+
+import java.util.Set;
+
+/**
+ * Result of the optimizer, laid out in flat arrays for the interpreter loop.
+ *
+ * Executing node i means: charge cost(i); if instruction(i) is null continue at
+ * fallTarget(i), otherwise execute it and continue at fallTarget(i) when it
+ * returned EMPTY or at jumpTarget(i) when it jumped; then charge the extra cycles
+ * of the edge taken. Costs and edge extras together form the cycle-correction
+ * map: they add up to exactly the cycles the original instructions would have
+ * been charged on the same path. A target of {@link #EXIT} ends the program.
+ */
+public final class OptimizedProgram {
+
+    public static final int EXIT = IrProgram.EXIT;
+
+    private final int originalSize;
+    private final int[] originalIndices;
+    private final SInstruction[] instructions;
+    private final int[] costs;
+    private final int[] fallTargets;
+    private final long[] fallExtras;
+    private final int[] jumpTargets;
+    private final long[] jumpExtras;
+    private final int entry;
+    private final long entryExtra;
+    private final Set<Variable> inlinedVariables;
+
+    private volatile BasicBlocks blocks;
+
+    OptimizedProgram(int originalSize, int[] originalIndices, SInstruction[] instructions, int[] costs,
+            int[] fallTargets, long[] fallExtras, int[] jumpTargets, long[] jumpExtras, int entry, long entryExtra,
+            Set<Variable> inlinedVariables) {
+        this.originalSize = originalSize;
+        this.originalIndices = originalIndices;
+        this.instructions = instructions;
+        this.costs = costs;
+        this.fallTargets = fallTargets;
+        this.fallExtras = fallExtras;
+        this.jumpTargets = jumpTargets;
+        this.jumpExtras = jumpExtras;
+        this.entry = entry;
+        this.entryExtra = entryExtra;
+        this.inlinedVariables = inlinedVariables;
+    }
+
+    /** Index of the first node, or EXIT when the program does nothing but spend cycles. */
+    public int entry() {
+        return entry;
+    }
+
+    /** Cycles of the instructions skipped before the first node. */
+    public long entryExtra() {
+        return entryExtra;
+    }
+
+    public int size() {
+        return instructions.length;
+    }
+
+    public int getOriginalSize() {
+        return originalSize;
+    }
+
+    /**
+     * Index of the node's instruction in the original list; getOriginalSize() or
+     * more for a node of an inlined function body.
+     */
+    public int originalIndex(int index) {
+        return originalIndices[index];
+    }
+
+    /**
+     * Work variables that hold the variables of inlined function bodies. They are
+     * not part of the program, so the executor drops them from the variables it
+     * reports.
+     */
+    public Set<Variable> inlinedVariables() {
+        return inlinedVariables;
+    }
+
+    /** The original instruction, or null for a node that only accounts for cycles. */
+    public SInstruction instruction(int index) {
+        return instructions[index];
+    }
+
+    public int cost(int index) {
+        return costs[index];
+    }
+
+    public int fallTarget(int index) {
+        return fallTargets[index];
+    }
+
+    public long fallExtra(int index) {
+        return fallExtras[index];
+    }
+
+    public int jumpTarget(int index) {
+        return jumpTargets[index];
+    }
+
+    public long jumpExtra(int index) {
+        return jumpExtras[index];
+    }
+
+    /** The program split into basic blocks (built on first use). */
+    public BasicBlocks blocks() {
+        BasicBlocks result = blocks;
+        if (result == null) {
+            result = new BasicBlocks(this);
+            blocks = result;
+        }
+        return result;
+    }
+}
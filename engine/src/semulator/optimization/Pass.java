@@ -0,0 +1,13 @@
+package semulator.optimization;
+
+/**
+ * One rewrite over an {@link IrProgram}. A pass must keep the values of all
+ * observable variables and the cycles charged on every path.
+ */
+interface Pass {
+
+    String name();
+
+    /** @return true if the program was changed */
+    boolean run(IrProgram program);
+}
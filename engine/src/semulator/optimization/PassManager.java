@@ -0,0 +1,88 @@
+package semulator.optimization;
+
+import semulator.instructions.SInstruction;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the optimization passes over an instruction list until none of them
+ * changes anything (bounded by MAX_ROUNDS), then compacts the result.
+ *
+ * Standard pipeline: constant propagation with branch folding, jump threading,
+ * unreachable-code removal and dead-store elimination, optionally preceded by
+ * inlining of small leaf functions. Each pass can expose work
+ * for the others (a folded branch makes code unreachable, a dead store becomes a
+ * pure node to thread through), hence the rounds.
+ */
+public final class PassManager {
+
+    private static final int MAX_ROUNDS = 16;
+
+    private final List<Pass> passes;
+    private final Map<String, Integer> changeCounts = new LinkedHashMap<>();
+
+    private PassManager(List<Pass> passes) {
+        this.passes = passes;
+    }
+
+    public static PassManager standard() {
+        return new PassManager(List.of(
+                new ConstantPropagation(),
+                new JumpThreading(),
+                new UnreachableCodeElimination(),
+                new DeadStoreElimination()));
+    }
+
+    /**
+     * The standard pipeline, first inlining calls of small leaf functions (see
+     * {@link Inlining}) looked up in functions.
+     */
+    public static PassManager standard(Map<String, List<SInstruction>> functions) {
+        return new PassManager(List.of(
+                new Inlining(functions),
+                new ConstantPropagation(),
+                new JumpThreading(),
+                new UnreachableCodeElimination(),
+                new DeadStoreElimination()));
+    }
+
+    /**
+     * No passes: labels are only resolved and node i stays instruction i, so
+     * execution can be entered at any instruction a jump leads to (see
+     * {@link BasicBlocks#blockStartingAt(int)}).
+     */
+    public static PassManager layoutOnly() {
+        return new PassManager(List.of());
+    }
+
+    /**
+     * @param functionBody true for a function body (label "EXIT" stops, only y is
+     *                     returned), false for the main program
+     * @return the optimized program, or null if the code contains an instruction
+     *         type the passes do not know
+     */
+    public synchronized OptimizedProgram optimize(List<SInstruction> code, boolean functionBody) {
+        IrProgram program = IrProgram.build(code, functionBody);
+        if (program == null) {
+            return null;
+        }
+        boolean changed = true;
+        for (int round = 0; round < MAX_ROUNDS && changed; round++) {
+            changed = false;
+            for (Pass pass : passes) {
+                if (pass.run(program)) {
+                    changeCounts.merge(pass.name(), 1, Integer::sum);
+                    changed = true;
+                }
+            }
+        }
+        return program.compact();
+    }
+
+    /** How many times each pass changed a program, over all optimize() calls. */
+    public synchronized Map<String, Integer> getChangeCounts() {
+        return new LinkedHashMap<>(changeCounts);
+    }
+}
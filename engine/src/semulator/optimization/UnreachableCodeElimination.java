@@ -0,0 +1,27 @@
+package semulator.optimization;
+
+/**
+ * Removes nodes that can no longer be reached from the entry, e.g. the
+ * instructions after a folded branch or pure nodes bypassed by threading.
+ */
+final class UnreachableCodeElimination implements Pass {
+
+    @Override
+    public String name() {
+        return "unreachable-code";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        boolean[] reachable = new ControlFlowGraph(program).reachable();
+        boolean changed = false;
+        for (int i = 0; i < program.nodes.size(); i++) {
+            IrNode node = program.node(i);
+            if (!node.removed && !reachable[i]) {
+                node.removed = true;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,310 @@
+package semulator.program;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.SInstruction;
+import semulator.label.FixedLabel;
+import semulator.label.Label;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The expansion of a program to a degree, built one top-level instruction at a
+ * time when it is first needed.
+ *
+ * The instructions of expandToDegree(degree) are the expansions of the
+ * program's instructions one after the other; each of these runs is a segment
+ * here. Segments are numbered like the program's instructions and are expanded
+ * (to the full degree, with the same one-step rules) on the first call to
+ * {@link #segment(int)}, so a run that never reaches an instruction never
+ * expands it.
+ *
+ * Row numbers are those of the full expansion. They only need the size of each
+ * segment, which comes from expanding one instance of each kind of instruction
+ * (name, constant, called function and the shape of its arguments, degree) one
+ * step, without keeping the result. The same pass finds where the expansion
+ * defines labels of the program (an IFEQC defines its target again, for
+ * instance), so a jump resolves to the definition the full expansion would
+ * use: the last one. Labels the expansion makes up are only used inside the
+ * segment that made them. Names made up in a segment are not those
+ * expandToDegree would pick.
+ *
+ * Building it throws like expandToDegree does when the program cannot be
+ * expanded (a call to a missing function, for one).
+ */
+public final class DemandExpansion {
+
+    /** An instruction of the expansion: its segment and its index in it. */
+    public record Position(int segment, int offset) {
+    }
+
+    /** Size and program-label definitions (label to offset, last one) of one kind of instruction. */
+    private record Shape(long size, Map<String, Long> labels) {
+    }
+
+    private final SProgramImpl program;
+    private final int degree;
+    private final NameSession reserved;
+    private final NameSession names;
+    private final List<SInstruction> instructions;
+    private final long[] firstRow;
+    private final long size;
+    private final Map<String, Position> programLabels = new HashMap<>();
+    private final Map<String, Shape> shapes = new HashMap<>();
+    private final SInstruction[][] segments;
+    private final List<Map<String, Integer>> segmentLabels;
+    private int expandedSegments;
+
+    public DemandExpansion(SProgramImpl program, int degree) {
+        if (degree < 0) {
+            throw new IllegalArgumentException("degree must be non-negative");
+        }
+        this.program = program;
+        this.degree = degree;
+        this.reserved = program.newNameSession();
+        this.names = program.newNameSession();
+        this.instructions = program.getInstructions();
+        this.firstRow = new long[instructions.size() + 1];
+        this.segments = new SInstruction[instructions.size()][];
+        this.segmentLabels = new ArrayList<>(Collections.nCopies(instructions.size(), null));
+
+        NameSession scratch = program.newNameSession();
+        long row = 1;
+        for (int i = 0; i < instructions.size(); i++) {
+            firstRow[i] = row;
+            Shape shape = shape(instructions.get(i), degree, scratch);
+            for (Map.Entry<String, Long> label : shape.labels().entrySet()) {
+                programLabels.put(label.getKey(), new Position(i, Math.toIntExact(label.getValue())));
+            }
+            row += shape.size();
+        }
+        firstRow[instructions.size()] = row;
+        this.size = row - 1;
+        shapes.clear();
+    }
+
+    public int degree() {
+        return degree;
+    }
+
+    /** Instructions in the full expansion. */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Instructions in the expansion of other code of the program (a function's
+     * body, say) to this degree, counted the same way, without building it.
+     */
+    public synchronized long sizeOf(List<SInstruction> code) {
+        NameSession scratch = program.newNameSession();
+        long rows = 0;
+        for (SInstruction instruction : code) {
+            rows += shape(instruction, degree, scratch).size();
+        }
+        shapes.clear();
+        return rows;
+    }
+
+    /** Segments, one per instruction of the program. */
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    /** Segments expanded so far. */
+    public synchronized int expandedSegmentCount() {
+        return expandedSegments;
+    }
+
+    /** The expansion of the program's instruction at the index, built on the first call. */
+    public synchronized List<SInstruction> segment(int index) {
+        SInstruction[] segment = segments[index];
+        if (segment == null) {
+            List<SInstruction> code = new ArrayList<>();
+            expand(instructions.get(index), degree, code);
+            if (code.size() != firstRow[index + 1] - firstRow[index]) {
+                throw new IllegalStateException("Expansion of row " + (index + 1) + " has " + code.size()
+                        + " instructions, expected " + (firstRow[index + 1] - firstRow[index]));
+            }
+            Map<String, Integer> labels = new HashMap<>();
+            for (int i = 0; i < code.size(); i++) {
+                Label label = code.get(i).getLabel();
+                if (isDefinition(label) && !reserved.isTaken(label)) {
+                    labels.put(label.getLabel(), i);
+                }
+            }
+            segment = code.toArray(new SInstruction[0]);
+            segments[index] = segment;
+            segmentLabels.set(index, labels);
+            expandedSegments++;
+        }
+        return Collections.unmodifiableList(Arrays.asList(segment));
+    }
+
+    /**
+     * Where a jump from the segment lands, like a jump in the full expansion:
+     * the last definition of the label.
+     *
+     * @return null when the label is not defined (the run goes on with the next instruction)
+     */
+    public synchronized Position target(int segment, Label label) {
+        if (reserved.isTaken(label)) {
+            return programLabels.get(label.getLabel());
+        }
+        Map<String, Integer> labels = segmentLabels.get(segment);
+        Integer offset = labels == null ? null : labels.get(label.getLabel());
+        return offset == null ? null : new Position(segment, offset);
+    }
+
+    /** 1-based row of an instruction, as numbered in expandToDegree. */
+    public long row(int segment, int offset) {
+        return firstRow[segment] + offset;
+    }
+
+    /** The instruction at a 1-based row of the full expansion. */
+    public Position position(long row) {
+        if (row < 1 || row > size) {
+            throw new IllegalArgumentException("Row " + row + " is not in 1.." + size);
+        }
+        int segment = Arrays.binarySearch(firstRow, row);
+        if (segment < 0) {
+            segment = -segment - 2;
+        }
+        while (firstRow[segment + 1] == firstRow[segment]) {
+            segment++; // an instruction whose expansion is empty
+        }
+        return new Position(segment, (int) (row - firstRow[segment]));
+    }
+
+    /** The instruction at a 1-based row, expanding its segment if needed. */
+    public SInstruction instruction(long row) {
+        Position position = position(row);
+        return segment(position.segment()).get(position.offset());
+    }
+
+    private void expand(SInstruction instruction, int degree, List<SInstruction> out) {
+        if (degree == 0) {
+            out.add(instruction);
+            return;
+        }
+        List<SInstruction> children = program.expandOnce(instruction, names);
+        if (isUnchanged(instruction, children)) {
+            out.add(instruction);
+            return;
+        }
+        for (SInstruction child : children) {
+            expand(child, degree - 1, out);
+        }
+    }
+
+    private Shape shape(SInstruction instruction, int degree, NameSession scratch) {
+        if (degree == 0) {
+            return leaf(instruction);
+        }
+        String key = key(instruction, degree);
+        Shape shape = shapes.get(key);
+        if (shape != null) {
+            return shape;
+        }
+        List<SInstruction> children = program.expandOnce(instruction, scratch);
+        if (isUnchanged(instruction, children)) {
+            shape = leaf(instruction);
+        } else {
+            long size = 0;
+            Map<String, Long> labels = new LinkedHashMap<>();
+            for (SInstruction child : children) {
+                Shape part = shape(child, degree - 1, scratch);
+                for (Map.Entry<String, Long> label : part.labels().entrySet()) {
+                    labels.put(label.getKey(), size + label.getValue());
+                }
+                size += part.size();
+            }
+            shape = new Shape(size, labels);
+        }
+        shapes.put(key, shape);
+        return shape;
+    }
+
+    private Shape leaf(SInstruction instruction) {
+        Label label = instruction.getLabel();
+        if (isDefinition(label) && reserved.isTaken(label)) {
+            return new Shape(1, Map.of(label.getLabel(), 0L));
+        }
+        return new Shape(1, Map.of());
+    }
+
+    /** Basic instructions come back from expandOnce as they are. */
+    private static boolean isUnchanged(SInstruction instruction, List<SInstruction> children) {
+        return children.size() == 1 && children.get(0) == instruction;
+    }
+
+    private static boolean isDefinition(Label label) {
+        return label != null && label != FixedLabel.EMPTY && label != FixedLabel.EXIT;
+    }
+
+    /**
+     * What the expansion's size and program-label definitions depend on: the
+     * variables do not matter, labels made up by expansion only as such.
+     */
+    private String key(SInstruction instruction, int degree) {
+        StringBuilder key = new StringBuilder().append(degree).append(' ').append(instruction.getName())
+                .append(' ').append(label(instruction.getLabel()));
+        if (instruction instanceof AssignConstantInstruction a) {
+            key.append(' ').append(a.getConstant());
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            key.append(' ').append(j.getConstant()).append(' ').append(label(j.getTarget()));
+        } else if (instruction instanceof JumpNotZeroInstruction j) {
+            key.append(' ').append(label(j.getTarget()));
+        } else if (instruction instanceof JumpZeroInstruction j) {
+            key.append(' ').append(label(j.getTarget()));
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            key.append(' ').append(label(j.getTarget()));
+        } else if (instruction instanceof GotoLabelInstruction g) {
+            key.append(' ').append(label(g.getTarget()));
+        } else if (instruction instanceof QuoteInstruction q) {
+            key.append(' ').append(q.getFunctionName());
+            arguments(q.getFunctionArguments(), key);
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            key.append(' ').append(label(j.getTarget())).append(' ').append(j.getFunctionName());
+            arguments(j.getFunctionArguments(), key);
+        }
+        return key.toString();
+    }
+
+    private String label(Label label) {
+        if (!isDefinition(label)) {
+            return label == FixedLabel.EXIT ? "EXIT" : "";
+        }
+        return reserved.isTaken(label) ? label.getLabel() : "~";
+    }
+
+    private static void arguments(List<FunctionArgument> arguments, StringBuilder key) {
+        key.append('(');
+        for (int i = 0; i < arguments.size(); i++) {
+            FunctionArgument argument = arguments.get(i);
+            if (i > 0) {
+                key.append(',');
+            }
+            if (argument.isFunctionCall()) {
+                key.append(argument.asFunctionCall().getFunctionName());
+                arguments(argument.asFunctionCall().getArguments(), key);
+            } else {
+                key.append('_');
+            }
+        }
+        key.append(')');
+    }
+}
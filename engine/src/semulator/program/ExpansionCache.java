@@ -0,0 +1,279 @@
+package semulator.program;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Stream;
+
+/**
+ * Expansions kept between sessions in a local directory, keyed by the content
+ * hash of the program's XML, the function (or the main program) and the
+ * degree. An entry is written once as a {@link MappedExpansion} and mapped
+ * again when it is asked for, so going back to a degree a program was expanded
+ * to before, in this session or an earlier one, costs the mapping and not the
+ * expansion. The directory is kept under a size bound by deleting the entries
+ * used least recently.
+ *
+ * Layout: root/v2/(XML digest)/(main or f-(function digest))/degree-(d)/, one
+ * MappedExpansion per directory. The time of its expansion.meta is the last
+ * use of an entry. Bump FORMAT when expansion rules change, so old entries are
+ * not read back.
+ */
+public final class ExpansionCache {
+
+    public static final long DEFAULT_MAX_BYTES = 1L << 30; // 1 GiB
+    private static final String FORMAT = "v2"; // v2: work variables numbered in order of appearance
+
+    private static ExpansionCache defaultCache;
+
+    private final Path root;
+    private final long maxBytes;
+    private final Set<Path> busy = new HashSet<>(); // entries being read or written
+
+    public ExpansionCache(Path root, long maxBytes) {
+        if (root == null) {
+            throw new IllegalArgumentException("root is null");
+        }
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be non-negative");
+        }
+        this.root = root;
+        this.maxBytes = maxBytes;
+    }
+
+    /** The cache in ~/.semulator/expansions, at most DEFAULT_MAX_BYTES. */
+    public static synchronized ExpansionCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new ExpansionCache(
+                    Path.of(System.getProperty("user.home"), ".semulator", "expansions"), DEFAULT_MAX_BYTES);
+        }
+        return defaultCache;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * The expansion of the program, or of the function when it is not null, to
+     * the degree: mapped from the cache, written to it first when it is not
+     * there. The caller closes it (the files stay).
+     *
+     * @throws IllegalArgumentException if the program was not loaded from XML
+     */
+    public MappedExpansion open(SProgramImpl program, String function, int degree) throws IOException {
+        String digest = program.getXmlDigest();
+        if (digest == null) {
+            throw new IllegalArgumentException("Only programs loaded from XML can be cached");
+        }
+        Path entry = root.resolve(FORMAT).resolve(digest)
+                .resolve(function == null ? "main" : "f-" + digest(function))
+                .resolve("degree-" + degree);
+        acquire(entry);
+        try {
+            return openEntry(program, function, degree, entry);
+        } finally {
+            release(entry);
+        }
+    }
+
+    /**
+     * Wait until no other thread is reading or writing the entry, and take it.
+     * Entries are taken one at a time, so a long write does not hold up
+     * reading the others.
+     */
+    private synchronized void acquire(Path entry) throws IOException {
+        while (busy.contains(entry)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + entry);
+            }
+        }
+        busy.add(entry);
+    }
+
+    private synchronized void release(Path entry) {
+        busy.remove(entry);
+        notifyAll();
+    }
+
+    private MappedExpansion openEntry(SProgramImpl program, String function, int degree, Path entry)
+            throws IOException {
+        MappedExpansion expansion = null;
+        if (Files.exists(entry.resolve(MappedExpansion.META))) {
+            try {
+                expansion = MappedExpansion.open(program, function, degree, entry);
+            } catch (IOException e) {
+                // damaged or partly deleted: written again below
+            }
+        }
+        boolean written = expansion == null;
+        if (written) {
+            Files.createDirectories(entry);
+            expansion = MappedExpansion.create(program, function, degree, entry);
+        }
+        try {
+            if (written) {
+                evict(entry);
+            }
+            Files.setLastModifiedTime(entry.resolve(MappedExpansion.META),
+                    FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            expansion.close();
+            throw e;
+        }
+        return expansion;
+    }
+
+    /**
+     * The expansion mapped from the cache, as open does, for a program loaded
+     * from XML expanded past degree 0; null for any other, or when the cache
+     * fails, to be expanded in memory instead. The caller closes it.
+     *
+     * @throws CancellationException if the thread is interrupted while the
+     *         cache is read or written; its interrupt flag stays set
+     */
+    public MappedExpansion mapped(SProgramImpl program, String function, int degree) {
+        if (program.getXmlDigest() == null || degree <= 0) {
+            return null;
+        }
+        try {
+            return open(program, function, degree);
+        } catch (InterruptedIOException | ClosedByInterruptException e) {
+            // cancelled, not failed: expanding in memory would only keep the thread longer
+            Thread.currentThread().interrupt();
+            CancellationException cancelled = new CancellationException("Expansion interrupted");
+            cancelled.initCause(e);
+            throw cancelled;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * expandToDegree (expandFunctionToDegree when the function is not null)
+     * through the cache. Programs not loaded from XML, and any failure of the
+     * cache, fall back to expanding in memory.
+     *
+     * @throws CancellationException if the thread is interrupted while the
+     *         cache is read or written; its interrupt flag stays set
+     */
+    public ExpansionResult expansionResult(SProgramImpl program, String function, int degree) {
+        MappedExpansion expansion = mapped(program, function, degree);
+        if (expansion != null) {
+            try (expansion) {
+                return expansion.toExpansionResult();
+            }
+        }
+        return function == null ? program.expandToDegree(degree) : program.expandFunctionToDegree(function, degree);
+    }
+
+    /** Bytes the cache's entries take on disk. */
+    public synchronized long bytesOnDisk() throws IOException {
+        long bytes = 0;
+        for (Path entry : entries()) {
+            bytes += bytes(entry);
+        }
+        return bytes;
+    }
+
+    /**
+     * Delete entries, least recently used first, until the cache fits its
+     * bound; keep and entries other threads are using are not deleted.
+     */
+    private synchronized void evict(Path keep) throws IOException {
+        List<Path> entries = entries();
+        long total = 0;
+        List<Long> sizes = new ArrayList<>();
+        List<FileTime> used = new ArrayList<>();
+        for (Path entry : entries) {
+            long size = bytes(entry);
+            sizes.add(size);
+            total += size;
+            Path meta = entry.resolve(MappedExpansion.META);
+            // an entry without expansion.meta was never finished: first to go
+            used.add(Files.exists(meta) ? Files.getLastModifiedTime(meta) : FileTime.fromMillis(0));
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(used::get));
+        for (int i : order) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Path entry = entries.get(i);
+            if (!entry.equals(keep) && !busy.contains(entry) && delete(entry)) {
+                total -= sizes.get(i);
+            }
+        }
+    }
+
+    /** Entry directories: root/FORMAT/digest/program/degree-d. */
+    private List<Path> entries() throws IOException {
+        Path base = root.resolve(FORMAT);
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.walk(base, 3)) {
+            return paths.filter(path -> base.relativize(path).getNameCount() == 3 && Files.isDirectory(path))
+                    .toList();
+        }
+    }
+
+    private static long bytes(Path entry) throws IOException {
+        long bytes = 0;
+        try (Stream<Path> files = Files.list(entry)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                bytes += Files.size(file);
+            }
+        }
+        return bytes;
+    }
+
+    /** Delete an entry; false if a file could not be deleted (still mapped, on some platforms). */
+    private static boolean delete(Path entry) {
+        try {
+            // the marker first, so a half-deleted entry is not read back
+            Files.deleteIfExists(entry.resolve(MappedExpansion.META));
+            try (Stream<Path> files = Files.list(entry)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(entry);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String digest(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package semulator.program;
+
+import semulator.instructions.SInstruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How the rows of an expansion change when the same program is expanded to
+ * another degree, worked out from the lineage (parent map) of the deeper
+ * expansion: each row of the shallower one is either kept, as the same
+ * instruction one or more rows further down, or replaced by the rows it
+ * expands into. Going back to a lower degree is the same script the other way
+ * round.
+ *
+ * Adjacent replaced rows make one edit, so a user interface can show the new
+ * expansion with as many list changes as there are edits and leave the kept
+ * rows (and a selection or scroll position on them) where they are, renumbered.
+ * Kept rows may still show other names for work variables and labels, which
+ * each expansion makes up again.
+ */
+public final class ExpansionDiff {
+
+    /**
+     * Rows previousRow..previousRow+removed-1 of the previous expansion are rows
+     * nextRow..nextRow+added-1 of the next one.
+     */
+    public record Edit(int previousRow, int removed, int nextRow, int added) {
+    }
+
+    private final ExpansionResult previous;
+    private final ExpansionResult next;
+    private final List<Edit> edits;
+    private final int[] nextRowOf;
+
+    private ExpansionDiff(ExpansionResult previous, ExpansionResult next, List<Edit> edits, int[] nextRowOf) {
+        this.previous = previous;
+        this.next = next;
+        this.edits = Collections.unmodifiableList(edits);
+        this.nextRowOf = nextRowOf;
+    }
+
+    /**
+     * The edits from one expansion of a program (or function) to another of the
+     * same program at a different degree.
+     *
+     * @return null when the rows do not line up through the lineage: the
+     *         expansions are of different programs, or one was unfolded, say
+     */
+    public static ExpansionDiff between(ExpansionResult previous, int previousDegree, ExpansionResult next,
+            int nextDegree) {
+        if (previous == null || next == null) {
+            throw new IllegalArgumentException("expansion is null");
+        }
+        if (previousDegree == nextDegree) {
+            return null;
+        }
+        boolean deeper = nextDegree > previousDegree;
+        ExpansionResult shallow = deeper ? previous : next;
+        ExpansionResult deep = deeper ? next : previous;
+        int degree = Math.min(previousDegree, nextDegree);
+        List<SInstruction> shallowRows = shallow.instructions();
+        List<SInstruction> deepRows = deep.instructions();
+
+        // first[i]..first[i + 1] - 1: the deep rows that row i of shallow became
+        int[] first = new int[shallowRows.size() + 1];
+        boolean[] kept = new boolean[shallowRows.size()];
+        Map<SInstruction, Integer> depths = new IdentityHashMap<>();
+        int segment = -1;
+        SInstruction current = null;
+        for (int row = 0; row < deepRows.size(); row++) {
+            SInstruction instruction = deepRows.get(row);
+            SInstruction ancestor = ancestor(instruction, degree, deep.parent(), depths);
+            if (ancestor != current || ancestor == instruction) {
+                segment++;
+                if (segment >= shallowRows.size()
+                        || !sameKind(ancestor, shallowRows.get(segment))) {
+                    return null;
+                }
+                first[segment] = row;
+                kept[segment] = ancestor == instruction;
+                current = ancestor;
+            }
+        }
+        if (segment != shallowRows.size() - 1) {
+            return null; // a row expanded into nothing, or the expansions differ
+        }
+        first[shallowRows.size()] = deepRows.size();
+
+        List<Edit> edits = new ArrayList<>();
+        int[] nextRowOf = new int[previous.instructions().size()];
+        int row = 0;
+        while (row < shallowRows.size()) {
+            if (kept[row]) {
+                row++;
+                continue;
+            }
+            int end = row;
+            while (end < shallowRows.size() && !kept[end]) {
+                end++;
+            }
+            edits.add(deeper
+                    ? new Edit(row, end - row, first[row], first[end] - first[row])
+                    : new Edit(first[row], first[end] - first[row], row, end - row));
+            row = end;
+        }
+        for (int i = 0; i < shallowRows.size(); i++) {
+            if (deeper) {
+                nextRowOf[i] = first[i];
+            } else {
+                for (int j = first[i]; j < first[i + 1]; j++) {
+                    nextRowOf[j] = i;
+                }
+            }
+        }
+        return new ExpansionDiff(previous, next, edits, nextRowOf);
+    }
+
+    public ExpansionResult previous() {
+        return previous;
+    }
+
+    public ExpansionResult next() {
+        return next;
+    }
+
+    /** The replaced runs of rows, top to bottom; kept rows are in none. */
+    public List<Edit> edits() {
+        return edits;
+    }
+
+    /**
+     * Where a 0-based row of the previous expansion is in the next one: the row
+     * itself if it was kept, the first of its rows if it expanded, the row it
+     * went back into otherwise.
+     */
+    public int nextRowOf(int previousRow) {
+        return nextRowOf[previousRow];
+    }
+
+    /**
+     * The instruction's ancestor at the degree: itself when it was already
+     * there (it was kept from then on), otherwise the one it was expanded from.
+     */
+    private static SInstruction ancestor(SInstruction instruction, int degree,
+            Map<SInstruction, SInstruction> parents, Map<SInstruction, Integer> depths) {
+        SInstruction ancestor = instruction;
+        for (int up = depth(instruction, parents, depths) - degree; up > 0; up--) {
+            ancestor = parents.get(ancestor);
+        }
+        return ancestor;
+    }
+
+    /** Expansion steps from an instruction of the program to this one. */
+    private static int depth(SInstruction instruction, Map<SInstruction, SInstruction> parents,
+            Map<SInstruction, Integer> depths) {
+        List<SInstruction> chain = new ArrayList<>();
+        SInstruction at = instruction;
+        Integer depth = null;
+        while (at != null && (depth = depths.get(at)) == null) {
+            chain.add(at);
+            at = parents.get(at);
+        }
+        int d = depth == null ? -1 : depth;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            depths.put(chain.get(i), ++d);
+        }
+        return depths.get(instruction);
+    }
+
+    /** The two rows hold the same instruction, up to the names an expansion makes up. */
+    private static boolean sameKind(SInstruction a, SInstruction b) {
+        return a.getName().equals(b.getName()) && a.cycles() == b.cycles();
+    }
+}
@@ -0,0 +1,167 @@
+package semulator.program;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expands a loaded program before the user asks for it: the main program and
+ * every function, to each degree up to its maximum, into an
+ * {@link ExpansionCache}, so that picking a degree afterwards reads the
+ * expansion back instead of building it.
+ *
+ * The work runs on one daemon thread at the lowest priority, smallest
+ * expansions first (sizes come from {@link DemandExpansion}, without
+ * expanding), until the expansions of the run would take more than its budget
+ * on disk (DEFAULT_BUDGET_BYTES unless given; never more than half of the
+ * cache, so a run does not push out everything else). The larger degrees a
+ * user may never pick are left to be expanded when picked, and so are degrees
+ * past 32, which only recursive functions have.
+ *
+ * Starting again cancels the current run. The program must not change while a
+ * run is going on: cancel, which waits for the run to stop, before loading into
+ * the same program again.
+ */
+public final class ExpansionPrefetcher implements AutoCloseable {
+
+    /** One expansion to write: a function (null for the main program) at a degree. */
+    private record Job(String function, int degree, long rows) {
+    }
+
+    public static final long DEFAULT_BUDGET_BYTES = 64L << 20; // 64 MiB
+
+    // A recursive function has no highest degree: it is expanded this far
+    private static final int MAX_DEGREE = 32;
+
+    private final ExpansionCache cache;
+    private final long budgetBytes;
+    private Thread worker; // guarded by this
+
+    public ExpansionPrefetcher(ExpansionCache cache) {
+        this(cache, DEFAULT_BUDGET_BYTES);
+    }
+
+    /** A prefetcher whose runs write at most budgetBytes of expansions each. */
+    public ExpansionPrefetcher(ExpansionCache cache, long budgetBytes) {
+        if (cache == null) {
+            throw new IllegalArgumentException("cache is null");
+        }
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("budgetBytes must be non-negative");
+        }
+        this.cache = cache;
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Cancel the current run and start expanding the program. The degrees are
+     * worked out on the calling thread, since that updates the program's
+     * memo; programs not loaded from XML are not cached, so nothing starts.
+     */
+    public synchronized void start(SProgramImpl program) throws InterruptedException {
+        cancel();
+        if (program.getXmlDigest() == null) {
+            return;
+        }
+        Map<String, Integer> degrees = degrees(program);
+        Thread thread = new Thread(() -> run(program, degrees), "semulator-prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        worker = thread;
+        thread.start();
+    }
+
+    /** Stop the current run, if any, and wait until it has stopped. */
+    public synchronized void cancel() throws InterruptedException {
+        if (worker != null) {
+            worker.interrupt();
+            worker.join();
+            worker = null;
+        }
+    }
+
+    /** Whether a run is still writing expansions. */
+    public synchronized boolean isRunning() {
+        return worker != null && worker.isAlive();
+    }
+
+    /** Stop the current run, if any, without waiting for it. */
+    @Override
+    public synchronized void close() {
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+
+    /** Highest degree of the main program (key null) and of each function. */
+    private static Map<String, Integer> degrees(SProgramImpl program) {
+        Map<String, Integer> degrees = new LinkedHashMap<>();
+        try {
+            degrees.put(null, program.calculateMaxDegree());
+        } catch (RuntimeException | StackOverflowError e) {
+            // not expandable: nothing to write for it
+        }
+        for (String function : program.getFunctions().keySet()) {
+            try {
+                degrees.put(function, program.calculateFunctionTemplateDegree(function));
+            } catch (RuntimeException | StackOverflowError e) {
+                // as above
+            }
+        }
+        return degrees;
+    }
+
+    private void run(SProgramImpl program, Map<String, Integer> degrees) {
+        for (Job job : plan(program, degrees)) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                // Written (or already there): the UI reads it back when asked
+                cache.open(program, job.function(), job.degree()).close();
+            } catch (IOException | RuntimeException e) {
+                // left to the UI, which expands it when asked and reports what goes wrong
+            }
+        }
+    }
+
+    /** The expansions to write, smallest first, as many as fit the budget. */
+    private List<Job> plan(SProgramImpl program, Map<String, Integer> degrees) {
+        long maxRows = Math.min(budgetBytes, cache.getMaxBytes() / 2) / MappedExpansion.RECORD_BYTES;
+        Map<Integer, DemandExpansion> sizes = new HashMap<>();
+        List<Job> jobs = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : degrees.entrySet()) {
+            String function = entry.getKey();
+            for (int degree = 1; degree <= Math.min(entry.getValue(), MAX_DEGREE); degree++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return List.of();
+                }
+                long rows;
+                try {
+                    DemandExpansion expansion = sizes.computeIfAbsent(degree, d -> new DemandExpansion(program, d));
+                    rows = function == null ? expansion.size() : expansion.sizeOf(program.getFunctions().get(function));
+                } catch (RuntimeException | StackOverflowError e) {
+                    break; // deeper degrees fail the same way
+                }
+                if (rows > maxRows) {
+                    break; // and deeper degrees are larger still
+                }
+                jobs.add(new Job(function, degree, rows));
+            }
+        }
+        jobs.sort(Comparator.comparingLong(Job::rows));
+        long rows = 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            rows += jobs.get(i).rows();
+            if (rows > maxRows) {
+                return jobs.subList(0, i);
+            }
+        }
+        return jobs;
+    }
+}
@@ -1,7 +1,10 @@
 package semulator.program;
 
+import semulator.instructions.RepeatedIncreaseInstruction;
 import semulator.instructions.SInstruction;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -11,4 +14,42 @@ public record ExpansionResult(
         Map<SInstruction, Integer> lineNo,
         Map<SInstruction, Integer> rowOf// 1-based numbering in this snapshot
 ) {
-}
\ No newline at end of file
+
+    /**
+     * The same snapshot with one run of increases shown as its single
+     * INCREASE instructions. They have the run's parent; the rows after the
+     * run move down.
+     */
+    public ExpansionResult unfold(RepeatedIncreaseInstruction run) {
+        int at = -1;
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) == run) {
+                at = i;
+                break;
+            }
+        }
+        if (at < 0) {
+            throw new IllegalArgumentException("Instruction is not in this expansion");
+        }
+        List<SInstruction> unfolded = run.unfold();
+        List<SInstruction> snapshot = new ArrayList<>(instructions.size() + unfolded.size() - 1);
+        snapshot.addAll(instructions.subList(0, at));
+        snapshot.addAll(unfolded);
+        snapshot.addAll(instructions.subList(at + 1, instructions.size()));
+
+        Map<SInstruction, SInstruction> parents = new IdentityHashMap<>(parent);
+        SInstruction creator = parent.get(run);
+        if (creator != null) {
+            for (SInstruction instruction : unfolded) {
+                parents.put(instruction, creator);
+            }
+        }
+        Map<SInstruction, Integer> lines = new IdentityHashMap<>();
+        Map<SInstruction, Integer> rows = new IdentityHashMap<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            lines.put(snapshot.get(i), i + 1);
+            rows.put(snapshot.get(i), i);
+        }
+        return new ExpansionResult(snapshot, parents, lines, rows);
+    }
+}
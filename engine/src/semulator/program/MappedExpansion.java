@@ -0,0 +1,831 @@
+package semulator.program;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.DecreaseInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.FunctionArgumentParser;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.NoOpInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.RepeatedIncreaseInstruction;
+import semulator.instructions.SInstruction;
+import semulator.instructions.ZeroVariableInstruction;
+import semulator.label.FixedLabel;
+import semulator.label.Label;
+import semulator.label.LabelImpl;
+import semulator.variable.Variable;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * The expansion of a program (or of one of its functions) to a degree kept in
+ * memory-mapped files instead of on the heap, so the degree a program can be
+ * expanded to is limited by the disk and not by -Xmx.
+ *
+ * Each generation (degree 0 up to the degree) is one file of fixed-size
+ * records, written in order and read through mapped chunks. A generation is
+ * made from the previous one in order, with one name session, exactly like
+ * expandToDegree (expandFunctionToDegree for a function) does, so the
+ * instructions and their names are those of expandToDegree(degree). Every
+ * record also has the row it came from in the previous generation, which is
+ * the lineage ExpansionResult keeps in its parent map.
+ *
+ * Rows are 1-based, like ExpansionResult.lineNo(). Instructions are decoded
+ * from their record on every call. The heap only keeps the arguments of
+ * function calls (there are none left at the program's maximum degree),
+ * labels that are not of the form L<n>, and the labels index of the last
+ * generation when a label number is far above its size.
+ *
+ * An expansion written to a directory can be opened again later (see
+ * {@link ExpansionCache}); the files of one made with
+ * {@link #create(SProgramImpl, int)} are deleted by {@link #close()} (or,
+ * where the platform does not allow deleting mapped files, when the JVM
+ * exits).
+ */
+public final class MappedExpansion implements AutoCloseable {
+
+    private static final int MAGIC = 0x53454D58; // "SEMX"
+    private static final short VERSION = 1;
+    static final String META = "expansion.meta"; // written last: the directory holds a complete expansion
+    static final int RECORD_BYTES = 40;
+    private static final int CHUNK_RECORDS = 1 << 20;
+    private static final int PENDING_RECORDS = 1 << 12; // written at a time
+
+    // Record layout
+    private static final int KIND = 0;
+    private static final int FLAGS = 1;
+    private static final int VARIABLE_TYPE = 2;
+    private static final int OTHER_TYPE = 3;
+    private static final int VARIABLE = 4;
+    private static final int OTHER = 8;
+    private static final int LABEL = 12;
+    private static final int TARGET = 16;
+    private static final int CALL = 20;
+    private static final int CONSTANT = 24; // constant, run count, or function name of a call
+    private static final int PARENT = 32;
+
+    private static final byte COPIED = 1; // the same instruction as its parent row
+    private static final byte EMPTY_BODY = 2; // a call read before its function's body, so it has none
+
+    private static final byte INCREASE = 0;
+    private static final byte DECREASE = 1;
+    private static final byte NEUTRAL = 2;
+    private static final byte JUMP_NOT_ZERO = 3;
+    private static final byte ZERO = 4;
+    private static final byte GOTO = 5;
+    private static final byte ASSIGN = 6;
+    private static final byte ASSIGNC = 7;
+    private static final byte IFZ = 8;
+    private static final byte IFEQC = 9;
+    private static final byte IFEQV = 10;
+    private static final byte QUOTE = 11;
+    private static final byte JUMP_EQUAL_FUNCTION = 12;
+    private static final byte REPEATED_INCREASE = 13;
+
+    /** Fixed-size records in one file, read through mapped chunks: a generation, or the labels index. */
+    private static final class RecordFile {
+        final Path file;
+        final int recordBytes;
+        final List<MappedByteBuffer> chunks = new ArrayList<>();
+        long size;
+        private FileChannel channel; // while writing
+        private ByteBuffer pending;
+
+        RecordFile(Path file, int recordBytes) {
+            this.file = file;
+            this.recordBytes = recordBytes;
+        }
+
+        ByteBuffer chunk(long index) {
+            return chunks.get((int) (index / CHUNK_RECORDS));
+        }
+
+        int at(long index) {
+            return (int) (index % CHUNK_RECORDS) * recordBytes;
+        }
+
+        /** Start a new, empty file to append records to. */
+        void create() throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            pending = ByteBuffer.allocateDirect(recordBytes * PENDING_RECORDS);
+        }
+
+        /** Where one more record goes in pending(). */
+        int append() throws IOException {
+            if (!pending.hasRemaining()) {
+                flush();
+            }
+            int at = pending.position();
+            pending.position(at + recordBytes);
+            size++;
+            return at;
+        }
+
+        ByteBuffer pending() {
+            return pending;
+        }
+
+        /** Write the records not written yet and map the file for reading. */
+        void finish() throws IOException {
+            flush();
+            channel.close();
+            channel = null;
+            pending = null;
+            map(FileChannel.MapMode.READ_ONLY);
+        }
+
+        /** Map size records (READ_WRITE makes the file that long, zero filled). */
+        void map(FileChannel.MapMode mode) throws IOException {
+            long bytes = size * recordBytes;
+            long chunkBytes = (long) recordBytes * CHUNK_RECORDS;
+            try (FileChannel channel = mode == FileChannel.MapMode.READ_ONLY
+                    ? FileChannel.open(file, StandardOpenOption.READ)
+                    : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE)) {
+                if (mode == FileChannel.MapMode.READ_ONLY && channel.size() < bytes) {
+                    throw new IOException("Truncated expansion file " + file.getFileName());
+                }
+                for (long offset = 0; offset < bytes; offset += chunkBytes) {
+                    chunks.add(channel.map(mode, offset, Math.min(chunkBytes, bytes - offset)));
+                }
+            }
+        }
+
+        /** Stop writing, if it is, without finishing the file. */
+        void abandon() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ignored) {
+                // the file is deleted or written again anyway
+            }
+            channel = null;
+            pending = null;
+        }
+
+        private void flush() throws IOException {
+            pending.flip();
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            pending.clear();
+        }
+    }
+
+    private final SProgramImpl program;
+    private final String function; // null: the main program
+    private final int degree;
+    private final Path directory;
+    private final boolean temporary;
+    private final List<RecordFile> generations = new ArrayList<>();
+    private final List<String> labelNames = new ArrayList<>();
+    private final Map<String, Integer> labelCodes = new HashMap<>();
+    private final List<String> functionNames = new ArrayList<>();
+    private final Map<String, Integer> functionCodes = new HashMap<>();
+    private final List<List<FunctionArgument>> arguments = new ArrayList<>();
+    private final Map<List<FunctionArgument>, Integer> argumentCodes = new IdentityHashMap<>();
+    private RecordFile labelRows; // last definition of L<n> at index n, 0 if none
+    private final Map<String, Long> otherLabelRows = new HashMap<>();
+    private boolean closed;
+
+    private MappedExpansion(SProgramImpl program, String function, int degree, Path directory, boolean temporary) {
+        if (degree < 0) {
+            throw new IllegalArgumentException("degree must be non-negative");
+        }
+        if (function != null && !program.getFunctions().containsKey(function)) {
+            throw new IllegalArgumentException("Function '" + function + "' not found");
+        }
+        this.program = program;
+        this.function = function;
+        this.degree = degree;
+        this.directory = directory;
+        this.temporary = temporary;
+    }
+
+    /** Expand the program into a new temporary directory, deleted on close. */
+    public static MappedExpansion create(SProgramImpl program, int degree) throws IOException {
+        MappedExpansion expansion = new MappedExpansion(program, null, degree,
+                Files.createTempDirectory("semulator-expansion"), true);
+        expansion.write();
+        return expansion;
+    }
+
+    /**
+     * Expand the program, or the function when it is not null, into files in
+     * the given (existing) directory, where {@link #open} finds them again.
+     */
+    public static MappedExpansion create(SProgramImpl program, String function, int degree, Path directory)
+            throws IOException {
+        MappedExpansion expansion = new MappedExpansion(program, function, degree, directory, false);
+        expansion.write();
+        return expansion;
+    }
+
+    /**
+     * Map an expansion written by create(program, function, degree, directory)
+     * for the same program.
+     *
+     * @throws IOException if the directory does not hold that expansion, complete
+     */
+    public static MappedExpansion open(SProgramImpl program, String function, int degree, Path directory)
+            throws IOException {
+        MappedExpansion expansion = new MappedExpansion(program, function, degree, directory, false);
+        try {
+            expansion.read();
+        } catch (IOException | RuntimeException e) {
+            expansion.close();
+            throw e instanceof IOException io ? io : new IOException("Corrupt expansion in " + directory, e);
+        }
+        return expansion;
+    }
+
+    public int degree() {
+        return degree;
+    }
+
+    /** Instructions of the expansion (the last generation). */
+    public long size() {
+        return size(degree);
+    }
+
+    /** Instructions of the program expanded to the given degree (0..degree()). */
+    public long size(int generation) {
+        return generation(generation).size;
+    }
+
+    /** The instruction at a 1-based row of the expansion. */
+    public SInstruction instruction(long row) {
+        return instruction(degree, row);
+    }
+
+    /** The instruction at a 1-based row of the program expanded to the given degree. */
+    public SInstruction instruction(int generation, long row) {
+        RecordFile g = generation(generation);
+        long index = index(g, row);
+        return decode(g.chunk(index), g.at(index));
+    }
+
+    /** Instructions of the expansion from a 1-based row on, at most count of them. */
+    public List<SInstruction> page(long firstRow, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must be non-negative");
+        }
+        long last = Math.min(size(), firstRow + count - 1);
+        List<SInstruction> page = new ArrayList<>((int) Math.max(0, last - firstRow + 1));
+        for (long row = firstRow; row <= last; row++) {
+            page.add(instruction(row));
+        }
+        return page;
+    }
+
+    /**
+     * The instructions of the expansion as a read-only list, 0-based: each
+     * decoded from the mapping when it is asked for, a new object every time.
+     * Usable until the expansion is closed.
+     */
+    public List<SInstruction> rows() {
+        int size = Math.toIntExact(size());
+        return new Rows(size);
+    }
+
+    private final class Rows extends AbstractList<SInstruction> implements RandomAccess {
+        private final int size;
+
+        Rows(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public SInstruction get(int index) {
+            return instruction(Objects.checkIndex(index, size) + 1L);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * The row, in the previous generation, of the instruction a row came from
+     * (0 at degree 0).
+     */
+    public long parentRow(int generation, long row) {
+        RecordFile g = generation(generation);
+        long index = index(g, row);
+        return g.chunk(index).getLong(g.at(index) + PARENT) + 1;
+    }
+
+    /**
+     * Whether the instruction at a row is the instruction of its parent row,
+     * kept because it is basic, rather than one its expansion created.
+     */
+    public boolean isCopied(int generation, long row) {
+        RecordFile g = generation(generation);
+        long index = index(g, row);
+        return (g.chunk(index).get(g.at(index) + FLAGS) & COPIED) != 0;
+    }
+
+    /**
+     * The row a jump to the label lands on in the expansion: its last
+     * definition, like in a run of the expanded program.
+     *
+     * @return 0 when the expansion does not define the label
+     */
+    public long target(Label label) {
+        checkOpen();
+        if (label == null || label == FixedLabel.EMPTY || label == FixedLabel.EXIT) {
+            return 0;
+        }
+        int code = labelCode(label.getLabel(), false);
+        if (code > 0 && code - 1 < labelRows.size) {
+            return labelRows.chunk(code - 1).getLong(labelRows.at(code - 1));
+        }
+        Long row = otherLabelRows.get(label.getLabel());
+        return row == null ? 0 : row;
+    }
+
+    /**
+     * The expansion as an ExpansionResult, the instructions of every generation
+     * decoded once: what expandToDegree (expandFunctionToDegree) returns.
+     */
+    public ExpansionResult toExpansionResult() {
+        Map<SInstruction, SInstruction> parent = new IdentityHashMap<>();
+        SInstruction[] previous = new SInstruction[0];
+        SInstruction[] current = previous;
+        for (int generation = 0; generation <= degree; generation++) {
+            RecordFile g = generation(generation);
+            current = new SInstruction[Math.toIntExact(g.size)];
+            for (int index = 0; index < current.length; index++) {
+                ByteBuffer chunk = g.chunk(index);
+                int at = g.at(index);
+                if (generation == 0) {
+                    current[index] = decode(chunk, at);
+                    continue;
+                }
+                SInstruction creator = previous[(int) chunk.getLong(at + PARENT)];
+                if ((chunk.get(at + FLAGS) & COPIED) != 0) {
+                    current[index] = creator;
+                } else {
+                    current[index] = decode(chunk, at);
+                    parent.put(current[index], creator);
+                }
+            }
+            previous = current;
+        }
+        Map<SInstruction, Integer> lineNo = new IdentityHashMap<>();
+        Map<SInstruction, Integer> rowOf = new IdentityHashMap<>();
+        for (int i = 0; i < current.length; i++) {
+            lineNo.put(current[i], i + 1);
+            rowOf.put(current[i], i);
+        }
+        return new ExpansionResult(new ArrayList<>(List.of(current)), parent, lineNo, rowOf);
+    }
+
+    /** Unmaps the files; those of a temporary expansion are deleted. */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        List<Path> files = new ArrayList<>();
+        for (RecordFile g : generations) {
+            g.abandon();
+            files.add(g.file);
+        }
+        if (labelRows != null) {
+            files.add(labelRows.file);
+        }
+        generations.clear();
+        labelRows = null;
+        if (temporary) {
+            files.add(directory.resolve(META));
+            for (Path file : files) {
+                delete(file);
+            }
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit(); // still mapped
+        }
+    }
+
+    private void write() throws IOException {
+        try {
+            Files.deleteIfExists(directory.resolve(META)); // no complete expansion here until it is written again
+            RecordFile current = newGeneration(0);
+            current.create();
+            List<SInstruction> instructions = function == null ? program.getInstructions()
+                    : program.getFunctions().get(function);
+            for (SInstruction instruction : instructions) {
+                append(current, instruction, -1);
+            }
+            current.finish();
+            NameSession names = program.newNameSession();
+            for (int step = 1; step <= degree; step++) {
+                RecordFile next = newGeneration(step);
+                next.create();
+                for (long index = 0; index < current.size; index++) {
+                    ByteBuffer chunk = current.chunk(index);
+                    int at = current.at(index);
+                    SInstruction instruction = decode(chunk, at);
+                    List<SInstruction> children = function == null ? program.expandOnce(instruction, names)
+                            : program.expandFunctionOnce(instruction, names);
+                    if (children.size() == 1 && children.get(0) == instruction) {
+                        copy(chunk, at, next, index);
+                    } else {
+                        for (SInstruction child : children) {
+                            append(next, child, index);
+                        }
+                    }
+                }
+                next.finish();
+                current = next;
+            }
+            indexLabels(current);
+            writeMeta();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** Sizes and the tables kept on the heap; written last, so it marks a complete expansion. */
+    private void writeMeta() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(directory.resolve(META))))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeUTF(function == null ? "" : function);
+            out.writeInt(degree);
+            for (RecordFile g : generations) {
+                out.writeLong(g.size);
+            }
+            out.writeLong(labelRows.size);
+            writeStrings(out, labelNames);
+            writeStrings(out, functionNames);
+            out.writeInt(arguments.size());
+            for (List<FunctionArgument> list : arguments) {
+                out.writeInt(list.size());
+                for (FunctionArgument argument : list) {
+                    out.writeUTF(argument.toString());
+                }
+            }
+            out.writeInt(otherLabelRows.size());
+            for (Map.Entry<String, Long> label : otherLabelRows.entrySet()) {
+                out.writeUTF(label.getKey());
+                out.writeLong(label.getValue());
+            }
+        }
+    }
+
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(directory.resolve(META))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an S-emulator expansion");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported expansion version " + version);
+            }
+            String storedFunction = in.readUTF();
+            int storedDegree = in.readInt();
+            if (!storedFunction.equals(function == null ? "" : function) || storedDegree != degree) {
+                throw new IOException("Directory holds the expansion of "
+                        + (storedFunction.isEmpty() ? "the program" : storedFunction) + " to degree " + storedDegree);
+            }
+            for (int generation = 0; generation <= degree; generation++) {
+                newGeneration(generation).size = in.readLong();
+            }
+            labelRows = new RecordFile(directory.resolve("labels.bin"), Long.BYTES);
+            labelRows.size = in.readLong();
+            for (String name : readStrings(in)) {
+                labelCodes.put(name, labelNames.size());
+                labelNames.add(name);
+            }
+            for (String name : readStrings(in)) {
+                functionCode(name);
+            }
+            int lists = in.readInt();
+            for (int i = 0; i < lists; i++) {
+                int count = in.readInt();
+                List<FunctionArgument> list = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    list.add(FunctionArgumentParser.parseFunctionArgument(in.readUTF()));
+                }
+                arguments.add(list);
+            }
+            int labels = in.readInt();
+            for (int i = 0; i < labels; i++) {
+                otherLabelRows.put(in.readUTF(), in.readLong());
+            }
+        }
+        for (RecordFile g : generations) {
+            g.map(FileChannel.MapMode.READ_ONLY);
+        }
+        labelRows.map(FileChannel.MapMode.READ_ONLY);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    /** Rows of the last definition of every label in the last generation. */
+    private void indexLabels(RecordFile last) throws IOException {
+        long highest = 0;
+        for (long index = 0; index < last.size; index++) {
+            int code = last.chunk(index).getInt(last.at(index) + LABEL);
+            highest = Math.max(highest, code);
+        }
+        // a label number far above the size would only make a sparse table
+        long tableSize = Math.min(highest, 4 * last.size + 1024);
+        labelRows = new RecordFile(directory.resolve("labels.bin"), Long.BYTES);
+        labelRows.size = tableSize;
+        Files.deleteIfExists(labelRows.file);
+        labelRows.map(FileChannel.MapMode.READ_WRITE); // zero: no definition
+        for (long index = 0; index < last.size; index++) {
+            int code = last.chunk(index).getInt(last.at(index) + LABEL);
+            if (code > 0 && code <= tableSize) {
+                labelRows.chunk(code - 1).putLong(labelRows.at(code - 1), index + 1);
+            } else if (code > 0 || code < -1) {
+                otherLabelRows.put(labelName(code), index + 1);
+            }
+        }
+    }
+
+    private RecordFile newGeneration(int generation) {
+        RecordFile g = new RecordFile(directory.resolve("degree-" + generation + ".bin"), RECORD_BYTES);
+        generations.add(g);
+        return g;
+    }
+
+    private void copy(ByteBuffer source, int from, RecordFile g, long parent) throws IOException {
+        int at = g.append();
+        ByteBuffer chunk = g.pending();
+        for (int i = 0; i < RECORD_BYTES; i += Long.BYTES) {
+            chunk.putLong(at + i, source.getLong(from + i));
+        }
+        chunk.put(at + FLAGS, (byte) (chunk.get(at + FLAGS) | COPIED));
+        chunk.putLong(at + PARENT, parent);
+    }
+
+    private void append(RecordFile g, SInstruction instruction, long parent) throws IOException {
+        int at = g.append();
+        ByteBuffer chunk = g.pending();
+        Variable other = null;
+        Label target = FixedLabel.EMPTY;
+        long constant = 0;
+        int call = 0;
+        byte flags = 0;
+        byte kind;
+        if (instruction instanceof RepeatedIncreaseInstruction run) {
+            kind = REPEATED_INCREASE;
+            constant = run.getCount();
+        } else if (instruction instanceof IncreaseInstruction) {
+            kind = INCREASE;
+        } else if (instruction instanceof DecreaseInstruction) {
+            kind = DECREASE;
+        } else if (instruction instanceof NoOpInstruction) {
+            kind = NEUTRAL;
+        } else if (instruction instanceof JumpNotZeroInstruction j) {
+            kind = JUMP_NOT_ZERO;
+            target = j.getTarget();
+        } else if (instruction instanceof ZeroVariableInstruction) {
+            kind = ZERO;
+        } else if (instruction instanceof GotoLabelInstruction g2) {
+            kind = GOTO;
+            target = g2.getTarget();
+        } else if (instruction instanceof AssignVariableInstruction a) {
+            kind = ASSIGN;
+            other = a.getSource();
+        } else if (instruction instanceof AssignConstantInstruction a) {
+            kind = ASSIGNC;
+            constant = a.getConstant();
+        } else if (instruction instanceof JumpZeroInstruction j) {
+            kind = IFZ;
+            target = j.getTarget();
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            kind = IFEQC;
+            constant = j.getConstant();
+            target = j.getTarget();
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            kind = IFEQV;
+            other = j.getOther();
+            target = j.getTarget();
+        } else if (instruction instanceof QuoteInstruction q) {
+            kind = QUOTE;
+            constant = functionCode(q.getFunctionName());
+            call = argumentsCode(q.getFunctionArguments());
+            flags = bodyFlags(q.getFunctionName(), q.getFunctionInstructions());
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            kind = JUMP_EQUAL_FUNCTION;
+            constant = functionCode(j.getFunctionName());
+            call = argumentsCode(j.getFunctionArguments());
+            flags = bodyFlags(j.getFunctionName(), j.getFunctionInstructions());
+            target = j.getTarget();
+        } else {
+            throw new IllegalArgumentException("Cannot store instruction " + instruction.getName());
+        }
+        chunk.put(at + KIND, kind);
+        chunk.put(at + FLAGS, flags);
+        chunk.put(at + VARIABLE_TYPE, (byte) instruction.getVariable().getType().ordinal());
+        chunk.putInt(at + VARIABLE, instruction.getVariable().getNumber());
+        chunk.put(at + OTHER_TYPE, (byte) (other == null ? 0 : other.getType().ordinal()));
+        chunk.putInt(at + OTHER, other == null ? 0 : other.getNumber());
+        chunk.putInt(at + LABEL, labelCode(instruction.getLabel()));
+        chunk.putInt(at + TARGET, labelCode(target));
+        chunk.putInt(at + CALL, call);
+        chunk.putLong(at + CONSTANT, constant);
+        chunk.putLong(at + PARENT, parent);
+    }
+
+    private SInstruction decode(ByteBuffer chunk, int at) {
+        Variable variable = variable(chunk.get(at + VARIABLE_TYPE), chunk.getInt(at + VARIABLE));
+        Label label = label(chunk.getInt(at + LABEL));
+        long constant = chunk.getLong(at + CONSTANT);
+        return switch (chunk.get(at + KIND)) {
+            case INCREASE -> new IncreaseInstruction(variable, label);
+            case DECREASE -> new DecreaseInstruction(variable, label);
+            case NEUTRAL -> new NoOpInstruction(variable, label);
+            case JUMP_NOT_ZERO -> new JumpNotZeroInstruction(variable, label, target(chunk, at));
+            case ZERO -> new ZeroVariableInstruction(variable, label);
+            case GOTO -> new GotoLabelInstruction(label, target(chunk, at));
+            case ASSIGN -> new AssignVariableInstruction(variable, other(chunk, at), label);
+            case ASSIGNC -> new AssignConstantInstruction(variable, constant, label);
+            case IFZ -> new JumpZeroInstruction(variable, label, target(chunk, at));
+            case IFEQC -> new JumpEqualConstantInstruction(variable, label, constant, target(chunk, at));
+            case IFEQV -> new JumpEqualVariableInstruction(variable, label, other(chunk, at), target(chunk, at));
+            case QUOTE -> {
+                String name = functionNames.get((int) constant);
+                yield new QuoteInstruction(variable, name, arguments.get(chunk.getInt(at + CALL)),
+                        functionBody(chunk, at, name), label, program.getFunctions());
+            }
+            case JUMP_EQUAL_FUNCTION -> {
+                String name = functionNames.get((int) constant);
+                yield new JumpEqualFunctionInstruction(variable, name, arguments.get(chunk.getInt(at + CALL)),
+                        functionBody(chunk, at, name), target(chunk, at), label);
+            }
+            case REPEATED_INCREASE -> new RepeatedIncreaseInstruction(variable, constant, label);
+            default -> throw new IllegalStateException("Corrupt expansion record: kind " + chunk.get(at + KIND));
+        };
+    }
+
+    private List<SInstruction> functionBody(ByteBuffer chunk, int at, String name) {
+        List<SInstruction> body = program.getFunctions().get(name);
+        return body == null || (chunk.get(at + FLAGS) & EMPTY_BODY) != 0 ? new ArrayList<>() : body;
+    }
+
+    private byte bodyFlags(String name, List<SInstruction> body) {
+        List<SInstruction> loaded = program.getFunctions().get(name);
+        return body.isEmpty() && loaded != null && !loaded.isEmpty() ? EMPTY_BODY : 0;
+    }
+
+    private Label target(ByteBuffer chunk, int at) {
+        return label(chunk.getInt(at + TARGET));
+    }
+
+    private static Variable other(ByteBuffer chunk, int at) {
+        return variable(chunk.get(at + OTHER_TYPE), chunk.getInt(at + OTHER));
+    }
+
+    private static Variable variable(byte type, int number) {
+        if (type == VariableType.RESULT.ordinal()) {
+            return Variable.RESULT;
+        }
+        return new VariableImpl(VariableType.values()[type], number);
+    }
+
+    /** EMPTY is 0, EXIT -1, L<n> n + 1, any other name -2 - its index in labelNames. */
+    private int labelCode(Label label) {
+        if (label == null || label == FixedLabel.EMPTY) {
+            return 0;
+        }
+        if (label == FixedLabel.EXIT) {
+            return -1;
+        }
+        return labelCode(label.getLabel(), true);
+    }
+
+    private int labelCode(String name, boolean add) {
+        if (name.length() > 1 && name.length() < 11 && name.charAt(0) == 'L'
+                && (name.charAt(1) != '0' || name.length() == 2)) {
+            boolean digits = true;
+            for (int i = 1; i < name.length() && digits; i++) {
+                digits = Character.isDigit(name.charAt(i));
+            }
+            if (digits) {
+                long number = Long.parseLong(name.substring(1));
+                if (number < Integer.MAX_VALUE - 1) {
+                    return (int) number + 1;
+                }
+            }
+        }
+        Integer index = labelCodes.get(name);
+        if (index == null) {
+            if (!add) {
+                return 0;
+            }
+            index = labelNames.size();
+            labelNames.add(name);
+            labelCodes.put(name, index);
+        }
+        return -2 - index;
+    }
+
+    private Label label(int code) {
+        if (code == 0) {
+            return FixedLabel.EMPTY;
+        }
+        if (code == -1) {
+            return FixedLabel.EXIT;
+        }
+        return new LabelImpl(labelName(code));
+    }
+
+    private String labelName(int code) {
+        return code > 0 ? "L" + (code - 1) : labelNames.get(-2 - code);
+    }
+
+    private int functionCode(String name) {
+        return functionCodes.computeIfAbsent(name, n -> {
+            functionNames.add(n);
+            return functionNames.size() - 1;
+        });
+    }
+
+    private int argumentsCode(List<FunctionArgument> list) {
+        return argumentCodes.computeIfAbsent(list, l -> {
+            arguments.add(l);
+            return arguments.size() - 1;
+        });
+    }
+
+    private RecordFile generation(int generation) {
+        checkOpen();
+        if (generation < 0 || generation > degree) {
+            throw new IllegalArgumentException("Degree " + generation + " is not in 0.." + degree);
+        }
+        return generations.get(generation);
+    }
+
+    private static long index(RecordFile g, long row) {
+        if (row < 1 || row > g.size) {
+            throw new IllegalArgumentException("Row " + row + " is not in 1.." + g.size);
+        }
+        return row - 1;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Expansion is closed");
+        }
+    }
+}
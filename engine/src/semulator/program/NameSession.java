@@ -15,6 +15,9 @@ import semulator.variable.VariableType;
 /**
  * Deterministic name generator for expansion runs.
  * Produces the smallest unused L# and z# names, skipping any already present.
+ * The cursors only move forward, so a name it hands out never comes up again
+ * and the session only keeps the names it started from: an expansion of any
+ * size costs it no memory.
  */
 public final class NameSession {
     private final Set<String> usedLabelNames;
@@ -76,13 +79,22 @@ public final class NameSession {
         }
     }
 
+    /**
+     * Whether freshLabel() can never return this label because its name was
+     * taken when the session started, or it is not an L label.
+     */
+    public boolean isTaken(Label label) {
+        String s = label.getLabel();
+        return s == null || s.isBlank() || s.charAt(0) != 'L' || usedLabelNames.contains(s);
+    }
+
     /**
      * Returns a fresh label with name "L{n}", smallest n not used.
      */
     public Label freshLabel() {
         while (true) {
             String candidate = "L" + lCursor++;
-            if (usedLabelNames.add(candidate)) {
+            if (!usedLabelNames.contains(candidate)) {
                 return new LabelImpl(candidate);
             }
         }
@@ -94,7 +106,7 @@ public final class NameSession {
     public Variable freshZ() {
         while (true) {
             String candidate = "z" + zCursor;
-            if (usedVarNames.add(candidate)) {
+            if (!usedVarNames.contains(candidate)) {
                 return new VariableImpl(VariableType.WORK, zCursor++);
             }
             zCursor++; // Increment cursor even if name is already used
@@ -25,20 +25,26 @@ import semulator.instructions.AssignVariableInstruction;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 public class SProgramImpl implements SProgram {
 
     private final String name;
     private final List<SInstruction> instructions;
     private Path xmlPath;
+    private String xmlDigest;
     private final Map<String, List<SInstruction>> functions = new HashMap<>();
     private final Map<String, String> functionUserStrings = new HashMap<>();
+    // Intern table for nested function-call arguments (argument trees become a DAG)
+    private final Map<FunctionCall, FunctionCall> canonicalCalls = new HashMap<>();
 
     private final Set<String> baseUsedLabelNames = new HashSet<>();
     private final Set<String> baseUsedVarNames = new HashSet<>();
@@ -105,6 +111,15 @@ public class SProgramImpl implements SProgram {
     @Override
     public void addInstruction(SInstruction instruction) {
         instructions.add(instruction);
+        xmlDigest = null; // no longer the program of the XML
+    }
+
+    /**
+     * SHA-256 (hex) of the XML the program was loaded from, or null when it
+     * was not loaded from XML or was changed since.
+     */
+    public String getXmlDigest() {
+        return xmlDigest;
     }
 
     @Override
@@ -563,6 +578,7 @@ public class SProgramImpl implements SProgram {
             int rowCounter = 1; // Fresh row numbering for this degree
 
             for (InstrNode node : cur) {
+                checkInterrupted(rowCounter);
                 SInstruction in = node.ins;
                 if (isBasic(in)) {
                     // Basic instructions stay as-is, but we need to track them in parent map
@@ -596,6 +612,16 @@ public class SProgramImpl implements SProgram {
         return new ExpansionResult(finalProgram, parentMap, lineNo, rowOf);
     }
 
+    /**
+     * Expansions run on worker threads that are interrupted when the expansion
+     * is no longer wanted; stop then, every few thousand rows.
+     */
+    private static void checkInterrupted(int row) {
+        if ((row & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Expansion interrupted");
+        }
+    }
+
     @Override
     public ExpansionResult expandFunctionToDegree(String functionName, int degree) {
         if (!functions.containsKey(functionName)) {
@@ -626,6 +652,7 @@ public class SProgramImpl implements SProgram {
             int rowCounter = 1; // Fresh row numbering for this degree
 
             for (InstrNode node : cur) {
+                checkInterrupted(rowCounter);
                 SInstruction in = node.ins;
                 if (isBasic(in)) {
                     // Basic instructions stay as-is
@@ -665,7 +692,73 @@ public class SProgramImpl implements SProgram {
         return new ExpansionResult(finalProgram, parentMap, lineNo, rowOf);
     }
 
+    /**
+     * One expansion step of a single instruction, exactly as expandToDegree
+     * takes it: a synthetic instruction becomes its children (fresh names come
+     * from the given session), a basic one stays as it is.
+     */
+    public List<SInstruction> expandOnce(SInstruction instruction, NameSession names) {
+        return isBasic(instruction) ? List.of(instruction) : expandOne(instruction, names);
+    }
+
+    /**
+     * One expansion step as expandFunctionToDegree takes it: like expandOnce,
+     * but the first child always gets the instruction's label.
+     */
+    public List<SInstruction> expandFunctionOnce(SInstruction instruction, NameSession names) {
+        if (isBasic(instruction)) {
+            return List.of(instruction);
+        }
+        List<SInstruction> children = new ArrayList<>(expandOne(instruction, names));
+        if (!children.isEmpty()) {
+            children.set(0, createInstructionWithLabel(children.get(0), instruction.getLabel()));
+        }
+        return children;
+    }
+
+    /** A name session that avoids the labels and z variables of the program and its functions, like expansion's. */
+    public NameSession newNameSession() {
+        return new NameSession(baseUsedLabelNames, baseUsedVarNames);
+    }
+
+    /**
+     * Whether expansion's fresh z names avoid every z passed to a call. A z
+     * that only appears in call arguments is not reserved, so expansion can hand
+     * its name out again and two variables then share it.
+     */
+    public boolean freshNamesAvoidArguments() {
+        List<List<SInstruction>> code = new ArrayList<>(functions.values());
+        code.add(instructions);
+        for (List<SInstruction> body : code) {
+            for (SInstruction in : body) {
+                List<FunctionArgument> arguments = in instanceof QuoteInstruction q ? q.getFunctionArguments()
+                        : in instanceof JumpEqualFunctionInstruction j ? j.getFunctionArguments() : null;
+                if (arguments != null && !argumentsAreReserved(arguments)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean argumentsAreReserved(List<FunctionArgument> arguments) {
+        for (FunctionArgument argument : arguments) {
+            if (argument.isFunctionCall()) {
+                if (!argumentsAreReserved(argument.asFunctionCall().getArguments())) {
+                    return false;
+                }
+            } else if (argument.asVariable().isWork()
+                    && !baseUsedVarNames.contains(argument.asVariable().toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private SInstruction createInstructionWithLabel(SInstruction inst, Label label) {
+        if (inst instanceof RepeatedIncreaseInstruction run) {
+            return new RepeatedIncreaseInstruction(run.getVariable(), run.getCount(), label);
+        }
         // Create a new instruction with the specified label
         return switch (inst.getName()) {
             case "INCREASE" -> new IncreaseInstruction(inst.getVariable(), label);
@@ -784,8 +877,11 @@ public class SProgramImpl implements SProgram {
                 var out3 = new ArrayList<SInstruction>();
 
                 out3.add(new ZeroVariableInstruction(a2.getVariable())); // V --> 0
-                for (int i = 0; i < a2.getConstant(); i++) {
-                    out3.add(new IncreaseInstruction(a2.getVariable())); // V --> V + 1 K times
+                if (a2.getConstant() > 1) {
+                    // V --> V + 1 K times, kept as one run
+                    out3.add(new RepeatedIncreaseInstruction(a2.getVariable(), a2.getConstant()));
+                } else if (a2.getConstant() == 1) {
+                    out3.add(new IncreaseInstruction(a2.getVariable())); // V --> V + 1
                 }
 
                 // Preserve the label from the original instruction on the first instruction
@@ -934,7 +1030,7 @@ public class SProgramImpl implements SProgram {
         Map<Label, Label> labelMap = new HashMap<>();
 
         // First, identify all variables used in the function body
-        Set<Variable> functionVariables = new HashSet<>();
+        Set<Variable> functionVariables = new LinkedHashSet<>();
         for (SInstruction inst : functionBody) {
             Variable var = inst.getVariable();
             if (var != null) {
@@ -1267,7 +1363,8 @@ public class SProgramImpl implements SProgram {
         DocumentBuilder builder = factory.newDocumentBuilder();
         Document doc;
         boolean ok;
-        try (InputStream xmlFileInputStream = new FileInputStream(this.xmlPath.toFile())) {
+        byte[] xml = Files.readAllBytes(this.xmlPath);
+        try (InputStream xmlFileInputStream = new ByteArrayInputStream(xml)) {
             doc = builder.parse(xmlFileInputStream);
             doc.getDocumentElement().normalize();
             ok = validateXmlFile(doc);
@@ -1277,12 +1374,22 @@ public class SProgramImpl implements SProgram {
         }
         buildInMemory(doc);
         reseedNameRegistryFromProgram();
+        xmlDigest = digest(xml);
         return xmlPath;
     }
 
+    private static String digest(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
     private void buildInMemory(Document doc) {
         instructions.clear();
         functions.clear();
+        canonicalCalls.clear();
 
         Element root = doc.getDocumentElement();
 
@@ -1400,7 +1507,7 @@ public class SProgramImpl implements SProgram {
                         // Use the new parser that handles nested function calls
                         String[] argStrings = splitFunctionArguments(functionArguments);
                         for (String arg : argStrings) {
-                            argVars.add(FunctionArgumentParser.parseFunctionArgument(arg));
+                            argVars.add(FunctionArgumentParser.parseFunctionArgument(arg, canonicalCalls));
                         }
                     }
 
@@ -1427,7 +1534,7 @@ public class SProgramImpl implements SProgram {
                         // Use the new parser that handles nested function calls
                         String[] argStrings = splitFunctionArguments(functionArguments);
                         for (String arg : argStrings) {
-                            argVars.add(FunctionArgumentParser.parseFunctionArgument(arg));
+                            argVars.add(FunctionArgumentParser.parseFunctionArgument(arg, canonicalCalls));
                         }
                     }
 
@@ -1586,7 +1693,7 @@ public class SProgramImpl implements SProgram {
                 if (functionArguments != null && !functionArguments.trim().isEmpty()) {
                     String[] argStrings = splitFunctionArguments(functionArguments);
                     for (String arg : argStrings) {
-                        parsedArguments.add(FunctionArgumentParser.parseFunctionArgument(arg));
+                        parsedArguments.add(FunctionArgumentParser.parseFunctionArgument(arg, canonicalCalls));
                     }
                 }
                 List<SInstruction> functionInstructions = functions.get(functionName);
@@ -1608,7 +1715,7 @@ public class SProgramImpl implements SProgram {
                 if (functionArguments != null && !functionArguments.trim().isEmpty()) {
                     String[] argStrings = splitFunctionArguments(functionArguments);
                     for (String arg : argStrings) {
-                        parsedArguments.add(FunctionArgumentParser.parseFunctionArgument(arg));
+                        parsedArguments.add(FunctionArgumentParser.parseFunctionArgument(arg, canonicalCalls));
                     }
                 }
                 List<SInstruction> functionInstructions = functions.get(functionName);
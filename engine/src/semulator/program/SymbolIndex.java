@@ -0,0 +1,170 @@
+package semulator.program;
+
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.SInstruction;
+import semulator.label.Label;
+import semulator.variable.Variable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where each variable and label appears in a list of instructions: for every
+ * name, the sorted 0-based indices of the instructions that mention it.
+ *
+ * An instruction mentions its variable, its label, the label it jumps to, the
+ * variable it copies or compares with, and the variables in the arguments of
+ * the function it calls, nested calls included. EXIT counts as a label.
+ *
+ * Built in one pass over the instructions; after that, looking up a name costs
+ * a hash lookup, and a question about one row a binary search in its indices.
+ */
+public final class SymbolIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final Map<String, int[]> rows;
+    private final int size;
+
+    public SymbolIndex(List<SInstruction> instructions) {
+        Map<String, int[]> building = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        int index = 0;
+        for (SInstruction instruction : instructions) {
+            if (instruction != null) {
+                for (String name : names(instruction)) {
+                    add(building, counts, name, index);
+                }
+            }
+            index++;
+        }
+        for (Map.Entry<String, int[]> entry : building.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(), counts.get(entry.getKey())));
+        }
+        this.rows = building;
+        this.size = index;
+    }
+
+    /** Instructions indexed. */
+    public int size() {
+        return size;
+    }
+
+    /** The variables and labels that appear, in no particular order. */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(rows.keySet());
+    }
+
+    public boolean contains(String name) {
+        return rows.containsKey(name);
+    }
+
+    /** Sorted indices of the instructions that mention the name; empty if none does. */
+    public int[] rows(String name) {
+        return rows.getOrDefault(name, NONE).clone();
+    }
+
+    /** Instructions that mention the name. */
+    public int count(String name) {
+        return rows.getOrDefault(name, NONE).length;
+    }
+
+    /** Whether the instruction at the index mentions the name. */
+    public boolean mentions(String name, int row) {
+        return name != null && Arrays.binarySearch(rows.getOrDefault(name, NONE), row) >= 0;
+    }
+
+    /** The first instruction after the index that mentions the name, or -1. */
+    public int next(String name, int row) {
+        int[] matches = rows.getOrDefault(name, NONE);
+        int at = Arrays.binarySearch(matches, row);
+        at = at >= 0 ? at + 1 : -at - 1;
+        return at < matches.length ? matches[at] : -1;
+    }
+
+    /** The last instruction before the index that mentions the name, or -1. */
+    public int previous(String name, int row) {
+        int[] matches = rows.getOrDefault(name, NONE);
+        int at = Arrays.binarySearch(matches, row);
+        at = at >= 0 ? at - 1 : -at - 2;
+        return at >= 0 ? matches[at] : -1;
+    }
+
+    private static void add(Map<String, int[]> building, Map<String, Integer> counts, String name, int index) {
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        int[] indices = building.get(name);
+        int count = counts.getOrDefault(name, 0);
+        if (indices == null) {
+            indices = new int[4];
+            building.put(name, indices);
+        } else if (indices[count - 1] == index) {
+            return; // named twice by one instruction
+        } else if (count == indices.length) {
+            indices = Arrays.copyOf(indices, count * 2);
+            building.put(name, indices);
+        }
+        indices[count] = index;
+        counts.put(name, count + 1);
+    }
+
+    private static List<String> names(SInstruction instruction) {
+        List<String> names = new ArrayList<>();
+        if (!(instruction instanceof GotoLabelInstruction)) {
+            names.add(variable(instruction.getVariable())); // a GOTO's variable is a placeholder
+        }
+        names.add(label(instruction.getLabel()));
+        if (instruction instanceof AssignVariableInstruction a) {
+            names.add(variable(a.getSource()));
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            names.add(variable(j.getOther()));
+            names.add(label(j.getTarget()));
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            names.add(label(j.getTarget()));
+        } else if (instruction instanceof JumpNotZeroInstruction j) {
+            names.add(label(j.getTarget()));
+        } else if (instruction instanceof JumpZeroInstruction j) {
+            names.add(label(j.getTarget()));
+        } else if (instruction instanceof GotoLabelInstruction g) {
+            names.add(label(g.getTarget()));
+        } else if (instruction instanceof QuoteInstruction q) {
+            arguments(q.getFunctionArguments(), names);
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            names.add(label(j.getTarget()));
+            arguments(j.getFunctionArguments(), names);
+        }
+        return names;
+    }
+
+    private static void arguments(List<FunctionArgument> arguments, List<String> names) {
+        for (FunctionArgument argument : arguments) {
+            if (argument.isFunctionCall()) {
+                arguments(argument.asFunctionCall().getArguments(), names);
+            } else {
+                names.add(variable(argument.asVariable()));
+            }
+        }
+    }
+
+    private static String variable(Variable variable) {
+        return variable == null ? null : variable.toString();
+    }
+
+    private static String label(Label label) {
+        return label == null ? null : label.getLabel();
+    }
+}
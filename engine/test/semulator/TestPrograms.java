@@ -0,0 +1,98 @@
+package semulator;
+
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.RepeatedIncreaseInstruction;
+import semulator.instructions.SInstruction;
+import semulator.label.FixedLabel;
+import semulator.label.Label;
+import semulator.program.ExpansionResult;
+import semulator.program.SProgramImpl;
+
+import java.net.URL;
+import java.nio.file.Path;
+
+/** Programs for the engine tests: the XML files in programs/, next to this class. */
+public final class TestPrograms {
+
+    private TestPrograms() {
+    }
+
+    public static Path path(String name) {
+        URL url = TestPrograms.class.getResource("programs/" + name + ".xml");
+        if (url == null) {
+            throw new IllegalArgumentException("No test program " + name);
+        }
+        try {
+            return Path.of(url.toURI());
+        } catch (java.net.URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Validate and load a test program; fails the test if it is not valid. */
+    public static SProgramImpl load(String name) {
+        SProgramImpl program = new SProgramImpl(name);
+        String status = program.validate(path(name));
+        if (!"Valid".equals(status)) {
+            throw new IllegalStateException(name + ": " + status);
+        }
+        try {
+            program.load();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot load " + name, e);
+        }
+        return program;
+    }
+
+    /** The program's expansion to the degree, as a program with the same functions. */
+    public static SProgramImpl expanded(SProgramImpl program, int degree) {
+        ExpansionResult expansion = program.expandToDegree(degree);
+        SProgramImpl expanded = new SProgramImpl(program.getName() + " degree " + degree);
+        expansion.instructions().forEach(expanded::addInstruction);
+        expanded.getFunctions().putAll(program.getFunctions());
+        return expanded;
+    }
+
+    /** Everything an instruction says, as text, to compare instructions that are not the same object. */
+    public static String describe(SInstruction instruction) {
+        StringBuilder text = new StringBuilder(instruction.getClass().getSimpleName())
+                .append(' ').append(label(instruction.getLabel()))
+                .append(' ').append(instruction.getVariable())
+                .append(' ').append(instruction.cycles());
+        if (instruction instanceof AssignVariableInstruction a) {
+            text.append(' ').append(a.getSource());
+        } else if (instruction instanceof AssignConstantInstruction a) {
+            text.append(' ').append(a.getConstant());
+        } else if (instruction instanceof RepeatedIncreaseInstruction r) {
+            text.append(' ').append(r.getCount());
+        } else if (instruction instanceof GotoLabelInstruction g) {
+            text.append(' ').append(label(g.getTarget()));
+        } else if (instruction instanceof JumpNotZeroInstruction j) {
+            text.append(' ').append(label(j.getTarget()));
+        } else if (instruction instanceof JumpZeroInstruction j) {
+            text.append(' ').append(label(j.getTarget()));
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            text.append(' ').append(j.getConstant()).append(' ').append(label(j.getTarget()));
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            text.append(' ').append(j.getOther()).append(' ').append(label(j.getTarget()));
+        } else if (instruction instanceof QuoteInstruction q) {
+            text.append(' ').append(q.getFunctionName()).append(' ').append(q.getFunctionArguments());
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            text.append(' ').append(j.getFunctionName()).append(' ').append(j.getFunctionArguments())
+                    .append(' ').append(label(j.getTarget()));
+        }
+        return text.toString();
+    }
+
+    private static String label(Label label) {
+        return label == null ? "-" : label == FixedLabel.EXIT ? "EXIT" : label == FixedLabel.EMPTY ? "" : label.getLabel();
+    }
+}
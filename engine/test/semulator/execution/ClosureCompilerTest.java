@@ -0,0 +1,67 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ClosureCompilerTest {
+
+    @Test
+    void compiledRunsMatchTheInterpreterAndTheOptimizedRuns() {
+        for (String name : new String[]{"harness", "deg2", "deg4", "affine", "unreached-result"}) {
+            SProgramImpl source = TestPrograms.load(name);
+            for (int degree = 0; degree <= 2; degree++) {
+                SProgramImpl program = TestPrograms.expanded(source, degree);
+                // One executor for every input: compiled code is reused across runs
+                ProgramExecutorImpl compiled = new ProgramExecutorImpl(program);
+                compiled.setExecutionTier(ExecutionTier.COMPILED);
+                for (long x1 = 0; x1 < 3; x1++) {
+                    for (long x2 = 0; x2 < 4; x2++) {
+                        String run = name + " degree " + degree + " x1=" + x1 + " x2=" + x2;
+                        ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+                        long y = interpreter.run(x1, x2);
+                        ProgramExecutorImpl optimized = new ProgramExecutorImpl(program);
+                        optimized.setExecutionTier(ExecutionTier.OPTIMIZED);
+                        optimized.run(x1, x2);
+
+                        assertEquals(y, compiled.run(x1, x2), run);
+                        assertEquals(interpreter.getTotalCycles(), compiled.getTotalCycles(), run);
+                        assertEquals(observable(interpreter.variableState()), observable(compiled.variableState()),
+                                run);
+                        assertEquals(optimized.variableState(), compiled.variableState(), run);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void aCycleLimitIsStillHonoured() {
+        SProgramImpl program = TestPrograms.expanded(TestPrograms.load("harness"), 2);
+        ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+        long y = interpreter.run(3L, 2L);
+
+        ProgramExecutorImpl compiled = new ProgramExecutorImpl(program);
+        compiled.setExecutionTier(ExecutionTier.COMPILED);
+        compiled.setLimits(RunLimits.cycles(interpreter.getTotalCycles()));
+        assertEquals(y, compiled.run(3L, 2L));
+        compiled.setLimits(RunLimits.cycles(interpreter.getTotalCycles() - 1));
+        ExecutionStoppedException stopped = assertThrows(ExecutionStoppedException.class,
+                () -> compiled.run(3L, 2L));
+        assertEquals(RunOutcome.Status.CYCLE_LIMIT, stopped.getReason());
+    }
+
+    /** The variables no optimization removes stores to: all but the work variables. */
+    private static Map<Variable, Long> observable(Map<Variable, Long> state) {
+        Map<Variable, Long> variables = new HashMap<>(state);
+        variables.keySet().removeIf(Variable::isWork);
+        return variables;
+    }
+}
@@ -0,0 +1,83 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DegreeEmulatorTest {
+
+    @Test
+    void emulatedRunsMatchTheExpandedProgram() {
+        for (String name : new String[]{"harness", "deg2", "affine", "tail"}) {
+            SProgramImpl program = TestPrograms.load(name);
+            for (int degree = 1; degree <= 2; degree++) {
+                ProgramExecutorImpl emulator = new ProgramExecutorImpl(program);
+                emulator.setEmulatedDegree(degree);
+                assertTrue(emulator.isDegreeEmulated(), name + " degree " + degree);
+                assertSameRuns(TestPrograms.expanded(program, degree), emulator, 4, name + " degree " + degree);
+            }
+        }
+    }
+
+    @Test
+    void aProgramNotEmulatedExactlyRunsItsExpansion() {
+        SProgramImpl program = TestPrograms.load("deg4");
+        for (int degree = 1; degree <= 2; degree++) {
+            ProgramExecutorImpl emulator = new ProgramExecutorImpl(program);
+            emulator.setEmulatedDegree(degree);
+            assertFalse(emulator.isDegreeEmulated());
+            // deg4 runs long from x1 = 3 on at these degrees
+            assertSameRuns(TestPrograms.expanded(program, degree), emulator, 3, "deg4 degree " + degree);
+        }
+    }
+
+    @Test
+    void aCycleLimitStopsWhereTheExpandedProgramStops() {
+        for (String name : new String[]{"harness", "deg2", "tail", "deg4"}) {
+            SProgramImpl program = TestPrograms.load(name);
+            for (int degree = 1; degree <= 2; degree++) {
+                String run = name + " degree " + degree;
+                ProgramExecutorImpl expanded = new ProgramExecutorImpl(TestPrograms.expanded(program, degree));
+                expanded.setLimits(RunLimits.cycles(40));
+                assertThrows(ExecutionStoppedException.class, () -> expanded.run(2L, 2L), run);
+
+                ProgramExecutorImpl emulator = new ProgramExecutorImpl(program);
+                emulator.setEmulatedDegree(degree);
+                emulator.setLimits(RunLimits.cycles(40));
+                ExecutionStoppedException stop = assertThrows(ExecutionStoppedException.class,
+                        () -> emulator.run(2L, 2L), run);
+                assertEquals(RunOutcome.Status.CYCLE_LIMIT, stop.getReason(), run);
+                assertEquals(expanded.getTotalCycles(), emulator.getTotalCycles(), run);
+            }
+        }
+    }
+
+    private static void assertSameRuns(SProgramImpl expanded, ProgramExecutorImpl emulator, long inputs, String name) {
+        for (long x1 = 0; x1 < inputs; x1++) {
+            for (long x2 = 0; x2 < 4; x2++) {
+                String run = name + " x1=" + x1 + " x2=" + x2;
+                ProgramExecutorImpl interpreter = new ProgramExecutorImpl(expanded);
+                long y = interpreter.run(x1, x2);
+                assertEquals(y, emulator.run(x1, x2), run);
+                assertEquals(interpreter.getTotalCycles(), emulator.getTotalCycles(), run);
+                // The emulator has no work variables the expansion added
+                assertEquals(observable(interpreter.variableState()), observable(emulator.variableState()), run);
+            }
+        }
+    }
+
+    private static Map<Variable, Long> observable(Map<Variable, Long> state) {
+        Map<Variable, Long> variables = new HashMap<>(state);
+        variables.keySet().removeIf(Variable::isWork);
+        return variables;
+    }
+}
@@ -0,0 +1,94 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import semulator.TestPrograms;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.label.Label;
+import semulator.label.LabelImpl;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutionCheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resumedCheckpointsMatchAnUninterruptedRun() throws Exception {
+        SProgramImpl program = TestPrograms.load("harness");
+        SProgramImpl reloaded = TestPrograms.load("harness"); // as another process would
+        Path file = directory.resolve("run.ckpt");
+        for (long x1 = 0; x1 < 4; x1++) {
+            ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+            long y = executor.run(x1, 3L);
+            for (int steps = 1; steps < 400; steps += 7) {
+                String run = "x1=" + x1 + " after " + steps + " steps";
+                ResumableExecution execution = new ResumableExecution(program, RunLimits.NONE, x1, 3L);
+                execution.runSlice(steps);
+                ExecutionCheckpoint.save(file, execution);
+                ResumableExecution resumed = ExecutionCheckpoint.load(file, reloaded, RunLimits.NONE);
+                while (!resumed.runSlice(5)) {
+                    // resume in small slices
+                }
+                assertEquals(y, resumed.getResult(), run);
+                assertEquals(executor.getTotalCycles(), resumed.getTotalCycles(), run);
+                assertEquals(executor.variableState(), resumed.variableState(), run);
+            }
+        }
+    }
+
+    @Test
+    void checkpointOfAnotherProgramIsRejected() throws Exception {
+        Path file = directory.resolve("run.ckpt");
+        ResumableExecution execution = new ResumableExecution(TestPrograms.load("harness"), RunLimits.NONE, 1L, 1L);
+        execution.runSlice(10);
+        ExecutionCheckpoint.save(file, execution);
+        SProgramImpl other = TestPrograms.load("deg2");
+        assertThrows(IllegalArgumentException.class, () -> ExecutionCheckpoint.load(file, other, RunLimits.NONE));
+    }
+
+    @Test
+    void aStoppedRunLeavesACheckpointToResume() throws Exception {
+        SProgramImpl program = TestPrograms.load("harness");
+        ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+        long y = executor.run(3L, 4L);
+        Path file = directory.resolve("run.ckpt");
+        CheckpointedRun stopped = new CheckpointedRun(
+                new ResumableExecution(program, RunLimits.cycles(executor.getTotalCycles() / 2), 3L, 4L), file, null);
+        assertThrows(ExecutionStoppedException.class, stopped::run);
+        assertTrue(stopped.getCheckpointsWritten() >= 1);
+
+        CheckpointedRun resumed = new CheckpointedRun(ExecutionCheckpoint.load(file, program, RunLimits.NONE), file,
+                null);
+        assertEquals(y, resumed.run());
+        assertEquals(executor.getTotalCycles(), resumed.getExecution().getTotalCycles());
+    }
+
+    @Test
+    void aTimedOutRunLeavesACheckpoint() throws Exception {
+        // z1 <- z1 + 1 until z1 = 0: runs until stopped
+        SProgramImpl endless = new SProgramImpl("Endless");
+        Label loop = new LabelImpl(1);
+        endless.addInstruction(new IncreaseInstruction(Variable.of("z1"), loop));
+        endless.addInstruction(new JumpNotZeroInstruction(Variable.of("z1"), loop));
+        Path file = directory.resolve("run.ckpt");
+        CheckpointedRun timed = new CheckpointedRun(
+                new ResumableExecution(endless, RunLimits.timeout(Duration.ofMillis(50))), file, null);
+        ExecutionStoppedException stop = assertThrows(ExecutionStoppedException.class, timed::run);
+        assertEquals(RunOutcome.Status.TIMED_OUT, stop.getReason());
+        assertEquals(1, timed.getCheckpointsWritten());
+
+        ResumableExecution resumed = ExecutionCheckpoint.load(file, endless, RunLimits.NONE);
+        assertEquals(timed.getExecution().getTotalCycles(), resumed.getTotalCycles());
+        assertEquals(timed.getExecution().variableState(), resumed.variableState());
+    }
+}
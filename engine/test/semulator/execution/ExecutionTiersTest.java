@@ -0,0 +1,138 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutionTiersTest {
+
+    @Test
+    void everyTierMatchesTheInterpreter() {
+        long[][] thresholds = {{1, 1}, {2, 50}, {1000, 10_000}};
+        for (String name : new String[]{"harness", "deg2", "affine"}) {
+            SProgramImpl source = TestPrograms.load(name);
+            for (int degree = 0; degree <= 2; degree++) {
+                SProgramImpl program = TestPrograms.expanded(source, degree);
+                for (ExecutionTier tier : ExecutionTier.values()) {
+                    for (long[] threshold : thresholds) {
+                        // One executor for every input, so ADAPTIVE promotes part way through
+                        ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+                        executor.setExecutionTier(tier);
+                        executor.setPromotionThresholds(threshold[0], threshold[1]);
+                        for (long x1 = 0; x1 < 4; x1++) {
+                            for (long x2 = 0; x2 < 4; x2++) {
+                                String run = name + " degree " + degree + " " + tier + " thresholds "
+                                        + threshold[0] + "/" + threshold[1] + " x1=" + x1 + " x2=" + x2;
+                                ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+                                long y = interpreter.run(x1, x2);
+                                assertEquals(y, executor.run(x1, x2), run);
+                                assertEquals(interpreter.getTotalCycles(), executor.getTotalCycles(), run);
+                                // Only work variables may be left out, when their stores are dead
+                                assertEquals(observable(interpreter.variableState()),
+                                        observable(executor.variableState()), run);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void hotFunctionsArePromotedOnce() {
+        SProgramImpl program = TestPrograms.load("harness");
+        ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+        executor.setExecutionTier(ExecutionTier.ADAPTIVE);
+        executor.setPromotionThresholds(2, 50);
+        for (long x = 0; x < 4; x++) {
+            executor.run(x, x + 1);
+        }
+        Set<String> promoted = new HashSet<>();
+        for (TierDecision decision : executor.getTierDecisions()) {
+            if (decision.loopHead() == -1 && decision.tier() == ExecutionTier.COMPILED) {
+                assertTrue(promoted.add(decision.code()), decision.code() + " promoted twice");
+                assertTrue(decision.invocations() >= 2 || decision.backEdges() >= 50, decision.toString());
+            }
+        }
+        assertFalse(promoted.isEmpty());
+        for (String function : promoted) {
+            assertTrue(executor.getInvocationCounts().get(function) >= 2, function);
+        }
+    }
+
+    @Test
+    void everyTierLeavesOutAResultNeverStored() {
+        // Counts x1 into z1, then exits before the stores to y
+        SProgramImpl program = TestPrograms.load("unreached-result");
+        ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+        assertEquals(0L, interpreter.run(3L));
+        assertFalse(interpreter.variableState().containsKey(Variable.RESULT));
+        for (ExecutionTier tier : ExecutionTier.values()) {
+            ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+            executor.setExecutionTier(tier);
+            executor.setPromotionThresholds(1, 1);
+            assertEquals(0L, executor.run(3L), tier.name());
+            assertEquals(interpreter.getTotalCycles(), executor.getTotalCycles(), tier.name());
+            assertEquals(interpreter.variableState(), executor.variableState(), tier.name());
+        }
+    }
+
+    @Test
+    void countedLoopCyclesPastIntRangeAreNotTruncated() {
+        // L1 takes two off x1 a turn, so its cycles are linear in (even) x1
+        SProgramImpl program = TestPrograms.load("affine");
+        ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+        interpreter.run(0L);
+        long base = interpreter.getTotalCycles();
+        interpreter.run(2L);
+        long perTurn = interpreter.getTotalCycles() - base;
+
+        long turns = 1_000_000_000L;
+        ProgramExecutorImpl optimized = new ProgramExecutorImpl(program);
+        optimized.setExecutionTier(ExecutionTier.OPTIMIZED);
+        long y = optimized.run(2 * turns);
+        assertEquals(turns + 1, y);
+        assertEquals(base + turns * perTurn, optimized.getTotalCycles());
+        assertTrue(optimized.getTotalCycles() > Integer.MAX_VALUE);
+    }
+
+    @Test
+    void runsOfIncreasesPastIntRangeAreChargedInFull() {
+        // y <- 2000000000; z1 <- 2000000000; y++: at degree 1 one block holds both runs of increases
+        SProgramImpl program = TestPrograms.expanded(TestPrograms.load("large-runs"), 1);
+        ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+        assertEquals(2_000_000_001L, interpreter.run());
+        assertTrue(interpreter.getTotalCycles() > 4_000_000_000L);
+        for (ExecutionTier tier : ExecutionTier.values()) {
+            ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+            executor.setExecutionTier(tier);
+            assertEquals(2_000_000_001L, executor.run(), tier.name());
+            assertEquals(interpreter.getTotalCycles(), executor.getTotalCycles(), tier.name());
+
+            // A limit past the int range is not wrapped into a negative one
+            ProgramExecutorImpl limited = new ProgramExecutorImpl(program);
+            limited.setExecutionTier(tier);
+            limited.setLimits(RunLimits.cycles(3_000_000_000L));
+            ExecutionStoppedException stop = assertThrows(ExecutionStoppedException.class, limited::run, tier.name());
+            assertEquals(RunOutcome.Status.CYCLE_LIMIT, stop.getReason(), tier.name());
+            assertTrue(limited.getTotalCycles() >= 0, tier + " " + limited.getTotalCycles());
+        }
+    }
+
+    private static Map<Variable, Long> observable(Map<Variable, Long> state) {
+        Map<Variable, Long> variables = new HashMap<>(state);
+        variables.keySet().removeIf(Variable::isWork);
+        return variables;
+    }
+}
@@ -0,0 +1,57 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FairSchedulerTest {
+
+    @Test
+    void slicedRunsOfSeveralTenantsComplete() throws Exception {
+        List<SProgramImpl> programs = List.of(TestPrograms.load("harness"), TestPrograms.load("deg2"),
+                TestPrograms.load("affine"));
+        try (FairScheduler scheduler = new FairScheduler(2, 50)) {
+            scheduler.setTenantWeight("big", 3);
+            List<CompletableFuture<RunOutcome>> outcomes = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                outcomes.add(scheduler.submit(i % 2 == 0 ? "big" : "small", i % 3, programs.get(i % 3),
+                        (long) (i % 5), 4L));
+            }
+            for (int i = 0; i < outcomes.size(); i++) {
+                // Runs cut into slices end as a run in one go does
+                ProgramExecutorImpl executor = new ProgramExecutorImpl(programs.get(i % 3));
+                long y = executor.run((long) (i % 5), 4L);
+                RunOutcome outcome = outcomes.get(i).get(30, TimeUnit.SECONDS);
+                String run = "run " + i;
+                assertEquals(RunOutcome.Status.COMPLETED, outcome.status(), run);
+                assertEquals(y, outcome.result(), run);
+                assertEquals(executor.getTotalCycles(), outcome.cycles(), run);
+                assertEquals(executor.variableState(), outcome.variables(), run);
+            }
+            assertEquals(0, scheduler.readyCount());
+        }
+    }
+
+    @Test
+    void cycleLimitStopsASlicedRun() throws Exception {
+        SProgramImpl program = TestPrograms.load("harness");
+        try (FairScheduler scheduler = new FairScheduler(1, 5)) {
+            RunOutcome outcome = scheduler.submit("t", 0, program, RunLimits.cycles(20), 3L, 4L)
+                    .get(30, TimeUnit.SECONDS);
+            assertEquals(RunOutcome.Status.CYCLE_LIMIT, outcome.status());
+            // Stopped where a run in one go stops
+            ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+            executor.setLimits(RunLimits.cycles(20));
+            assertThrows(ExecutionStoppedException.class, () -> executor.run(3L, 4L));
+            assertEquals(executor.getTotalCycles(), outcome.cycles());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LazyArgumentsTest {
+
+    @Test
+    void lazyRunsMatchEagerRuns() {
+        for (String name : new String[]{"harness", "deg2", "deg4"}) {
+            SProgramImpl program = TestPrograms.load(name);
+            for (long x1 = 0; x1 < 4; x1++) {
+                for (long x2 = 0; x2 < 4; x2++) {
+                    String run = name + " x1=" + x1 + " x2=" + x2;
+                    ProgramExecutorImpl eager = new ProgramExecutorImpl(program);
+                    long y = eager.run(x1, x2);
+                    ProgramExecutorImpl lazy = new ProgramExecutorImpl(program);
+                    lazy.setLazyArguments(true);
+                    assertEquals(y, lazy.run(x1, x2), run);
+                    assertEquals(eager.getTotalCycles(), lazy.getTotalCycles(), run);
+                    assertEquals(eager.variableState(), lazy.variableState(), run);
+                }
+            }
+        }
+    }
+
+    @Test
+    void anArgumentNeverReadIsNeverEvaluated() {
+        SProgramImpl program = TestPrograms.load("unused-argument");
+        // Function bodies are not charged cycles: the endless argument only times out
+        ProgramExecutorImpl eager = new ProgramExecutorImpl(program);
+        eager.setLimits(RunLimits.timeout(Duration.ofMillis(200)));
+        assertThrows(ExecutionStoppedException.class, () -> eager.run(5L));
+
+        ProgramExecutorImpl lazy = new ProgramExecutorImpl(program);
+        lazy.setLimits(RunLimits.timeout(Duration.ofSeconds(10)));
+        lazy.setLazyArguments(true);
+        assertEquals(5, lazy.run(5L));
+    }
+}
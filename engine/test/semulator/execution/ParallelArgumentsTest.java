@@ -0,0 +1,73 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelArgumentsTest {
+
+    @Test
+    void forkedArgumentsGiveTheSequentialRun() {
+        for (String name : new String[]{"harness", "deg2"}) {
+            SProgramImpl source = TestPrograms.load(name);
+            for (int degree = 0; degree <= 1; degree++) {
+                SProgramImpl program = TestPrograms.expanded(source, degree);
+                ProgramExecutorImpl parallel = new ProgramExecutorImpl(program);
+                parallel.setParallelArguments(true);
+                parallel.setParallelCostThreshold(0); // fork every pair of sibling calls
+                for (long x1 = 0; x1 < 6; x1++) {
+                    for (long x2 = 0; x2 < 4; x2++) {
+                        ProgramExecutorImpl sequential = new ProgramExecutorImpl(program);
+                        long y = sequential.run(x1, x2);
+                        for (int run = 0; run < 3; run++) {
+                            String inputs = name + " degree " + degree + " x1=" + x1 + " x2=" + x2;
+                            assertEquals(y, parallel.run(x1, x2), inputs);
+                            assertEquals(sequential.getTotalCycles(), parallel.getTotalCycles(), inputs);
+                            assertEquals(sequential.variableState(), parallel.variableState(), inputs);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void evaluationUnderAStepBudgetDoesNotFork() {
+        SProgramImpl program = TestPrograms.load("harness");
+        ProgramExecutorImpl sequential = new ProgramExecutorImpl(program);
+        ProgramExecutorImpl parallel = new ProgramExecutorImpl(program);
+        parallel.setParallelArguments(true);
+        parallel.setParallelCostThreshold(0);
+        for (String function : program.getFunctions().keySet()) {
+            long[] arguments = {3, 2};
+            assertEquals(sequential.evaluateCall(function, arguments, 1 << 20, 200),
+                    parallel.evaluateCall(function, arguments, 1 << 20, 200), function);
+        }
+    }
+
+    @Test
+    void aStopWhileArgumentsAreEvaluatedIsNotReported() {
+        SProgramImpl program = TestPrograms.load("harness");
+        ByteArrayOutputStream reported = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(reported, true));
+        try {
+            ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+            // With x2 = 0 the first thousand steps all go to the nested (Mul,x1,3) of z3's QUOTE
+            Thread.currentThread().interrupt();
+            ExecutionStoppedException stop = assertThrows(ExecutionStoppedException.class,
+                    () -> executor.run(1000L, 0L));
+            assertEquals(RunOutcome.Status.CANCELLED, stop.getReason());
+        } finally {
+            Thread.interrupted();
+            System.setErr(err);
+        }
+        assertEquals("", reported.toString());
+    }
+}
@@ -0,0 +1,84 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartialEvaluatorTest {
+
+    @Test
+    void unreachedNonTerminatingRecursionIsLeftUnfolded() {
+        // GOTO EXIT; y <- (F1,(F2)), where F2 calls itself before assigning y
+        SProgramImpl program = TestPrograms.load("unreached-recursion");
+
+        ProgramExecutorImpl plain = new ProgramExecutorImpl(program);
+        long expected = plain.run();
+
+        ProgramExecutorImpl folding = new ProgramExecutorImpl(program);
+        folding.setPartialEvaluation(true);
+        assertEquals(expected, folding.run());
+        assertEquals(plain.getTotalCycles(), folding.getTotalCycles());
+        assertEquals(plain.variableState(), folding.variableState());
+        assertEquals(0, folding.getFoldedCallCount());
+    }
+
+    @Test
+    void evaluationStopsAtTheCallDepthBudget() {
+        SProgramImpl program = TestPrograms.load("unreached-recursion");
+        ProgramExecutorImpl evaluator = new ProgramExecutorImpl(program);
+        assertEquals(null, evaluator.evaluateCall("F2", new long[0], PartialEvaluator.STEP_BUDGET,
+                PartialEvaluator.CALL_DEPTH_BUDGET));
+        assertEquals(3L, evaluator.evaluateCall("F1", new long[]{3}, PartialEvaluator.STEP_BUDGET,
+                PartialEvaluator.CALL_DEPTH_BUDGET));
+    }
+
+    @Test
+    void foldedAndSpecializedCallsMatchTheInterpreter() {
+        SProgramImpl source = TestPrograms.load("harness");
+        for (int degree = 0; degree <= 1; degree++) {
+            SProgramImpl program = TestPrograms.expanded(source, degree);
+            for (ExecutionTier tier : ExecutionTier.values()) {
+                ProgramExecutorImpl folding = new ProgramExecutorImpl(program);
+                folding.setExecutionTier(tier);
+                folding.setPromotionThresholds(2, 20);
+                folding.setPartialEvaluation(true);
+                for (long x1 = 0; x1 < 4; x1++) {
+                    for (long x2 = 0; x2 < 4; x2++) {
+                        String run = "degree " + degree + " " + tier + " x1=" + x1 + " x2=" + x2;
+                        ProgramExecutorImpl plain = new ProgramExecutorImpl(program);
+                        long y = plain.run(x1, x2);
+                        assertEquals(y, folding.run(x1, x2), run);
+                        assertEquals(plain.getTotalCycles(), folding.getTotalCycles(), run);
+                        assertEquals(observable(plain.variableState()), observable(folding.variableState()), run);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void constantArgumentsFoldOrSpecializeTheCall() {
+        SProgramImpl program = TestPrograms.load("harness");
+        ProgramExecutorImpl folding = new ProgramExecutorImpl(program);
+        folding.setExecutionTier(ExecutionTier.OPTIMIZED);
+        folding.setPartialEvaluation(true);
+        folding.run(2L, 5L);
+        assertTrue(folding.getFoldedCallCount() > 0);
+        // Mul(x1, 3) in the main program runs a Mul with its second argument fixed
+        assertTrue(folding.getSpecializedVariants().containsKey("Mul(_,3)"),
+                folding.getSpecializedVariants().keySet().toString());
+    }
+
+    private static Map<Variable, Long> observable(Map<Variable, Long> state) {
+        Map<Variable, Long> variables = new HashMap<>(state);
+        variables.keySet().removeIf(Variable::isWork);
+        return variables;
+    }
+}
@@ -0,0 +1,50 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResumableExecutionTest {
+
+    @Test
+    void slicedRunsMatchTheInterpreter() {
+        SProgramImpl source = TestPrograms.load("deg2");
+        for (int degree = 0; degree <= 2; degree++) {
+            SProgramImpl program = TestPrograms.expanded(source, degree);
+            for (long x1 = 0; x1 < 4; x1++) {
+                for (long x2 = 0; x2 < 3; x2++) {
+                    ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+                    long y = executor.run(x1, x2);
+                    for (int slice : new int[]{1, 3, 1_000_000}) {
+                        String run = "degree " + degree + " x1=" + x1 + " x2=" + x2 + " slice " + slice;
+                        ResumableExecution execution = new ResumableExecution(program, RunLimits.NONE, x1, x2);
+                        while (!execution.runSlice(slice)) {
+                            assertTrue(execution.getDepth() >= 1, run);
+                        }
+                        assertEquals(y, execution.getResult(), run);
+                        assertEquals(executor.getTotalCycles(), execution.getTotalCycles(), run);
+                        assertEquals(executor.variableState(), execution.variableState(), run);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void runToTopLevelStopsBetweenMainInstructions() {
+        SProgramImpl program = TestPrograms.load("harness");
+        ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+        long y = executor.run(3L, 2L);
+        ResumableExecution execution = new ResumableExecution(program, RunLimits.NONE, 3L, 2L);
+        while (!execution.isFinished()) {
+            execution.runSlice(7);
+            execution.runToTopLevel();
+            assertTrue(execution.getDepth() <= 1);
+        }
+        assertEquals(y, execution.getResult());
+        assertEquals(executor.getTotalCycles(), execution.getTotalCycles());
+    }
+}
@@ -0,0 +1,91 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.SInstruction;
+import semulator.label.Label;
+import semulator.label.LabelImpl;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunServiceTest {
+
+    /** z1 <- z1 + 1 until z1 = 0: runs until stopped. */
+    private static SProgramImpl endless() {
+        SProgramImpl program = new SProgramImpl("Endless");
+        Label loop = new LabelImpl(1);
+        program.addInstruction(new IncreaseInstruction(Variable.of("z1"), loop));
+        program.addInstruction(new JumpNotZeroInstruction(Variable.of("z1"), loop));
+        return program;
+    }
+
+    @Test
+    void concurrentRunsMatchSequentialRuns() throws Exception {
+        List<SProgramImpl> programs = List.of(TestPrograms.load("harness"), TestPrograms.load("deg2"),
+                TestPrograms.load("affine"));
+        try (RunService service = new RunService(4, RunLimits.NONE)) {
+            List<CompletableFuture<RunOutcome>> outcomes = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                outcomes.add(service.submit(programs.get(i % 3), (long) (i % 6), 4L));
+            }
+            for (int i = 0; i < outcomes.size(); i++) {
+                ProgramExecutorImpl executor = new ProgramExecutorImpl(programs.get(i % 3));
+                long y = executor.run((long) (i % 6), 4L);
+                RunOutcome outcome = outcomes.get(i).get(30, TimeUnit.SECONDS);
+                String run = "run " + i;
+                assertEquals(RunOutcome.Status.COMPLETED, outcome.status(), run);
+                assertEquals(y, outcome.result(), run);
+                assertEquals(executor.getTotalCycles(), outcome.cycles(), run);
+                assertEquals(executor.variableState(), outcome.variables(), run);
+            }
+            assertEquals(60L, service.finishedCount());
+        }
+    }
+
+    @Test
+    void limitsAndCancellationStopEndlessRuns() throws Exception {
+        try (RunService service = new RunService(2, RunLimits.NONE)) {
+            CompletableFuture<RunOutcome> limited = service.submit(endless(), RunLimits.cycles(1000));
+            CompletableFuture<RunOutcome> timed = service.submit(endless(), RunLimits.timeout(Duration.ofMillis(100)));
+            assertEquals(RunOutcome.Status.CYCLE_LIMIT, limited.get(30, TimeUnit.SECONDS).status());
+            assertTrue(limited.get().cycles() <= 1000);
+            assertEquals(RunOutcome.Status.TIMED_OUT, timed.get(30, TimeUnit.SECONDS).status());
+
+            CompletableFuture<RunOutcome> endless = service.submit(endless());
+            endless.cancel(true);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (service.finishedCount() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(3L, service.finishedCount(), "queued=" + service.queueDepth() + " inFlight=" + service.inFlight());
+        }
+    }
+
+    @Test
+    void anErrorFailsTheRun() throws Exception {
+        SProgramImpl broken = new SProgramImpl("Broken") {
+            @Override
+            public List<SInstruction> getInstructions() {
+                throw new LinkageError("broken");
+            }
+        };
+        try (RunService service = new RunService(1, RunLimits.NONE)) {
+            RunOutcome outcome = service.submit(broken).get(30, TimeUnit.SECONDS);
+            assertEquals(RunOutcome.Status.FAILED, outcome.status());
+            // the service keeps running
+            assertEquals(RunOutcome.Status.COMPLETED, service.submit(TestPrograms.load("harness"), 1L, 2L)
+                    .get(30, TimeUnit.SECONDS).status());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TailCallTest {
+
+    // Far deeper than a thread's stack would take one frame per call
+    private static final long DEPTH = 200_000;
+
+    @Test
+    void tailCallsMatchTheInterpreterWithEveryOption() {
+        // y <- Rec(x1, 0) + Even(x2) + 1: Rec calls itself last, Even and Odd each other
+        SProgramImpl program = TestPrograms.load("tail");
+        long[][] inputs = {{0, 0}, {1, 1}, {5, 4}, {7, 9}};
+        boolean[] choices = {false, true};
+        for (ExecutionTier tier : ExecutionTier.values()) {
+            for (boolean partial : choices) {
+                for (boolean summaries : choices) {
+                    for (boolean lazy : choices) {
+                        ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+                        executor.setExecutionTier(tier);
+                        executor.setPromotionThresholds(2, 20);
+                        executor.setPartialEvaluation(partial);
+                        executor.setFunctionSummaries(summaries);
+                        executor.setLazyArguments(lazy);
+                        for (long[] input : inputs) {
+                            String run = tier + " partial=" + partial + " summaries=" + summaries + " lazy=" + lazy
+                                    + " x1=" + input[0] + " x2=" + input[1];
+                            ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+                            long y = interpreter.run(input[0], input[1]);
+                            assertEquals(y, executor.run(input[0], input[1]), run);
+                            assertEquals(interpreter.getTotalCycles(), executor.getTotalCycles(), run);
+                            assertEquals(observable(interpreter.variableState()),
+                                    observable(executor.variableState()), run);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void deepTailRecursionRunsWithoutOverflowingTheStack() {
+        SProgramImpl program = TestPrograms.load("tail");
+        for (ExecutionTier tier : ExecutionTier.values()) {
+            for (boolean summaries : new boolean[]{false, true}) {
+                ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+                executor.setExecutionTier(tier);
+                executor.setPromotionThresholds(2, 20);
+                executor.setFunctionSummaries(summaries);
+                // Rec(x1, 0) is x1, and Even(x1 + 1) is 0 for an even x1
+                assertEquals(DEPTH + 1, executor.run(DEPTH, DEPTH + 1), tier + " summaries=" + summaries);
+            }
+        }
+    }
+
+    private static Map<Variable, Long> observable(Map<Variable, Long> state) {
+        Map<Variable, Long> variables = new HashMap<>(state);
+        variables.keySet().removeIf(Variable::isWork);
+        return variables;
+    }
+}
@@ -0,0 +1,162 @@
+package semulator.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkSchedulerTest {
+
+    // Stands in for the UI thread: callbacks wait here until the test runs them
+    private final LinkedBlockingQueue<Runnable> published = new LinkedBlockingQueue<>();
+
+    /** Run the published callbacks until the condition holds, then any left over. */
+    private void deliverUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            // A worker publishes just after its ticket is finished
+            Runnable callback = published.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            assertTrue(callback != null, "nothing delivered");
+            callback.run();
+        }
+        Runnable callback;
+        while ((callback = published.poll()) != null) {
+            callback.run();
+        }
+    }
+
+    /** Work that holds its worker, once started, until the gate opens or it is interrupted. */
+    private static WorkScheduler.Work<String> held(CountDownLatch started, CountDownLatch gate, String result) {
+        return progress -> {
+            started.countDown();
+            gate.await();
+            return result;
+        };
+    }
+
+    @Test
+    void submittingUnderAKeyCancelsTheWorkAlreadyThere() throws Exception {
+        List<String> results = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        try (WorkScheduler scheduler = new WorkScheduler(1, published::add)) {
+            CountDownLatch started = new CountDownLatch(1);
+            // Never let through: it runs until it is interrupted
+            WorkScheduler.Ticket first = scheduler.submit("expansion", WorkScheduler.INTERACTIVE,
+                    held(started, new CountDownLatch(1), "degree 4"), results::add, failures::add);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            scheduler.submit("expansion", WorkScheduler.INTERACTIVE, progress -> "degree 5",
+                    results::add, failures::add);
+            assertTrue(first.isCancelled());
+            first.await();
+            deliverUntil(() -> !results.isEmpty());
+        }
+        assertEquals(List.of("degree 5"), results);
+        assertTrue(failures.isEmpty(), failures.toString());
+    }
+
+    @Test
+    void queuedWorkRunsByPriorityThenInSubmissionOrder() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        try (WorkScheduler scheduler = new WorkScheduler(1, published::add)) {
+            CountDownLatch gate = new CountDownLatch(1);
+            scheduler.submit("gate", WorkScheduler.INTERACTIVE, held(new CountDownLatch(1), gate, "gate"), null, null);
+            List<WorkScheduler.Ticket> tickets = new ArrayList<>();
+            String[] keys = {"a", "b", "c", "d"};
+            int[] priorities = {WorkScheduler.BACKGROUND, WorkScheduler.INTERACTIVE, WorkScheduler.BACKGROUND,
+                    WorkScheduler.INTERACTIVE};
+            for (int i = 0; i < keys.length; i++) {
+                String key = keys[i];
+                tickets.add(scheduler.submit(key, priorities[i], progress -> order.add(key), null, null));
+            }
+            gate.countDown();
+            for (WorkScheduler.Ticket ticket : tickets) {
+                ticket.await();
+            }
+        }
+        assertEquals(List.of("b", "d", "a", "c"), order);
+    }
+
+    @Test
+    void cancelledWorkDeliversNothing() throws Exception {
+        List<String> results = new ArrayList<>();
+        try (WorkScheduler scheduler = new WorkScheduler(1, published::add)) {
+            // Finished before it was cancelled: its result waits on the publisher and is dropped there
+            WorkScheduler.Ticket done = scheduler.submit("run", WorkScheduler.INTERACTIVE, progress -> "run",
+                    results::add, null);
+            done.await();
+            done.cancel();
+
+            // Cancelled while queued: it never runs
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch gate = new CountDownLatch(1);
+            scheduler.submit("gate", WorkScheduler.INTERACTIVE, held(started, gate, "gate"), results::add, null);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            WorkScheduler.Ticket queued = scheduler.<String>submit("queued", WorkScheduler.INTERACTIVE, progress -> {
+                throw new AssertionError("cancelled work ran");
+            }, results::add, null);
+            scheduler.cancel("queued");
+            assertTrue(queued.isFinished());
+            assertEquals(0, scheduler.queuedCount());
+            gate.countDown();
+            deliverUntil(() -> !results.isEmpty());
+        }
+        assertEquals(List.of("gate"), results);
+    }
+
+    @Test
+    void theQueueIsBounded() throws Exception {
+        try (WorkScheduler scheduler = new WorkScheduler(1, 2, published::add)) {
+            CountDownLatch gate = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            scheduler.submit("gate", WorkScheduler.INTERACTIVE, held(started, gate, "gate"), null, null);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            scheduler.submit("a", WorkScheduler.BACKGROUND, progress -> "a", null, null);
+            scheduler.submit("b", WorkScheduler.BACKGROUND, progress -> "b", null, null);
+            assertThrows(IllegalStateException.class,
+                    () -> scheduler.submit("c", WorkScheduler.BACKGROUND, progress -> "c", null, null));
+            // Superseding queued work takes its place
+            scheduler.submit("b", WorkScheduler.BACKGROUND, progress -> "b again", null, null);
+            assertEquals(2, scheduler.queuedCount());
+            gate.countDown();
+        }
+    }
+
+    @Test
+    void failuresAndProgressReachThePublisher() throws Exception {
+        List<Exception> failures = new ArrayList<>();
+        List<Double> progress = new ArrayList<>();
+        try (WorkScheduler scheduler = new WorkScheduler(2, published::add)) {
+            scheduler.submit("run", WorkScheduler.INTERACTIVE, p -> {
+                throw new IllegalStateException("no such program");
+            }, null, failures::add);
+            scheduler.submit("expansion", WorkScheduler.INTERACTIVE, p -> {
+                throw new StackOverflowError();
+            }, null, failures::add);
+            WorkScheduler.Ticket reporting = scheduler.submit("progress", WorkScheduler.INTERACTIVE, p -> {
+                for (int done = 1; done <= 4; done++) {
+                    p.update(done, 4);
+                }
+                return null;
+            }, progress::add, null, null);
+            reporting.await();
+            deliverUntil(() -> failures.size() == 2 && !progress.isEmpty());
+        }
+        assertEquals(2, failures.size());
+        assertTrue(failures.stream().anyMatch(e -> e instanceof IllegalStateException), failures.toString());
+        assertTrue(failures.stream().anyMatch(e -> e instanceof ExecutionException
+                && e.getCause() instanceof StackOverflowError), failures.toString());
+        // Updates not yet delivered are coalesced into the latest one
+        assertEquals(List.of(1.0), progress);
+    }
+}
@@ -0,0 +1,49 @@
+package semulator.instructions;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.program.SProgramImpl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FunctionArgumentParserTest {
+
+    @Test
+    void equalCallsParsedWithOneTableAreOneCall() {
+        Map<FunctionCall, FunctionCall> calls = new HashMap<>();
+        FunctionCall first = FunctionArgumentParser.parseFunctionArgument("(Add,(Equal,x1,x2),x1)", calls)
+                .asFunctionCall();
+        FunctionCall second = FunctionArgumentParser.parseFunctionArgument("(Mul,x2,(Equal,x1,x2))", calls)
+                .asFunctionCall();
+        assertSame(first.getArguments().get(0).asFunctionCall(), second.getArguments().get(1).asFunctionCall());
+
+        FunctionCall unshared = FunctionArgumentParser.parseFunctionArgument("(Mul,x2,(Equal,x1,x2))")
+                .asFunctionCall();
+        assertEquals(second, unshared);
+        assertNotSame(second.getArguments().get(1).asFunctionCall(), unshared.getArguments().get(1).asFunctionCall());
+    }
+
+    @Test
+    void aLoadedProgramSharesRepeatedCalls() {
+        SProgramImpl program = TestPrograms.load("harness");
+        QuoteInstruction quote = null;
+        for (SInstruction instruction : program.getInstructions()) {
+            if (instruction instanceof QuoteInstruction q && q.getFunctionArguments().size() == 2
+                    && q.getFunctionArguments().get(1).isFunctionCall()
+                    && q.getFunctionArguments().get(1).asFunctionCall().getFunctionName().equals("Add")) {
+                quote = q;
+            }
+        }
+        assertNotNull(quote, "QUOTE Add((Equal,x1,x2),(Add,(Equal,x1,x2),...))");
+        List<FunctionArgument> arguments = quote.getFunctionArguments();
+        assertSame(arguments.get(0).asFunctionCall(),
+                arguments.get(1).asFunctionCall().getArguments().get(0).asFunctionCall());
+    }
+}
@@ -0,0 +1,97 @@
+package semulator.optimization;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.execution.ExecutionTier;
+import semulator.execution.ProgramExecutorImpl;
+import semulator.instructions.DecreaseInstruction;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.SInstruction;
+import semulator.label.FixedLabel;
+import semulator.label.LabelImpl;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AffineLoopTest {
+
+    @Test
+    void countedLoopsAreFoundAndRunInClosedForm() {
+        SProgramImpl program = TestPrograms.load("affine");
+        List<Variable> counters = new ArrayList<>();
+        BasicBlocks blocks = PassManager.standard().optimize(program.getInstructions(), false).blocks();
+        for (int b = 0; b < blocks.size(); b++) {
+            if (blocks.loopAt(b) != null) {
+                counters.add(blocks.loopAt(b).counter());
+            }
+        }
+        assertEquals(List.of(Variable.of("x1"), Variable.of("x2"), Variable.of("x3")), counters);
+
+        for (long x1 = 0; x1 < 12; x1++) {
+            for (long x2 = 0; x2 < 5; x2++) {
+                assertRunsAlike(program, x1, x2, 3L);
+            }
+        }
+    }
+
+    @Test
+    void aLoopThatRaisesItsCounterIsNotCounted() {
+        // [L1] IF x1 = 0 GOTO EXIT; x1 <- x1 + 1; x1 <- x1 - 1; x1 <- x1 - 1; y <- y + 1; GOTO L1
+        SProgramImpl program = new SProgramImpl("raises");
+        Variable x1 = Variable.of("x1");
+        List<SInstruction> code = List.of(
+                new JumpZeroInstruction(x1, new LabelImpl("L1"), FixedLabel.EXIT),
+                new IncreaseInstruction(x1),
+                new DecreaseInstruction(x1),
+                new DecreaseInstruction(x1),
+                new IncreaseInstruction(Variable.RESULT),
+                new GotoLabelInstruction(new LabelImpl("L1")));
+        code.forEach(program::addInstruction);
+        BasicBlocks blocks = PassManager.standard().optimize(code, false).blocks();
+        for (int b = 0; b < blocks.size(); b++) {
+            assertNull(blocks.loopAt(b), "block " + b);
+        }
+        for (long x = 0; x < 6; x++) {
+            assertRunsAlike(program, x);
+        }
+    }
+
+    @Test
+    void tripsAndCyclesAreLinearInTheCounter() {
+        SProgramImpl program = TestPrograms.load("affine");
+        BasicBlocks blocks = PassManager.standard().optimize(program.getInstructions(), false).blocks();
+        AffineLoop loop = null;
+        for (int b = 0; b < blocks.size() && loop == null; b++) {
+            loop = blocks.loopAt(b);
+        }
+        assertNotNull(loop);
+        assertEquals(Variable.of("x1"), loop.counter());
+        // Two decrements a trip: a trip more for every two more, the odd one included
+        assertEquals(0, loop.iterations(0));
+        assertEquals(1, loop.iterations(1));
+        assertEquals(1, loop.iterations(2));
+        assertEquals(2, loop.iterations(3));
+        long perTrip = loop.cycles(2) - loop.cycles(1);
+        assertEquals(loop.cycles(1) - loop.cycles(0), perTrip);
+        assertEquals(loop.cycles(0) + 1_000_000 * perTrip, loop.cycles(1_000_000));
+    }
+
+    private static void assertRunsAlike(SProgramImpl program, Long... input) {
+        ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+        long y = interpreter.run(input);
+        ProgramExecutorImpl optimized = new ProgramExecutorImpl(program);
+        optimized.setExecutionTier(ExecutionTier.OPTIMIZED);
+        String run = List.of(input).toString();
+        assertEquals(y, optimized.run(input), run);
+        assertEquals(interpreter.getTotalCycles(), optimized.getTotalCycles(), run);
+        assertEquals(interpreter.variableState(), optimized.variableState(), run);
+    }
+}
@@ -0,0 +1,89 @@
+package semulator.optimization;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.execution.ExecutionStoppedException;
+import semulator.execution.ExecutionTier;
+import semulator.execution.ProgramExecutorImpl;
+import semulator.execution.RunLimits;
+import semulator.instructions.SInstruction;
+import semulator.program.SProgramImpl;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BasicBlocksTest {
+
+    @Test
+    void blocksSplitTheNodesAtBranchesAndTargets() {
+        SProgramImpl source = TestPrograms.load("harness");
+        for (int degree = 0; degree <= 3; degree++) {
+            List<SInstruction> code = source.expandToDegree(degree).instructions();
+            OptimizedProgram program = PassManager.standard().optimize(code, false);
+            assertNotNull(program, "degree " + degree);
+            BasicBlocks blocks = program.blocks();
+            assertEquals(0, blocks.firstNode(0));
+            for (int b = 0; b < blocks.size(); b++) {
+                String block = "degree " + degree + " block " + b;
+                int first = blocks.firstNode(b);
+                int last = b + 1 < blocks.size() ? blocks.firstNode(b + 1) - 1 : program.size() - 1;
+                assertTrue(first <= last, block);
+                long cycles = 0;
+                int instructions = 0;
+                for (int i = first; i < last; i++) {
+                    // Only the last node of a block branches
+                    assertEquals(i + 1, program.fallTarget(i), block);
+                    assertEquals(i + 1, program.jumpTarget(i), block);
+                    cycles += program.cost(i) + program.fallExtra(i);
+                    instructions += program.instruction(i) == null ? 0 : 1;
+                }
+                assertEquals(cycles + program.cost(last), blocks.cycles(b), block);
+                assertEquals(instructions, blocks.body(b).length, block);
+                assertEquals(program.instruction(last), blocks.terminator(b), block);
+                assertTarget(blocks, program.fallTarget(last), blocks.fallTarget(b), block);
+                assertTarget(blocks, program.jumpTarget(last), blocks.jumpTarget(b), block);
+            }
+        }
+    }
+
+    @Test
+    void everyJumpTargetStartsABlockInTheLayout() {
+        List<SInstruction> code = TestPrograms.load("affine").getInstructions();
+        BasicBlocks blocks = PassManager.layoutOnly().optimize(code, false).blocks();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i).getLabel() != null && !code.get(i).getLabel().getLabel().isEmpty()) {
+                assertTrue(blocks.blockStartingAt(i) >= 0, "instruction " + i);
+            }
+        }
+        assertEquals(-1, blocks.blockStartingAt(code.size()));
+    }
+
+    @Test
+    void aCycleLimitStopsTheBlockLoopWhereTheInterpreterStops() {
+        SProgramImpl program = TestPrograms.expanded(TestPrograms.load("harness"), 2);
+        ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+        long y = interpreter.run(3L, 2L);
+        long cycles = interpreter.getTotalCycles();
+
+        ProgramExecutorImpl optimized = new ProgramExecutorImpl(program);
+        optimized.setExecutionTier(ExecutionTier.OPTIMIZED);
+        optimized.setLimits(RunLimits.cycles(cycles));
+        assertEquals(y, optimized.run(3L, 2L));
+        assertEquals(cycles, optimized.getTotalCycles());
+
+        optimized.setLimits(RunLimits.cycles(cycles - 1));
+        assertThrows(ExecutionStoppedException.class, () -> optimized.run(3L, 2L));
+    }
+
+    private static void assertTarget(BasicBlocks blocks, int node, int block, String message) {
+        if (node == OptimizedProgram.EXIT) {
+            assertEquals(BasicBlocks.EXIT, block, message);
+        } else {
+            assertEquals(node, blocks.firstNode(block), message);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package semulator.optimization;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.execution.ExecutionTier;
+import semulator.execution.ProgramExecutorImpl;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FunctionSummaryTest {
+
+    private static final FunctionSummary.Callee NO_CALLS = (name, arguments) -> {
+        throw new AssertionError("called " + name);
+    };
+
+    @Test
+    void summarizedCallsGiveTheInterpretedResults() {
+        long[][] inputs = {{37, 23}, {0, 41}, {19, 0}, {8, 9}, {0, 0}, {3, 4}};
+        for (String name : new String[]{"harness", "deg2"}) {
+            SProgramImpl source = TestPrograms.load(name);
+            for (int degree = 0; degree <= 1; degree++) {
+                SProgramImpl program = TestPrograms.expanded(source, degree);
+                for (long[] input : inputs) {
+                    ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+                    long y = interpreter.run(input[0], input[1]);
+                    for (ExecutionTier tier : ExecutionTier.values()) {
+                        String run = name + " degree " + degree + " " + tier + " " + input[0] + "," + input[1];
+                        ProgramExecutorImpl summarized = new ProgramExecutorImpl(program);
+                        summarized.setExecutionTier(tier);
+                        summarized.setFunctionSummaries(true);
+                        assertEquals(y, summarized.run(input[0], input[1]), run);
+                        assertEquals(interpreter.getTotalCycles(), summarized.getTotalCycles(), run);
+                        assertEquals(observable(interpreter.variableState()),
+                                observable(summarized.variableState()), run);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void aCountedLoopBecomesAFormula() {
+        FunctionSummary add = summary("Add");
+        assertNotNull(add);
+        FunctionSummary.Outcome outcome = add.evaluate(i -> i == 1 ? 1_000_000_000L : 23L, NO_CALLS);
+        assertEquals(1_000_000_023L, outcome.result());
+        assertNull(outcome.tailCall());
+    }
+
+    @Test
+    void inputsThePathDoesNotNeedAreNotRead() {
+        FunctionSummary constant = summary("Const7");
+        assertNotNull(constant);
+        FunctionSummary.Outcome outcome = constant.evaluate(i -> {
+            throw new AssertionError("read x" + i);
+        }, NO_CALLS);
+        assertEquals(7, outcome.result());
+    }
+
+    @Test
+    void summariesAreKeptPerFunction() {
+        SProgramImpl program = TestPrograms.load("harness");
+        ProgramExecutorImpl executor = new ProgramExecutorImpl(program);
+        executor.setFunctionSummaries(true);
+        executor.run(3L, 4L);
+        assertFalse(executor.getFunctionSummaries().isEmpty());
+        executor.getFunctionSummaries().forEach((function, summary) ->
+                assertEquals(function, summary.getFunctionName()));
+    }
+
+    private static FunctionSummary summary(String function) {
+        SProgramImpl program = TestPrograms.load("harness");
+        OptimizedProgram body = PassManager.standard().optimize(program.getFunctions().get(function), true);
+        return FunctionSummary.build(function, body, program.getFunctions()::containsKey);
+    }
+
+    private static Map<Variable, Long> observable(Map<Variable, Long> state) {
+        Map<Variable, Long> variables = new HashMap<>(state);
+        variables.keySet().removeIf(Variable::isWork);
+        return variables;
+    }
+}
@@ -0,0 +1,65 @@
+package semulator.optimization;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.execution.ExecutionTier;
+import semulator.execution.ProgramExecutorImpl;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.SInstruction;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InliningTest {
+
+    @Test
+    void onlyCallsOfSmallLeafFunctionsWithPlainArgumentsAreInlined() {
+        SProgramImpl program = TestPrograms.load("harness");
+        OptimizedProgram optimized = PassManager.standard(program.getFunctions())
+                .optimize(program.getInstructions(), false);
+        List<String> calls = new ArrayList<>();
+        for (int i = 0; i < optimized.size(); i++) {
+            if (optimized.instruction(i) instanceof QuoteInstruction quote) {
+                calls.add(quote.getFunctionName() + quote.getFunctionArguments());
+            }
+        }
+        // Add(x1,x2) is inlined; Rec calls itself, Mul calls Add, and the other Add
+        // has function-call arguments
+        assertFalse(calls.contains("Add[x1, x2]"), calls.toString());
+        assertTrue(calls.stream().anyMatch(call -> call.startsWith("Rec")), calls.toString());
+        assertTrue(calls.stream().anyMatch(call -> call.startsWith("Mul")), calls.toString());
+        assertTrue(calls.stream().anyMatch(call -> call.startsWith("Add[(Equal")), calls.toString());
+
+        assertFalse(optimized.inlinedVariables().isEmpty());
+        for (Variable variable : optimized.inlinedVariables()) {
+            assertTrue(variable.isWork(), variable.toString());
+            for (SInstruction instruction : program.getInstructions()) {
+                assertFalse(variable.equals(instruction.getVariable()), variable + " is the program's");
+            }
+        }
+    }
+
+    @Test
+    void inlinedRunsMatchTheInterpreterAndHideTheInlinedVariables() {
+        SProgramImpl program = TestPrograms.load("harness");
+        for (long x1 = 0; x1 < 4; x1++) {
+            for (long x2 = 0; x2 < 4; x2++) {
+                String run = "x1=" + x1 + " x2=" + x2;
+                ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+                long y = interpreter.run(x1, x2);
+                ProgramExecutorImpl optimized = new ProgramExecutorImpl(program);
+                optimized.setExecutionTier(ExecutionTier.OPTIMIZED);
+                assertEquals(y, optimized.run(x1, x2), run);
+                assertEquals(interpreter.getTotalCycles(), optimized.getTotalCycles(), run);
+                assertTrue(interpreter.variableState().keySet().containsAll(optimized.variableState().keySet()),
+                        run + " " + optimized.variableState());
+            }
+        }
+    }
+}
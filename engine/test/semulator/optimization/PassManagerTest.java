@@ -0,0 +1,126 @@
+package semulator.optimization;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.execution.ExecutionTier;
+import semulator.execution.ProgramExecutorImpl;
+import semulator.instructions.AssignConstantInstruction;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.SInstruction;
+import semulator.label.LabelImpl;
+import semulator.program.SProgramImpl;
+import semulator.variable.Variable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PassManagerTest {
+
+    private static final Variable X1 = Variable.of("x1");
+    private static final Variable Z1 = Variable.of("z1");
+
+    @Test
+    void optimizedRunsMatchTheInterpreter() {
+        for (String name : new String[]{"harness", "deg2", "deg4", "affine"}) {
+            SProgramImpl source = TestPrograms.load(name);
+            for (int degree = 0; degree <= 2; degree++) {
+                SProgramImpl program = TestPrograms.expanded(source, degree);
+                for (long x1 = 0; x1 < 3; x1++) {
+                    for (long x2 = 0; x2 < 4; x2++) {
+                        String run = name + " degree " + degree + " x1=" + x1 + " x2=" + x2;
+                        ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+                        long y = interpreter.run(x1, x2);
+                        ProgramExecutorImpl optimized = new ProgramExecutorImpl(program);
+                        optimized.setExecutionTier(ExecutionTier.OPTIMIZED);
+                        assertEquals(y, optimized.run(x1, x2), run);
+                        assertEquals(interpreter.getTotalCycles(), optimized.getTotalCycles(), run);
+                        // Dead stores to work variables are removed
+                        assertEquals(observable(interpreter.variableState()), observable(optimized.variableState()),
+                                run);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void aBranchOnAConstantIsFolded() {
+        // z1 <- 3; IF z1 = 0 GOTO L1; y <- y + 1; [L1] y <- y + 1
+        List<SInstruction> code = List.of(
+                new AssignConstantInstruction(Z1, 3),
+                new JumpZeroInstruction(Z1, new LabelImpl("L1")),
+                new IncreaseInstruction(Variable.RESULT),
+                new IncreaseInstruction(Variable.RESULT, new LabelImpl("L1")));
+        IrProgram program = IrProgram.build(code, false);
+        assertTrue(new ConstantPropagation().run(program));
+        assertTrue(program.node(1).isPure());
+        assertEquals(2, program.node(1).fall);
+        assertRunsAlike(code);
+    }
+
+    @Test
+    void aStoreNeverReadIsDead() {
+        // z1 <- x1; y <- x1
+        List<SInstruction> code = List.of(
+                new AssignVariableInstruction(Z1, X1),
+                new AssignVariableInstruction(Variable.RESULT, X1));
+        IrProgram program = IrProgram.build(code, false);
+        assertTrue(new DeadStoreElimination().run(program));
+        assertTrue(program.node(0).isPure());
+        assertFalse(program.node(1).isPure(), "y is observable");
+        assertRunsAlike(code);
+    }
+
+    @Test
+    void gotoChainsCollapseIntoOneEdgeWithTheirCycles() {
+        // GOTO L1; y <- y + 1; [L1] GOTO L2; y <- y + 1; [L2] y <- y + 1
+        List<SInstruction> code = List.of(
+                new GotoLabelInstruction(new LabelImpl("L1")),
+                new IncreaseInstruction(Variable.RESULT),
+                new GotoLabelInstruction(new LabelImpl("L1"), new LabelImpl("L2")),
+                new IncreaseInstruction(Variable.RESULT),
+                new IncreaseInstruction(Variable.RESULT, new LabelImpl("L2")));
+        IrProgram program = IrProgram.build(code, false);
+        assertTrue(new JumpThreading().run(program));
+        assertEquals(4, program.entry);
+        assertEquals(code.get(0).cycles() + code.get(2).cycles(), program.entryExtra);
+
+        assertTrue(new UnreachableCodeElimination().run(program));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(program.node(i).removed, "node " + i);
+        }
+        assertFalse(program.node(4).removed);
+
+        OptimizedProgram optimized = PassManager.standard().optimize(code, false);
+        assertEquals(1, optimized.size());
+        assertRunsAlike(code);
+    }
+
+    /** The code as a main program gives the same y and cycles optimized as interpreted. */
+    private static void assertRunsAlike(List<SInstruction> code) {
+        SProgramImpl program = new SProgramImpl("code");
+        code.forEach(program::addInstruction);
+        for (long x1 = 0; x1 < 3; x1++) {
+            ProgramExecutorImpl interpreter = new ProgramExecutorImpl(program);
+            long y = interpreter.run(x1);
+            ProgramExecutorImpl optimized = new ProgramExecutorImpl(program);
+            optimized.setExecutionTier(ExecutionTier.OPTIMIZED);
+            assertEquals(y, optimized.run(x1));
+            assertEquals(interpreter.getTotalCycles(), optimized.getTotalCycles());
+        }
+    }
+
+    private static Map<Variable, Long> observable(Map<Variable, Long> state) {
+        Map<Variable, Long> variables = new HashMap<>(state);
+        variables.keySet().removeIf(Variable::isWork);
+        return variables;
+    }
+}
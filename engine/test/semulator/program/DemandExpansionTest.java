@@ -0,0 +1,63 @@
+package semulator.program;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.instructions.SInstruction;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DemandExpansionTest {
+
+    @Test
+    void rowsAreThoseOfTheFullExpansion() {
+        for (String name : new String[]{"harness", "deg2", "deg4", "tail"}) {
+            SProgramImpl program = TestPrograms.load(name);
+            for (int degree = 0; degree <= 3; degree++) {
+                List<SInstruction> full = program.expandToDegree(degree).instructions();
+                DemandExpansion expansion = new DemandExpansion(program, degree);
+                String at = name + " degree " + degree;
+                assertEquals(full.size(), expansion.size(), at);
+                for (int row = 1; row <= full.size(); row++) {
+                    // Names made up by the expansion differ; the instructions do not
+                    SInstruction instruction = expansion.instruction(row);
+                    assertEquals(full.get(row - 1).getName(), instruction.getName(), at + " row " + row);
+                    assertEquals(full.get(row - 1).cycles(), instruction.cycles(), at + " row " + row);
+                    DemandExpansion.Position position = expansion.position(row);
+                    assertEquals(row, expansion.row(position.segment(), position.offset()), at + " row " + row);
+                }
+            }
+        }
+    }
+
+    @Test
+    void aSegmentIsExpandedWhenItIsFirstRead() {
+        SProgramImpl program = TestPrograms.load("harness");
+        DemandExpansion expansion = new DemandExpansion(program, 2);
+        assertEquals(program.getInstructions().size(), expansion.segmentCount());
+        assertEquals(0, expansion.expandedSegmentCount());
+
+        expansion.instruction(expansion.size());
+        assertEquals(1, expansion.expandedSegmentCount());
+        expansion.instruction(1);
+        assertEquals(2, expansion.expandedSegmentCount());
+
+        assertThrows(IllegalArgumentException.class, () -> expansion.position(0));
+        assertThrows(IllegalArgumentException.class, () -> expansion.position(expansion.size() + 1));
+    }
+
+    @Test
+    void functionBodiesAreSizedWithoutExpandingThem() {
+        SProgramImpl program = TestPrograms.load("harness");
+        for (int degree = 0; degree <= 3; degree++) {
+            DemandExpansion expansion = new DemandExpansion(program, degree);
+            for (String function : program.getFunctions().keySet()) {
+                assertEquals(program.expandFunctionToDegree(function, degree).instructions().size(),
+                        expansion.sizeOf(program.getFunctions().get(function)), function + " degree " + degree);
+            }
+            assertEquals(0, expansion.expandedSegmentCount());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package semulator.program;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import semulator.TestPrograms;
+import semulator.instructions.SInstruction;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpansionCacheTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void interruptedExpansionIsCancelledNotExpandedInMemory() {
+        ExpansionCache cache = new ExpansionCache(root, ExpansionCache.DEFAULT_MAX_BYTES);
+        SProgramImpl program = TestPrograms.load("deg2");
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class, () -> cache.expansionResult(program, null, 2));
+            assertTrue(Thread.currentThread().isInterrupted(), "interrupt flag cleared");
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void entriesAreReadBackByALaterLoadOfTheSameFile() throws Exception {
+        ExpansionCache cache = new ExpansionCache(root, ExpansionCache.DEFAULT_MAX_BYTES);
+        SProgramImpl program = TestPrograms.load("harness");
+        for (int degree = 1; degree <= 3; degree++) {
+            assertSameExpansion(program.expandToDegree(degree), cache.expansionResult(program, null, degree));
+            Path entry = entry(cache, program, "main", degree);
+            FileTime written = Files.getLastModifiedTime(entry.resolve("degree-0.bin"));
+
+            SProgramImpl again = TestPrograms.load("harness");
+            assertEquals(program.getXmlDigest(), again.getXmlDigest());
+            assertSameExpansion(again.expandToDegree(degree), cache.expansionResult(again, null, degree));
+            assertEquals(written, Files.getLastModifiedTime(entry.resolve("degree-0.bin")), "written again");
+        }
+        for (String function : program.getFunctions().keySet()) {
+            assertSameExpansion(program.expandFunctionToDegree(function, 2), cache.expansionResult(program, function, 2));
+            assertSameExpansion(program.expandFunctionToDegree(function, 2), cache.expansionResult(program, function, 2));
+        }
+    }
+
+    @Test
+    void aDamagedEntryIsWrittenAgain() throws Exception {
+        ExpansionCache cache = new ExpansionCache(root, ExpansionCache.DEFAULT_MAX_BYTES);
+        SProgramImpl program = TestPrograms.load("deg2");
+        cache.open(program, null, 2).close();
+        Files.write(entry(cache, program, "main", 2).resolve(MappedExpansion.META), new byte[]{1, 2, 3});
+        assertSameExpansion(program.expandToDegree(2), cache.expansionResult(program, null, 2));
+    }
+
+    @Test
+    void onlyProgramsLoadedFromXmlAreCached() throws Exception {
+        ExpansionCache cache = new ExpansionCache(root, ExpansionCache.DEFAULT_MAX_BYTES);
+        SProgramImpl program = TestPrograms.load("harness");
+        SProgramImpl built = TestPrograms.expanded(program, 0);
+        assertNull(cache.mapped(built, null, 1));
+        assertNull(cache.mapped(program, null, 0));
+        assertSameExpansion(built.expandToDegree(1), cache.expansionResult(built, null, 1));
+        assertEquals(0, cache.bytesOnDisk());
+        assertThrows(IllegalArgumentException.class, () -> cache.open(built, null, 1));
+    }
+
+    @Test
+    void theLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        SProgramImpl program = TestPrograms.load("harness");
+        SProgramImpl other = TestPrograms.load("deg2");
+        ExpansionCache measure = new ExpansionCache(root.resolve("measure"), ExpansionCache.DEFAULT_MAX_BYTES);
+        measure.open(other, null, 2).close();
+        long newBytes = measure.bytesOnDisk();
+
+        ExpansionCache cache = new ExpansionCache(root.resolve("cache"), ExpansionCache.DEFAULT_MAX_BYTES);
+        cache.open(program, null, 1).close();
+        Path older = entry(cache, program, "main", 1);
+        Files.setLastModifiedTime(older.resolve(MappedExpansion.META), FileTime.fromMillis(1_000_000));
+        long olderBytes = cache.bytesOnDisk();
+        cache.open(program, null, 2).close();
+        Path newer = entry(cache, program, "main", 2);
+        Files.setLastModifiedTime(newer.resolve(MappedExpansion.META), FileTime.fromMillis(2_000_000));
+        long newerBytes = cache.bytesOnDisk() - olderBytes;
+
+        // Room for the newer entry and the new one: only the older one goes
+        ExpansionCache small = new ExpansionCache(cache.getRoot(), newerBytes + newBytes);
+        small.open(other, null, 2).close();
+        assertFalse(Files.exists(older));
+        assertTrue(Files.exists(newer.resolve(MappedExpansion.META)));
+        assertTrue(Files.exists(entry(small, other, "main", 2).resolve(MappedExpansion.META)));
+        assertEquals(newerBytes + newBytes, small.bytesOnDisk());
+
+        // An entry is kept even when it alone is over the bound
+        ExpansionCache tiny = new ExpansionCache(cache.getRoot(), 0);
+        tiny.open(program, null, 3).close();
+        assertTrue(Files.exists(entry(tiny, program, "main", 3).resolve(MappedExpansion.META)));
+        assertFalse(Files.exists(newer));
+        assertFalse(Files.exists(entry(tiny, other, "main", 2)));
+    }
+
+    private static Path entry(ExpansionCache cache, SProgramImpl program, String name, int degree) {
+        return cache.getRoot().resolve("v2").resolve(program.getXmlDigest()).resolve(name).resolve("degree-" + degree);
+    }
+
+    private static void assertSameExpansion(ExpansionResult expected, ExpansionResult actual) {
+        List<SInstruction> rows = actual.instructions();
+        assertEquals(expected.instructions().size(), rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            SInstruction instruction = expected.instructions().get(i);
+            SInstruction row = rows.get(i);
+            assertEquals(TestPrograms.describe(instruction), TestPrograms.describe(row), "row " + i);
+            assertEquals(describe(expected.parent().get(instruction)), describe(actual.parent().get(row)), "parent of " + i);
+            assertEquals(i + 1, (int) actual.lineNo().get(row));
+        }
+    }
+
+    private static String describe(SInstruction instruction) {
+        return instruction == null ? "-" : TestPrograms.describe(instruction);
+    }
+}
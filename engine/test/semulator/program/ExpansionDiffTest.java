@@ -0,0 +1,114 @@
+package semulator.program;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import semulator.TestPrograms;
+import semulator.instructions.RepeatedIncreaseInstruction;
+import semulator.instructions.SInstruction;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpansionDiffTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void theEditsTurnOneDegreeIntoAnother() {
+        ExpansionCache cache = new ExpansionCache(root, ExpansionCache.DEFAULT_MAX_BYTES);
+        for (String name : new String[]{"harness", "deg2", "tail"}) {
+            SProgramImpl program = TestPrograms.load(name);
+            List<String> functions = new ArrayList<>();
+            functions.add(null);
+            functions.addAll(program.getFunctions().keySet());
+            for (String function : functions) {
+                List<ExpansionResult> expansions = new ArrayList<>();
+                List<ExpansionResult> cached = new ArrayList<>();
+                for (int degree = 0; degree <= 3; degree++) {
+                    expansions.add(function == null ? program.expandToDegree(degree)
+                            : program.expandFunctionToDegree(function, degree));
+                    cached.add(cache.expansionResult(program, function, degree));
+                }
+                for (int from = 0; from <= 3; from++) {
+                    for (int to = 0; to <= 3; to++) {
+                        if (from != to) {
+                            String at = name + " " + (function == null ? "main" : function) + " " + from + " to " + to;
+                            assertEditsApply(expansions.get(from), from, expansions.get(to), to, at);
+                            // Read back from the cache, the lineage is the same
+                            assertEditsApply(cached.get(from), from, cached.get(to), to, at + " cached");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void rowsThatDoNotLineUpHaveNoDiff() {
+        SProgramImpl program = TestPrograms.load("harness");
+        ExpansionResult shallow = program.expandToDegree(1);
+        ExpansionResult deep = program.expandToDegree(3);
+        assertNull(ExpansionDiff.between(shallow, 1, shallow, 1));
+        assertNull(ExpansionDiff.between(TestPrograms.load("deg2").expandToDegree(1), 1, deep, 3));
+        assertThrows(IllegalArgumentException.class, () -> ExpansionDiff.between(null, 1, deep, 3));
+
+        ExpansionResult unfolded = deep;
+        for (SInstruction instruction : deep.instructions()) {
+            if (instruction instanceof RepeatedIncreaseInstruction run) {
+                unfolded = unfolded.unfold(run);
+            }
+        }
+        assertTrue(unfolded.instructions().size() > deep.instructions().size());
+        assertNotNull(ExpansionDiff.between(shallow, 1, deep, 3));
+        assertNull(ExpansionDiff.between(shallow, 1, unfolded, 3));
+    }
+
+    /** Apply the edits to the previous rows: the result has the next rows, kept rows where nextRowOf says. */
+    private static void assertEditsApply(ExpansionResult previous, int previousDegree, ExpansionResult next,
+            int nextDegree, String at) {
+        ExpansionDiff diff = ExpansionDiff.between(previous, previousDegree, next, nextDegree);
+        assertNotNull(diff, at);
+        List<SInstruction> before = previous.instructions();
+        List<SInstruction> after = next.instructions();
+        List<String> applied = new ArrayList<>();
+        int row = 0;
+        for (ExpansionDiff.Edit edit : diff.edits()) {
+            while (row < edit.previousRow()) {
+                assertEquals(applied.size(), diff.nextRowOf(row), at + " kept row " + row);
+                applied.add(kind(before.get(row++)));
+            }
+            assertEquals(applied.size(), edit.nextRow(), at + " " + edit);
+            for (int i = 0; i < edit.removed(); i++) {
+                int moved = diff.nextRowOf(row + i);
+                assertTrue(moved >= edit.nextRow() && moved < edit.nextRow() + Math.max(1, edit.added()),
+                        at + " replaced row " + (row + i));
+            }
+            for (int i = 0; i < edit.added(); i++) {
+                applied.add(kind(after.get(edit.nextRow() + i)));
+            }
+            row += edit.removed();
+        }
+        while (row < before.size()) {
+            assertEquals(applied.size(), diff.nextRowOf(row), at + " kept row " + row);
+            applied.add(kind(before.get(row++)));
+        }
+        List<String> expected = new ArrayList<>();
+        for (SInstruction instruction : after) {
+            expected.add(kind(instruction));
+        }
+        assertEquals(expected, applied, at);
+    }
+
+    /** A row up to the names each expansion makes up. */
+    private static String kind(SInstruction instruction) {
+        return instruction.getName() + "/" + instruction.cycles();
+    }
+}
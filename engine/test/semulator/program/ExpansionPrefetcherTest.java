@@ -0,0 +1,68 @@
+package semulator.program;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import semulator.TestPrograms;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpansionPrefetcherTest {
+
+    @TempDir
+    Path root;
+
+    private static void awaitRun(ExpansionPrefetcher prefetcher) throws InterruptedException {
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (prefetcher.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(prefetcher.isRunning());
+    }
+
+    private Path entry(SProgramImpl program, int degree) {
+        return root.resolve("v2").resolve(program.getXmlDigest()).resolve("main").resolve("degree-" + degree)
+                .resolve(MappedExpansion.META);
+    }
+
+    @Test
+    void writesEveryDegreeOfTheMainProgram() throws Exception {
+        SProgramImpl program = TestPrograms.load("deg4");
+        ExpansionPrefetcher prefetcher = new ExpansionPrefetcher(new ExpansionCache(root, 1L << 30));
+        prefetcher.start(program);
+        awaitRun(prefetcher);
+        for (int degree = 1; degree <= program.calculateMaxDegree(); degree++) {
+            assertTrue(Files.exists(entry(program, degree)), "degree " + degree);
+        }
+    }
+
+    @Test
+    void staysWithinItsBudget() throws Exception {
+        SProgramImpl program = TestPrograms.load("deg4");
+        ExpansionCache cache = new ExpansionCache(root, 1L << 30);
+        // Room for the degree-1 expansion of the main program, not for all of them
+        long budget = new DemandExpansion(program, 1).size() * MappedExpansion.RECORD_BYTES;
+        ExpansionPrefetcher prefetcher = new ExpansionPrefetcher(cache, budget);
+        prefetcher.start(program);
+        awaitRun(prefetcher);
+        assertFalse(Files.exists(entry(program, program.calculateMaxDegree())));
+
+        ExpansionPrefetcher none = new ExpansionPrefetcher(new ExpansionCache(root.resolve("none"), 1L << 30), 0);
+        none.start(program);
+        awaitRun(none);
+        assertEquals(0L, new ExpansionCache(root.resolve("none"), 1L << 30).bytesOnDisk());
+    }
+
+    @Test
+    void closeStopsARunWithoutWaiting() throws Exception {
+        SProgramImpl program = TestPrograms.load("harness");
+        ExpansionPrefetcher prefetcher = new ExpansionPrefetcher(new ExpansionCache(root, 1L << 30));
+        prefetcher.start(program);
+        prefetcher.close();
+        assertFalse(prefetcher.isRunning());
+    }
+}
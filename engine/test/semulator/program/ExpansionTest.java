@@ -0,0 +1,103 @@
+package semulator.program;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.execution.ExecutionTier;
+import semulator.execution.ProgramExecutorImpl;
+import semulator.instructions.IncreaseInstruction;
+import semulator.instructions.RepeatedIncreaseInstruction;
+import semulator.instructions.SInstruction;
+import semulator.label.FixedLabel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpansionTest {
+
+    @Test
+    void workVariablesOfAQuotedBodyAreRenamedInOrderOfAppearance() {
+        // Order increments z5, z2, z9, z1 and then y; the program's own names are taken
+        SProgramImpl program = TestPrograms.load("work-order");
+        List<String> increased = new ArrayList<>();
+        for (SInstruction instruction : program.expandToDegree(1).instructions()) {
+            if (instruction instanceof IncreaseInstruction) {
+                increased.add(instruction.getVariable().toString());
+            }
+        }
+        assertEquals(List.of("z3", "z4", "z6", "z7", "z8"), increased);
+    }
+
+    @Test
+    void aRunOfIncreasesUnfoldsIntoItsRows() {
+        SProgramImpl program = TestPrograms.load("harness");
+        ExpansionResult expansion = program.expandToDegree(3);
+        List<RepeatedIncreaseInstruction> runs = runs(expansion);
+        assertFalse(runs.isEmpty());
+        for (RepeatedIncreaseInstruction run : runs) {
+            int row = expansion.instructions().indexOf(run);
+            ExpansionResult unfolded = expansion.unfold(run);
+            assertEquals(expansion.instructions().size() + run.getCount() - 1, unfolded.instructions().size());
+            for (int i = 0; i < run.getCount(); i++) {
+                SInstruction increase = unfolded.instructions().get(row + i);
+                assertTrue(increase instanceof IncreaseInstruction, increase.toString());
+                assertEquals(run.getVariable(), increase.getVariable());
+                assertEquals(i == 0 ? run.getLabel() : FixedLabel.EMPTY, increase.getLabel());
+                assertSame(expansion.parent().get(run), unfolded.parent().get(increase));
+                assertEquals(row + i + 1, (int) unfolded.lineNo().get(increase));
+            }
+            assertEquals(run.getCount() * run.unfold().get(0).cycles(), run.cycles());
+            // The rows after the run move down
+            SInstruction last = expansion.instructions().get(expansion.instructions().size() - 1);
+            assertEquals(expansion.lineNo().get(last) + run.getCount() - 1, (int) unfolded.lineNo().get(last));
+        }
+    }
+
+    @Test
+    void runsOfIncreasesRunLikeTheirUnfoldedRows() {
+        for (String name : new String[]{"harness", "deg2", "deg4"}) {
+            SProgramImpl program = TestPrograms.load(name);
+            for (int degree = 1; degree <= 3; degree++) {
+                ExpansionResult expansion = program.expandToDegree(degree);
+                ExpansionResult unfolded = expansion;
+                for (RepeatedIncreaseInstruction run : runs(expansion)) {
+                    unfolded = unfolded.unfold(run);
+                }
+                SProgramImpl folded = programOf(program, expansion);
+                SProgramImpl plain = programOf(program, unfolded);
+                for (long x1 = 0; x1 < 3; x1++) {
+                    ProgramExecutorImpl reference = new ProgramExecutorImpl(plain);
+                    long y = reference.run(x1, 2L);
+                    for (ExecutionTier tier : ExecutionTier.values()) {
+                        String run = name + " degree " + degree + " " + tier + " x1=" + x1;
+                        ProgramExecutorImpl executor = new ProgramExecutorImpl(folded);
+                        executor.setExecutionTier(tier);
+                        assertEquals(y, executor.run(x1, 2L), run);
+                        assertEquals(reference.getTotalCycles(), executor.getTotalCycles(), run);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<RepeatedIncreaseInstruction> runs(ExpansionResult expansion) {
+        List<RepeatedIncreaseInstruction> runs = new ArrayList<>();
+        for (SInstruction instruction : expansion.instructions()) {
+            if (instruction instanceof RepeatedIncreaseInstruction run) {
+                runs.add(run);
+            }
+        }
+        return runs;
+    }
+
+    private static SProgramImpl programOf(SProgramImpl program, ExpansionResult expansion) {
+        SProgramImpl expanded = new SProgramImpl(program.getName());
+        expansion.instructions().forEach(expanded::addInstruction);
+        expanded.getFunctions().putAll(program.getFunctions());
+        return expanded;
+    }
+}
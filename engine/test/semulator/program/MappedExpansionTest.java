@@ -0,0 +1,146 @@
+package semulator.program;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import semulator.TestPrograms;
+import semulator.execution.ProgramExecutorImpl;
+import semulator.execution.RunLimits;
+import semulator.instructions.SInstruction;
+import semulator.variable.Variable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedExpansionTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void rowsReadTheExpansionInPlace() throws Exception {
+        SProgramImpl program = TestPrograms.load("deg4");
+        List<SInstruction> expanded = program.expandToDegree(3).instructions();
+        ExpansionCache cache = new ExpansionCache(root, ExpansionCache.DEFAULT_MAX_BYTES);
+        List<SInstruction> rows;
+        try (MappedExpansion mapped = cache.open(program, null, 3)) {
+            rows = mapped.rows();
+            assertEquals(expanded.size(), rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                assertEquals(TestPrograms.describe(expanded.get(i)), TestPrograms.describe(rows.get(i)), "row " + i);
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> mapped.rows().get(expanded.size()));
+        }
+        assertThrows(IllegalStateException.class, () -> rows.get(0));
+    }
+
+    @Test
+    void everyGenerationAndItsLineageMatchTheExpansion() throws Exception {
+        for (String name : new String[]{"harness", "deg2", "tail"}) {
+            SProgramImpl program = TestPrograms.load(name);
+            Path directory = Files.createDirectory(root.resolve(name));
+            try (MappedExpansion mapped = MappedExpansion.create(program, null, 3, directory)) {
+                for (int generation = 0; generation <= 3; generation++) {
+                    ExpansionResult expansion = program.expandToDegree(generation);
+                    List<SInstruction> previous = generation == 0 ? null
+                            : program.expandToDegree(generation - 1).instructions();
+                    assertEquals(expansion.instructions().size(), mapped.size(generation), name);
+                    for (int row = 1; row <= mapped.size(generation); row++) {
+                        String at = name + " generation " + generation + " row " + row;
+                        SInstruction instruction = expansion.instructions().get(row - 1);
+                        assertEquals(TestPrograms.describe(instruction),
+                                TestPrograms.describe(mapped.instruction(generation, row)), at);
+                        if (generation == 0) {
+                            assertEquals(0, mapped.parentRow(generation, row), at);
+                            continue;
+                        }
+                        // A copied row is its parent row; any other row was created by expanding it
+                        SInstruction parent = previous.get((int) mapped.parentRow(generation, row) - 1);
+                        SInstruction expected = mapped.isCopied(generation, row)
+                                ? instruction : expansion.parent().get(instruction);
+                        assertEquals(TestPrograms.describe(expected), TestPrograms.describe(parent), at);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void aFunctionIsMappedLikeItsExpansion() throws Exception {
+        SProgramImpl program = TestPrograms.load("harness");
+        for (String function : program.getFunctions().keySet()) {
+            Path directory = Files.createDirectory(root.resolve(function));
+            List<SInstruction> expanded = program.expandFunctionToDegree(function, 2).instructions();
+            MappedExpansion.create(program, function, 2, directory).close();
+            try (MappedExpansion mapped = MappedExpansion.open(program, function, 2, directory)) {
+                assertEquals(expanded.size(), mapped.size(), function);
+                for (int i = 0; i < expanded.size(); i++) {
+                    assertEquals(TestPrograms.describe(expanded.get(i)), TestPrograms.describe(mapped.rows().get(i)),
+                            function + " row " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pagesAndTheExpansionResultReadTheSameRows() throws Exception {
+        SProgramImpl program = TestPrograms.load("harness");
+        try (MappedExpansion mapped = MappedExpansion.create(program, 2)) {
+            List<SInstruction> page = mapped.page(3, 5);
+            assertEquals(5, page.size());
+            for (int i = 0; i < page.size(); i++) {
+                assertEquals(TestPrograms.describe(mapped.instruction(3 + i)), TestPrograms.describe(page.get(i)));
+            }
+            assertEquals(2, mapped.page(mapped.size() - 1, 5).size());
+            assertTrue(mapped.page(1, 0).isEmpty());
+
+            ExpansionResult result = mapped.toExpansionResult();
+            List<SInstruction> expanded = program.expandToDegree(2).instructions();
+            assertEquals(expanded.size(), result.instructions().size());
+            for (int i = 0; i < expanded.size(); i++) {
+                SInstruction instruction = result.instructions().get(i);
+                assertEquals(TestPrograms.describe(expanded.get(i)), TestPrograms.describe(instruction), "row " + i);
+                assertEquals(i + 1, (int) result.lineNo().get(instruction));
+            }
+        }
+    }
+
+    @Test
+    void runsFromTheMappedExpansionMatchTheExpandedProgram() {
+        // deg4 is not emulated, and a cycle limit runs the expansion of harness too
+        for (String name : new String[]{"deg4", "harness"}) {
+            SProgramImpl program = TestPrograms.load(name);
+            for (int degree = 1; degree <= 2; degree++) {
+                SProgramImpl expanded = TestPrograms.expanded(program, degree);
+                ProgramExecutorImpl mapped = new ProgramExecutorImpl(program);
+                mapped.setEmulatedDegree(degree);
+                mapped.setMappedExpansion(true);
+                mapped.setLimits(RunLimits.cycles(1_000_000));
+                try {
+                    for (long x1 = 0; x1 < 3; x1++) {
+                        String run = name + " degree " + degree + " x1=" + x1;
+                        ProgramExecutorImpl interpreter = new ProgramExecutorImpl(expanded);
+                        long y = interpreter.run(x1, 2L);
+                        assertEquals(y, mapped.run(x1, 2L), run);
+                        assertEquals(interpreter.getTotalCycles(), mapped.getTotalCycles(), run);
+                        assertEquals(observable(interpreter.variableState()), observable(mapped.variableState()), run);
+                    }
+                } finally {
+                    mapped.setMappedExpansion(false);
+                }
+            }
+        }
+    }
+
+    private static Map<Variable, Long> observable(Map<Variable, Long> state) {
+        Map<Variable, Long> variables = new HashMap<>(state);
+        variables.keySet().removeIf(Variable::isWork);
+        return variables;
+    }
+}
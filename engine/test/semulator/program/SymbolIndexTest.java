@@ -0,0 +1,141 @@
+package semulator.program;
+
+import org.junit.jupiter.api.Test;
+import semulator.TestPrograms;
+import semulator.instructions.AssignVariableInstruction;
+import semulator.instructions.FunctionArgument;
+import semulator.instructions.GotoLabelInstruction;
+import semulator.instructions.JumpEqualConstantInstruction;
+import semulator.instructions.JumpEqualFunctionInstruction;
+import semulator.instructions.JumpEqualVariableInstruction;
+import semulator.instructions.JumpNotZeroInstruction;
+import semulator.instructions.JumpZeroInstruction;
+import semulator.instructions.QuoteInstruction;
+import semulator.instructions.SInstruction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SymbolIndexTest {
+
+    @Test
+    void rowsOfTheHarnessProgram() {
+        SymbolIndex index = new SymbolIndex(TestPrograms.load("harness").getInstructions());
+        assertEquals(24, index.size());
+        // Arguments of nested calls count, and so does the variable a call is assigned to
+        assertArrayEquals(new int[]{0, 1, 2, 10, 15, 17, 23}, index.rows("x1"));
+        assertArrayEquals(new int[]{0, 3, 4}, index.rows("z1"));
+        // Labels where they are defined and where they are jumped to
+        assertArrayEquals(new int[]{11, 14}, index.rows("L1"));
+        assertArrayEquals(new int[]{4, 6}, index.rows("L2"));
+        // A GOTO mentions its target, not its placeholder variable
+        assertArrayEquals(new int[]{20}, index.rows("L6"));
+        assertTrue(index.mentions("L5", 20));
+        assertFalse(index.mentions("y", 20));
+        assertArrayEquals(new int[0], index.rows("z99"));
+        assertFalse(index.contains("z99"));
+    }
+
+    @Test
+    void stepsThroughTheMentionsOfAName() {
+        SymbolIndex index = new SymbolIndex(TestPrograms.load("harness").getInstructions());
+        assertEquals(4, index.count("z5"));
+        assertTrue(index.mentions("z5", 10));
+        assertFalse(index.mentions("z5", 12));
+        assertFalse(index.mentions(null, 10));
+        assertEquals(9, index.next("z5", -1));
+        assertEquals(11, index.next("z5", 10));
+        assertEquals(14, index.next("z5", 12));
+        assertEquals(-1, index.next("z5", 14));
+        assertEquals(11, index.previous("z5", 14));
+        assertEquals(11, index.previous("z5", 12));
+        assertEquals(-1, index.previous("z5", 9));
+        assertEquals(-1, index.next("z99", 0));
+        assertEquals(0, index.count("z99"));
+    }
+
+    @Test
+    void everyExpansionIsIndexedLikeAScanOfItsRows() {
+        for (String name : new String[]{"harness", "deg2", "tail"}) {
+            SProgramImpl program = TestPrograms.load(name);
+            for (int degree = 0; degree <= 3; degree++) {
+                List<SInstruction> rows = program.expandToDegree(degree).instructions();
+                SymbolIndex index = new SymbolIndex(rows);
+                Map<String, List<Integer>> scanned = new HashMap<>();
+                for (int row = 0; row < rows.size(); row++) {
+                    for (String symbol : names(rows.get(row))) {
+                        scanned.computeIfAbsent(symbol, s -> new ArrayList<>()).add(row);
+                    }
+                }
+                String at = name + " degree " + degree;
+                assertEquals(rows.size(), index.size(), at);
+                assertEquals(scanned.keySet(), index.names(), at);
+                for (Map.Entry<String, List<Integer>> entry : scanned.entrySet()) {
+                    String symbol = entry.getKey();
+                    int[] expected = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+                    assertArrayEquals(expected, index.rows(symbol), at + " " + symbol);
+                    assertEquals(expected.length, index.count(symbol), at + " " + symbol);
+                    for (int row = -1; row <= rows.size(); row++) {
+                        int from = row;
+                        assertEquals(Arrays.stream(expected).filter(r -> r > from).findFirst().orElse(-1),
+                                index.next(symbol, row), at + " " + symbol + " after " + row);
+                        assertEquals(Arrays.stream(expected).filter(r -> r < from).reduce((a, b) -> b).orElse(-1),
+                                index.previous(symbol, row), at + " " + symbol + " before " + row);
+                    }
+                }
+            }
+        }
+    }
+
+    /** What a row mentions, worked out instruction by instruction. */
+    private static Set<String> names(SInstruction instruction) {
+        Set<String> names = new HashSet<>();
+        if (!(instruction instanceof GotoLabelInstruction) && instruction.getVariable() != null) {
+            names.add(instruction.getVariable().toString());
+        }
+        if (instruction.getLabel() != null) {
+            names.add(instruction.getLabel().getLabel());
+        }
+        if (instruction instanceof AssignVariableInstruction a) {
+            names.add(a.getSource().toString());
+        } else if (instruction instanceof JumpEqualVariableInstruction j) {
+            names.add(j.getOther().toString());
+            names.add(j.getTarget().getLabel());
+        } else if (instruction instanceof JumpEqualConstantInstruction j) {
+            names.add(j.getTarget().getLabel());
+        } else if (instruction instanceof JumpNotZeroInstruction j) {
+            names.add(j.getTarget().getLabel());
+        } else if (instruction instanceof JumpZeroInstruction j) {
+            names.add(j.getTarget().getLabel());
+        } else if (instruction instanceof GotoLabelInstruction g) {
+            names.add(g.getTarget().getLabel());
+        } else if (instruction instanceof QuoteInstruction q) {
+            arguments(q.getFunctionArguments(), names);
+        } else if (instruction instanceof JumpEqualFunctionInstruction j) {
+            names.add(j.getTarget().getLabel());
+            arguments(j.getFunctionArguments(), names);
+        }
+        names.remove("");
+        return names;
+    }
+
+    private static void arguments(List<FunctionArgument> arguments, Set<String> names) {
+        for (FunctionArgument argument : arguments) {
+            if (argument.isFunctionCall()) {
+                arguments(argument.asFunctionCall().getArguments(), names);
+            } else {
+                names.add(argument.asVariable().toString());
+            }
+        }
+    }
+}